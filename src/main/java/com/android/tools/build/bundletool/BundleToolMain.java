@@ -33,6 +33,7 @@ import com.android.tools.build.bundletool.commands.GetSizeCommand;
 import com.android.tools.build.bundletool.commands.InstallApksCommand;
 import com.android.tools.build.bundletool.commands.InstallMultiApksCommand;
 import com.android.tools.build.bundletool.commands.PrintDeviceTargetingConfigCommand;
+import com.android.tools.build.bundletool.commands.ServeCommand;
 import com.android.tools.build.bundletool.commands.ValidateBundleCommand;
 import com.android.tools.build.bundletool.commands.VersionCommand;
 import com.android.tools.build.bundletool.device.AdbServer;
@@ -146,6 +147,11 @@ public final class BundleToolMain {
             CheckTransparencyCommand.fromFlags(flags, adbServer).execute();
           }
           break;
+        case ServeCommand.COMMAND_NAME:
+          try (AdbServer adbServer = DdmlibAdbServer.getInstance()) {
+            ServeCommand.fromFlags(flags, adbServer).execute(System.in, System.out);
+          }
+          break;
         case HELP_CMD:
           if (flags.getSubCommand().isPresent()) {
             help(flags.getSubCommand().get(), runtime);
@@ -191,7 +197,8 @@ public final class BundleToolMain {
           GetSizeCommand.help(),
           VersionCommand.help(),
           AddTransparencyCommand.help(),
-          CheckTransparencyCommand.help());
+          CheckTransparencyCommand.help(),
+          ServeCommand.help());
 
 
   /** Displays a general help. */
@@ -19,6 +19,7 @@ package com.android.tools.build.bundletool.androidtools;
 import com.android.tools.build.bundletool.androidtools.CommandExecutor.CommandOptions;
 import com.google.auto.value.AutoValue;
 import com.google.common.collect.ImmutableList;
+import java.io.PrintStream;
 import java.nio.file.Path;
 import java.time.Duration;
 import java.util.Optional;
@@ -36,6 +37,11 @@ public interface Aapt2Command {
   }
 
   static Aapt2Command createFromExecutablePath(Path aapt2Path) {
+    return createFromExecutablePath(aapt2Path, System.out);
+  }
+
+  /** Creates a command running the given aapt2 binary and printing its output to the stream. */
+  static Aapt2Command createFromExecutablePath(Path aapt2Path, PrintStream outputPrintStream) {
     return new Aapt2Command() {
       private final Duration timeoutMillis = Duration.ofMinutes(5);
 
@@ -67,7 +73,7 @@ public interface Aapt2Command {
             .add(binaryApk.toString())
             .add(protoApk.toString());
 
-        new DefaultCommandExecutor()
+        new DefaultCommandExecutor(outputPrintStream)
             .execute(
                 convertCommand.build(), CommandOptions.builder().setTimeout(timeoutMillis).build());
       }
@@ -83,13 +89,13 @@ public interface Aapt2Command {
                 outputApk.toString(),
                 originalApk.toString());
 
-        new DefaultCommandExecutor()
+        new DefaultCommandExecutor(outputPrintStream)
             .execute(convertCommand, CommandOptions.builder().setTimeout(timeoutMillis).build());
       }
 
       @Override
       public ImmutableList<String> dumpBadging(Path apkPath) {
-        return new DefaultCommandExecutor()
+        return new DefaultCommandExecutor(outputPrintStream)
             .executeAndCapture(
                 ImmutableList.of(aapt2Path.toString(), "dump", "badging", apkPath.toString()),
                 CommandOptions.builder().setTimeout(timeoutMillis).build());
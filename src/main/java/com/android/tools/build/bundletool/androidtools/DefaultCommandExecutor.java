@@ -33,10 +33,22 @@ import java.util.List;
 /** Helper to execute native commands. */
 public final class DefaultCommandExecutor implements CommandExecutor {
 
+  private final PrintStream outputPrintStream;
+
+  /** Creates an executor printing the output of successful commands to the standard output. */
+  public DefaultCommandExecutor() {
+    this(System.out);
+  }
+
+  /** Creates an executor printing the output of successful commands to the given stream. */
+  public DefaultCommandExecutor(PrintStream outputPrintStream) {
+    this.outputPrintStream = outputPrintStream;
+  }
+
   @Override
   public void execute(ImmutableList<String> command, CommandOptions options) {
     ImmutableList<String> capturedOutput = executeImpl(command, options);
-    printOutput(capturedOutput, System.out);
+    printOutput(capturedOutput, outputPrintStream);
   }
 
   @Override
@@ -25,7 +25,8 @@ import com.android.tools.build.bundletool.commands.CommandHelp.CommandDescriptio
 import com.android.tools.build.bundletool.commands.CommandHelp.FlagDescription;
 import com.android.tools.build.bundletool.flags.Flag;
 import com.android.tools.build.bundletool.flags.ParsedFlags;
-import com.android.tools.build.bundletool.io.AppBundleSerializer;
+import com.android.tools.build.bundletool.io.ThreadPools;
+import com.android.tools.build.bundletool.io.ZipFlingerBundleSerializer;
 import com.android.tools.build.bundletool.model.AppBundle;
 import com.android.tools.build.bundletool.model.BundleMetadata;
 import com.android.tools.build.bundletool.model.Password;
@@ -44,6 +45,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.io.BaseEncoding;
 import com.google.common.io.ByteSource;
 import com.google.common.io.CharSource;
+import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.protobuf.InvalidProtocolBufferException;
 import com.google.protobuf.util.JsonFormat;
 import java.io.IOException;
@@ -252,6 +254,9 @@ public abstract class AddTransparencyCommand {
   public void execute() {
     validateCommonInputs();
 
+    // Shared by the hashing of the code related files of the bundle in all modes.
+    ListeningExecutorService executorService =
+        ThreadPools.newCpuExecutor(ThreadPools.availableProcessors());
     try (ZipFile bundleZip = new ZipFile(getBundlePath().toFile())) {
       AppBundle inputBundle = AppBundle.buildFromZip(bundleZip);
       Boolean allowSharedUserId = getAllowSharedUserId().orElse(false);
@@ -276,13 +281,13 @@ public abstract class AddTransparencyCommand {
       }
       switch (getMode()) {
         case DEFAULT:
-          executeDefaultMode(inputBundle);
+          executeDefaultMode(inputBundle, executorService);
           break;
         case GENERATE_CODE_TRANSPARENCY_FILE:
-          executeGenerateCodeTransparencyFileMode(inputBundle);
+          executeGenerateCodeTransparencyFileMode(inputBundle, executorService);
           break;
         case INJECT_SIGNATURE:
-          executeInjectSignatureMode(inputBundle);
+          executeInjectSignatureMode(inputBundle, executorService);
           break;
       }
     } catch (ZipException e) {
@@ -295,6 +300,8 @@ public abstract class AddTransparencyCommand {
     } catch (JoseException e) {
       throw new UncheckedJoseException(
           "An error occurred when signing the code transparency file.", e);
+    } finally {
+      executorService.shutdownNow();
     }
   }
 
@@ -320,10 +327,12 @@ public abstract class AddTransparencyCommand {
     throw new IllegalStateException("Unsupported DexMergingChoice");
   }
 
-  private void executeDefaultMode(AppBundle inputBundle) throws IOException, JoseException {
+  private void executeDefaultMode(AppBundle inputBundle, ListeningExecutorService executorService)
+      throws IOException, JoseException {
     validateDefaultModeInputs();
     String jsonText =
-        toJsonText(CodeTransparencyFactory.createCodeTransparencyMetadata(inputBundle));
+        toJsonText(
+            CodeTransparencyFactory.createCodeTransparencyMetadata(inputBundle, executorService));
     AppBundle.Builder bundleBuilder = inputBundle.toBuilder();
     bundleBuilder.setBundleMetadata(
         inputBundle.getBundleMetadata().toBuilder()
@@ -332,13 +341,16 @@ public abstract class AddTransparencyCommand {
                 BundleMetadata.TRANSPARENCY_SIGNED_FILE_NAME,
                 toBytes(createSignedJwt(jsonText, getSignerConfig().get().getCertificates())))
             .build());
-    new AppBundleSerializer().writeToDisk(bundleBuilder.build(), getOutputPath());
+    // Entries of the input bundle are copied as they are, without being compressed again.
+    new ZipFlingerBundleSerializer().serializeAppBundle(bundleBuilder.build(), getOutputPath());
   }
 
-  private void executeGenerateCodeTransparencyFileMode(AppBundle inputBundle) throws IOException {
+  private void executeGenerateCodeTransparencyFileMode(
+      AppBundle inputBundle, ListeningExecutorService executorService) throws IOException {
     validateGenerateCodeTransparencyFileModeInputs();
     String codeTransparencyMetadata =
-        toJsonText(CodeTransparencyFactory.createCodeTransparencyMetadata(inputBundle));
+        toJsonText(
+            CodeTransparencyFactory.createCodeTransparencyMetadata(inputBundle, executorService));
     Files.write(
         getOutputPath(),
         toBytes(
@@ -347,12 +359,14 @@ public abstract class AddTransparencyCommand {
             .read());
   }
 
-  private void executeInjectSignatureMode(AppBundle inputBundle) throws IOException {
+  private void executeInjectSignatureMode(
+      AppBundle inputBundle, ListeningExecutorService executorService) throws IOException {
     validateInjectSignatureModeInputs();
     String signature =
         BaseEncoding.base64Url().encode(Files.readAllBytes(getTransparencySignaturePath().get()));
     String codeTransparencyMetadata =
-        toJsonText(CodeTransparencyFactory.createCodeTransparencyMetadata(inputBundle));
+        toJsonText(
+            CodeTransparencyFactory.createCodeTransparencyMetadata(inputBundle, executorService));
     String transparencyFileWithoutSignature =
         createJwtWithoutSignature(codeTransparencyMetadata, getTransparencyKeyCertificates());
     AppBundle bundleWithTransparency =
@@ -365,14 +379,15 @@ public abstract class AddTransparencyCommand {
                         toBytes(transparencyFileWithoutSignature + "." + signature))
                     .build())
             .build();
-    if (!BundleTransparencyCheckUtils.checkTransparency(bundleWithTransparency).verified()) {
+    if (!BundleTransparencyCheckUtils.checkTransparency(bundleWithTransparency, executorService)
+        .verified()) {
       throw CommandExecutionException.builder()
           .withInternalMessage(
               "Code transparency verification failed for the provided public key certificate and"
                   + " signature.")
           .build();
     }
-    new AppBundleSerializer().writeToDisk(bundleWithTransparency, getOutputPath());
+    new ZipFlingerBundleSerializer().serializeAppBundle(bundleWithTransparency, getOutputPath());
   }
 
   public static CommandHelp help() {
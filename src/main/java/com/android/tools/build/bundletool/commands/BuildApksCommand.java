@@ -32,6 +32,7 @@ import static com.android.tools.build.bundletool.model.utils.files.FilePrecondit
 import static com.android.tools.build.bundletool.model.utils.files.FilePreconditions.checkFileHasExtension;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.collect.ImmutableList.toImmutableList;
 import static com.google.common.collect.ImmutableMap.toImmutableMap;
 import static java.util.Arrays.stream;
 import static java.util.stream.Collectors.joining;
@@ -52,12 +53,15 @@ import com.android.tools.build.bundletool.device.AdbServer;
 import com.android.tools.build.bundletool.device.DeviceSpecParser;
 import com.android.tools.build.bundletool.flags.Flag;
 import com.android.tools.build.bundletool.flags.ParsedFlags;
+import com.android.tools.build.bundletool.io.ConcurrencyUtils;
 import com.android.tools.build.bundletool.io.TempDirectory;
+import com.android.tools.build.bundletool.io.ThreadPools;
 import com.android.tools.build.bundletool.model.ApkListener;
 import com.android.tools.build.bundletool.model.ApkModifier;
 import com.android.tools.build.bundletool.model.AppBundle;
 import com.android.tools.build.bundletool.model.BundleModule;
 import com.android.tools.build.bundletool.model.KeystoreProperties;
+import com.android.tools.build.bundletool.model.ModuleEntryComparisons;
 import com.android.tools.build.bundletool.model.OptimizationDimension;
 import com.android.tools.build.bundletool.model.Password;
 import com.android.tools.build.bundletool.model.SdkAsar;
@@ -70,6 +74,8 @@ import com.android.tools.build.bundletool.model.exceptions.CommandExecutionExcep
 import com.android.tools.build.bundletool.model.exceptions.InvalidBundleException;
 import com.android.tools.build.bundletool.model.exceptions.InvalidCommandException;
 import com.android.tools.build.bundletool.model.utils.DefaultSystemEnvironmentProvider;
+import com.android.tools.build.bundletool.model.utils.ResidentCaches;
+import com.android.tools.build.bundletool.model.utils.ResidentCaches.CachedAppBundle;
 import com.android.tools.build.bundletool.model.utils.SystemEnvironmentProvider;
 import com.android.tools.build.bundletool.model.utils.files.BufferedIo;
 import com.android.tools.build.bundletool.model.utils.files.FileUtils;
@@ -90,10 +96,11 @@ import com.google.common.collect.Iterables;
 import com.google.common.collect.Maps;
 import com.google.common.io.Closer;
 import com.google.common.io.MoreFiles;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
-import com.google.common.util.concurrent.MoreExecutors;
 import com.google.errorprone.annotations.CanIgnoreReturnValue;
 import com.google.protobuf.util.JsonFormat;
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
@@ -106,8 +113,9 @@ import java.nio.file.Path;
 import java.util.Collection;
 import java.util.Map.Entry;
 import java.util.Optional;
-import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Logger;
+import java.util.stream.IntStream;
 import java.util.zip.ZipException;
 import java.util.zip.ZipFile;
 
@@ -115,8 +123,6 @@ import java.util.zip.ZipFile;
 @AutoValue
 public abstract class BuildApksCommand {
 
-  private static final int DEFAULT_THREAD_POOL_SIZE = 4;
-
   public static final String COMMAND_NAME = "build-apks";
 
   private static final Logger logger = Logger.getLogger(BuildApksCommand.class.getName());
@@ -188,6 +194,11 @@ public abstract class BuildApksCommand {
 
   private static final Flag<Path> P7ZIP_PATH_FLAG = Flag.path("7zip");
 
+  private static final Flag<Boolean> REUSE_BUNDLE_COMPRESSION_FLAG =
+      Flag.booleanFlag("reuse-bundle-compression");
+
+  private static final Flag<Boolean> STREAM_VARIANTS_FLAG = Flag.booleanFlag("stream-variants");
+
   // Signing-related flags: should match flags from apksig library.
   private static final Flag<Path> KEYSTORE_FLAG = Flag.path("ks");
   private static final Flag<String> KEY_ALIAS_FLAG = Flag.string("ks-key-alias");
@@ -211,6 +222,8 @@ public abstract class BuildApksCommand {
       Flag.positiveInteger("rotation-min-sdk-version");
   private static final Flag<Path> LINEAGE_FLAG = Flag.path("lineage");
   private static final Flag<Path> OLDEST_SIGNER_FLAG = Flag.path("oldest-signer");
+  private static final Flag<ImmutableMap<Path, Path>> ADDITIONAL_SIGNING_FLAG =
+      Flag.mapCollector("additional-signing", Path.class, Path.class);
 
   // Runtime-enabled-SDK-related flags.
   private static final Flag<ImmutableSet<Path>> RUNTIME_ENABLED_SDK_BUNDLE_LOCATIONS_FLAG =
@@ -277,12 +290,28 @@ public abstract class BuildApksCommand {
 
   public abstract Optional<Integer> getMinSdkForAdditionalVariantWithV3Rotation();
 
+  /** Extra APK Sets to generate, keyed by output file, with the configuration to sign them. */
+  public abstract ImmutableMap<Path, SigningConfiguration> getAdditionalSigningConfigurations();
+
   ListeningExecutorService getExecutorService() {
     return getExecutorServiceInternal();
   }
 
   abstract ListeningExecutorService getExecutorServiceInternal();
 
+  /**
+   * Executor service for tasks which mostly wait on disk I/O.
+   *
+   * <p>This is a separate pool when bundletool creates its own executor services, so that these
+   * tasks don't hold the threads sized for CPU-bound work. Otherwise it is the executor service set
+   * by the caller.
+   */
+  ListeningExecutorService getIoExecutorService() {
+    return getIoExecutorServiceInternal();
+  }
+
+  abstract ListeningExecutorService getIoExecutorServiceInternal();
+
   abstract boolean isExecutorServiceCreatedByBundleTool();
 
   public abstract OutputFormat getOutputFormat();
@@ -306,6 +335,10 @@ public abstract class BuildApksCommand {
 
   public abstract Optional<P7ZipCommand> getP7ZipCommand();
 
+  public abstract boolean getReuseBundleCompression();
+
+  public abstract boolean getStreamVariants();
+
   public abstract ImmutableSet<Path> getRuntimeEnabledSdkBundlePaths();
 
   public abstract ImmutableSet<Path> getRuntimeEnabledSdkArchivePaths();
@@ -333,8 +366,11 @@ public abstract class BuildApksCommand {
         .setModules(ImmutableSet.of())
         .setFuseOnlyDeviceMatchingModules(false)
         .setExtraValidators(ImmutableList.of())
+        .setAdditionalSigningConfigurations(ImmutableMap.of())
         .setSystemApkOptions(ImmutableSet.of())
         .setEnableApkSerializerWithoutBundleRecompression(true)
+        .setReuseBundleCompression(false)
+        .setStreamVariants(false)
         .setRuntimeEnabledSdkBundlePaths(ImmutableSet.of())
         .setRuntimeEnabledSdkArchivePaths(ImmutableSet.of())
         .setEnableBaseModuleMinSdkAsDefaultTargeting(false);
@@ -480,6 +516,17 @@ public abstract class BuildApksCommand {
     public abstract Builder setMinSdkForAdditionalVariantWithV3Rotation(
         int minSdkForAdditionalVariantWithV3Rotation);
 
+    /**
+     * Sets extra APK Sets to generate, keyed by their output file, each signed with its own
+     * signing configuration instead of the main one.
+     *
+     * <p>Optional. The APKs are generated only once and then signed for each APK Set, which is
+     * cheaper than running the command once per signing key. Only supported with the {@link
+     * OutputFormat#APK_SET} output format.
+     */
+    public abstract Builder setAdditionalSigningConfigurations(
+        ImmutableMap<Path, SigningConfiguration> additionalSigningConfigurations);
+
     /**
      * Allows to set an executor service for parallelization.
      *
@@ -489,14 +536,53 @@ public abstract class BuildApksCommand {
     @CanIgnoreReturnValue
     public Builder setExecutorService(ListeningExecutorService executorService) {
       setExecutorServiceInternal(executorService);
+      setIoExecutorServiceInternal(executorService);
       setExecutorServiceCreatedByBundleTool(false);
       return this;
     }
 
+    /**
+     * Allows to set an executor service for tasks which mostly wait on disk I/O, separate from the
+     * one set with {@link #setExecutorService}.
+     *
+     * <p>Optional, and only taken into account after {@link #setExecutorService}, which otherwise
+     * runs these tasks as well. The caller is responsible for shutting it down afterwards.
+     */
+    @CanIgnoreReturnValue
+    public Builder setIoExecutorService(ListeningExecutorService ioExecutorService) {
+      checkState(
+          getExecutorServiceInternal().isPresent() && !isExecutorServiceCreatedByBundleTool(),
+          "The I/O executor service can only be set after the executor service.");
+      setIoExecutorServiceInternal(ioExecutorService);
+      return this;
+    }
+
+    /**
+     * Sets executor services created by bundletool, which are shut down after execution.
+     *
+     * <p>The {@code maxThreads} threads are split between the CPU-bound work and the writing of
+     * APKs, see {@link #getIoThreadCount}.
+     */
+    @CanIgnoreReturnValue
+    Builder setInternalExecutorServices(int maxThreads) {
+      ListeningExecutorService executorService =
+          createInternalExecutorService(getCpuThreadCount(maxThreads));
+      int ioThreads = getIoThreadCount(maxThreads);
+      setExecutorServiceInternal(executorService);
+      setIoExecutorServiceInternal(
+          ioThreads > 0 ? ThreadPools.newIoExecutor(ioThreads) : executorService);
+      setExecutorServiceCreatedByBundleTool(true);
+      return this;
+    }
+
     abstract Builder setExecutorServiceInternal(ListeningExecutorService executorService);
 
     abstract Optional<ListeningExecutorService> getExecutorServiceInternal();
 
+    abstract Builder setIoExecutorServiceInternal(ListeningExecutorService ioExecutorService);
+
+    abstract Optional<ListeningExecutorService> getIoExecutorServiceInternal();
+
     /**
      * Sets whether the ExecutorService has been created by bundletool, otherwise provided by the
      * client.
@@ -505,6 +591,8 @@ public abstract class BuildApksCommand {
      */
     abstract Builder setExecutorServiceCreatedByBundleTool(boolean value);
 
+    abstract boolean isExecutorServiceCreatedByBundleTool();
+
     /**
      * If false will extract the APK set to the output directory without creating the final archive.
      *
@@ -532,7 +620,11 @@ public abstract class BuildApksCommand {
      */
     public abstract Builder setApkModifier(ApkModifier apkModifier);
 
-    /** Provides additional {@link SubValidator}s that will be invoked during validation. */
+    /**
+     * Provides additional {@link SubValidator}s that will be invoked during validation.
+     *
+     * <p>The {@link SubValidator}s must be thread-safe as they are invoked concurrently.
+     */
     public abstract Builder setExtraValidators(ImmutableList<SubValidator> extraValidators);
 
     /**
@@ -557,6 +649,30 @@ public abstract class BuildApksCommand {
     /** Provides a wrapper around the execution of the 7zip commands. */
     public abstract Builder setP7ZipCommand(P7ZipCommand value);
 
+    /**
+     * Sets whether entries that are already deflated inside the bundle should be copied into the
+     * generated APKs as-is, instead of being decompressed and compressed again.
+     *
+     * <p>The compressed form of such entries is whatever the tool that built the bundle produced,
+     * so the generated APKs may be slightly larger, but far less time is spent compressing.
+     *
+     * <p>Not used with 7zip compression. Default is false.
+     */
+    public abstract Builder setReuseBundleCompression(boolean value);
+
+    /**
+     * Sets whether the splits of split APK variants should be generated one variant at a time,
+     * right before the variant is serialized.
+     *
+     * <p>The splits of a variant are released once its APKs have been written, so the peak memory
+     * usage doesn't grow with the number of variants. APKs shared by several variants are then
+     * compressed once per variant rather than once overall.
+     *
+     * <p>The generated APK Set is the same either way. Default is false. Has no effect when a
+     * device spec is set, since only the variants matching the device are generated then.
+     */
+    public abstract Builder setStreamVariants(boolean value);
+
     /**
      * Provides paths to {@link SdkBundle}s for the runtime-enabled SDKs that the {@link AppBundle}
      * depends on. Each file must have extension ".asb".
@@ -612,8 +728,10 @@ public abstract class BuildApksCommand {
 
     public BuildApksCommand build() {
       if (!getExecutorServiceInternal().isPresent()) {
-        setExecutorServiceInternal(createInternalExecutorService(DEFAULT_THREAD_POOL_SIZE));
-        setExecutorServiceCreatedByBundleTool(true);
+        setInternalExecutorServices(ThreadPools.availableProcessors());
+      }
+      if (!getIoExecutorServiceInternal().isPresent()) {
+        setIoExecutorServiceInternal(getExecutorServiceInternal().get());
       }
 
       checkState(
@@ -792,6 +910,18 @@ public abstract class BuildApksCommand {
       PrintStream out,
       SystemEnvironmentProvider systemEnvironmentProvider,
       AdbServer adbServer) {
+    return builderFromFlags(flags, out, systemEnvironmentProvider, adbServer).build();
+  }
+
+  /**
+   * Returns the builder of the command described by the given flags, letting the caller set what
+   * can't be set from flags, e.g. the executor services.
+   */
+  static BuildApksCommand.Builder builderFromFlags(
+      ParsedFlags flags,
+      PrintStream out,
+      SystemEnvironmentProvider systemEnvironmentProvider,
+      AdbServer adbServer) {
     BuildApksCommand.Builder buildApksCommand =
         BuildApksCommand.builder()
             .setBundlePath(BUNDLE_LOCATION_FLAG.getRequiredValue(flags))
@@ -805,20 +935,26 @@ public abstract class BuildApksCommand {
         .getValue(flags)
         .ifPresent(
             aapt2Path ->
-                buildApksCommand.setAapt2Command(Aapt2Command.createFromExecutablePath(aapt2Path)));
+                buildApksCommand.setAapt2Command(
+                    Aapt2Command.createFromExecutablePath(aapt2Path, out)));
 
     BUILD_MODE_FLAG.getValue(flags).ifPresent(buildApksCommand::setApkBuildMode);
     LOCAL_TESTING_MODE_FLAG.getValue(flags).ifPresent(buildApksCommand::setLocalTestingMode);
     MAX_THREADS_FLAG
         .getValue(flags)
         .ifPresent(
-            maxThreads ->
-                buildApksCommand
-                    .setExecutorService(createInternalExecutorService(maxThreads))
-                    .setExecutorServiceCreatedByBundleTool(true));
+            maxThreads -> buildApksCommand.setInternalExecutorServices(maxThreads));
     OPTIMIZE_FOR_FLAG.getValue(flags).ifPresent(buildApksCommand::setOptimizationDimensions);
 
     populateSigningConfigurationFromFlags(buildApksCommand, flags, out, systemEnvironmentProvider);
+    ADDITIONAL_SIGNING_FLAG
+        .getValue(flags)
+        .ifPresent(
+            additionalSigning ->
+                buildApksCommand.setAdditionalSigningConfigurations(
+                    ImmutableMap.copyOf(
+                        Maps.transformValues(
+                            additionalSigning, BuildApksCommand::readSigningConfiguration))));
     populateSourceStampFromFlags(buildApksCommand, flags, out, systemEnvironmentProvider);
 
     boolean connectedDeviceMode = CONNECTED_DEVICE_FLAG.getValue(flags).orElse(false);
@@ -873,10 +1009,15 @@ public abstract class BuildApksCommand {
         .getValue(flags)
         .ifPresent(
             p7zipPath -> {
-              int numThreads = MAX_THREADS_FLAG.getValue(flags).orElse(DEFAULT_THREAD_POOL_SIZE);
+              int numThreads =
+                  MAX_THREADS_FLAG.getValue(flags).orElseGet(ThreadPools::availableProcessors);
               buildApksCommand.setP7ZipCommand(
                   P7ZipCommand.defaultP7ZipCommand(p7zipPath, numThreads));
             });
+    REUSE_BUNDLE_COMPRESSION_FLAG
+        .getValue(flags)
+        .ifPresent(buildApksCommand::setReuseBundleCompression);
+    STREAM_VARIANTS_FLAG.getValue(flags).ifPresent(buildApksCommand::setStreamVariants);
 
     if (RUNTIME_ENABLED_SDK_BUNDLE_LOCATIONS_FLAG.getValue(flags).isPresent()
         && RUNTIME_ENABLED_SDK_ARCHIVE_LOCATIONS_FLAG.getValue(flags).isPresent()) {
@@ -917,7 +1058,7 @@ public abstract class BuildApksCommand {
 
     flags.checkNoUnknownFlags();
 
-    return buildApksCommand.build();
+    return buildApksCommand;
   }
 
   public Path execute() {
@@ -930,13 +1071,13 @@ public abstract class BuildApksCommand {
       FileUtils.createDirectories(outputDirectory);
     }
 
+    ModuleEntryComparisons moduleEntryComparisons = new ModuleEntryComparisons();
     try (TempDirectory tempDir = new TempDirectory(getClass().getSimpleName());
-        ZipFile bundleZip = new ZipFile(getBundlePath().toFile());
         Closer closer = Closer.create()) {
-      AppBundleValidator bundleValidator = AppBundleValidator.create(getExtraValidators());
-      bundleValidator.validateFile(bundleZip);
-
-      AppBundle appBundle = AppBundle.buildFromZip(bundleZip);
+      AppBundleValidator bundleValidator =
+          AppBundleValidator.create(
+              getExtraValidators(), getExecutorService(), moduleEntryComparisons);
+      AppBundle appBundle = readAppBundle(closer, bundleValidator);
       bundleValidator.validate(appBundle);
       ImmutableMap<String, BundleModule> sdkBundleModules =
           getValidatedSdkModules(closer, tempDir, appBundle);
@@ -955,6 +1096,7 @@ public abstract class BuildApksCommand {
               .setBuildApksCommand(this)
               .setTempDirectory(tempDir)
               .setAppBundle(preprocessedAppBundle)
+              .setModuleEntryComparisons(moduleEntryComparisons)
               .build()
               .create();
       buildApksManager.execute();
@@ -967,14 +1109,92 @@ public abstract class BuildApksCommand {
     } catch (IOException e) {
       throw new UncheckedIOException("An error occurred when processing the App Bundle.", e);
     } finally {
+      if (getVerbose()) {
+        PrintStream outputPrintStream = getOutputPrintStream().orElse(System.out);
+        ModuleEntryComparisons.Stats comparisonStats = moduleEntryComparisons.getStats();
+        outputPrintStream.printf(
+            "INFO: Compared %d pairs of module entries: %d resolved without hashing their content,"
+                + " %d by comparing the SHA-256 hashes of %d KiB of content.%n",
+            comparisonStats.getComparisonCount(),
+            comparisonStats.getResolvedByChecksumCount(),
+            comparisonStats.getHashComparisonCount(),
+            comparisonStats.getHashComparedBytes() / 1024);
+        ThreadPools.describeUtilization(getExecutorService())
+            .ifPresent(
+                utilization -> outputPrintStream.println("INFO: CPU thread pool: " + utilization));
+        // The APKs are written by the CPU thread pool when there is no separate I/O thread pool.
+        ThreadPools.describeUtilization(getIoExecutorService())
+            .filter(unused -> getIoExecutorService() != getExecutorService())
+            .ifPresent(
+                utilization -> outputPrintStream.println("INFO: I/O thread pool: " + utilization));
+      }
       if (isExecutorServiceCreatedByBundleTool()) {
         getExecutorService().shutdown();
+        getIoExecutorService().shutdown();
       }
     }
 
     return getOutputFile();
   }
 
+  /**
+   * Reads the App Bundle and validates its zip file.
+   *
+   * <p>If resident caches are enabled, a bundle parsed by a previous command is reused and its zip
+   * file is left open for the next commands. Otherwise the zip file is closed by {@code closer}.
+   */
+  private AppBundle readAppBundle(Closer closer, AppBundleValidator bundleValidator)
+      throws IOException {
+    Optional<ResidentCaches> residentCaches = ResidentCaches.get();
+    if (residentCaches.isPresent()) {
+      AtomicBoolean validated = new AtomicBoolean();
+      CachedAppBundle cachedAppBundle =
+          residentCaches
+              .get()
+              .acquireAppBundle(
+                  getBundlePath(),
+                  () -> {
+                    validated.set(true);
+                    return readAppBundleUncached(bundleValidator);
+                  },
+                  closer);
+      // The validators may differ between commands, so a bundle parsed by a previous command is
+      // validated again.
+      if (!validated.get()) {
+        bundleValidator.validateFile(cachedAppBundle.getZipFile());
+      }
+      return cachedAppBundle.getAppBundle();
+    }
+    ZipFile bundleZip = closer.register(new ZipFile(getBundlePath().toFile()));
+    bundleValidator.validateFile(bundleZip);
+    return AppBundle.buildFromZip(bundleZip);
+  }
+
+  private CachedAppBundle readAppBundleUncached(AppBundleValidator bundleValidator) {
+    ZipFile bundleZip;
+    try {
+      bundleZip = new ZipFile(getBundlePath().toFile());
+    } catch (ZipException e) {
+      throw InvalidBundleException.builder()
+          .withCause(e)
+          .withUserMessage("The App Bundle is not a valid zip file.")
+          .build();
+    } catch (IOException e) {
+      throw new UncheckedIOException("An error occurred when processing the App Bundle.", e);
+    }
+    try {
+      bundleValidator.validateFile(bundleZip);
+      return CachedAppBundle.create(AppBundle.buildFromZip(bundleZip), bundleZip);
+    } catch (RuntimeException e) {
+      try {
+        bundleZip.close();
+      } catch (IOException suppressed) {
+        e.addSuppressed(suppressed);
+      }
+      throw e;
+    }
+  }
+
   private void validateInput() {
     checkFileExistsAndReadable(getBundlePath());
 
@@ -982,6 +1202,9 @@ public abstract class BuildApksCommand {
       case APK_SET:
         if (!getOverwriteOutput()) {
           checkFileDoesNotExist(getOutputFile());
+          for (Path additionalOutputFile : getAdditionalSigningConfigurations().keySet()) {
+            checkFileDoesNotExist(additionalOutputFile);
+          }
         }
         break;
       case DIRECTORY:
@@ -992,9 +1215,24 @@ public abstract class BuildApksCommand {
                   OVERWRITE_OUTPUT_FLAG.getName(), DIRECTORY)
               .build();
         }
+        if (!getAdditionalSigningConfigurations().isEmpty()) {
+          throw InvalidCommandException.builder()
+              .withInternalMessage(
+                  "'%s' flag is not supported for '%s' output format.",
+                  ADDITIONAL_SIGNING_FLAG.getName(), DIRECTORY)
+              .build();
+        }
         break;
     }
 
+    if (getAdditionalSigningConfigurations().containsKey(getOutputFile())) {
+      throw InvalidCommandException.builder()
+          .withInternalMessage(
+              "Output file of an additional signing '%s' is the same as the main output file.",
+              getOutputFile())
+          .build();
+    }
+
     if (getGenerateOnlyForConnectedDevice()) {
       checkArgument(
           getAdbServer().isPresent(),
@@ -1053,15 +1291,21 @@ public abstract class BuildApksCommand {
     ImmutableListMultimap.Builder<String, SdkAsar> sdkArchivesPerPackageNameBuilder =
         ImmutableListMultimap.builder();
 
-    ImmutableList<Path> sdkArchivePaths = getRuntimeEnabledSdkArchivePaths().asList();
-    for (int index = 0; index < sdkArchivePaths.size(); index++) {
-      ZipFile sdkArchiveZip = closer.register(new ZipFile(sdkArchivePaths.get(index).toFile()));
+    ImmutableList<SdkAsar> sdkArchives =
+        readSdksInParallel(
+            getRuntimeEnabledSdkArchivePaths().asList(),
+            (index, sdkArchivePath) -> {
+              ZipFile sdkArchiveZip =
+                  registerSynchronized(closer, new ZipFile(sdkArchivePath.toFile()));
 
-      Path sdkModulesZipPath = tempDir.getPath().resolve("tmp" + index);
-      ZipFile sdkModulesZip = closer.register(getModulesZip(sdkArchiveZip, sdkModulesZipPath));
-      SdkAsarValidator.validateModulesFile(sdkModulesZip);
+              Path sdkModulesZipPath = tempDir.getPath().resolve("tmp" + index);
+              ZipFile sdkModulesZip =
+                  registerSynchronized(closer, getModulesZip(sdkArchiveZip, sdkModulesZipPath));
+              SdkAsarValidator.validateModulesFile(sdkModulesZip);
 
-      SdkAsar sdkArchive = SdkAsar.buildFromZip(sdkArchiveZip, sdkModulesZip, sdkModulesZipPath);
+              return SdkAsar.buildFromZip(sdkArchiveZip, sdkModulesZip, sdkModulesZipPath);
+            });
+    for (SdkAsar sdkArchive : sdkArchives) {
       sdkArchivesPerPackageNameBuilder.put(sdkArchive.getPackageName(), sdkArchive);
     }
 
@@ -1154,20 +1398,25 @@ public abstract class BuildApksCommand {
     SdkBundleValidator sdkBundleValidator = SdkBundleValidator.create();
     ImmutableListMultimap.Builder<String, SdkBundle> sdkBundlesPerPackageNameBuilder =
         ImmutableListMultimap.builder();
-    ImmutableList<Path> sdkBundlePaths = getRuntimeEnabledSdkBundlePaths().asList();
-    for (int index = 0; index < sdkBundlePaths.size(); index++) {
-      Path sdkBundlePath = sdkBundlePaths.get(index);
-      ZipFile sdkBundleZip = closer.register(new ZipFile(sdkBundlePath.toFile()));
-      sdkBundleValidator.validateFile(sdkBundleZip);
-
-      ZipFile sdkModulesZip =
-          closer.register(getModulesZip(sdkBundleZip, tempDir.getPath().resolve("tmp" + index)));
-      sdkBundleValidator.validateModulesFile(sdkModulesZip);
-
-      // SdkBundle#getVersionCode is not used in `build-apks`. It does not matter what
-      // value we set here, so we are just setting 0.
-      SdkBundle sdkBundle =
-          SdkBundle.buildFromZip(sdkBundleZip, sdkModulesZip, /* versionCode= */ 0);
+    ImmutableList<SdkBundle> sdkBundles =
+        readSdksInParallel(
+            getRuntimeEnabledSdkBundlePaths().asList(),
+            (index, sdkBundlePath) -> {
+              ZipFile sdkBundleZip =
+                  registerSynchronized(closer, new ZipFile(sdkBundlePath.toFile()));
+              sdkBundleValidator.validateFile(sdkBundleZip);
+
+              ZipFile sdkModulesZip =
+                  registerSynchronized(
+                      closer,
+                      getModulesZip(sdkBundleZip, tempDir.getPath().resolve("tmp" + index)));
+              sdkBundleValidator.validateModulesFile(sdkModulesZip);
+
+              // SdkBundle#getVersionCode is not used in `build-apks`. It does not matter what
+              // value we set here, so we are just setting 0.
+              return SdkBundle.buildFromZip(sdkBundleZip, sdkModulesZip, /* versionCode= */ 0);
+            });
+    for (SdkBundle sdkBundle : sdkBundles) {
       sdkBundlesPerPackageNameBuilder.put(sdkBundle.getPackageName(), sdkBundle);
     }
 
@@ -1193,6 +1442,52 @@ public abstract class BuildApksCommand {
         Maps.transformValues(sdkBundlesPerPackageName, Iterables::getOnlyElement));
   }
 
+  /**
+   * Reads the runtime-enabled SDKs at the given paths concurrently, and returns them in the order
+   * of the paths.
+   */
+  private <T> ImmutableList<T> readSdksInParallel(
+      ImmutableList<Path> sdkPaths, SdkReader<T> sdkReader) throws IOException {
+    ImmutableList<ListenableFuture<T>> sdkFutures =
+        IntStream.range(0, sdkPaths.size())
+            .mapToObj(
+                index ->
+                    getExecutorService()
+                        .submit(
+                            () -> {
+                              try {
+                                return sdkReader.read(index, sdkPaths.get(index));
+                              } catch (IOException e) {
+                                throw new SdkReadException(e);
+                              }
+                            }))
+            .collect(toImmutableList());
+    try {
+      return ConcurrencyUtils.waitForAll(sdkFutures);
+    } catch (SdkReadException e) {
+      // Invalid zip files are reported the same way as when the SDKs are read sequentially.
+      throw e.getCause();
+    }
+  }
+
+  private static <C extends Closeable> C registerSynchronized(Closer closer, C closeable) {
+    synchronized (closer) {
+      return closer.register(closeable);
+    }
+  }
+
+  /** Reads the runtime-enabled SDK at the given path, {@code index} being its position. */
+  private interface SdkReader<T> {
+    T read(int index, Path sdkPath) throws IOException;
+  }
+
+  /** Wraps the {@link IOException} thrown by a {@link SdkReader} run on the executor. */
+  private static final class SdkReadException extends UncheckedIOException {
+    SdkReadException(IOException cause) {
+      super(cause);
+    }
+  }
+
   private static void validateSdkBundlesMatchAppBundleDependencies(
       AppBundle appBundle, ImmutableMap<String, SdkBundle> sdkBundles) {
     appBundle
@@ -1246,6 +1541,21 @@ public abstract class BuildApksCommand {
             });
   }
 
+  /** Returns the number of threads, out of {@code maxThreads}, for CPU-bound work. */
+  static int getCpuThreadCount(int maxThreads) {
+    return maxThreads - getIoThreadCount(maxThreads);
+  }
+
+  /**
+   * Returns the number of threads, out of {@code maxThreads}, for writing APKs.
+   *
+   * <p>This is half of them, rounded down, so that with a single thread the APKs are written by
+   * the pool of the CPU-bound work.
+   */
+  static int getIoThreadCount(int maxThreads) {
+    return maxThreads / 2;
+  }
+
   /**
    * Creates an internal executor service that uses at most the given number of threads.
    *
@@ -1253,7 +1563,7 @@ public abstract class BuildApksCommand {
    */
   private static ListeningExecutorService createInternalExecutorService(int maxThreads) {
     checkArgument(maxThreads >= 0, "The maxThreads must be positive, got %s.", maxThreads);
-    return MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(maxThreads));
+    return ThreadPools.newCpuExecutor(maxThreads);
   }
 
   public static CommandHelp help() {
@@ -1331,8 +1641,8 @@ public abstract class BuildApksCommand {
                 .setExampleValue("num-threads")
                 .setOptional(true)
                 .setDescription(
-                    "Sets the maximum number of threads to use (default: %d).",
-                    DEFAULT_THREAD_POOL_SIZE)
+                    "Sets the maximum number of threads to use (default: the number of available"
+                        + " processors, taking into account the CPU quota of the container).")
                 .build())
         .addFlag(
             FlagDescription.builder()
@@ -1462,6 +1772,21 @@ public abstract class BuildApksCommand {
                         + "key-pass=file:/path/to/myPassword.txt",
                     LINEAGE_FLAG)
                 .build())
+        .addFlag(
+            FlagDescription.builder()
+                .setFlagName(ADDITIONAL_SIGNING_FLAG.getName())
+                .setExampleValue("path/to/other.apks:path/to/keystore.properties")
+                .setOptional(true)
+                .setDescription(
+                    "Generates an additional APK Set at the given path, containing the same APKs "
+                        + "as the main output but signed with the key described by the given "
+                        + "properties file (same format as for the flag '%s'). The APKs are "
+                        + "generated only once and then signed for each APK Set. Can be repeated "
+                        + "to generate several APK Sets. Only supported with the '%s' output "
+                        + "format.",
+                    OLDEST_SIGNER_FLAG,
+                    APK_SET)
+                .build())
         .addFlag(
             FlagDescription.builder()
                 .setFlagName(CONNECTED_DEVICE_FLAG.getName())
@@ -1588,6 +1913,26 @@ public abstract class BuildApksCommand {
                     "Path to the 7zip binary to use. Mandatory if Android App Bundle requires 7zip"
                         + " compression.")
                 .build())
+        .addFlag(
+            FlagDescription.builder()
+                .setFlagName(REUSE_BUNDLE_COMPRESSION_FLAG.getName())
+                .setOptional(true)
+                .setDescription(
+                    "If set, entries that are already compressed inside the Android App Bundle"
+                        + " are copied into the generated APKs without being recompressed. This"
+                        + " speeds up the command but may result in slightly larger APKs. Ignored"
+                        + " when 7zip compression is used.")
+                .build())
+        .addFlag(
+            FlagDescription.builder()
+                .setFlagName(STREAM_VARIANTS_FLAG.getName())
+                .setOptional(true)
+                .setDescription(
+                    "If set, the split APKs of each variant are generated right before being"
+                        + " written and released right after, which bounds the memory used for"
+                        + " App Bundles with many variants. The generated APK Set is the same."
+                        + " Ignored when generating APKs for a device spec.")
+                .build())
         .addFlag(
             FlagDescription.builder()
                 .setFlagName(CREATE_STAMP_FLAG.getName())
@@ -1792,6 +2137,15 @@ public abstract class BuildApksCommand {
     }
   }
 
+  private static SigningConfiguration readSigningConfiguration(Path keystorePropertiesPath) {
+    KeystoreProperties keystoreProperties = KeystoreProperties.readFromFile(keystorePropertiesPath);
+    return SigningConfiguration.extractFromKeystore(
+        keystoreProperties.getKeystorePath(),
+        keystoreProperties.getKeyAlias(),
+        keystoreProperties.getKeystorePassword(),
+        keystoreProperties.getKeyPassword());
+  }
+
   /** Extracts the Signing Certificate Lineage from the provided lineage or APK file. */
   private static SigningCertificateLineage getLineageFromInputFile(File inputLineageFile) {
     try (RandomAccessFile f = new RandomAccessFile(inputLineageFile, "r")) {
@@ -23,6 +23,7 @@ import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.collect.ImmutableList.toImmutableList;
 import static com.google.common.collect.ImmutableSet.toImmutableSet;
 
+import com.android.bundle.Commands.BuildApksResult;
 import com.android.bundle.Commands.LocalTestingInfo;
 import com.android.bundle.Config.BundleConfig;
 import com.android.bundle.Config.ResourceOptimizations.SparseEncoding;
@@ -34,7 +35,9 @@ import com.android.tools.build.bundletool.commands.BuildApksCommand.ApkBuildMode
 import com.android.tools.build.bundletool.commands.BuildApksCommand.SystemApkOption;
 import com.android.tools.build.bundletool.device.ApkMatcher;
 import com.android.tools.build.bundletool.device.ModuleMatcher;
+import com.android.tools.build.bundletool.io.AdditionalApkSigning;
 import com.android.tools.build.bundletool.io.ApkSerializerManager;
+import com.android.tools.build.bundletool.io.ApkSerializerManager.VariantSplitsGenerator;
 import com.android.tools.build.bundletool.io.ApkSetWriter;
 import com.android.tools.build.bundletool.io.TempDirectory;
 import com.android.tools.build.bundletool.mergers.BundleModuleMerger;
@@ -44,9 +47,12 @@ import com.android.tools.build.bundletool.model.BundleModuleName;
 import com.android.tools.build.bundletool.model.GeneratedApks;
 import com.android.tools.build.bundletool.model.GeneratedAssetSlices;
 import com.android.tools.build.bundletool.model.ModuleDeliveryType;
+import com.android.tools.build.bundletool.model.ModuleEntryComparisons;
 import com.android.tools.build.bundletool.model.ModuleSplit;
+import com.android.tools.build.bundletool.model.ModuleSplit.SplitType;
 import com.android.tools.build.bundletool.model.OptimizationDimension;
 import com.android.tools.build.bundletool.model.ResourceId;
+import com.android.tools.build.bundletool.model.VariantKey;
 import com.android.tools.build.bundletool.model.exceptions.IncompatibleDeviceException;
 import com.android.tools.build.bundletool.model.exceptions.InvalidCommandException;
 import com.android.tools.build.bundletool.model.targeting.AlternativeVariantTargetingPopulator;
@@ -54,6 +60,7 @@ import com.android.tools.build.bundletool.model.utils.LocaleConfigXmlInjector;
 import com.android.tools.build.bundletool.model.utils.ModuleDependenciesUtils;
 import com.android.tools.build.bundletool.model.utils.SplitsXmlInjector;
 import com.android.tools.build.bundletool.model.utils.Versions;
+import com.android.tools.build.bundletool.model.utils.ZlibPool;
 import com.android.tools.build.bundletool.model.version.Version;
 import com.android.tools.build.bundletool.model.version.VersionGuardedFeature;
 import com.android.tools.build.bundletool.optimizations.ApkOptimizations;
@@ -63,6 +70,7 @@ import com.android.tools.build.bundletool.splitters.ApkGenerationConfiguration;
 import com.android.tools.build.bundletool.splitters.AssetSlicesGenerator;
 import com.android.tools.build.bundletool.splitters.ResourceAnalyzer;
 import com.android.tools.build.bundletool.splitters.SplitApksGenerator;
+import com.android.tools.build.bundletool.splitters.SplittingPipelineCache;
 import com.android.tools.build.bundletool.validation.AppBundleValidator;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
@@ -70,6 +78,7 @@ import com.google.common.collect.Sets;
 import com.google.common.io.MoreFiles;
 import com.google.common.io.RecursiveDeleteOption;
 import java.io.IOException;
+import java.io.PrintStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Collection;
@@ -91,6 +100,8 @@ public final class BuildApksManager {
   private final ShardedApksFacade shardedApksFacade;
   private final ApkOptimizations apkOptimizations;
   private final ArchivedApksGenerator archivedApksGenerator;
+  private final ImmutableList<AdditionalApkSigning> additionalApkSignings;
+  private final ModuleEntryComparisons moduleEntryComparisons;
 
   @Inject
   BuildApksManager(
@@ -103,7 +114,9 @@ public final class BuildApksManager {
       SplitApksGenerator splitApksGenerator,
       ShardedApksFacade shardedApksFacade,
       ApkOptimizations apkOptimizations,
-      ArchivedApksGenerator archivedApksGenerator) {
+      ArchivedApksGenerator archivedApksGenerator,
+      ImmutableList<AdditionalApkSigning> additionalApkSignings,
+      ModuleEntryComparisons moduleEntryComparisons) {
     this.appBundle = appBundle;
     this.command = command;
     this.bundletoolVersion = bundletoolVersion;
@@ -114,6 +127,8 @@ public final class BuildApksManager {
     this.shardedApksFacade = shardedApksFacade;
     this.apkOptimizations = apkOptimizations;
     this.archivedApksGenerator = archivedApksGenerator;
+    this.additionalApkSignings = additionalApkSignings;
+    this.moduleEntryComparisons = moduleEntryComparisons;
   }
 
   public void execute() throws IOException {
@@ -134,13 +149,43 @@ public final class BuildApksManager {
             appBundle, command.getApkBuildMode(), enableUniversalAsFallbackForSplits, deviceSpec);
 
     // Split APKs
+    Optional<VariantSplitsGenerator> variantSplitsGenerator = Optional.empty();
     if (apksToGenerate.generateSplitApks()) {
       AppBundle mergedAppBundle =
           BundleModuleMerger.mergeNonRemovableInstallTimeModules(
-              appBundle, enableInstallTimeNonRemovableModules);
-      AppBundleValidator bundleValidator = AppBundleValidator.create(command.getExtraValidators());
+              appBundle, enableInstallTimeNonRemovableModules, moduleEntryComparisons);
+      AppBundleValidator bundleValidator =
+          AppBundleValidator.create(
+              command.getExtraValidators(), command.getExecutorService(), moduleEntryComparisons);
       bundleValidator.validate(mergedAppBundle);
-      generatedApksBuilder.setSplitApks(generateSplitApks(mergedAppBundle));
+      ImmutableList<BundleModule> featureModules =
+          mergedAppBundle.getFeatureModules().values().asList();
+      ApkGenerationConfiguration splitApkGenerationConfiguration =
+          getSplitApkGenerationConfiguration(mergedAppBundle);
+      // With a device spec, only the splits of the variants matching the device are generated.
+      // They are generated upfront, so that their compatibility with the device is checked before
+      // any I/O.
+      if (command.getStreamVariants() && !deviceSpec.isPresent()) {
+        // Only placeholders of the variants are generated here, the splits of each variant are
+        // generated right before the variant is serialized.
+        generatedApksBuilder.setSplitApks(
+            splitApksGenerator.generateVariantPlaceholders(
+                featureModules, splitApkGenerationConfiguration));
+        variantSplitsGenerator =
+            Optional.of(
+                (variantKey, moduleSplits) ->
+                    variantKey.getSplitType().equals(SplitType.SPLIT)
+                        ? processVariant(
+                            variantKey,
+                            splitApksGenerator.generateSplitsOfVariant(
+                                featureModules,
+                                splitApkGenerationConfiguration,
+                                variantKey.getVariantTargeting()))
+                        : moduleSplits);
+      } else {
+        generatedApksBuilder.setSplitApks(
+            splitApksGenerator.generateSplits(featureModules, splitApkGenerationConfiguration));
+      }
       permanentlyFusedModules =
           Sets.difference(appBundle.getModules().keySet(), mergedAppBundle.getModules().keySet())
               .immutableCopy();
@@ -196,19 +241,7 @@ public final class BuildApksManager {
     generatedApks =
         GeneratedApks.fromModuleSplits(
             generatedApks.getAllApksGroupedByOrderedVariants().asMap().entrySet().stream()
-                .map(
-                    keySplit -> {
-                      SplitsXmlInjector splitsXmlInjector = new SplitsXmlInjector();
-                      ImmutableList<ModuleSplit> moduleSplits =
-                          splitsXmlInjector.process(keySplit.getKey(), keySplit.getValue());
-                      if (appBundle.injectLocaleConfig()) {
-                        LocaleConfigXmlInjector localeConfigXmlInjector =
-                            new LocaleConfigXmlInjector();
-                        moduleSplits =
-                            localeConfigXmlInjector.process(keySplit.getKey(), moduleSplits);
-                      }
-                      return moduleSplits;
-                    })
+                .map(keySplit -> processVariant(keySplit.getKey(), keySplit.getValue()))
                 .flatMap(Collection::stream)
                 .collect(toImmutableList()));
 
@@ -216,7 +249,7 @@ public final class BuildApksManager {
       // It is easier to fully check device compatibility once the splits have been generated (in
       // memory). Note that no costly I/O happened up until this point, so it's not too late for
       // this check.
-      checkDeviceCompatibilityWithBundle(generatedApks, deviceSpec.get());
+      checkDeviceCompatibilityWithBundle(generatedApks.getAllApksStream(), deviceSpec.get());
     }
 
     if (command.getOverwriteOutput() && Files.exists(command.getOutputFile())) {
@@ -224,13 +257,54 @@ public final class BuildApksManager {
     }
 
     // Create variants and serialize APKs.
-    apkSerializerManager.serializeApkSet(
-        createApkSetWriter(tempDir.getPath()),
-        generatedApks,
-        generatedAssetSlices.build(),
-        deviceSpec,
-        getLocalTestingInfo(appBundle),
-        permanentlyFusedModules);
+    BuildApksResult toc =
+        apkSerializerManager.serializeApkSet(
+            createApkSetWriter(tempDir.getPath()),
+            generatedApks,
+            variantSplitsGenerator,
+            generatedAssetSlices.build(),
+            deviceSpec,
+            getLocalTestingInfo(appBundle),
+            permanentlyFusedModules);
+
+    // The APKs signed with each additional signing configuration were written to their own
+    // directories during serialization, only the APK Sets referencing them remain to be written.
+    for (AdditionalApkSigning additionalApkSigning : additionalApkSignings) {
+      Path outputFile = additionalApkSigning.getOutputFile();
+      if (command.getOverwriteOutput() && Files.exists(outputFile)) {
+        MoreFiles.deleteRecursively(outputFile, RecursiveDeleteOption.ALLOW_INSECURE);
+      }
+      additionalApkSigning.writeApkSet(toc);
+    }
+
+    if (command.getVerbose()) {
+      PrintStream outputPrintStream = command.getOutputPrintStream().orElse(System.out);
+      SplittingPipelineCache.Stats splittingPipelineStats =
+          splitApksGenerator.getSplittingPipelineStats();
+      outputPrintStream.printf(
+          "INFO: Reused %d of %d outputs of module splitting pipelines across variants.%n",
+          splittingPipelineStats.getReusedCount(),
+          splittingPipelineStats.getReusedCount() + splittingPipelineStats.getComputedCount());
+      // The pools are shared by all the commands executed by the process.
+      ZlibPool.Stats zlibPoolStats = ZlibPool.getStats();
+      outputPrintStream.printf(
+          "INFO: Deflaters and inflaters of the process: %d reused, %d created, about %d KiB of"
+              + " native memory held.%n",
+          zlibPoolStats.getHitCount(),
+          zlibPoolStats.getMissCount(),
+          zlibPoolStats.getNativeBytesEstimate() / 1024);
+    }
+  }
+
+  private ImmutableList<ModuleSplit> processVariant(
+      VariantKey variantKey, Collection<ModuleSplit> variantSplits) {
+    SplitsXmlInjector splitsXmlInjector = new SplitsXmlInjector();
+    ImmutableList<ModuleSplit> moduleSplits = splitsXmlInjector.process(variantKey, variantSplits);
+    if (appBundle.injectLocaleConfig()) {
+      LocaleConfigXmlInjector localeConfigXmlInjector = new LocaleConfigXmlInjector();
+      moduleSplits = localeConfigXmlInjector.process(variantKey, moduleSplits);
+    }
+    return moduleSplits;
   }
 
   private ImmutableList<ModuleSplit> generateStandaloneApks(AppBundle appBundle) {
@@ -265,7 +339,8 @@ public final class BuildApksManager {
     return splitApksGenerator.generateSplits(instantModules, instantApkGenerationConfiguration);
   }
 
-  private ImmutableList<ModuleSplit> generateSplitApks(AppBundle appBundle) throws IOException {
+  private ApkGenerationConfiguration getSplitApkGenerationConfiguration(AppBundle appBundle)
+      throws IOException {
     ApkGenerationConfiguration.Builder apkGenerationConfiguration =
         getCommonSplitApkGenerationConfiguration(appBundle);
     if (RESOURCES_REFERENCED_IN_MANIFEST_TO_MASTER_SPLIT.enabledForVersion(bundletoolVersion)) {
@@ -276,9 +351,7 @@ public final class BuildApksManager {
       apkGenerationConfiguration.setBaseManifestReachableResources(
           new ResourceAnalyzer(appBundle).findAllAppResourcesReachableFromBaseManifest());
     }
-
-    ImmutableList<BundleModule> featureModules = appBundle.getFeatureModules().values().asList();
-    return splitApksGenerator.generateSplits(featureModules, apkGenerationConfiguration.build());
+    return apkGenerationConfiguration.build();
   }
 
   private ImmutableList<ModuleSplit> generateSystemApks(
@@ -300,9 +373,9 @@ public final class BuildApksManager {
   }
 
   private static void checkDeviceCompatibilityWithBundle(
-      GeneratedApks generatedApks, DeviceSpec deviceSpec) {
+      Stream<ModuleSplit> apks, DeviceSpec deviceSpec) {
     ApkMatcher apkMatcher = new ApkMatcher(deviceSpec);
-    generatedApks.getAllApksStream().forEach(apkMatcher::checkCompatibleWithApkTargeting);
+    apks.forEach(apkMatcher::checkCompatibleWithApkTargeting);
   }
 
   private ApkSetWriter createApkSetWriter(Path tempDir) {
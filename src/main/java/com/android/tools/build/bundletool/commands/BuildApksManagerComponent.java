@@ -17,6 +17,7 @@ package com.android.tools.build.bundletool.commands;
 
 import com.android.tools.build.bundletool.io.TempDirectory;
 import com.android.tools.build.bundletool.model.AppBundle;
+import com.android.tools.build.bundletool.model.ModuleEntryComparisons;
 import dagger.BindsInstance;
 import dagger.Component;
 
@@ -39,5 +40,8 @@ public interface BuildApksManagerComponent {
 
     @BindsInstance
     Builder setAppBundle(AppBundle appBundle);
+
+    @BindsInstance
+    Builder setModuleEntryComparisons(ModuleEntryComparisons moduleEntryComparisons);
   }
 }
@@ -26,15 +26,19 @@ import com.android.tools.build.bundletool.androidtools.P7ZipCommand;
 import com.android.tools.build.bundletool.commands.BuildApksCommand.ApkBuildMode;
 import com.android.tools.build.bundletool.device.AdbServer;
 import com.android.tools.build.bundletool.device.DeviceAnalyzer;
+import com.android.tools.build.bundletool.io.AdditionalApkSigning;
 import com.android.tools.build.bundletool.io.ApkSerializerModule;
+import com.android.tools.build.bundletool.io.TempDirectory;
 import com.android.tools.build.bundletool.model.ApkListener;
 import com.android.tools.build.bundletool.model.ApkModifier;
 import com.android.tools.build.bundletool.model.DefaultSigningConfigurationProvider;
+import com.android.tools.build.bundletool.model.SigningConfiguration;
 import com.android.tools.build.bundletool.model.SigningConfigurationProvider;
 import com.android.tools.build.bundletool.model.SourceStamp;
 import com.android.tools.build.bundletool.model.version.Version;
 import com.android.tools.build.bundletool.optimizations.ApkOptimizations;
 import com.android.tools.build.bundletool.optimizations.OptimizationsMerger;
+import com.google.common.collect.ImmutableList;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.protobuf.Int32Value;
 import com.google.protobuf.StringValue;
@@ -42,6 +46,8 @@ import dagger.Module;
 import dagger.Provides;
 import java.io.PrintStream;
 import java.lang.annotation.Retention;
+import java.nio.file.Path;
+import java.util.Map;
 import java.util.Optional;
 import javax.inject.Qualifier;
 
@@ -80,6 +86,13 @@ public final class BuildApksModule {
     return command.getExecutorService();
   }
 
+  @CommandScoped
+  @Provides
+  @IoExecutorService
+  static ListeningExecutorService provideIoExecutorService(BuildApksCommand command) {
+    return command.getIoExecutorService();
+  }
+
   @CommandScoped
   @Provides
   static Optional<P7ZipCommand> provideP7ZipCommand(BuildApksCommand command) {
@@ -172,6 +185,31 @@ public final class BuildApksModule {
     return command.getVerbose();
   }
 
+  @CommandScoped
+  @Provides
+  @ReuseBundleCompression
+  static boolean provideReuseBundleCompression(BuildApksCommand command) {
+    return command.getReuseBundleCompression();
+  }
+
+  @CommandScoped
+  @Provides
+  static ImmutableList<AdditionalApkSigning> provideAdditionalApkSignings(
+      BuildApksCommand command, Version version, TempDirectory tempDirectory) {
+    ImmutableList.Builder<AdditionalApkSigning> additionalApkSignings = ImmutableList.builder();
+    int index = 0;
+    for (Map.Entry<Path, SigningConfiguration> outputFileAndSigningConfig :
+        command.getAdditionalSigningConfigurations().entrySet()) {
+      additionalApkSignings.add(
+          new AdditionalApkSigning(
+              new DefaultSigningConfigurationProvider(
+                  outputFileAndSigningConfig.getValue(), version),
+              tempDirectory.getPath().resolve("additional-signing-" + index++),
+              outputFileAndSigningConfig.getKey()));
+    }
+    return additionalApkSignings.build();
+  }
+
   @CommandScoped
   @Provides
   static Optional<LocalDeploymentRuntimeEnabledSdkConfig> provideLocalRuntimeEnabledSdkConfig(
@@ -210,11 +248,28 @@ public final class BuildApksModule {
   @Retention(RUNTIME)
   public @interface FirstVariantNumber {}
 
+  /**
+   * Qualifying annotation of the {@code ListeningExecutorService} for tasks which mostly wait on
+   * disk I/O, such as writing and signing APKs, as opposed to the unqualified one for CPU-bound
+   * tasks.
+   */
+  @Qualifier
+  @Retention(RUNTIME)
+  public @interface IoExecutorService {}
+
   /** Qualifying annotation of a {@code boolean} on whether to be verbose with logs. */
   @Qualifier
   @Retention(RUNTIME)
   public @interface VerboseLogs {}
 
+  /**
+   * Qualifying annotation of a {@code boolean} on whether entries already compressed inside the
+   * bundle should be copied into the APKs without being recompressed.
+   */
+  @Qualifier
+  @Retention(RUNTIME)
+  public @interface ReuseBundleCompression {}
+
   /** Qualifying annotation of a {@code SigningConfiguration} for the APK signing configuration. */
   @Qualifier
   @Retention(RUNTIME)
@@ -462,7 +462,9 @@ public abstract class BuildSdkApksForAppCommand {
 
   private void generateAppApks(BundleModule sdkModule, TempDirectory tempDirectory) {
     BundleModule convertedAppModule =
-        new SdkModuleToAppBundleModuleConverter(sdkModule, getInheritedAppProperties()).convert();
+        new SdkModuleToAppBundleModuleConverter(
+                sdkModule, getInheritedAppProperties(), getExecutorService())
+            .convert();
     DaggerBuildSdkApksForAppManagerComponent.builder()
         .setBuildSdkApksForAppCommand(this)
         .setModule(convertedAppModule)
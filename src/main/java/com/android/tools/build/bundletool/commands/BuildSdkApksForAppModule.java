@@ -21,6 +21,7 @@ import com.android.bundle.Devices.DeviceSpec;
 import com.android.tools.build.bundletool.androidtools.Aapt2Command;
 import com.android.tools.build.bundletool.androidtools.P7ZipCommand;
 import com.android.tools.build.bundletool.commands.BuildApksCommand.ApkBuildMode;
+import com.android.tools.build.bundletool.io.AdditionalApkSigning;
 import com.android.tools.build.bundletool.io.ApkSerializerModule;
 import com.android.tools.build.bundletool.io.TempDirectory;
 import com.android.tools.build.bundletool.model.ApkListener;
@@ -39,6 +40,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import dagger.Module;
 import dagger.Provides;
+import java.io.PrintStream;
 import java.util.Optional;
 
 /** Dagger module for build-sdk-apks-for-app command. */
@@ -95,6 +97,12 @@ public abstract class BuildSdkApksForAppModule {
     return command.getExecutorService();
   }
 
+  @Provides
+  @BuildApksModule.IoExecutorService
+  static ListeningExecutorService provideIoExecutorService(BuildSdkApksForAppCommand command) {
+    return command.getExecutorService();
+  }
+
   @Provides
   static Optional<ApkListener> provideApkListener(BuildSdkApksForAppCommand command) {
     return command.getApkListener();
@@ -111,6 +119,17 @@ public abstract class BuildSdkApksForAppModule {
     return false;
   }
 
+  @Provides
+  @BuildApksModule.ReuseBundleCompression
+  static boolean provideReuseBundleCompression() {
+    return false;
+  }
+
+  @Provides
+  static ImmutableList<AdditionalApkSigning> provideAdditionalApkSignings() {
+    return ImmutableList.of();
+  }
+
   @Provides
   static Optional<SourceStamp> provideSourceStamp() {
     return Optional.empty();
@@ -121,6 +140,11 @@ public abstract class BuildSdkApksForAppModule {
     return Optional.empty();
   }
 
+  @Provides
+  static Optional<PrintStream> provideOutputPrintStream() {
+    return Optional.empty();
+  }
+
   @BuildApksModule.FirstVariantNumber
   @Provides
   static Optional<Integer> provideFirstVariantNumber() {
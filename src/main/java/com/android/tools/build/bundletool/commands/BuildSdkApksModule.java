@@ -22,6 +22,7 @@ import com.android.bundle.SdkModulesConfigOuterClass.SdkModulesConfig;
 import com.android.tools.build.bundletool.androidtools.Aapt2Command;
 import com.android.tools.build.bundletool.androidtools.P7ZipCommand;
 import com.android.tools.build.bundletool.commands.BuildApksCommand.ApkBuildMode;
+import com.android.tools.build.bundletool.io.AdditionalApkSigning;
 import com.android.tools.build.bundletool.io.ApkSerializerModule;
 import com.android.tools.build.bundletool.io.TempDirectory;
 import com.android.tools.build.bundletool.model.ApkListener;
@@ -33,11 +34,13 @@ import com.android.tools.build.bundletool.model.SigningConfigurationProvider;
 import com.android.tools.build.bundletool.model.SourceStamp;
 import com.android.tools.build.bundletool.model.version.Version;
 import com.android.tools.build.bundletool.optimizations.ApkOptimizations;
+import com.google.common.collect.ImmutableList;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import dagger.Binds;
 import dagger.BindsOptionalOf;
 import dagger.Module;
 import dagger.Provides;
+import java.io.PrintStream;
 import java.util.Optional;
 
 /** Dagger module for the build-sdk-apks command. */
@@ -93,6 +96,12 @@ public abstract class BuildSdkApksModule {
     return command.getExecutorService();
   }
 
+  @Provides
+  @BuildApksModule.IoExecutorService
+  static ListeningExecutorService provideIoExecutorService(BuildSdkApksCommand command) {
+    return command.getExecutorService();
+  }
+
   @Provides
   static Optional<ApkListener> provideApkListener(BuildSdkApksCommand command) {
     return command.getApkListener();
@@ -106,6 +115,9 @@ public abstract class BuildSdkApksModule {
   @BindsOptionalOf
   abstract P7ZipCommand bindOptionalP7ZipCommand();
 
+  @BindsOptionalOf
+  abstract PrintStream bindOptionalOutputPrintStream();
+
   @Provides
   static ApkOptimizations provideApkOptimizations() {
     return ApkOptimizations.getOptimizationsForUniversalApk();
@@ -127,4 +139,15 @@ public abstract class BuildSdkApksModule {
   static boolean provideVerbose(BuildSdkApksCommand command) {
     return command.getVerbose();
   }
+
+  @Provides
+  @BuildApksModule.ReuseBundleCompression
+  static boolean provideReuseBundleCompression() {
+    return false;
+  }
+
+  @Provides
+  static ImmutableList<AdditionalApkSigning> provideAdditionalApkSignings() {
+    return ImmutableList.of();
+  }
 }
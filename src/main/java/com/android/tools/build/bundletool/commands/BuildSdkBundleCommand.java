@@ -21,7 +21,6 @@ import static com.android.tools.build.bundletool.model.targeting.TargetingUtils.
 import static com.android.tools.build.bundletool.model.utils.files.FilePreconditions.checkFileDoesNotExist;
 import static com.android.tools.build.bundletool.model.utils.files.FilePreconditions.checkFileExistsAndReadable;
 import static com.android.tools.build.bundletool.model.utils.files.FilePreconditions.checkFileHasExtension;
-import static com.google.common.collect.ImmutableList.toImmutableList;
 import static com.google.common.io.Files.asByteSource;
 
 import com.android.bundle.Config.Bundletool;
@@ -44,6 +43,7 @@ import com.android.tools.build.bundletool.model.ZipPath;
 import com.android.tools.build.bundletool.model.exceptions.CommandExecutionException;
 import com.android.tools.build.bundletool.model.exceptions.InvalidCommandException;
 import com.android.tools.build.bundletool.model.utils.BundleModuleParser;
+import com.android.tools.build.bundletool.model.utils.MappedZipFile;
 import com.android.tools.build.bundletool.model.utils.files.BufferedIo;
 import com.android.tools.build.bundletool.model.utils.files.FileUtils;
 import com.android.tools.build.bundletool.model.version.BundleToolVersion;
@@ -222,13 +222,16 @@ public abstract class BuildSdkBundleCommand {
       SdkBundleConfig sdkBundleConfig =
           getSdkBundleConfig().orElse(SdkBundleConfig.getDefaultInstance());
 
-      ImmutableList<BundleModule> modules =
-          moduleZipFiles.stream()
-              .map(
-                  moduleZipPath ->
-                      BundleModuleParser.parseSdkBundleModule(moduleZipPath, sdkModulesConfig))
-              .map(BuildSdkBundleCommand::sanitizeManifest)
-              .collect(toImmutableList());
+      // The validators above take ZipFile, but the module contents are read from memory-mapped
+      // files, which are kept open until the bundle is written.
+      ImmutableList.Builder<BundleModule> modulesBuilder = ImmutableList.builder();
+      for (Path modulePath : getModulesPaths()) {
+        MappedZipFile moduleZipFile = closer.register(MappedZipFile.open(modulePath));
+        modulesBuilder.add(
+            sanitizeManifest(
+                BundleModuleParser.parseSdkBundleModule(moduleZipFile, sdkModulesConfig)));
+      }
+      ImmutableList<BundleModule> modules = modulesBuilder.build();
 
       new SdkBundleModulesValidator().validateSdkBundleModules(modules);
 
@@ -32,7 +32,10 @@ public abstract class BundletoolModule {
   static Aapt2Command provideAapt2Command(BuildApksCommand command, TempDirectory tempDir) {
     return command
         .getAapt2Command()
-        .orElseGet(() -> CommandUtils.extractAapt2FromJar(tempDir.getPath()));
+        .orElseGet(
+            () ->
+                CommandUtils.extractAapt2FromJar(
+                    tempDir.getPath(), command.getOutputPrintStream().orElse(System.out)));
   }
 
   @Binds
@@ -27,6 +27,7 @@ import com.android.tools.build.bundletool.commands.CommandHelp.FlagDescription;
 import com.android.tools.build.bundletool.device.AdbServer;
 import com.android.tools.build.bundletool.flags.Flag;
 import com.android.tools.build.bundletool.flags.ParsedFlags;
+import com.android.tools.build.bundletool.io.ThreadPools;
 import com.android.tools.build.bundletool.model.utils.DefaultSystemEnvironmentProvider;
 import com.android.tools.build.bundletool.model.utils.SystemEnvironmentProvider;
 import com.android.tools.build.bundletool.model.utils.files.FilePreconditions;
@@ -38,6 +39,7 @@ import com.android.tools.build.bundletool.transparency.TransparencyCheckResult;
 import com.google.auto.value.AutoValue;
 import com.google.common.base.Ascii;
 import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ListeningExecutorService;
 import java.io.PrintStream;
 import java.nio.file.Path;
 import java.security.cert.X509Certificate;
@@ -217,16 +219,23 @@ public abstract class CheckTransparencyCommand {
 
   public void checkTransparency(PrintStream outputStream) {
     TransparencyCheckResult result = TransparencyCheckResult.empty();
-    switch (getMode()) {
-      case CONNECTED_DEVICE:
-        result = ConnectedDeviceModeTransparencyChecker.checkTransparency(this);
-        break;
-      case BUNDLE:
-        result = BundleModeTransparencyChecker.checkTransparency(this);
-        break;
-      case APK:
-        result = ApkModeTransparencyChecker.checkTransparency(this);
-        break;
+    // Shared by all the hashing done while checking the APKs or the bundle.
+    ListeningExecutorService executorService =
+        ThreadPools.newCpuExecutor(ThreadPools.availableProcessors());
+    try {
+      switch (getMode()) {
+        case CONNECTED_DEVICE:
+          result = ConnectedDeviceModeTransparencyChecker.checkTransparency(this, executorService);
+          break;
+        case BUNDLE:
+          result = BundleModeTransparencyChecker.checkTransparency(this, executorService);
+          break;
+        case APK:
+          result = ApkModeTransparencyChecker.checkTransparency(this, executorService);
+          break;
+      }
+    } finally {
+      executorService.shutdownNow();
     }
     printResult(outputStream, result);
   }
@@ -22,6 +22,7 @@ import com.android.tools.build.bundletool.flags.ParsedFlags;
 import com.android.tools.build.bundletool.model.exceptions.CommandExecutionException;
 import com.android.tools.build.bundletool.model.utils.SdkToolsLocator;
 import com.android.tools.build.bundletool.model.utils.SystemEnvironmentProvider;
+import java.io.PrintStream;
 import java.nio.file.Path;
 import java.util.Optional;
 
@@ -60,9 +61,13 @@ final class CommandUtils {
   }
 
   static Aapt2Command extractAapt2FromJar(Path tempDir) {
+    return extractAapt2FromJar(tempDir, System.out);
+  }
+
+  static Aapt2Command extractAapt2FromJar(Path tempDir, PrintStream outputPrintStream) {
     return new SdkToolsLocator()
         .extractAapt2(tempDir)
-        .map(Aapt2Command::createFromExecutablePath)
+        .map(aapt2Path -> Aapt2Command.createFromExecutablePath(aapt2Path, outputPrintStream))
         .orElseThrow(
             () ->
                 CommandExecutionException.builder()
@@ -230,9 +230,13 @@ public abstract class GetSizeCommand implements GetSizeRequest {
   }
 
   public void execute() {
+    execute(System.out);
+  }
+
+  void execute(PrintStream output) {
     switch (getGetSizeSubCommand()) {
       case TOTAL:
-        getSizeTotal(System.out);
+        getSizeTotal(output);
         break;
     }
   }
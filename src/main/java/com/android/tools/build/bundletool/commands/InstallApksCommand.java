@@ -38,6 +38,7 @@ import com.android.tools.build.bundletool.device.AdbServer;
 import com.android.tools.build.bundletool.device.Device;
 import com.android.tools.build.bundletool.device.Device.InstallOptions;
 import com.android.tools.build.bundletool.device.DeviceAnalyzer;
+import com.android.tools.build.bundletool.device.DeviceSpecCache;
 import com.android.tools.build.bundletool.device.LocalTestingPathResolver;
 import com.android.tools.build.bundletool.flags.Flag;
 import com.android.tools.build.bundletool.flags.ParsedFlags;
@@ -79,6 +80,13 @@ public abstract class InstallApksCommand {
   private static final Flag<ImmutableList<Path>> ADDITIONAL_LOCAL_TESTING_FILES_FLAG =
       Flag.pathList("additional-local-testing-files");
   private static final Flag<Integer> TIMEOUT_MILLIS_FLAG = Flag.positiveInteger("timeout-millis");
+  private static final Flag<Boolean> BATCH_DEVICE_QUERIES_FLAG =
+      Flag.booleanFlag("batch-device-queries");
+  private static final Flag<Path> DEVICE_SPEC_CACHE_DIR_FLAG = Flag.path("device-spec-cache-dir");
+  private static final Flag<Integer> DEVICE_SPEC_CACHE_TTL_MINUTES_FLAG =
+      Flag.positiveInteger("device-spec-cache-ttl-minutes");
+
+  private static final Duration DEFAULT_DEVICE_SPEC_CACHE_TTL = Duration.ofHours(1);
 
   private static final SystemEnvironmentProvider DEFAULT_PROVIDER =
       new DefaultSystemEnvironmentProvider();
@@ -109,12 +117,20 @@ public abstract class InstallApksCommand {
 
   public abstract Duration getTimeout();
 
+  public abstract boolean getBatchDeviceQueries();
+
+  public abstract Optional<Path> getDeviceSpecCacheDirectory();
+
+  public abstract Duration getDeviceSpecCacheTtl();
+
   public static Builder builder() {
     return new AutoValue_InstallApksCommand.Builder()
         .setAllowDowngrade(false)
         .setAllowTestOnly(false)
         .setGrantRuntimePermissions(false)
-        .setTimeout(Device.DEFAULT_ADB_TIMEOUT);
+        .setTimeout(Device.DEFAULT_ADB_TIMEOUT)
+        .setBatchDeviceQueries(false)
+        .setDeviceSpecCacheTtl(DEFAULT_DEVICE_SPEC_CACHE_TTL);
   }
 
   /** Builder for the {@link InstallApksCommand}. */
@@ -147,6 +163,22 @@ public abstract class InstallApksCommand {
 
     public abstract Builder setTimeout(Duration timeout);
 
+    /**
+     * Whether all the device properties should be collected with a single ADB shell invocation.
+     *
+     * <p>Reduces the time needed to detect the device spec on devices with a slow connection.
+     */
+    public abstract Builder setBatchDeviceQueries(boolean batchDeviceQueries);
+
+    /**
+     * Directory where detected device specs are cached, keyed by device serial number and build
+     * fingerprint. If not set, the device spec is detected on every invocation.
+     */
+    public abstract Builder setDeviceSpecCacheDirectory(Path deviceSpecCacheDirectory);
+
+    /** How long a cached device spec stays valid. Defaults to one hour. */
+    public abstract Builder setDeviceSpecCacheTtl(Duration deviceSpecCacheTtl);
+
     public abstract InstallApksCommand build();
   }
 
@@ -172,6 +204,10 @@ public abstract class InstallApksCommand {
     Optional<ImmutableList<Path>> additionalLocalTestingFiles =
         ADDITIONAL_LOCAL_TESTING_FILES_FLAG.getValue(flags);
     Optional<Integer> timeoutMillis = TIMEOUT_MILLIS_FLAG.getValue(flags);
+    Optional<Boolean> batchDeviceQueries = BATCH_DEVICE_QUERIES_FLAG.getValue(flags);
+    Optional<Path> deviceSpecCacheDirectory = DEVICE_SPEC_CACHE_DIR_FLAG.getValue(flags);
+    Optional<Integer> deviceSpecCacheTtlMinutes =
+        DEVICE_SPEC_CACHE_TTL_MINUTES_FLAG.getValue(flags);
 
     flags.checkNoUnknownFlags();
 
@@ -187,6 +223,10 @@ public abstract class InstallApksCommand {
     countrySet.ifPresent(command::setCountrySet);
     additionalLocalTestingFiles.ifPresent(command::setAdditionalLocalTestingFiles);
     timeoutMillis.ifPresent(timeout -> command.setTimeout(Duration.ofMillis(timeout)));
+    batchDeviceQueries.ifPresent(command::setBatchDeviceQueries);
+    deviceSpecCacheDirectory.ifPresent(command::setDeviceSpecCacheDirectory);
+    deviceSpecCacheTtlMinutes.ifPresent(
+        ttl -> command.setDeviceSpecCacheTtl(Duration.ofMinutes(ttl)));
 
     return command.build();
   }
@@ -199,7 +239,13 @@ public abstract class InstallApksCommand {
     adbServer.init(getAdbPath());
 
     try (TempDirectory tempDirectory = new TempDirectory()) {
-      DeviceSpec deviceSpec = new DeviceAnalyzer(adbServer).getDeviceSpec(getDeviceId());
+      DeviceSpec deviceSpec =
+          new DeviceAnalyzer(
+                  adbServer,
+                  getBatchDeviceQueries(),
+                  getDeviceSpecCacheDirectory()
+                      .map(directory -> new DeviceSpecCache(directory, getDeviceSpecCacheTtl())))
+              .getDeviceSpec(getDeviceId());
       if (getDeviceTier().isPresent()) {
         deviceSpec =
             deviceSpec.toBuilder().setDeviceTier(Int32Value.of(getDeviceTier().get())).build();
@@ -517,6 +563,35 @@ public abstract class InstallApksCommand {
                     "Timeout in milliseconds which is passed to adb commands. Default is 10"
                         + " minutes.")
                 .build())
+        .addFlag(
+            FlagDescription.builder()
+                .setFlagName(BATCH_DEVICE_QUERIES_FLAG.getName())
+                .setOptional(true)
+                .setDescription(
+                    "If set, all the device properties needed to match the APKs are collected"
+                        + " with a single adb shell invocation instead of one invocation per"
+                        + " property. Speeds up installs on devices with a slow connection.")
+                .build())
+        .addFlag(
+            FlagDescription.builder()
+                .setFlagName(DEVICE_SPEC_CACHE_DIR_FLAG.getName())
+                .setExampleValue("path/to/cache/dir")
+                .setOptional(true)
+                .setDescription(
+                    "Directory where the detected device spec is cached, keyed by the device"
+                        + " serial number and build fingerprint. Repeated installs on the same"
+                        + " device skip the device detection while the cached spec is valid.")
+                .build())
+        .addFlag(
+            FlagDescription.builder()
+                .setFlagName(DEVICE_SPEC_CACHE_TTL_MINUTES_FLAG.getName())
+                .setExampleValue("60")
+                .setOptional(true)
+                .setDescription(
+                    "Number of minutes a cached device spec stays valid. Only relevant if the '%s'"
+                        + " flag is set. Default is 60 minutes.",
+                    DEVICE_SPEC_CACHE_DIR_FLAG.getName())
+                .build())
         .build();
   }
 }
@@ -0,0 +1,308 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.tools.build.bundletool.commands;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.android.tools.build.bundletool.commands.CommandHelp.CommandDescription;
+import com.android.tools.build.bundletool.commands.CommandHelp.FlagDescription;
+import com.android.tools.build.bundletool.device.AdbServer;
+import com.android.tools.build.bundletool.flags.Flag;
+import com.android.tools.build.bundletool.flags.FlagParser;
+import com.android.tools.build.bundletool.flags.ParsedFlags;
+import com.android.tools.build.bundletool.io.ThreadPools;
+import com.android.tools.build.bundletool.model.exceptions.InvalidCommandException;
+import com.android.tools.build.bundletool.model.utils.ResidentCaches;
+import com.android.tools.build.bundletool.model.utils.SystemEnvironmentProvider;
+import com.google.auto.value.AutoValue;
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.io.UnsupportedEncodingException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Command running bundletool as a long-running process, which executes the commands it receives on
+ * its standard input.
+ *
+ * <p>Parsed App Bundles, tables of contents of APK Sets and keystores are kept in memory across
+ * commands, see {@link ResidentCaches}.
+ */
+@AutoValue
+public abstract class ServeCommand {
+
+  public static final String COMMAND_NAME = "serve";
+
+  /** Commands which can be executed by the server. */
+  static final ImmutableList<String> SUPPORTED_COMMANDS =
+      ImmutableList.of(
+          BuildApksCommand.COMMAND_NAME,
+          ExtractApksCommand.COMMAND_NAME,
+          GetSizeCommand.COMMAND_NAME,
+          VersionCommand.COMMAND_NAME);
+
+  private static final Flag<Integer> MAX_CONCURRENT_COMMANDS_FLAG =
+      Flag.positiveInteger("max-concurrent-commands");
+  private static final Flag<Integer> MAX_CACHED_BUNDLES_FLAG =
+      Flag.positiveInteger("max-cached-bundles");
+
+  private static final int DEFAULT_MAX_CONCURRENT_COMMANDS = 4;
+  private static final int DEFAULT_MAX_CACHED_BUNDLES = 4;
+
+  private static final Splitter FIELD_SPLITTER = Splitter.on('\t');
+  private static final Joiner FIELD_JOINER = Joiner.on('\t');
+
+  public abstract int getMaxConcurrentCommands();
+
+  public abstract int getMaxCachedBundles();
+
+  abstract AdbServer getAdbServer();
+
+  public static Builder builder() {
+    return new AutoValue_ServeCommand.Builder()
+        .setMaxConcurrentCommands(DEFAULT_MAX_CONCURRENT_COMMANDS)
+        .setMaxCachedBundles(DEFAULT_MAX_CACHED_BUNDLES);
+  }
+
+  /** Builder for the {@link ServeCommand}. */
+  @AutoValue.Builder
+  public abstract static class Builder {
+    /** Sets the maximum number of commands executed at the same time. */
+    public abstract Builder setMaxConcurrentCommands(int maxConcurrentCommands);
+
+    /** Sets the maximum number of parsed App Bundles kept in memory. */
+    public abstract Builder setMaxCachedBundles(int maxCachedBundles);
+
+    /** Sets the ADB server used by commands which interact with devices. */
+    public abstract Builder setAdbServer(AdbServer adbServer);
+
+    public abstract ServeCommand build();
+  }
+
+  public static ServeCommand fromFlags(ParsedFlags flags, AdbServer adbServer) {
+    Builder serveCommand = builder().setAdbServer(adbServer);
+    MAX_CONCURRENT_COMMANDS_FLAG.getValue(flags).ifPresent(serveCommand::setMaxConcurrentCommands);
+    MAX_CACHED_BUNDLES_FLAG.getValue(flags).ifPresent(serveCommand::setMaxCachedBundles);
+    flags.checkNoUnknownFlags();
+    return serveCommand.build();
+  }
+
+  /**
+   * Executes the requests read from {@code requests} until the end of the stream, and writes the
+   * responses into {@code responses}.
+   *
+   * <p>Each request is a single line of tab-separated fields: a request ID chosen by the client,
+   * followed by the arguments that would be passed to bundletool on the command line. Requests are
+   * executed concurrently, so responses may be written in a different order.
+   *
+   * <p>Each response starts with a line of tab-separated fields: the request ID, the exit code of
+   * the command (0 on success) and the number of bytes of the command output which follow the line.
+   * On failure, the output contains the error message.
+   *
+   * <p>If the responses are written to the standard output, anything else printed to it while
+   * serving is redirected to the standard error, so that it doesn't corrupt the responses.
+   *
+   * <p>The thread pools running the work of the commands are created once and shared by all the
+   * commands, so that concurrent commands don't use more threads than there are processors.
+   */
+  public void execute(InputStream requests, PrintStream responses) {
+    PrintStream standardOutput = System.out;
+    if (responses == standardOutput) {
+      System.setOut(System.err);
+    }
+    ResidentCaches.enable(getMaxCachedBundles());
+    ExecutorService executorService = Executors.newFixedThreadPool(getMaxConcurrentCommands());
+    CommandExecutorServices commandExecutorServices =
+        CommandExecutorServices.create(ThreadPools.availableProcessors());
+    try (BufferedReader requestReader =
+        new BufferedReader(new InputStreamReader(requests, UTF_8))) {
+      String request;
+      while ((request = requestReader.readLine()) != null) {
+        if (request.trim().isEmpty()) {
+          continue;
+        }
+        List<String> fields = FIELD_SPLITTER.splitToList(request);
+        String requestId = fields.get(0);
+        ImmutableList<String> args = ImmutableList.copyOf(fields.subList(1, fields.size()));
+        executorService.execute(
+            () -> executeRequest(requestId, args, responses, commandExecutorServices));
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Error while reading the requests.", e);
+    } finally {
+      executorService.shutdown();
+      try {
+        executorService.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      commandExecutorServices.getExecutorService().shutdown();
+      commandExecutorServices.getIoExecutorService().shutdown();
+      ResidentCaches.disable();
+      System.setOut(standardOutput);
+    }
+  }
+
+  private void executeRequest(
+      String requestId,
+      ImmutableList<String> args,
+      PrintStream responses,
+      CommandExecutorServices commandExecutorServices) {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    int exitCode = 0;
+    try (PrintStream outputStream = new PrintStream(output, /* autoFlush= */ true, UTF_8.name())) {
+      try {
+        executeCommand(
+            new FlagParser().parse(args.toArray(new String[0])),
+            outputStream,
+            commandExecutorServices);
+      } catch (Throwable e) {
+        // Errors are reported as well, so that the client always gets a response and the worker
+        // thread keeps serving requests.
+        outputStream.println("Error: " + e.getMessage());
+        exitCode = 1;
+      }
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+
+    byte[] outputBytes = output.toByteArray();
+    synchronized (responses) {
+      responses.println(FIELD_JOINER.join(requestId, exitCode, outputBytes.length));
+      responses.write(outputBytes, 0, outputBytes.length);
+      responses.flush();
+    }
+  }
+
+  private void executeCommand(
+      ParsedFlags flags, PrintStream output, CommandExecutorServices commandExecutorServices) {
+    String command =
+        flags
+            .getMainCommand()
+            .orElseThrow(
+                () ->
+                    InvalidCommandException.builder()
+                        .withInternalMessage("You have to specify a command.")
+                        .build());
+    switch (command) {
+      case BuildApksCommand.COMMAND_NAME:
+        BuildApksCommand.Builder buildApksCommand =
+            BuildApksCommand.builderFromFlags(
+                flags, output, SystemEnvironmentProvider.DEFAULT_PROVIDER, getAdbServer());
+        // Requests setting their own maximum number of threads get their own thread pools.
+        if (!buildApksCommand.getExecutorServiceInternal().isPresent()) {
+          buildApksCommand
+              .setExecutorService(commandExecutorServices.getExecutorService())
+              .setIoExecutorService(commandExecutorServices.getIoExecutorService());
+        }
+        buildApksCommand.build().execute();
+        break;
+      case ExtractApksCommand.COMMAND_NAME:
+        ExtractApksCommand.fromFlags(flags).execute(output);
+        break;
+      case GetSizeCommand.COMMAND_NAME:
+        GetSizeCommand.fromFlags(flags).execute(output);
+        break;
+      case VersionCommand.COMMAND_NAME:
+        VersionCommand.fromFlags(flags, output).execute();
+        break;
+      default:
+        throw InvalidCommandException.builder()
+            .withInternalMessage(
+                "Command '%s' is not supported by the '%s' command. Supported commands: %s.",
+                command, COMMAND_NAME, String.join(", ", SUPPORTED_COMMANDS))
+            .build();
+    }
+  }
+
+  /** Thread pools shared by the commands executed by the server. */
+  @AutoValue
+  abstract static class CommandExecutorServices {
+    /** Creates pools splitting {@code maxThreads} threads the same way as build-apks. */
+    static CommandExecutorServices create(int maxThreads) {
+      ListeningExecutorService executorService =
+          ThreadPools.newCpuExecutor(BuildApksCommand.getCpuThreadCount(maxThreads));
+      int ioThreads = BuildApksCommand.getIoThreadCount(maxThreads);
+      return create(
+          executorService,
+          ioThreads > 0 ? ThreadPools.newIoExecutor(ioThreads) : executorService);
+    }
+
+    static CommandExecutorServices create(
+        ListeningExecutorService executorService, ListeningExecutorService ioExecutorService) {
+      return new AutoValue_ServeCommand_CommandExecutorServices(executorService, ioExecutorService);
+    }
+
+    /** Pool for CPU-bound work. */
+    abstract ListeningExecutorService getExecutorService();
+
+    /** Pool for work which mostly waits on disk I/O. */
+    abstract ListeningExecutorService getIoExecutorService();
+  }
+
+  public static CommandHelp help() {
+    return CommandHelp.builder()
+        .setCommandName(COMMAND_NAME)
+        .setCommandDescription(
+            CommandDescription.builder()
+                .setShortDescription(
+                    "Runs bundletool as a long-running process executing commands received on the"
+                        + " standard input.")
+                .addAdditionalParagraph(
+                    "Each request is a line of tab-separated fields: a request ID followed by the"
+                        + " command and its flags, as they would be passed to bundletool. Each"
+                        + " response is a line of tab-separated fields: the request ID, the exit"
+                        + " code and the size in bytes of the command output, followed by the"
+                        + " command output itself. Requests are executed concurrently.")
+                .addAdditionalParagraph(
+                    "Parsed App Bundles, APK Set tables of contents and keystores are kept in"
+                        + " memory between commands and reused while the files are unchanged.")
+                .addAdditionalParagraph(
+                    "Supported commands: " + String.join(", ", SUPPORTED_COMMANDS) + ".")
+                .build())
+        .addFlag(
+            FlagDescription.builder()
+                .setFlagName(MAX_CONCURRENT_COMMANDS_FLAG.getName())
+                .setExampleValue("4")
+                .setOptional(true)
+                .setDescription(
+                    "Maximum number of commands executed at the same time. Default is %d.",
+                    DEFAULT_MAX_CONCURRENT_COMMANDS)
+                .build())
+        .addFlag(
+            FlagDescription.builder()
+                .setFlagName(MAX_CACHED_BUNDLES_FLAG.getName())
+                .setExampleValue("4")
+                .setOptional(true)
+                .setDescription(
+                    "Maximum number of parsed App Bundles kept in memory. Default is %d.",
+                    DEFAULT_MAX_CACHED_BUNDLES)
+                .build())
+        .build();
+  }
+}
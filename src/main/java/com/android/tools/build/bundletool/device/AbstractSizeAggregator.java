@@ -59,11 +59,15 @@ import com.android.tools.build.bundletool.model.GetSizeRequest.Dimension;
 import com.android.tools.build.bundletool.model.SizeConfiguration;
 import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.protobuf.Message;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.BiFunction;
 import java.util.function.Function;
 import java.util.function.Predicate;
 
@@ -102,6 +106,18 @@ public abstract class AbstractSizeAggregator {
       CountrySetTargeting countrySetTargeting,
       SdkRuntimeTargeting sdkRuntimeTargeting);
 
+  /** Returns all APKs whose size may be aggregated, keyed by the name of their module. */
+  protected abstract ImmutableListMultimap<String, ApkDescription> getApksByModule();
+
+  /**
+   * Returns the names of the modules whose APKs are matched by {@code apkMatcher}, as in {@link
+   * #getMatchingApks}.
+   */
+  protected abstract Set<String> getMatchingModules(ApkMatcher apkMatcher);
+
+  /** Creates the {@link ApkMatcher} used by {@link #getMatchingApks} for the given device. */
+  protected abstract ApkMatcher createApkMatcher(DeviceSpec deviceSpec);
+
   protected ImmutableSet<SdkVersionTargeting> getAllSdkVersionTargetings(
       ImmutableList<ApkDescription> apkDescriptions) {
     return getAllTargetings(
@@ -221,6 +237,64 @@ public abstract class AbstractSizeAggregator {
     Map<SizeConfiguration, Long> minSizeByConfiguration = new HashMap<>();
     Map<SizeConfiguration, Long> maxSizeByConfiguration = new HashMap<>();
 
+    // Instead of matching all APKs for each combination of targetings, the APKs matched for each
+    // targeting value of a dimension are computed once, and intersected for each combination. The
+    // matchers of a dimension only depend on the device properties set from that dimension.
+    ImmutableList<Map.Entry<String, ApkDescription>> apks =
+        getApksByModule().entries().asList();
+    DeviceSpec deviceSpec = getSizeRequest.getDeviceSpec();
+    ImmutableMap<SdkVersionTargeting, ApkMatches> sdkVersionMatches =
+        getApkMatches(
+            apks,
+            sdkTargetingOptions,
+            DeviceSpecFromTargetingBuilder::setSdkVersion,
+            spec -> ImmutableList.of(new SdkVersionMatcher(spec)));
+    ImmutableMap<AbiTargeting, ApkMatches> abiMatches =
+        getApkMatches(
+            apks,
+            abiTargetingOptions,
+            DeviceSpecFromTargetingBuilder::setSupportedAbis,
+            spec -> ImmutableList.of(new AbiMatcher(spec), new MultiAbiMatcher(spec)));
+    ImmutableMap<ScreenDensityTargeting, ApkMatches> screenDensityMatches =
+        getApkMatches(
+            apks,
+            screenDensityTargetingOptions,
+            DeviceSpecFromTargetingBuilder::setScreenDensity,
+            spec -> ImmutableList.of(new ScreenDensityMatcher(spec)));
+    ImmutableMap<LanguageTargeting, ApkMatches> languageMatches =
+        getApkMatches(
+            apks,
+            languageTargetingOptions,
+            DeviceSpecFromTargetingBuilder::setSupportedLocales,
+            spec -> ImmutableList.of(new LanguageMatcher(spec)));
+    ImmutableMap<TextureCompressionFormatTargeting, ApkMatches> textureCompressionFormatMatches =
+        getApkMatches(
+            apks,
+            textureCompressionFormatTargetingOptions,
+            DeviceSpecFromTargetingBuilder::setSupportedTextureCompressionFormats,
+            spec -> ImmutableList.of(new TextureCompressionFormatMatcher(spec)));
+    ImmutableMap<DeviceGroupTargeting, ApkMatches> deviceGroupMatches =
+        getApkMatches(
+            apks,
+            deviceGroupTargetingOptions,
+            DeviceSpecFromTargetingBuilder::setDeviceGroup,
+            spec -> ImmutableList.of(new DeviceGroupApkMatcher(spec)));
+    ImmutableMap<DeviceTierTargeting, ApkMatches> deviceTierMatches =
+        getApkMatches(
+            apks,
+            deviceTierTargetingOptions,
+            DeviceSpecFromTargetingBuilder::setDeviceTier,
+            spec -> ImmutableList.of(new DeviceTierApkMatcher(spec)));
+    ImmutableMap<CountrySetTargeting, ApkMatches> countrySetMatches =
+        getApkMatches(
+            apks,
+            countrySetTargetingOptions,
+            DeviceSpecFromTargetingBuilder::setCountrySet,
+            spec -> ImmutableList.of(new CountrySetApkMatcher(spec)));
+    // Selection of modules depends on the SDK version, the device groups and the device features,
+    // which are set from the texture compression format targeting.
+    Map<ImmutableList<Message>, BitSet> apksOfMatchingModulesCache = new HashMap<>();
+
     for (SdkVersionTargeting sdkVersionTargeting : sdkTargetingOptions) {
       for (AbiTargeting abiTargeting : abiTargetingOptions) {
         for (ScreenDensityTargeting screenDensityTargeting : screenDensityTargetingOptions) {
@@ -228,6 +302,22 @@ public abstract class AbstractSizeAggregator {
             for (TextureCompressionFormatTargeting textureCompressionFormatTargeting :
                 textureCompressionFormatTargetingOptions) {
               for (DeviceGroupTargeting deviceGroupTargeting : deviceGroupTargetingOptions) {
+                BitSet apksOfMatchingModules =
+                    apksOfMatchingModulesCache.computeIfAbsent(
+                        ImmutableList.of(
+                            sdkVersionTargeting,
+                            textureCompressionFormatTargeting,
+                            deviceGroupTargeting),
+                        key ->
+                            getApksOfMatchingModules(
+                                apks,
+                                new DeviceSpecFromTargetingBuilder(deviceSpec)
+                                    .setSdkVersion(sdkVersionTargeting)
+                                    .setSupportedTextureCompressionFormats(
+                                        textureCompressionFormatTargeting)
+                                    .setDeviceGroup(deviceGroupTargeting)
+                                    .setSdkRuntime(sdkRuntimeTargeting)
+                                    .build()));
                 for (DeviceTierTargeting deviceTierTargeting : deviceTierTargetingOptions) {
                   for (CountrySetTargeting countrySetTargeting : countrySetTargetingOptions) {
 
@@ -245,18 +335,37 @@ public abstract class AbstractSizeAggregator {
                                 sdkRuntimeTargeting),
                             getSizeRequest.getDeviceSpec());
 
-                    long compressedSize =
-                        getCompressedSize(
-                            getMatchingApks(
-                                sdkVersionTargeting,
-                                abiTargeting,
-                                screenDensityTargeting,
-                                languageTargeting,
-                                textureCompressionFormatTargeting,
-                                deviceGroupTargeting,
-                                deviceTierTargeting,
-                                countrySetTargeting,
-                                sdkRuntimeTargeting));
+                    ImmutableList<ApkMatches> dimensionMatches =
+                        ImmutableList.of(
+                            sdkVersionMatches.get(sdkVersionTargeting),
+                            abiMatches.get(abiTargeting),
+                            screenDensityMatches.get(screenDensityTargeting),
+                            languageMatches.get(languageTargeting),
+                            textureCompressionFormatMatches.get(textureCompressionFormatTargeting),
+                            deviceGroupMatches.get(deviceGroupTargeting),
+                            deviceTierMatches.get(deviceTierTargeting),
+                            countrySetMatches.get(countrySetTargeting));
+
+                    long compressedSize;
+                    if (isAnyApkIncompatible(dimensionMatches, apksOfMatchingModules)) {
+                      // Let the APK matcher report the incompatibility as it would have.
+                      compressedSize =
+                          getCompressedSize(
+                              getMatchingApks(
+                                  sdkVersionTargeting,
+                                  abiTargeting,
+                                  screenDensityTargeting,
+                                  languageTargeting,
+                                  textureCompressionFormatTargeting,
+                                  deviceGroupTargeting,
+                                  deviceTierTargeting,
+                                  countrySetTargeting,
+                                  sdkRuntimeTargeting));
+                    } else {
+                      BitSet matchingApks = (BitSet) apksOfMatchingModules.clone();
+                      dimensionMatches.forEach(matches -> matchingApks.and(matches.matching));
+                      compressedSize = getCompressedSize(apks, matchingApks);
+                    }
 
                     minSizeByConfiguration.merge(configuration, compressedSize, Math::min);
                     maxSizeByConfiguration.merge(configuration, compressedSize, Math::max);
@@ -407,4 +516,80 @@ public abstract class AbstractSizeAggregator {
   private long getCompressedSize(ImmutableList<GeneratedApk> apks) {
     return apks.stream().mapToLong(apk -> sizeByApkPaths.get(apk.getPath().toString())).sum();
   }
+
+  /** Gets the total compressed sizes of the APKs at the given indices. */
+  private long getCompressedSize(
+      ImmutableList<Map.Entry<String, ApkDescription>> apks, BitSet apkIndices) {
+    return apkIndices.stream()
+        .mapToLong(index -> sizeByApkPaths.get(apks.get(index).getValue().getPath()))
+        .sum();
+  }
+
+  /**
+   * Matches the APKs against the device with each of the targetings of a dimension.
+   *
+   * @param setTargeting sets the properties of the device from a targeting of the dimension
+   * @param createMatchers creates the APK matchers of the dimension, as used by {@link ApkMatcher}
+   */
+  private <T extends Message> ImmutableMap<T, ApkMatches> getApkMatches(
+      ImmutableList<Map.Entry<String, ApkDescription>> apks,
+      ImmutableSet<T> targetingOptions,
+      BiFunction<DeviceSpecFromTargetingBuilder, T, DeviceSpecFromTargetingBuilder> setTargeting,
+      Function<DeviceSpec, ImmutableList<TargetingDimensionMatcher<?>>> createMatchers) {
+    ImmutableMap.Builder<T, ApkMatches> apkMatches = ImmutableMap.builder();
+    for (T targeting : targetingOptions) {
+      ImmutableList<TargetingDimensionMatcher<?>> matchers =
+          createMatchers.apply(
+              setTargeting
+                  .apply(
+                      new DeviceSpecFromTargetingBuilder(getSizeRequest.getDeviceSpec()), targeting)
+                  .build());
+      ApkMatches matches = new ApkMatches();
+      for (int i = 0; i < apks.size(); i++) {
+        ApkTargeting apkTargeting = apks.get(i).getValue().getTargeting();
+        if (!matchers.stream().allMatch(matcher -> isDeviceCompatible(matcher, apkTargeting))) {
+          matches.incompatible.set(i);
+        } else if (matchers.stream()
+            .allMatch(matcher -> matcher.getApkTargetingPredicate().test(apkTargeting))) {
+          matches.matching.set(i);
+        }
+      }
+      apkMatches.put(targeting, matches);
+    }
+    return apkMatches.buildOrThrow();
+  }
+
+  private BitSet getApksOfMatchingModules(
+      ImmutableList<Map.Entry<String, ApkDescription>> apks, DeviceSpec deviceSpec) {
+    Set<String> matchingModules = getMatchingModules(createApkMatcher(deviceSpec));
+    BitSet apksOfMatchingModules = new BitSet(apks.size());
+    for (int i = 0; i < apks.size(); i++) {
+      if (matchingModules.contains(apks.get(i).getKey())) {
+        apksOfMatchingModules.set(i);
+      }
+    }
+    return apksOfMatchingModules;
+  }
+
+  private static boolean isAnyApkIncompatible(
+      ImmutableList<ApkMatches> dimensionMatches, BitSet apksOfMatchingModules) {
+    return dimensionMatches.stream()
+        .anyMatch(matches -> matches.incompatible.intersects(apksOfMatchingModules));
+  }
+
+  private static <T> boolean isDeviceCompatible(
+      TargetingDimensionMatcher<T> matcher, ApkTargeting apkTargeting) {
+    try {
+      matcher.checkDeviceCompatible(matcher.getTargetingValue(apkTargeting));
+      return true;
+    } catch (RuntimeException e) {
+      return false;
+    }
+  }
+
+  /** Indices of the APKs matching and incompatible with a device. */
+  private static final class ApkMatches {
+    private final BitSet matching = new BitSet();
+    private final BitSet incompatible = new BitSet();
+  }
 }
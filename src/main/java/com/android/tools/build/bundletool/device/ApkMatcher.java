@@ -162,10 +162,7 @@ public class ApkMatcher {
 
   public ImmutableList<GeneratedApk> getMatchingApksFromVariant(
       Variant variant, Version bundleVersion) {
-    ImmutableSet<String> modulesToMatch =
-        matchInstant
-            ? getRequestedInstantModulesWithDependencies(variant)
-            : getInstallTimeAndRequestedModulesWithDependencies(variant, bundleVersion);
+    ImmutableSet<String> modulesToMatch = getMatchingModulesFromVariant(variant, bundleVersion);
 
     return variant.getApkSetList().stream()
         .filter(apkSet -> modulesToMatch.contains(apkSet.getModuleMetadata().getName()))
@@ -173,6 +170,13 @@ public class ApkMatcher {
         .collect(toImmutableList());
   }
 
+  /** Returns the names of the modules of the variant whose APKs can be matched. */
+  ImmutableSet<String> getMatchingModulesFromVariant(Variant variant, Version bundleVersion) {
+    return matchInstant
+        ? getRequestedInstantModulesWithDependencies(variant)
+        : getInstallTimeAndRequestedModulesWithDependencies(variant, bundleVersion);
+  }
+
   private ImmutableList<GeneratedApk> getMatchingApksFromModule(ApkSet moduleApks) {
     String moduleName = moduleApks.getModuleMetadata().getName();
     ImmutableList<ApkDescription> matchedApks =
@@ -345,12 +349,7 @@ public class ApkMatcher {
 
   public ImmutableList<GeneratedApk> getMatchingApksFromAssetModules(
       Collection<AssetSliceSet> assetModules) {
-    Set<String> assetModulesToMatch =
-        Sets.union(
-            requestedModuleNames.orElse(ImmutableSet.of()),
-            includeInstallTimeAssetModules
-                ? getUpfrontAssetModules(assetModules)
-                : ImmutableSet.of());
+    Set<String> assetModulesToMatch = getMatchingAssetModules(assetModules);
 
     return assetModules.stream()
         .filter(
@@ -369,6 +368,13 @@ public class ApkMatcher {
         .collect(toImmutableList());
   }
 
+  /** Returns the names of the asset modules whose APKs can be matched. */
+  Set<String> getMatchingAssetModules(Collection<AssetSliceSet> assetModules) {
+    return Sets.union(
+        requestedModuleNames.orElse(ImmutableSet.of()),
+        includeInstallTimeAssetModules ? getUpfrontAssetModules(assetModules) : ImmutableSet.of());
+  }
+
   private static ImmutableSet<String> getUpfrontAssetModules(
       Collection<AssetSliceSet> assetModules) {
     return assetModules.stream()
@@ -20,6 +20,7 @@ import static com.google.common.collect.ImmutableList.toImmutableList;
 
 import com.android.bundle.Commands.ApkDescription;
 import com.android.bundle.Commands.AssetSliceSet;
+import com.android.bundle.Devices.DeviceSpec;
 import com.android.bundle.Targeting.AbiTargeting;
 import com.android.bundle.Targeting.CountrySetTargeting;
 import com.android.bundle.Targeting.DeviceGroupTargeting;
@@ -34,9 +35,11 @@ import com.android.tools.build.bundletool.device.ApkMatcher.GeneratedApk;
 import com.android.tools.build.bundletool.model.ConfigurationSizes;
 import com.android.tools.build.bundletool.model.GetSizeRequest;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import java.util.Collection;
+import java.util.Set;
 
 /**
  * Get total size (min and max) for a list of asset modules, for each {@link
@@ -117,7 +120,7 @@ public class AssetModuleSizeAggregator extends AbstractSizeAggregator {
       DeviceTierTargeting deviceTierTargeting,
       CountrySetTargeting countrySetTargeting,
       SdkRuntimeTargeting sdkRuntimeTargeting) {
-    return new ApkMatcher(
+    return createApkMatcher(
             getDeviceSpec(
                 getSizeRequest.getDeviceSpec(),
                 sdkVersionTargeting,
@@ -128,11 +131,33 @@ public class AssetModuleSizeAggregator extends AbstractSizeAggregator {
                 deviceGroupTargeting,
                 deviceTierTargeting,
                 countrySetTargeting,
-                sdkRuntimeTargeting),
-            getSizeRequest.getModules(),
-            /* includeInstallTimeAssetModules= */ !getSizeRequest.getModules().isPresent(),
-            getSizeRequest.getInstant(),
-            /* ensureDensityAndAbiApksMatched= */ false)
+                sdkRuntimeTargeting))
         .getMatchingApksFromAssetModules(assetModules);
   }
+
+  @Override
+  protected ApkMatcher createApkMatcher(DeviceSpec deviceSpec) {
+    return new ApkMatcher(
+        deviceSpec,
+        getSizeRequest.getModules(),
+        /* includeInstallTimeAssetModules= */ !getSizeRequest.getModules().isPresent(),
+        getSizeRequest.getInstant(),
+        /* ensureDensityAndAbiApksMatched= */ false);
+  }
+
+  @Override
+  protected ImmutableListMultimap<String, ApkDescription> getApksByModule() {
+    ImmutableListMultimap.Builder<String, ApkDescription> apksByModule =
+        ImmutableListMultimap.builder();
+    for (AssetSliceSet assetModule : assetModules) {
+      apksByModule.putAll(
+          assetModule.getAssetModuleMetadata().getName(), assetModule.getApkDescriptionList());
+    }
+    return apksByModule.build();
+  }
+
+  @Override
+  protected Set<String> getMatchingModules(ApkMatcher apkMatcher) {
+    return apkMatcher.getMatchingAssetModules(assetModules);
+  }
 }
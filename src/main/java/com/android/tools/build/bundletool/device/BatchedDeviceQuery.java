@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.tools.build.bundletool.device;
+
+import static com.android.tools.build.bundletool.device.AdbServer.ADB_TIMEOUT_MS;
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.primitives.Ints;
+import com.google.common.primitives.Longs;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Collects all the values needed to compute a {@link com.android.bundle.Devices.DeviceSpec} with a
+ * single ADB shell invocation.
+ *
+ * <p>Each query is preceded by a section marker line, so that the combined output can be split
+ * back into the outputs of the individual commands.
+ */
+@AutoValue
+public abstract class BatchedDeviceQuery {
+
+  static final String PROPERTIES_SECTION = "properties";
+  static final String FEATURES_SECTION = "features";
+  static final String GL_EXTENSIONS_SECTION = "gl-extensions";
+  static final String ACTIVITY_MANAGER_SECTION = "activity-manager";
+  static final String MEMORY_SECTION = "memory";
+  static final String DENSITY_SECTION = "density";
+  static final String SDK_SANDBOX_SECTION = "sdk-sandbox";
+
+  private static final String SECTION_MARKER_PREFIX = "@@bundletool-section:";
+  private static final String SECTION_MARKER_SUFFIX = "@@";
+
+  private static final ImmutableMap<String, String> SECTION_COMMANDS =
+      ImmutableMap.<String, String>builder()
+          .put(PROPERTIES_SECTION, "getprop")
+          .put(FEATURES_SECTION, "pm list features")
+          .put(GL_EXTENSIONS_SECTION, "dumpsys SurfaceFlinger")
+          .put(ACTIVITY_MANAGER_SECTION, "am get-config")
+          .put(MEMORY_SECTION, DeviceAnalyzer.GET_MEMORY_KIB_SHELL_COMMAND)
+          .put(DENSITY_SECTION, "wm density")
+          .put(SDK_SANDBOX_SECTION, "service check sdk_sandbox")
+          .buildOrThrow();
+
+  /** The single shell command which runs all the queries one after another. */
+  public static final String BATCHED_SHELL_COMMAND =
+      Joiner.on("; ")
+          .join(
+              SECTION_COMMANDS.entrySet().stream()
+                  .map(
+                      entry ->
+                          String.format(
+                              "echo '%s'; %s", sectionMarker(entry.getKey()), entry.getValue()))
+                  .collect(toImmutableList()));
+
+  // Format of a 'getprop' output line: "[ro.product.brand]: [google]".
+  private static final Pattern PROPERTY_LINE_PATTERN =
+      Pattern.compile("^\\[(?<key>[^\\]]+)\\]: \\[(?<value>.*)\\]$");
+  private static final String DENSITY_OUTPUT_PREFIX = "Physical density:";
+  private static final String SDK_SANDBOX_FOUND_SUFFIX = ": found";
+
+  // Density properties as read by ddmlib.
+  private static final String DENSITY_PROPERTY = "ro.sf.lcd_density";
+  private static final String EMULATOR_DENSITY_PROPERTY = "qemu.sf.lcd_density";
+  // ABI properties as read by ddmlib.
+  private static final String ABI_LIST_PROPERTY = "ro.product.cpu.abilist";
+  private static final String ABI_PROPERTY = "ro.product.cpu.abi";
+  private static final String ABI2_PROPERTY = "ro.product.cpu.abi2";
+
+  abstract ImmutableMap<String, String> getProperties();
+
+  abstract ImmutableListMultimap<String, String> getSectionOutputs();
+
+  /** Runs the batched command on the device and parses its output. */
+  public static BatchedDeviceQuery execute(Device device) {
+    return parse(
+        new AdbShellCommandTask(device, BATCHED_SHELL_COMMAND)
+            .execute(ADB_TIMEOUT_MS, MILLISECONDS));
+  }
+
+  /** Splits the combined output of {@link #BATCHED_SHELL_COMMAND} into its sections. */
+  public static BatchedDeviceQuery parse(ImmutableList<String> output) {
+    ImmutableListMultimap.Builder<String, String> sectionOutputs = ImmutableListMultimap.builder();
+    Optional<String> currentSection = Optional.empty();
+    for (String line : output) {
+      Optional<String> section = parseSectionMarker(line);
+      if (section.isPresent()) {
+        currentSection = section;
+        continue;
+      }
+      currentSection.ifPresent(name -> sectionOutputs.put(name, line));
+    }
+    ImmutableListMultimap<String, String> sections = sectionOutputs.build();
+
+    Map<String, String> properties = new HashMap<>();
+    for (String line : sections.get(PROPERTIES_SECTION)) {
+      Matcher matcher = PROPERTY_LINE_PATTERN.matcher(line.trim());
+      if (matcher.matches()) {
+        properties.put(matcher.group("key"), matcher.group("value"));
+      }
+    }
+    return new AutoValue_BatchedDeviceQuery(ImmutableMap.copyOf(properties), sections);
+  }
+
+  /** Returns the value of the given system property, if it is set and non-empty. */
+  public Optional<String> getProperty(String propertyName) {
+    return Optional.ofNullable(getProperties().get(propertyName)).filter(value -> !value.isEmpty());
+  }
+
+  /** Returns the raw output of the given section, in the order it was printed. */
+  ImmutableList<String> getSectionOutput(String section) {
+    return getSectionOutputs().get(section);
+  }
+
+  public ImmutableList<String> getDeviceFeatures() {
+    return new DeviceFeaturesParser().parse(getSectionOutput(FEATURES_SECTION));
+  }
+
+  public ImmutableList<String> getGlExtensions() {
+    return new GlExtensionsParser().parse(getSectionOutput(GL_EXTENSIONS_SECTION));
+  }
+
+  /** Returns the output of the "am get-config" command. */
+  public ImmutableList<String> getActivityManagerConfig() {
+    return getSectionOutput(ACTIVITY_MANAGER_SECTION);
+  }
+
+  /** Returns the ABIs from the system properties, or empty list if they couldn't be detected. */
+  public ImmutableList<String> getAbis() {
+    Optional<String> abiList = getProperty(ABI_LIST_PROPERTY);
+    if (abiList.isPresent()) {
+      return ImmutableList.copyOf(Splitter.on(',').omitEmptyStrings().split(abiList.get()));
+    }
+    ImmutableList.Builder<String> abis = ImmutableList.builder();
+    getProperty(ABI_PROPERTY).ifPresent(abis::add);
+    getProperty(ABI2_PROPERTY).ifPresent(abis::add);
+    return abis.build();
+  }
+
+  /** Returns device density or -1 if it couldn't be detected. */
+  public int getDensity() {
+    Optional<Integer> density = getProperty(DENSITY_PROPERTY).map(Ints::tryParse);
+    if (!density.isPresent()) {
+      density = getProperty(EMULATOR_DENSITY_PROPERTY).map(Ints::tryParse);
+    }
+    if (density.isPresent()) {
+      return density.get();
+    }
+    return getSectionOutput(DENSITY_SECTION).stream()
+        .filter(line -> line.startsWith(DENSITY_OUTPUT_PREFIX))
+        .map(line -> Ints.tryParse(line.substring(DENSITY_OUTPUT_PREFIX.length()).trim()))
+        .filter(value -> value != null)
+        .findFirst()
+        .orElse(-1);
+  }
+
+  /** Returns the total RAM of the device in KiB, if it could be detected. */
+  public Optional<Long> getMemoryKib() {
+    return getSectionOutput(MEMORY_SECTION).stream()
+        .map(line -> Longs.tryParse(line.trim()))
+        .filter(value -> value != null)
+        .findFirst();
+  }
+
+  public boolean supportsPrivacySandbox() {
+    return getSectionOutput(SDK_SANDBOX_SECTION).stream()
+        .anyMatch(line -> line.trim().endsWith(SDK_SANDBOX_FOUND_SUFFIX));
+  }
+
+  static String sectionMarker(String section) {
+    return SECTION_MARKER_PREFIX + section + SECTION_MARKER_SUFFIX;
+  }
+
+  private static Optional<String> parseSectionMarker(String line) {
+    String trimmed = line.trim();
+    if (trimmed.startsWith(SECTION_MARKER_PREFIX) && trimmed.endsWith(SECTION_MARKER_SUFFIX)) {
+      return Optional.of(
+          trimmed.substring(
+              SECTION_MARKER_PREFIX.length(), trimmed.length() - SECTION_MARKER_SUFFIX.length()));
+    }
+    return Optional.empty();
+  }
+}
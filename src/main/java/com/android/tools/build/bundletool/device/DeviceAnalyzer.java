@@ -27,6 +27,7 @@ import com.android.tools.build.bundletool.model.utils.Versions;
 import com.google.common.collect.ImmutableList;
 import java.util.Optional;
 import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
 
 /** Computes the device specs. */
 public class DeviceAnalyzer {
@@ -37,6 +38,7 @@ public class DeviceAnalyzer {
   private static final String DEVICE_PROPERTY = "ro.product.device";
   private static final String SOC_MANUFACTURER_PROPERTY = "ro.soc.manufacturer";
   private static final String SOC_MODEL_PROPERTY = "ro.soc.model";
+  private static final String BUILD_FINGERPRINT_PROPERTY = "ro.build.fingerprint";
 
   public static final String GET_MEMORY_KIB_SHELL_COMMAND =
       "cat /proc/meminfo | grep -i 'MemTotal' | grep -oE '[0-9]+'";
@@ -49,13 +51,32 @@ public class DeviceAnalyzer {
   private static final String LEGACY_LANGUAGE_PROPERTY = "ro.product.locale.language";
   private static final String LEGACY_REGION_PROPERTY = "ro.product.locale.region";
 
+  private final boolean batchDeviceQueries;
+  private final Optional<DeviceSpecCache> deviceSpecCache;
+
   /**
    * Creates the instance of the class.
    *
    * @param adb AdbServer facade, initialized.
    */
   public DeviceAnalyzer(AdbServer adb) {
+    this(adb, /* batchDeviceQueries= */ false, /* deviceSpecCache= */ Optional.empty());
+  }
+
+  /**
+   * Creates the instance of the class.
+   *
+   * @param adb AdbServer facade, initialized.
+   * @param batchDeviceQueries whether all device values should be collected with a single ADB shell
+   *     invocation instead of one invocation per value.
+   * @param deviceSpecCache cache consulted before querying the device, keyed by the device serial
+   *     number and build fingerprint.
+   */
+  public DeviceAnalyzer(
+      AdbServer adb, boolean batchDeviceQueries, Optional<DeviceSpecCache> deviceSpecCache) {
     this.adb = adb;
+    this.batchDeviceQueries = batchDeviceQueries;
+    this.deviceSpecCache = deviceSpecCache;
   }
 
   public DeviceSpec getDeviceSpec(Optional<String> deviceId) {
@@ -66,59 +87,26 @@ public class DeviceAnalyzer {
       checkState(
           device.getVersion().getApiLevel() > 1,
           "Error retrieving device SDK version. Please try again.");
-      // We want to consider device's feature level instead of API level so that targeting matching
-      // is done properly on preview builds.
-      int deviceSdkVersion = device.getVersion().getFeatureLevel();
-      String codename = device.getVersion().getCodename();
-      int deviceDensity = device.getDensity();
-      checkState(deviceDensity > 0, "Error retrieving device density. Please try again.");
-      ImmutableList<String> deviceFeatures = device.getDeviceFeatures();
-      ImmutableList<String> glExtensions = device.getGlExtensions();
-
-      ActivityManagerRunner activityManagerRunner = new ActivityManagerRunner(device);
-      ImmutableList<String> deviceLocales = activityManagerRunner.getDeviceLocales();
-      if (deviceLocales.isEmpty()) {
-        // Fallback using properties.
-        deviceLocales = ImmutableList.of(getMainLocaleViaProperties(device));
-      }
-      ImmutableList<String> supportedAbis = activityManagerRunner.getDeviceAbis();
-      if (supportedAbis.isEmpty()) {
-        // Fallback using properties.
-        supportedAbis = device.getAbis();
-      }
-      checkState(!supportedAbis.isEmpty(), "Error retrieving device ABIs. Please try again.");
-
-      SdkRuntime sdkRuntime =
-          SdkRuntime.newBuilder().setSupported(device.supportsPrivacySandbox()).build();
-
-      Optional<String> buildBrand = device.getProperty(BRAND_PROPERTY);
-      Optional<String> buildDevice = device.getProperty(DEVICE_PROPERTY);
-      Optional<String> socManufacturer = device.getProperty(SOC_MANUFACTURER_PROPERTY);
-      Optional<String> socModel = device.getProperty(SOC_MODEL_PROPERTY);
-
-      DeviceSpec.Builder builder =
-          DeviceSpec.newBuilder()
-              .setSdkVersion(deviceSdkVersion)
-              .addAllSupportedAbis(supportedAbis)
-              .addAllSupportedLocales(deviceLocales)
-              .setScreenDensity(deviceDensity)
-              .addAllDeviceFeatures(deviceFeatures)
-              .addAllGlExtensions(glExtensions)
-              .setSdkRuntime(sdkRuntime);
-      if (codename != null) {
-        builder.setCodename(codename);
-      }
 
-      builder.setRamBytes(
-          Long.parseLong(new AdbShellCommandTask(device, GET_MEMORY_KIB_SHELL_COMMAND).execute().get(0))
-              * FROM_KIB_TO_BYTES);
+      Optional<String> buildFingerprint =
+          deviceSpecCache.isPresent()
+              ? device.getProperty(BUILD_FINGERPRINT_PROPERTY)
+              : Optional.empty();
+      if (buildFingerprint.isPresent()) {
+        Optional<DeviceSpec> cachedSpec =
+            deviceSpecCache.get().get(device.getSerialNumber(), buildFingerprint.get());
+        if (cachedSpec.isPresent()) {
+          return cachedSpec.get();
+        }
+      }
 
-      buildBrand.ifPresent(builder::setBuildBrand);
-      buildDevice.ifPresent(builder::setBuildDevice);
-      socManufacturer.ifPresent(builder::setSocManufacturer);
-      socModel.ifPresent(builder::setSocModel);
+      DeviceSpec deviceSpec =
+          batchDeviceQueries ? computeDeviceSpecBatched(device) : computeDeviceSpec(device);
 
-      return builder.build();
+      if (buildFingerprint.isPresent()) {
+        deviceSpecCache.get().put(device.getSerialNumber(), buildFingerprint.get(), deviceSpec);
+      }
+      return deviceSpec;
     } catch (TimeoutException e) {
       throw CommandExecutionException.builder()
           .withCause(e)
@@ -127,20 +115,138 @@ public class DeviceAnalyzer {
     }
   }
 
-  private String getMainLocaleViaProperties(Device device) {
+  private DeviceSpec computeDeviceSpec(Device device) {
+    int deviceDensity = device.getDensity();
+    checkState(deviceDensity > 0, "Error retrieving device density. Please try again.");
+    ImmutableList<String> deviceFeatures = device.getDeviceFeatures();
+    ImmutableList<String> glExtensions = device.getGlExtensions();
+
+    ActivityManagerRunner activityManagerRunner = new ActivityManagerRunner(device);
+    ImmutableList<String> deviceLocales = activityManagerRunner.getDeviceLocales();
+    if (deviceLocales.isEmpty()) {
+      // Fallback using properties.
+      deviceLocales = ImmutableList.of(getMainLocaleViaProperties(device, device::getProperty));
+    }
+    ImmutableList<String> supportedAbis = activityManagerRunner.getDeviceAbis();
+    if (supportedAbis.isEmpty()) {
+      // Fallback using properties.
+      supportedAbis = device.getAbis();
+    }
+
+    long ramKib =
+        Long.parseLong(
+            new AdbShellCommandTask(device, GET_MEMORY_KIB_SHELL_COMMAND).execute().get(0));
+
+    return buildDeviceSpec(
+        device,
+        deviceDensity,
+        deviceFeatures,
+        glExtensions,
+        deviceLocales,
+        supportedAbis,
+        device.supportsPrivacySandbox(),
+        ramKib,
+        device::getProperty);
+  }
+
+  /** Same as {@link #computeDeviceSpec} but with all values collected in one ADB round trip. */
+  private DeviceSpec computeDeviceSpecBatched(Device device) {
+    BatchedDeviceQuery query = BatchedDeviceQuery.execute(device);
+
+    int deviceDensity = query.getDensity();
+    checkState(deviceDensity > 0, "Error retrieving device density. Please try again.");
+
+    ActivityManagerRunner activityManagerRunner =
+        new ActivityManagerRunner(device, query.getActivityManagerConfig());
+    ImmutableList<String> deviceLocales = activityManagerRunner.getDeviceLocales();
+    if (deviceLocales.isEmpty()) {
+      // Fallback using properties.
+      deviceLocales = ImmutableList.of(getMainLocaleViaProperties(device, query::getProperty));
+    }
+    ImmutableList<String> supportedAbis = activityManagerRunner.getDeviceAbis();
+    if (supportedAbis.isEmpty()) {
+      // Fallback using properties.
+      supportedAbis = query.getAbis();
+    }
+
+    long ramKib =
+        query
+            .getMemoryKib()
+            .orElseThrow(
+                () ->
+                    CommandExecutionException.builder()
+                        .withInternalMessage("Error retrieving device RAM. Please try again.")
+                        .build());
+
+    return buildDeviceSpec(
+        device,
+        deviceDensity,
+        query.getDeviceFeatures(),
+        query.getGlExtensions(),
+        deviceLocales,
+        supportedAbis,
+        query.supportsPrivacySandbox(),
+        ramKib,
+        query::getProperty);
+  }
+
+  private static DeviceSpec buildDeviceSpec(
+      Device device,
+      int deviceDensity,
+      ImmutableList<String> deviceFeatures,
+      ImmutableList<String> glExtensions,
+      ImmutableList<String> deviceLocales,
+      ImmutableList<String> supportedAbis,
+      boolean supportsPrivacySandbox,
+      long ramKib,
+      Function<String, Optional<String>> properties) {
+    checkState(!supportedAbis.isEmpty(), "Error retrieving device ABIs. Please try again.");
+
+    // We want to consider device's feature level instead of API level so that targeting matching
+    // is done properly on preview builds.
+    int deviceSdkVersion = device.getVersion().getFeatureLevel();
+    String codename = device.getVersion().getCodename();
+
+    SdkRuntime sdkRuntime = SdkRuntime.newBuilder().setSupported(supportsPrivacySandbox).build();
+
+    DeviceSpec.Builder builder =
+        DeviceSpec.newBuilder()
+            .setSdkVersion(deviceSdkVersion)
+            .addAllSupportedAbis(supportedAbis)
+            .addAllSupportedLocales(deviceLocales)
+            .setScreenDensity(deviceDensity)
+            .addAllDeviceFeatures(deviceFeatures)
+            .addAllGlExtensions(glExtensions)
+            .setSdkRuntime(sdkRuntime);
+    if (codename != null) {
+      builder.setCodename(codename);
+    }
+
+    builder.setRamBytes(ramKib * FROM_KIB_TO_BYTES);
+
+    properties.apply(BRAND_PROPERTY).ifPresent(builder::setBuildBrand);
+    properties.apply(DEVICE_PROPERTY).ifPresent(builder::setBuildDevice);
+    properties.apply(SOC_MANUFACTURER_PROPERTY).ifPresent(builder::setSocManufacturer);
+    properties.apply(SOC_MODEL_PROPERTY).ifPresent(builder::setSocModel);
+
+    return builder.build();
+  }
+
+  private static String getMainLocaleViaProperties(
+      Device device, Function<String, Optional<String>> properties) {
     Optional<String> locale = Optional.empty();
 
     int apiLevel = device.getVersion().getApiLevel();
     if (apiLevel < Versions.ANDROID_M_API_VERSION) {
-      Optional<String> language = device.getProperty(LEGACY_LANGUAGE_PROPERTY);
-      Optional<String> region = device.getProperty(LEGACY_REGION_PROPERTY);
+      Optional<String> language = properties.apply(LEGACY_LANGUAGE_PROPERTY);
+      Optional<String> region = properties.apply(LEGACY_REGION_PROPERTY);
       if (language.isPresent() && region.isPresent()) {
         locale = Optional.of(language.get() + "-" + region.get());
       }
     } else {
-      locale = device.getProperty(LOCALE_PROPERTY_SYS);
+      locale = properties.apply(LOCALE_PROPERTY_SYS);
       if (!locale.isPresent()) {
-        locale = device.getProperty(LOCALE_PROPERTY_PRODUCT);
+        locale = properties.apply(LOCALE_PROPERTY_PRODUCT);
       }
     }
     return locale.orElseGet(
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.tools.build.bundletool.device;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+import com.android.bundle.Devices.DeviceSpec;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.hash.Hashing;
+import com.google.protobuf.util.JsonFormat;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+
+/**
+ * On-disk cache of device specs, keyed by the device serial number and its build fingerprint.
+ *
+ * <p>Entries older than the configured time-to-live are ignored. The cache is best-effort: any
+ * failure to read or write an entry is treated as a cache miss.
+ */
+public class DeviceSpecCache {
+
+  private static final String CACHE_FILE_EXTENSION = ".json";
+
+  private final Path cacheDirectory;
+  private final Duration timeToLive;
+  private final Clock clock;
+
+  public DeviceSpecCache(Path cacheDirectory, Duration timeToLive) {
+    this(cacheDirectory, timeToLive, Clock.systemUTC());
+  }
+
+  @VisibleForTesting
+  DeviceSpecCache(Path cacheDirectory, Duration timeToLive, Clock clock) {
+    this.cacheDirectory = cacheDirectory;
+    this.timeToLive = timeToLive;
+    this.clock = clock;
+  }
+
+  /** Returns the cached device spec, if present and not expired. */
+  public Optional<DeviceSpec> get(String serialNumber, String buildFingerprint) {
+    Path cacheFile = getCacheFile(serialNumber, buildFingerprint);
+    if (!Files.isRegularFile(cacheFile)) {
+      return Optional.empty();
+    }
+    try {
+      Instant lastModified = Files.getLastModifiedTime(cacheFile).toInstant();
+      if (lastModified.plus(timeToLive).isBefore(clock.instant())) {
+        return Optional.empty();
+      }
+      DeviceSpec.Builder deviceSpec = DeviceSpec.newBuilder();
+      try (Reader reader = Files.newBufferedReader(cacheFile, UTF_8)) {
+        JsonFormat.parser().ignoringUnknownFields().merge(reader, deviceSpec);
+      }
+      return Optional.of(deviceSpec.build());
+    } catch (IOException e) {
+      System.err.printf(
+          "Warning: Ignoring unreadable device spec cache entry '%s': %s%n",
+          cacheFile, e.getMessage());
+      return Optional.empty();
+    }
+  }
+
+  /** Stores the device spec in the cache, replacing any previous entry. */
+  public void put(String serialNumber, String buildFingerprint, DeviceSpec deviceSpec) {
+    Path cacheFile = getCacheFile(serialNumber, buildFingerprint);
+    try {
+      Files.createDirectories(cacheDirectory);
+      Path tempFile = Files.createTempFile(cacheDirectory, "device-spec", ".tmp");
+      Files.write(tempFile, JsonFormat.printer().print(deviceSpec).getBytes(UTF_8));
+      Files.setLastModifiedTime(tempFile, FileTime.from(clock.instant()));
+      Files.move(tempFile, cacheFile, REPLACE_EXISTING, ATOMIC_MOVE);
+    } catch (IOException e) {
+      System.err.printf(
+          "Warning: Unable to write device spec cache entry '%s': %s%n",
+          cacheFile, e.getMessage());
+    }
+  }
+
+  private Path getCacheFile(String serialNumber, String buildFingerprint) {
+    String key =
+        Hashing.sha256().hashString(serialNumber + '\n' + buildFingerprint, UTF_8).toString();
+    return cacheDirectory.resolve(key + CACHE_FILE_EXTENSION);
+  }
+}
@@ -21,7 +21,9 @@ import static com.google.common.base.Preconditions.checkState;
 import static com.google.common.collect.ImmutableList.toImmutableList;
 
 import com.android.bundle.Commands.ApkDescription;
+import com.android.bundle.Commands.ApkSet;
 import com.android.bundle.Commands.Variant;
+import com.android.bundle.Devices.DeviceSpec;
 import com.android.bundle.Targeting.AbiTargeting;
 import com.android.bundle.Targeting.CountrySetTargeting;
 import com.android.bundle.Targeting.DeviceGroupTargeting;
@@ -39,9 +41,11 @@ import com.android.tools.build.bundletool.model.GetSizeRequest;
 import com.android.tools.build.bundletool.model.SizeConfiguration;
 import com.android.tools.build.bundletool.model.version.Version;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
+import java.util.Set;
 
 /**
  * Get total size (min and max) for variant, for each {@link SizeConfiguration} based on the
@@ -82,7 +86,7 @@ public class VariantTotalSizeAggregator extends AbstractSizeAggregator {
       DeviceTierTargeting deviceTierTargeting,
       CountrySetTargeting countrySetTargeting,
       SdkRuntimeTargeting sdkRuntimeTargeting) {
-    return new ApkMatcher(
+    return createApkMatcher(
             getDeviceSpec(
                 getSizeRequest.getDeviceSpec(),
                 sdkVersionTargeting,
@@ -93,14 +97,35 @@ public class VariantTotalSizeAggregator extends AbstractSizeAggregator {
                 deviceGroupTargeting,
                 deviceTierTargeting,
                 countrySetTargeting,
-                sdkRuntimeTargeting),
-            getSizeRequest.getModules(),
-            /* includeInstallTimeAssetModules= */ false,
-            getSizeRequest.getInstant(),
-            /* ensureDensityAndAbiApksMatched= */ false)
+                sdkRuntimeTargeting))
         .getMatchingApksFromVariant(variant, bundleVersion);
   }
 
+  @Override
+  protected ApkMatcher createApkMatcher(DeviceSpec deviceSpec) {
+    return new ApkMatcher(
+        deviceSpec,
+        getSizeRequest.getModules(),
+        /* includeInstallTimeAssetModules= */ false,
+        getSizeRequest.getInstant(),
+        /* ensureDensityAndAbiApksMatched= */ false);
+  }
+
+  @Override
+  protected ImmutableListMultimap<String, ApkDescription> getApksByModule() {
+    ImmutableListMultimap.Builder<String, ApkDescription> apksByModule =
+        ImmutableListMultimap.builder();
+    for (ApkSet apkSet : variant.getApkSetList()) {
+      apksByModule.putAll(apkSet.getModuleMetadata().getName(), apkSet.getApkDescriptionList());
+    }
+    return apksByModule.build();
+  }
+
+  @Override
+  protected Set<String> getMatchingModules(ApkMatcher apkMatcher) {
+    return apkMatcher.getMatchingModulesFromVariant(variant, bundleVersion);
+  }
+
   private ConfigurationSizes getSizeNonStandaloneVariant() {
     ImmutableList<ApkDescription> apkDescriptions =
         variant.getApkSetList().stream()
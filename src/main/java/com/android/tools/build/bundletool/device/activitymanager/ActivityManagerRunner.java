@@ -51,6 +51,19 @@ public class ActivityManagerRunner {
     this.device = device;
   }
 
+  /**
+   * Creates a runner over an already collected output of the activity manager shell command, so
+   * that no additional ADB round trip is needed.
+   */
+  public ActivityManagerRunner(Device device, ImmutableList<String> activityManagerOutput) {
+    this.device = device;
+    this.activityManagerCommandResult =
+        Suppliers.ofInstance(
+            device.getVersion().getApiLevel() < Versions.ANDROID_L_API_VERSION
+                ? ImmutableList.of()
+                : activityManagerOutput);
+  }
+
   /** Returns a list of locales or empty list if they couldn't be detected. */
   public ImmutableList<String> getDeviceLocales() {
     return activityManagerCommandResult.get().stream()
@@ -18,17 +18,22 @@ package com.android.tools.build.bundletool.io;
 import static com.android.tools.build.bundletool.model.BundleModule.MANIFEST_FILENAME;
 import static com.google.common.collect.ImmutableList.toImmutableList;
 import static com.google.common.collect.Streams.stream;
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+import static java.util.Comparator.comparingLong;
 
 import com.android.bundle.Config.BundleConfig;
 import com.android.bundle.Config.ResourceOptimizations.CollapsedResourceNames;
 import com.android.bundle.Config.ResourceOptimizations.ResourceTypeAndName;
 import com.android.tools.build.bundletool.androidtools.Aapt2Command;
 import com.android.tools.build.bundletool.androidtools.Aapt2Command.ConvertOptions;
+import com.android.tools.build.bundletool.commands.BuildApksModule.IoExecutorService;
 import com.android.tools.build.bundletool.model.Bundle;
 import com.android.tools.build.bundletool.model.BundleModule.SpecialModuleEntry;
 import com.android.tools.build.bundletool.model.ModuleEntry;
 import com.android.tools.build.bundletool.model.ModuleSplit;
 import com.android.tools.build.bundletool.model.ZipPath;
+import com.android.tools.build.bundletool.model.exceptions.InvalidCommandException;
+import com.android.tools.build.bundletool.model.utils.SystemEnvironmentProvider;
 import com.android.tools.build.bundletool.model.utils.ZipUtils;
 import com.android.zipflinger.ZipArchive;
 import com.google.common.base.Supplier;
@@ -36,6 +41,7 @@ import com.google.common.base.Suppliers;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Streams;
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import java.io.IOException;
@@ -43,7 +49,10 @@ import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Optional;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 import java.util.zip.ZipFile;
 import javax.inject.Inject;
@@ -51,8 +60,13 @@ import javax.inject.Inject;
 /** Class to convert module splits from proto to binary format. */
 class Aapt2ResourceConverter {
 
+  /** System property overriding the number of 'aapt2' processes run at the same time. */
+  private static final String AAPT2_THREADS_PROPERTY = "bundletool.aapt2.threads";
+
   private final Aapt2Command aapt2Command;
   private final ListeningExecutorService executorService;
+  private final ListeningExecutorService ioExecutorService;
+  private final SystemEnvironmentProvider systemEnvironmentProvider;
   private final CollapsedResourceNames collapsedResourceNames;
 
   private final Supplier<Optional<Path>> resourceConfigSupplier;
@@ -61,11 +75,15 @@ class Aapt2ResourceConverter {
   Aapt2ResourceConverter(
       Aapt2Command aapt2Command,
       ListeningExecutorService executorService,
+      @IoExecutorService ListeningExecutorService ioExecutorService,
       Bundle bundle,
       BundleConfig bundleConfig,
-      TempDirectory tempDirectory) {
+      TempDirectory tempDirectory,
+      SystemEnvironmentProvider systemEnvironmentProvider) {
     this.aapt2Command = aapt2Command;
     this.executorService = executorService;
+    this.ioExecutorService = ioExecutorService;
+    this.systemEnvironmentProvider = systemEnvironmentProvider;
     this.collapsedResourceNames =
         bundleConfig.getOptimizations().getResourceOptimizations().getCollapsedResourceNames();
     resourceConfigSupplier =
@@ -78,6 +96,10 @@ class Aapt2ResourceConverter {
    *
    * <p>Returns a list of {@link ModuleSplit} with converted entries in the same order as in
    * original {@code allSplits} list.
+   *
+   * <p>The 'aapt2' processes run on a dedicated pool, while the partial proto APKs they take as
+   * input and the APKs they produce are written and read on the shared executor. The splits with
+   * the most resources are scheduled first, so that they don't delay the end of the conversion.
    */
   public ImmutableList<ModuleSplit> convert(
       Collection<ModuleSplit> allSplits, SerializationFilesManager filesManager) {
@@ -98,13 +120,70 @@ class Aapt2ResourceConverter {
     ResourceConverter resourceConverter =
         new ResourceConverter(filesManager, allResourcesUncompressedPack);
 
-    ImmutableList<ListenableFuture<ModuleSplit>> binarySplitFutures =
-        allSplits.stream()
-            .map(
-                split ->
-                    executorService.submit(() -> resourceConverter.convertResourcesToBinary(split)))
+    ImmutableList<ModuleSplit> splits = ImmutableList.copyOf(allSplits);
+    ImmutableList<Integer> splitIndicesByCost =
+        IntStream.range(0, splits.size())
+            .boxed()
+            .sorted(
+                comparingLong((Integer index) -> estimateConversionCost(splits.get(index)))
+                    .reversed())
             .collect(toImmutableList());
-    return ConcurrencyUtils.waitForAll(binarySplitFutures);
+
+    ListeningExecutorService aapt2ExecutorService =
+        ThreadPools.newIoExecutor(getAapt2ThreadCount());
+    try {
+      Map<Integer, ListenableFuture<ModuleSplit>> binarySplitFutures = new HashMap<>();
+      for (int index : splitIndicesByCost) {
+        binarySplitFutures.put(
+            index,
+            resourceConverter.convertResourcesToBinary(splits.get(index), aapt2ExecutorService));
+      }
+      return ConcurrencyUtils.waitForAll(
+          IntStream.range(0, splits.size())
+              .mapToObj(binarySplitFutures::get)
+              .collect(toImmutableList()));
+    } finally {
+      aapt2ExecutorService.shutdownNow();
+    }
+  }
+
+  /**
+   * Returns the number of 'aapt2' processes run at the same time.
+   *
+   * <p>Defaults to the number of threads of the executor of the command, which is set by
+   * "--max-threads", or to the number of available processors if it is not known. Can be
+   * overridden using the system property "bundletool.aapt2.threads".
+   */
+  private int getAapt2ThreadCount() {
+    Optional<String> property = systemEnvironmentProvider.getProperty(AAPT2_THREADS_PROPERTY);
+    if (!property.isPresent()) {
+      return ThreadPools.getMaxThreads(executorService).orElseGet(ThreadPools::availableProcessors);
+    }
+    int threadCount;
+    try {
+      threadCount = Integer.parseInt(property.get().trim());
+    } catch (NumberFormatException e) {
+      threadCount = 0;
+    }
+    if (threadCount <= 0) {
+      throw InvalidCommandException.builder()
+          .withInternalMessage(
+              "The system property '%s' must be a positive integer, but found '%s'.",
+              AAPT2_THREADS_PROPERTY, property.get())
+          .build();
+    }
+    return threadCount;
+  }
+
+  /** Estimates the cost of converting a split as the size of its entries to convert. */
+  private static long estimateConversionCost(ModuleSplit split) {
+    return split.getEntries().stream()
+        .filter(
+            entry ->
+                ApkSerializerHelper.requiresAapt2Conversion(
+                    ApkSerializerHelper.toApkEntryPath(entry.getPath())))
+        .mapToLong(entry -> entry.getContent().sizeIfKnown().or(0L))
+        .sum();
   }
 
   private class ResourceConverter {
@@ -118,17 +197,34 @@ class Aapt2ResourceConverter {
       this.packWithResourceEntries = packWithResourceEntries;
     }
 
-    /** Converts resources in split from proto to binary format. */
-    public ModuleSplit convertResourcesToBinary(ModuleSplit split) {
-      try {
-        Path protoApkPath = writePartialProtoApk(split);
-        Path binaryApkPath = convertAndOptimizeProtoApk(split, protoApkPath);
-        Files.delete(protoApkPath);
-
-        return withConvertedEntries(split, binaryApkPath);
-      } catch (IOException e) {
-        throw new UncheckedIOException(e);
-      }
+    /**
+     * Converts resources in split from proto to binary format.
+     *
+     * <p>The 'aapt2' invocation runs on {@code aapt2ExecutorService}, the partial proto APK is
+     * written on the I/O executor and the converted entries are read on the shared executor.
+     */
+    public ListenableFuture<ModuleSplit> convertResourcesToBinary(
+        ModuleSplit split, ListeningExecutorService aapt2ExecutorService) {
+      ListenableFuture<Path> protoApkPath =
+          ioExecutorService.submit(() -> writePartialProtoApk(split));
+      return Futures.transformAsync(
+          protoApkPath,
+          protoApk -> {
+            ListenableFuture<Path> binaryApkPath =
+                aapt2ExecutorService.submit(() -> convertAndOptimizeProtoApk(split, protoApk));
+            return Futures.transform(
+                binaryApkPath,
+                binaryApk -> {
+                  try {
+                    Files.delete(protoApk);
+                  } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                  }
+                  return withConvertedEntries(split, binaryApk);
+                },
+                executorService);
+          },
+          directExecutor());
     }
 
     /** Writes APK with only resource entries in proto format. */
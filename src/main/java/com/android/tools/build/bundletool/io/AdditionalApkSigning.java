@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.tools.build.bundletool.io;
+
+import static com.google.common.base.Preconditions.checkState;
+
+import com.android.bundle.Commands.ApkDescription;
+import com.android.bundle.Commands.ApkSet;
+import com.android.bundle.Commands.AssetSliceSet;
+import com.android.bundle.Commands.BuildApksResult;
+import com.android.bundle.Commands.SigningDescription;
+import com.android.bundle.Commands.Variant;
+import com.android.tools.build.bundletool.model.SigningConfigurationProvider;
+import com.android.tools.build.bundletool.model.ZipPath;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Signing of the generated APKs with an extra signing configuration, producing an extra APK Set.
+ *
+ * <p>The APKs are serialized only once, unsigned, and then signed once for the main APK Set and
+ * once for each extra APK Set. The signed copies of the APKs are kept in their own splits
+ * directory, at the same relative paths as in the main APK Set.
+ */
+public final class AdditionalApkSigning {
+
+  private final SigningConfigurationProvider signingConfigProvider;
+  private final Path splitsDirectory;
+  private final Path outputFile;
+  private final Map<ZipPath, Optional<SigningDescription>> signingDescriptionsByApkPath =
+      new ConcurrentHashMap<>();
+
+  public AdditionalApkSigning(
+      SigningConfigurationProvider signingConfigProvider, Path splitsDirectory, Path outputFile) {
+    this.signingConfigProvider = signingConfigProvider;
+    this.splitsDirectory = splitsDirectory;
+    this.outputFile = outputFile;
+  }
+
+  SigningConfigurationProvider getSigningConfigurationProvider() {
+    return signingConfigProvider;
+  }
+
+  /** Returns the path of the APK signed with this configuration. */
+  Path getSignedApkPath(ZipPath apkRelativePath) {
+    return splitsDirectory.resolve(apkRelativePath.toString());
+  }
+
+  void recordSignedApk(ZipPath apkRelativePath, Optional<SigningDescription> signingDescription) {
+    signingDescriptionsByApkPath.put(apkRelativePath, signingDescription);
+  }
+
+  public Path getOutputFile() {
+    return outputFile;
+  }
+
+  /**
+   * Writes the APK Set signed with this configuration.
+   *
+   * @param toc table of contents of the main APK Set, which only differs by the signing
+   *     descriptions of the APKs.
+   */
+  public void writeApkSet(BuildApksResult toc) throws IOException {
+    BuildApksResult.Builder signedToc = toc.toBuilder();
+    for (Variant.Builder variant : signedToc.getVariantBuilderList()) {
+      for (ApkSet.Builder apkSet : variant.getApkSetBuilderList()) {
+        apkSet.getApkDescriptionBuilderList().forEach(this::updateSigningDescription);
+      }
+    }
+    for (AssetSliceSet.Builder assetSliceSet : signedToc.getAssetSliceSetBuilderList()) {
+      assetSliceSet.getApkDescriptionBuilderList().forEach(this::updateSigningDescription);
+    }
+    ApkSetWriter.zip(splitsDirectory, outputFile).writeApkSet(signedToc.build());
+  }
+
+  private void updateSigningDescription(ApkDescription.Builder apkDescription) {
+    ZipPath apkPath = ZipPath.create(apkDescription.getPath());
+    Optional<SigningDescription> signingDescription = signingDescriptionsByApkPath.get(apkPath);
+    checkState(signingDescription != null, "APK '%s' was not signed.", apkPath);
+    if (signingDescription.isPresent()) {
+      apkDescription.setSigningDescription(signingDescription.get());
+    } else {
+      apkDescription.clearSigningDescription();
+    }
+  }
+}
@@ -20,6 +20,7 @@ import com.android.tools.build.bundletool.model.ApkListener;
 import com.android.tools.build.bundletool.model.ModuleSplit;
 import com.android.tools.build.bundletool.model.ZipPath;
 import com.google.common.collect.ImmutableMap;
+import java.io.PrintStream;
 import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
@@ -33,10 +34,13 @@ public abstract class ApkSerializer {
 
   private final ApkListener apkListener;
   private final boolean verbose;
+  private final PrintStream logPrintStream;
 
-  ApkSerializer(Optional<ApkListener> apkListener, boolean verbose) {
+  ApkSerializer(
+      Optional<ApkListener> apkListener, boolean verbose, Optional<PrintStream> logPrintStream) {
     this.apkListener = apkListener.orElse(ApkListener.NO_OP);
     this.verbose = verbose;
+    this.logPrintStream = logPrintStream.orElse(System.out);
   }
 
   public ApkDescription serialize(Path apkPath, ModuleSplit moduleSplit) {
@@ -57,11 +61,24 @@ public abstract class ApkSerializer {
     apkListener.onApkFinalized(apkDescription);
 
     if (verbose) {
-      System.out.printf(
+      logPrintStream.printf(
           "INFO: [%s] '%s' of type '%s' was written to disk.%n",
           LocalDateTime.now(ZoneId.systemDefault()).format(DATE_FORMATTER),
           apkDescription.getPath(),
           splitType);
     }
   }
+
+  /**
+   * Prints the given message to the output of the command, or to the standard output if there is
+   * none, if verbose logging is enabled.
+   */
+  protected void logVerbose(String format, Object... args) {
+    if (verbose) {
+      logPrintStream.printf(
+          "INFO: [%s] %s%n",
+          LocalDateTime.now(ZoneId.systemDefault()).format(DATE_FORMATTER),
+          String.format(format, args));
+    }
+  }
 }
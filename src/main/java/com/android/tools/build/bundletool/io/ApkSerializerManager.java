@@ -24,7 +24,6 @@ import static com.android.tools.build.bundletool.model.utils.CollectorUtils.grou
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkState;
 import static com.google.common.base.Predicates.alwaysTrue;
-import static com.google.common.collect.ImmutableBiMap.toImmutableBiMap;
 import static com.google.common.collect.ImmutableList.toImmutableList;
 import static com.google.common.collect.ImmutableMap.toImmutableMap;
 import static java.util.function.Function.identity;
@@ -69,6 +68,7 @@ import com.android.tools.build.bundletool.model.GeneratedAssetSlices;
 import com.android.tools.build.bundletool.model.ManifestDeliveryElement;
 import com.android.tools.build.bundletool.model.ModuleEntry;
 import com.android.tools.build.bundletool.model.ModuleSplit;
+import com.android.tools.build.bundletool.model.ModuleSplit.Fingerprint;
 import com.android.tools.build.bundletool.model.ModuleSplit.SplitType;
 import com.android.tools.build.bundletool.model.OptimizationDimension;
 import com.android.tools.build.bundletool.model.SdkBundle;
@@ -77,18 +77,20 @@ import com.android.tools.build.bundletool.model.VariantKey;
 import com.android.tools.build.bundletool.model.ZipPath;
 import com.android.tools.build.bundletool.model.version.BundleToolVersion;
 import com.android.tools.build.bundletool.optimizations.ApkOptimizations;
-import com.google.common.annotations.VisibleForTesting;
-import com.google.common.collect.ImmutableBiMap;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableListMultimap;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
 import com.google.protobuf.Int32Value;
 import com.google.protobuf.StringValue;
 import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -128,6 +130,21 @@ public class ApkSerializerManager {
     this.signingConfigProvider = signingConfigProvider;
   }
 
+  /**
+   * Generates the splits of a variant right before the variant is serialized.
+   *
+   * <p>Given the splits representing the variant in {@link GeneratedApks}, returns the splits to
+   * serialize instead. Variants are then serialized one at a time, so that the splits of a variant
+   * can be released before the splits of the next variant are generated.
+   *
+   * <p>Not called for variants none of whose splits in {@link GeneratedApks} match the device spec,
+   * since none of their splits would be serialized.
+   */
+  public interface VariantSplitsGenerator {
+    ImmutableList<ModuleSplit> generateSplits(
+        VariantKey variantKey, ImmutableList<ModuleSplit> moduleSplits);
+  }
+
   /** Serialize App Bundle APKs. */
   public BuildApksResult serializeApkSet(
       ApkSetWriter apkSetWriter,
@@ -136,11 +153,34 @@ public class ApkSerializerManager {
       Optional<DeviceSpec> deviceSpec,
       LocalTestingInfo localTestingInfo,
       ImmutableSet<BundleModuleName> permanentlyFusedModules) {
+    return serializeApkSet(
+        apkSetWriter,
+        generatedApks,
+        /* variantSplitsGenerator= */ Optional.empty(),
+        generatedAssetSlices,
+        deviceSpec,
+        localTestingInfo,
+        permanentlyFusedModules);
+  }
+
+  /**
+   * Serialize App Bundle APKs, generating the splits of each variant with {@code
+   * variantSplitsGenerator} right before the variant is serialized, if present.
+   */
+  public BuildApksResult serializeApkSet(
+      ApkSetWriter apkSetWriter,
+      GeneratedApks generatedApks,
+      Optional<VariantSplitsGenerator> variantSplitsGenerator,
+      GeneratedAssetSlices generatedAssetSlices,
+      Optional<DeviceSpec> deviceSpec,
+      LocalTestingInfo localTestingInfo,
+      ImmutableSet<BundleModuleName> permanentlyFusedModules) {
     try {
       BuildApksResult toc =
           serializeApkSetContent(
               apkSetWriter.getSplitsDirectory(),
               generatedApks,
+              variantSplitsGenerator,
               generatedAssetSlices,
               deviceSpec,
               localTestingInfo,
@@ -165,6 +205,7 @@ public class ApkSerializerManager {
           serializeApkSetContent(
               apkSetWriter.getSplitsDirectory(),
               generatedApks,
+              /* variantSplitsGenerator= */ Optional.empty(),
               generatedAssetSlices,
               deviceSpec,
               localTestingInfo,
@@ -189,14 +230,20 @@ public class ApkSerializerManager {
   private BuildApksResult serializeApkSetContent(
       Path outputDirectory,
       GeneratedApks generatedApks,
+      Optional<VariantSplitsGenerator> variantSplitsGenerator,
       GeneratedAssetSlices generatedAssetSlices,
       Optional<DeviceSpec> deviceSpec,
       LocalTestingInfo localTestingInfo,
       ImmutableSet<BundleModuleName> permanentlyFusedModules) {
+    // Asset slices are serialized together with the first APKs, so that the entries they share
+    // are packed only once.
+    SerializationSession session = new SerializationSession(outputDirectory);
+    ImmutableMap<ZipPath, ModuleSplit> assetSlicesByRelativePath =
+        addAssetSlices(session, generatedAssetSlices, deviceSpec);
     ImmutableList<Variant> allVariantsWithTargeting =
-        serializeApks(outputDirectory, generatedApks, deviceSpec);
+        serializeApks(session, generatedApks, variantSplitsGenerator, deviceSpec);
     ImmutableList<AssetSliceSet> allAssetSliceSets =
-        serializeAssetSlices(outputDirectory, generatedAssetSlices, deviceSpec);
+        getAssetSliceSets(session, assetSlicesByRelativePath);
     // Finalize the output archive.
     BuildApksResult.Builder apksResult =
         BuildApksResult.newBuilder()
@@ -223,7 +270,11 @@ public class ApkSerializerManager {
   private BuildSdkApksResult serializeSdkApkSetContent(
       Path outputDirectory, GeneratedApks generatedApks) {
     ImmutableList<Variant> allVariantsWithTargeting =
-        serializeApks(outputDirectory, generatedApks, /* deviceSpec= */ Optional.empty());
+        serializeApks(
+            new SerializationSession(outputDirectory),
+            generatedApks,
+            /* variantSplitsGenerator= */ Optional.empty(),
+            /* deviceSpec= */ Optional.empty());
     SdkBundle sdkBundle = (SdkBundle) bundle;
     checkState(sdkBundle.getVersionCode().isPresent(), "Missing version code for SDK Bundle.");
     return BuildSdkApksResult.newBuilder()
@@ -241,9 +292,11 @@ public class ApkSerializerManager {
         .build();
   }
 
-  @VisibleForTesting
-  ImmutableList<Variant> serializeApks(
-      Path outputDirectory, GeneratedApks generatedApks, Optional<DeviceSpec> deviceSpec) {
+  private ImmutableList<Variant> serializeApks(
+      SerializationSession session,
+      GeneratedApks generatedApks,
+      Optional<VariantSplitsGenerator> variantSplitsGenerator,
+      Optional<DeviceSpec> deviceSpec) {
     validateInput(generatedApks, apkBuildMode);
 
     // Running with system APK mode generates a fused APK and additional unmatched language splits.
@@ -263,72 +316,118 @@ public class ApkSerializerManager {
         splitsByVariant.keySet().stream()
             .collect(toImmutableMap(identity(), unused -> variantNumberCounter.getAndIncrement()));
 
-    // 1. Remove APKs not matching the device spec.
-    // 2. Modify the APKs based on the ApkModifier.
-    // 3. Serialize all APKs in parallel.
-
-    // Modifies the APK using APK modifier, then returns a map by extracting the variant
-    // of APK first and later clearing out its variant targeting.
-    ImmutableListMultimap<VariantKey, ModuleSplit> finalSplitsByVariant =
-        splitsByVariant.entries().stream()
-            .filter(keyModuleSplitEntry -> deviceFilter.test(keyModuleSplitEntry.getValue()))
-            .collect(
-                groupingBySortedKeys(
-                    Entry::getKey,
-                    entry ->
-                        clearVariantTargeting(
-                            modifyApk(
-                                entry.getValue(), variantNumberByVariantKey.get(entry.getKey())))));
-
-    // After variant targeting of APKs are cleared, there might be duplicate APKs
-    // which are removed and the distinct APKs are then serialized in parallel.
-    ImmutableBiMap<ZipPath, ModuleSplit> splitsByRelativePath =
-        finalSplitsByVariant.values().stream()
-            .distinct()
-            .collect(toImmutableBiMap(apkPathManager::getApkPath, identity()));
-
-    ImmutableMap<ZipPath, ApkDescription> apkDescriptionsByRelativePath =
-        apkSerializer.serialize(outputDirectory, splitsByRelativePath);
-
-    // Build the result proto.
+    // When the splits of variants are generated on serialization, variants are serialized one at a
+    // time. Otherwise, all variants are serialized at once.
+    ImmutableList<ImmutableList<VariantKey>> variantKeyBatches =
+        variantSplitsGenerator.isPresent()
+            ? splitsByVariant.keySet().stream().map(ImmutableList::of).collect(toImmutableList())
+            : ImmutableList.of(splitsByVariant.keySet().asList());
+
+    // Paths of the APKs serialized so far, so that APKs identical to ones of previously serialized
+    // variants are not serialized again.
+    Map<Fingerprint, ZipPath> relativePathsByFingerprint = new HashMap<>();
+    int foldedApkCount = 0;
     ImmutableList.Builder<Variant> variants = ImmutableList.builder();
-    for (VariantKey variantKey : finalSplitsByVariant.keySet()) {
-      Variant.Builder variant =
-          Variant.newBuilder()
-              .setVariantNumber(variantNumberByVariantKey.get(variantKey))
-              .setTargeting(variantKey.getVariantTargeting())
-              .setVariantProperties(getVariantProperties(finalSplitsByVariant.get(variantKey)));
-
-      Multimap<BundleModuleName, ModuleSplit> splitsByModuleName =
-          finalSplitsByVariant.get(variantKey).stream()
-              .collect(groupingBySortedKeys(ModuleSplit::getModuleName));
-
-      for (BundleModuleName moduleName : splitsByModuleName.keySet()) {
-        variant.addApkSet(
-            ApkSet.newBuilder()
-                .setModuleMetadata(
-                    bundle
-                        .getModule(moduleName)
-                        .getModuleMetadata(
-                            variant
-                                .getTargeting()
-                                .getSdkRuntimeTargeting()
-                                .getRequiresSdkRuntime()))
-                .addAllApkDescription(
-                    splitsByModuleName.get(moduleName).stream()
-                        .map(split -> splitsByRelativePath.inverse().get(split))
-                        .map(apkDescriptionsByRelativePath::get)
-                        .collect(toImmutableList())));
+    for (ImmutableList<VariantKey> variantKeys : variantKeyBatches) {
+      // 1. Remove APKs not matching the device spec.
+      // 2. Modify the APKs based on the ApkModifier.
+      // 3. Serialize all APKs in parallel.
+
+      // Modifies the APK using APK modifier, then returns a map by extracting the variant
+      // of APK first and later clearing out its variant targeting.
+      ImmutableListMultimap<VariantKey, ModuleSplit> finalSplitsByVariant =
+          variantKeys.stream()
+              .flatMap(
+                  variantKey ->
+                      getSplitsOfVariant(
+                              variantKey, splitsByVariant, variantSplitsGenerator, deviceFilter)
+                          .stream()
+                          .filter(deviceFilter)
+                          .map(split -> Maps.immutableEntry(variantKey, split)))
+              .collect(
+                  groupingBySortedKeys(
+                      Entry::getKey,
+                      entry ->
+                          clearVariantTargeting(
+                              modifyApk(
+                                  entry.getValue(),
+                                  variantNumberByVariantKey.get(entry.getKey())))));
+
+      // After variant targeting of APKs are cleared, there might be duplicate APKs
+      // which are removed and the distinct APKs are then serialized in parallel.
+      // Splits are compared by fingerprint, which is cheaper than comparing them structurally.
+      Map<Fingerprint, ModuleSplit> newSplitsByFingerprint = new LinkedHashMap<>();
+      finalSplitsByVariant.values().stream()
+          .filter(split -> !relativePathsByFingerprint.containsKey(split.getFingerprint()))
+          .forEach(split -> newSplitsByFingerprint.putIfAbsent(split.getFingerprint(), split));
+      foldedApkCount += finalSplitsByVariant.size() - newSplitsByFingerprint.size();
+
+      newSplitsByFingerprint.forEach(
+          (fingerprint, split) -> relativePathsByFingerprint.put(fingerprint, session.add(split)));
+      session.serializePendingSplits();
+
+      // Build the result proto.
+      for (VariantKey variantKey : finalSplitsByVariant.keySet()) {
+        Variant.Builder variant =
+            Variant.newBuilder()
+                .setVariantNumber(variantNumberByVariantKey.get(variantKey))
+                .setTargeting(variantKey.getVariantTargeting())
+                .setVariantProperties(getVariantProperties(finalSplitsByVariant.get(variantKey)));
+
+        Multimap<BundleModuleName, ModuleSplit> splitsByModuleName =
+            finalSplitsByVariant.get(variantKey).stream()
+                .collect(groupingBySortedKeys(ModuleSplit::getModuleName));
+
+        for (BundleModuleName moduleName : splitsByModuleName.keySet()) {
+          variant.addApkSet(
+              ApkSet.newBuilder()
+                  .setModuleMetadata(
+                      bundle
+                          .getModule(moduleName)
+                          .getModuleMetadata(
+                              variant
+                                  .getTargeting()
+                                  .getSdkRuntimeTargeting()
+                                  .getRequiresSdkRuntime()))
+                  .addAllApkDescription(
+                      splitsByModuleName.get(moduleName).stream()
+                          .map(split -> relativePathsByFingerprint.get(split.getFingerprint()))
+                          .map(session::getApkDescription)
+                          .collect(toImmutableList())));
+        }
+        variants.add(variant.build());
       }
-      variants.add(variant.build());
     }
+    // Splits added to the session before the APKs, if no APKs were serialized.
+    session.serializePendingSplits();
+    apkSerializer.logVerbose(
+        "Folded %d identical APKs of different variants into %d distinct APKs.",
+        foldedApkCount, relativePathsByFingerprint.size());
 
     return variants.build();
   }
 
-  @VisibleForTesting
-  ImmutableList<AssetSliceSet> serializeAssetSlices(
-      Path outputDirectory,
+  private static ImmutableList<ModuleSplit> getSplitsOfVariant(
+      VariantKey variantKey,
+      ImmutableListMultimap<VariantKey, ModuleSplit> splitsByVariant,
+      Optional<VariantSplitsGenerator> variantSplitsGenerator,
+      Predicate<ModuleSplit> deviceFilter) {
+    ImmutableList<ModuleSplit> moduleSplits = splitsByVariant.get(variantKey);
+    if (variantSplitsGenerator.isPresent() && moduleSplits.stream().noneMatch(deviceFilter)) {
+      // The variant doesn't match the device, its splits don't need to be generated.
+      return ImmutableList.of();
+    }
+    return variantSplitsGenerator
+        .map(generator -> generator.generateSplits(variantKey, moduleSplits))
+        .orElse(moduleSplits);
+  }
+
+  /**
+   * Adds the asset slices matching the device spec to the serialization session, and returns them
+   * keyed by their relative path.
+   */
+  private ImmutableMap<ZipPath, ModuleSplit> addAssetSlices(
+      SerializationSession session,
       GeneratedAssetSlices generatedAssetSlices,
       Optional<DeviceSpec> deviceSpec) {
 
@@ -338,20 +437,19 @@ public class ApkSerializerManager {
                 ::matchesModuleSplitByTargeting
             : alwaysTrue();
 
-    ImmutableMap<ZipPath, ModuleSplit> assetSplitsByRelativePath =
-        generatedAssetSlices.getAssetSlices().stream()
-            .filter(deviceFilter)
-            .collect(toImmutableMap(apkPathManager::getApkPath, identity()));
-
-    ImmutableMap<ZipPath, ApkDescription> apkDescriptionsByRelativePath =
-        apkSerializer.serialize(outputDirectory, assetSplitsByRelativePath);
+    return generatedAssetSlices.getAssetSlices().stream()
+        .filter(deviceFilter)
+        .collect(toImmutableMap(session::add, identity()));
+  }
 
+  private ImmutableList<AssetSliceSet> getAssetSliceSets(
+      SerializationSession session, ImmutableMap<ZipPath, ModuleSplit> assetSlicesByRelativePath) {
     ImmutableMap<BundleModuleName, ImmutableList<ApkDescription>> serializedApksByModuleName =
-        assetSplitsByRelativePath.keySet().stream()
+        assetSlicesByRelativePath.keySet().stream()
             .collect(
                 groupingByDeterministic(
-                    relativePath -> assetSplitsByRelativePath.get(relativePath).getModuleName(),
-                    mapping(apkDescriptionsByRelativePath::get, toImmutableList())));
+                    relativePath -> assetSlicesByRelativePath.get(relativePath).getModuleName(),
+                    mapping(session::getApkDescription, toImmutableList())));
 
     return serializedApksByModuleName.entrySet().stream()
         .map(
@@ -636,4 +734,45 @@ public class ApkSerializerManager {
             StringValue.of(countrySetSuffix.map(SuffixStripping::getDefaultSuffix).orElse("")))
         .build();
   }
+
+  /**
+   * Serialization of the APKs and asset slices of an APK Set.
+   *
+   * <p>Splits added to the session are serialized together by the next call to {@link
+   * #serializePendingSplits}, so that the module entries they share are packed only once.
+   */
+  private final class SerializationSession {
+    private final Path outputDirectory;
+    private final Map<ZipPath, ModuleSplit> pendingSplitsByRelativePath = new LinkedHashMap<>();
+    private final Map<ZipPath, ApkDescription> apkDescriptionsByRelativePath = new HashMap<>();
+
+    SerializationSession(Path outputDirectory) {
+      this.outputDirectory = outputDirectory;
+    }
+
+    /** Allocates the path of the split and adds it to the pending splits. */
+    ZipPath add(ModuleSplit split) {
+      ZipPath relativePath = apkPathManager.getApkPath(split);
+      pendingSplitsByRelativePath.put(relativePath, split);
+      return relativePath;
+    }
+
+    /** Serializes the pending splits, if any. */
+    void serializePendingSplits() {
+      if (pendingSplitsByRelativePath.isEmpty()) {
+        return;
+      }
+      apkDescriptionsByRelativePath.putAll(
+          apkSerializer.serialize(
+              outputDirectory, ImmutableMap.copyOf(pendingSplitsByRelativePath)));
+      pendingSplitsByRelativePath.clear();
+    }
+
+    /** Returns the description of a split which has been serialized. */
+    ApkDescription getApkDescription(ZipPath relativePath) {
+      ApkDescription apkDescription = apkDescriptionsByRelativePath.get(relativePath);
+      checkState(apkDescription != null, "APK '%s' has not been serialized.", relativePath);
+      return apkDescription;
+    }
+  }
 }
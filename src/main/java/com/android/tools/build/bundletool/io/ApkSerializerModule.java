@@ -17,6 +17,7 @@ package com.android.tools.build.bundletool.io;
 
 import static java.lang.annotation.RetentionPolicy.RUNTIME;
 
+import com.android.tools.build.bundletool.model.utils.SystemEnvironmentProvider;
 import com.android.tools.build.bundletool.optimizations.ApkOptimizations;
 import dagger.Binds;
 import dagger.Module;
@@ -47,6 +48,11 @@ public abstract class ApkSerializerModule {
     throw new IllegalArgumentException("Wrong native libraries alignment.");
   }
 
+  @Provides
+  static SystemEnvironmentProvider provideSystemEnvironmentProvider() {
+    return SystemEnvironmentProvider.DEFAULT_PROVIDER;
+  }
+
   /**
    * Qualifying annotation of a {@code int} for alignment that should be used for native libraries.
    */
@@ -32,6 +32,7 @@ import com.android.tools.build.bundletool.model.SourceStamp;
 import com.android.tools.build.bundletool.model.WearApkLocator;
 import com.android.tools.build.bundletool.model.ZipPath;
 import com.android.tools.build.bundletool.model.exceptions.CommandExecutionException;
+import com.android.tools.build.bundletool.model.utils.files.FileUtils;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.errorprone.annotations.CheckReturnValue;
@@ -73,11 +74,42 @@ class ApkSigner {
       return Optional.empty();
     }
 
-    ApksigSigningConfiguration signingConfig =
-        signingConfigProvider.get().getSigningConfiguration(ApkDescription.fromModuleSplit(split));
-
     try (TempDirectory tempDirectory = new TempDirectory(getClass().getSimpleName())) {
       Path signedApkPath = tempDirectory.getPath().resolve("signed.apk");
+      SigningDescription signingDescription =
+          signApk(apkPath, signedApkPath, split, signingConfigProvider.get());
+      Files.move(signedApkPath, apkPath, REPLACE_EXISTING);
+      return Optional.of(signingDescription);
+    } catch (IOException e) {
+      throw CommandExecutionException.builder()
+          .withCause(e)
+          .withInternalMessage("Unable to sign APK.")
+          .build();
+    }
+  }
+
+  /**
+   * Signs the unsigned APK at {@code apkPath} with the configuration of {@code signing}, leaving
+   * the unsigned APK untouched.
+   */
+  void signApkForAdditionalSigning(
+      Path apkPath, ZipPath apkRelativePath, ModuleSplit split, AdditionalApkSigning signing) {
+    Path signedApkPath = signing.getSignedApkPath(apkRelativePath);
+    FileUtils.createDirectories(signedApkPath.getParent());
+    SigningDescription signingDescription =
+        signApk(apkPath, signedApkPath, split, signing.getSigningConfigurationProvider());
+    signing.recordSignedApk(apkRelativePath, Optional.of(signingDescription));
+  }
+
+  private SigningDescription signApk(
+      Path apkPath,
+      Path signedApkPath,
+      ModuleSplit split,
+      SigningConfigurationProvider signingConfigProvider) {
+    ApksigSigningConfiguration signingConfig =
+        signingConfigProvider.getSigningConfiguration(ApkDescription.fromModuleSplit(split));
+
+    try {
       com.android.apksig.ApkSigner.Builder apkSigner =
           new com.android.apksig.ApkSigner.Builder(
                   signingConfig.getSignerConfigs().stream()
@@ -102,8 +134,7 @@ class ApkSigner {
                     stampConfig.getSigningConfiguration().getSignerConfig()));
           });
       apkSigner.build().sign();
-      Files.move(signedApkPath, apkPath, REPLACE_EXISTING);
-      return Optional.of(signingDescription(signingConfig));
+      return signingDescription(signingConfig);
     } catch (IOException
         | ApkFormatException
         | NoSuchAlgorithmException
@@ -125,6 +156,17 @@ class ApkSigner {
     return SigningDescription.newBuilder().setSignedWithRotatedKey(usesKeyRotation).build();
   }
 
+  /** Returns whether the given {@link ModuleSplit} contains embedded APKs which must be signed. */
+  boolean hasEmbeddedApksToSign(ModuleSplit split) {
+    ImmutableSet<ZipPath> wear1ApkPaths =
+        ImmutableSet.copyOf(WearApkLocator.findEmbeddedWearApkPaths(split));
+    return split.getEntries().stream()
+        .anyMatch(
+            entry ->
+                entry.getShouldSign()
+                    || wear1ApkPaths.contains(ApkSerializerHelper.toApkEntryPath(entry.getPath())));
+  }
+
   /**
    * Returns a new {@link ModuleSplit} with the same entries as the one given as parameter but with
    * embedded APKs signed.
@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.tools.build.bundletool.io;
+
+import com.google.auto.value.AutoValue;
+
+/** Counters of the work done by a {@link ModuleEntriesPacker} to deduplicate module entries. */
+@AutoValue
+abstract class DeduplicationStats {
+
+  static DeduplicationStats create(
+      long deduplicatedEntryCount,
+      long deduplicatedBytes,
+      long hashedEntryCount,
+      long hashedBytes,
+      long entriesResolvedByChecksum) {
+    return new AutoValue_DeduplicationStats(
+        deduplicatedEntryCount,
+        deduplicatedBytes,
+        hashedEntryCount,
+        hashedBytes,
+        entriesResolvedByChecksum);
+  }
+
+  /**
+   * Number of module entries which were not packed because an entry with identical content was
+   * already in the pack.
+   */
+  abstract long getDeduplicatedEntryCount();
+
+  /** Number of uncompressed bytes which were not packed thanks to deduplication. */
+  abstract long getDeduplicatedBytes();
+
+  /** Number of module entries whose SHA-256 hash was compared with the one of another entry. */
+  abstract long getHashedEntryCount();
+
+  /** Total uncompressed size of the module entries whose SHA-256 hash was compared. */
+  abstract long getHashedBytes();
+
+  /**
+   * Number of module entries found to be unique by their size and CRC-32 only, without computing
+   * their SHA-256 hash.
+   */
+  abstract long getEntriesResolvedByChecksum();
+
+  DeduplicationStats plus(DeduplicationStats other) {
+    return create(
+        getDeduplicatedEntryCount() + other.getDeduplicatedEntryCount(),
+        getDeduplicatedBytes() + other.getDeduplicatedBytes(),
+        getHashedEntryCount() + other.getHashedEntryCount(),
+        getHashedBytes() + other.getHashedBytes(),
+        getEntriesResolvedByChecksum() + other.getEntriesResolvedByChecksum());
+  }
+}
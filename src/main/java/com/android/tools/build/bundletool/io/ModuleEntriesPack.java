@@ -65,13 +65,18 @@ class ModuleEntriesPack {
    */
   private final IdentityHashMap<ModuleEntry, String> entryNameByModuleEntry;
 
+  /** Counters of the deduplication of module entries with identical content. */
+  private final DeduplicationStats deduplicationStats;
+
   ModuleEntriesPack(
       ImmutableSet<String> namePrefixes,
       ZipMap zipMap,
-      IdentityHashMap<ModuleEntry, String> entryNameByModuleEntry) {
+      IdentityHashMap<ModuleEntry, String> entryNameByModuleEntry,
+      DeduplicationStats deduplicationStats) {
     this.namePrefixes = namePrefixes;
     this.zipMap = zipMap;
     this.entryNameByModuleEntry = entryNameByModuleEntry;
+    this.deduplicationStats = deduplicationStats;
   }
 
   Entry getZipEntry(ModuleEntry entry) {
@@ -86,6 +91,11 @@ class ModuleEntriesPack {
     return entryNameByModuleEntry.containsKey(entry);
   }
 
+  /** Returns the counters of the deduplication of the entries of this pack. */
+  DeduplicationStats getDeduplicationStats() {
+    return deduplicationStats;
+  }
+
   /**
    * Selects module entries as a {@link ZipSource} which next can be added into a new {@link
    * ZipArchive}.
@@ -157,7 +167,8 @@ class ModuleEntriesPack {
       return new ModuleEntriesPack(
           Sets.union(to.namePrefixes, from.namePrefixes).immutableCopy(),
           ZipMap.from(to.zipMap.getPath()),
-          mergedNames);
+          mergedNames,
+          deduplicationStats.plus(anotherPack.deduplicationStats));
     } catch (IOException e) {
       throw new UncheckedIOException(e);
     }
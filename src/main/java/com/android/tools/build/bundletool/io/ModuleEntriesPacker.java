@@ -16,17 +16,31 @@
 package com.android.tools.build.bundletool.io;
 
 import com.android.tools.build.bundletool.model.ModuleEntry;
+import com.android.tools.build.bundletool.model.ModuleEntry.ContentChecksum;
 import com.android.tools.build.bundletool.model.ModuleEntry.ModuleEntryLocationInZipSource;
+import com.android.zipflinger.Entry;
+import com.android.zipflinger.Source;
+import com.android.zipflinger.ZipArchive;
 import com.android.zipflinger.ZipMap;
+import com.android.zipflinger.ZipSource;
+import com.google.auto.value.AutoValue;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.hash.HashCode;
 import com.google.common.io.ByteSource;
 import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 
 /** Class to build {@link ModuleEntriesPack}. */
 class ModuleEntriesPacker {
@@ -35,9 +49,16 @@ class ModuleEntriesPacker {
   private final IdentityHashMap<ModuleEntry, String> entryNameByModuleEntry;
   private final Map<String, ByteSource> contentByEntryName;
   private final Map<ModuleEntryLocationInZipSource, String> assignedEntryNameByBundleLocation;
+  private final Map<SizeAndCrc32, List<ModuleEntry>> assignedEntriesBySizeAndCrc32;
 
   private final NameAssigner nameAssigner;
 
+  private final Set<ModuleEntry> hashedEntries = Sets.newIdentityHashSet();
+  private long deduplicatedEntryCount = 0;
+  private long deduplicatedBytes = 0;
+  private long hashedBytes = 0;
+  private long entriesResolvedByChecksum = 0;
+
   public ModuleEntriesPacker(Path outputZip, String namePrefix) {
     this.namePrefix = namePrefix;
     this.outputZip = outputZip;
@@ -45,21 +66,29 @@ class ModuleEntriesPacker {
     entryNameByModuleEntry = Maps.newIdentityHashMap();
     contentByEntryName = Maps.newHashMap();
     assignedEntryNameByBundleLocation = Maps.newHashMap();
+    assignedEntriesBySizeAndCrc32 = Maps.newHashMap();
   }
 
   /**
    * Adds {@link ModuleEntry} to the pack.
    *
    * <p>At this point entry is assigned a name and is added into a list of entries to be packed.
+   * Entries read from the same bundle location, or having identical content, share the same name
+   * so that their content is packed only once.
    */
   ModuleEntriesPacker add(ModuleEntry entry) {
     if (entryNameByModuleEntry.containsKey(entry)) {
       return this;
     }
+    Optional<String> nameAssignedByBundleLocation =
+        entry.getFileLocation().map(assignedEntryNameByBundleLocation::get);
     String entryName =
-        entry.getFileLocation().isPresent()
-            ? assignedByBundleLocation(entry)
-            : nameAssigner.nextName();
+        nameAssignedByBundleLocation.isPresent()
+            ? nameAssignedByBundleLocation.get()
+            : assignedByContent(entry);
+    entry
+        .getFileLocation()
+        .ifPresent(location -> assignedEntryNameByBundleLocation.putIfAbsent(location, entryName));
     entryNameByModuleEntry.put(entry, entryName);
     contentByEntryName.putIfAbsent(entryName, entry.getContent());
     return this;
@@ -72,19 +101,127 @@ class ModuleEntriesPacker {
   public ModuleEntriesPack pack(Zipper zipper) {
     try {
       zipper.zip(outputZip, ImmutableMap.copyOf(contentByEntryName));
+      return createPack();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
 
-      IdentityHashMap<ModuleEntry, String> copyOfEntryNameByModuleEntry = Maps.newIdentityHashMap();
-      copyOfEntryNameByModuleEntry.putAll(entryNameByModuleEntry);
-      return new ModuleEntriesPack(
-          ImmutableSet.of(namePrefix), ZipMap.from(outputZip), copyOfEntryNameByModuleEntry);
+  /**
+   * Same as {@link #pack(Zipper)}, except that entries which are stored compressed inside the
+   * bundle they were read from are copied into the pack as raw compressed bytes.
+   *
+   * <p>Such entries are neither inflated nor deflated again: their compressed payload, CRC and
+   * sizes are taken as-is from the bundle. Only the remaining entries are passed to the {@link
+   * Zipper}.
+   */
+  public ModuleEntriesPack packReusingBundleCompression(Zipper zipper) {
+    try {
+      Map<String, ByteSource> contentToCompress = new HashMap<>(contentByEntryName);
+      Map<Path, ZipSource> bundleSources = new LinkedHashMap<>();
+      Map<Path, ZipSource> bundleSourcesWithSelectedEntries = new LinkedHashMap<>();
+      for (Map.Entry<ModuleEntryLocationInZipSource, String> locationAndName :
+          assignedEntryNameByBundleLocation.entrySet()) {
+        ModuleEntryLocationInZipSource location = locationAndName.getKey();
+        String entryName = locationAndName.getValue();
+        if (!contentToCompress.containsKey(entryName)) {
+          // Several bundle locations may share a name when their content is identical.
+          continue;
+        }
+        Path pathToBundle = location.pathToFile();
+        // We cannot use computeIfAbsent because new ZipSource may throw.
+        ZipSource bundleSource =
+            bundleSources.containsKey(pathToBundle)
+                ? bundleSources.get(pathToBundle)
+                : new ZipSource(pathToBundle);
+        bundleSources.putIfAbsent(pathToBundle, bundleSource);
+
+        String entryPathInBundle = location.entryPathInFile().toString();
+        Entry bundleEntry = bundleSource.entries().get(entryPathInBundle);
+        if (bundleEntry == null || !bundleEntry.isCompressed()) {
+          continue;
+        }
+        bundleSource.select(
+            entryPathInBundle,
+            /* newName= */ entryName,
+            ZipSource.COMPRESSION_NO_CHANGE,
+            Source.NO_ALIGNMENT);
+        bundleSourcesWithSelectedEntries.putIfAbsent(pathToBundle, bundleSource);
+        contentToCompress.remove(entryName);
+      }
+
+      zipper.zip(outputZip, ImmutableMap.copyOf(contentToCompress));
+      if (!bundleSourcesWithSelectedEntries.isEmpty()) {
+        try (ZipArchive archive = new ZipArchive(outputZip)) {
+          for (ZipSource bundleSource : bundleSourcesWithSelectedEntries.values()) {
+            archive.add(bundleSource);
+          }
+        }
+      }
+      return createPack();
     } catch (IOException e) {
       throw new UncheckedIOException(e);
     }
   }
 
-  private String assignedByBundleLocation(ModuleEntry entry) {
-    return assignedEntryNameByBundleLocation.computeIfAbsent(
-        entry.getFileLocation().get(), (location) -> nameAssigner.nextName());
+  private ModuleEntriesPack createPack() throws IOException {
+    IdentityHashMap<ModuleEntry, String> copyOfEntryNameByModuleEntry = Maps.newIdentityHashMap();
+    copyOfEntryNameByModuleEntry.putAll(entryNameByModuleEntry);
+    return new ModuleEntriesPack(
+        ImmutableSet.of(namePrefix),
+        ZipMap.from(outputZip),
+        copyOfEntryNameByModuleEntry,
+        DeduplicationStats.create(
+            deduplicatedEntryCount,
+            deduplicatedBytes,
+            hashedEntries.size(),
+            hashedBytes,
+            entriesResolvedByChecksum));
+  }
+
+  /**
+   * Returns the name of an already added entry with the same content, or a new name.
+   *
+   * <p>Entries are first bucketed by size and CRC-32, which are known without reading the content
+   * for entries read from a zip file. SHA-256 hashes are only computed to tell apart entries
+   * falling into the same bucket.
+   */
+  private String assignedByContent(ModuleEntry entry) {
+    ContentChecksum checksum = entry.getContentChecksum();
+    List<ModuleEntry> sameSizeAndCrc32Entries =
+        assignedEntriesBySizeAndCrc32.computeIfAbsent(
+            SizeAndCrc32.create(checksum.getSize(), checksum.getCrc32()),
+            key -> new ArrayList<>());
+    if (sameSizeAndCrc32Entries.isEmpty()) {
+      entriesResolvedByChecksum++;
+    }
+    for (ModuleEntry assignedEntry : sameSizeAndCrc32Entries) {
+      if (getSha256Hash(assignedEntry).equals(getSha256Hash(entry))) {
+        deduplicatedEntryCount++;
+        deduplicatedBytes += checksum.getSize();
+        return entryNameByModuleEntry.get(assignedEntry);
+      }
+    }
+    sameSizeAndCrc32Entries.add(entry);
+    return nameAssigner.nextName();
+  }
+
+  private HashCode getSha256Hash(ModuleEntry entry) {
+    if (hashedEntries.add(entry)) {
+      hashedBytes += entry.getContentChecksum().getSize();
+    }
+    return entry.getContentSha256Hash();
+  }
+
+  @AutoValue
+  abstract static class SizeAndCrc32 {
+    static SizeAndCrc32 create(long size, long crc32) {
+      return new AutoValue_ModuleEntriesPacker_SizeAndCrc32(size, crc32);
+    }
+
+    abstract long getSize();
+
+    abstract long getCrc32();
   }
 
   /** Helper class that allows to generate zip entry names. */
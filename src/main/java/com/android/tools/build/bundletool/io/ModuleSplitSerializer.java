@@ -28,6 +28,8 @@ import com.android.bundle.Commands.SigningDescription;
 import com.android.bundle.Config.BundleConfig;
 import com.android.bundle.Config.Compression.ApkCompressionAlgorithm;
 import com.android.tools.build.bundletool.androidtools.P7ZipCommand;
+import com.android.tools.build.bundletool.commands.BuildApksModule.IoExecutorService;
+import com.android.tools.build.bundletool.commands.BuildApksModule.ReuseBundleCompression;
 import com.android.tools.build.bundletool.commands.BuildApksModule.VerboseLogs;
 import com.android.tools.build.bundletool.io.ApkSerializerModule.NativeLibrariesAlignmentInBytes;
 import com.android.tools.build.bundletool.model.ApkListener;
@@ -35,6 +37,7 @@ import com.android.tools.build.bundletool.model.BundleModule.SpecialModuleEntry;
 import com.android.tools.build.bundletool.model.ModuleEntry;
 import com.android.tools.build.bundletool.model.ModuleSplit;
 import com.android.tools.build.bundletool.model.ZipPath;
+import com.android.tools.build.bundletool.model.exceptions.CommandExecutionException;
 import com.android.tools.build.bundletool.model.utils.PathMatcher;
 import com.android.tools.build.bundletool.model.utils.files.FileUtils;
 import com.android.tools.build.bundletool.model.version.Version;
@@ -48,11 +51,16 @@ import com.google.common.io.ByteSource;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import java.io.IOException;
+import java.io.PrintStream;
 import java.io.UncheckedIOException;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Comparator;
+import java.util.List;
 import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
 import java.util.regex.Pattern;
 import java.util.zip.Deflater;
 import javax.inject.Inject;
@@ -69,22 +77,29 @@ public class ModuleSplitSerializer extends ApkSerializer {
   private final CacheablePathMatcher uncompressedPathMatchers;
   private final Version bundletoolVersion;
   private final ListeningExecutorService executorService;
+  private final ListeningExecutorService ioExecutorService;
   private final boolean use7ZipCompression;
   private final Optional<P7ZipCommand> p7ZipCommand;
   private final int nativeLibraryAlignment;
+  private final boolean reuseBundleCompression;
+  private final ImmutableList<AdditionalApkSigning> additionalApkSignings;
 
   @Inject
   ModuleSplitSerializer(
       Optional<ApkListener> apkListener,
       @VerboseLogs boolean verbose,
+      Optional<PrintStream> outputPrintStream,
       Aapt2ResourceConverter aapt2ResourceConverterFactory,
       ApkSigner apkSigner,
       BundleConfig bundleConfig,
       Version bundletoolVersion,
       ListeningExecutorService executorService,
+      @IoExecutorService ListeningExecutorService ioExecutorService,
       Optional<P7ZipCommand> p7ZipCommand,
-      @NativeLibrariesAlignmentInBytes int nativeLibrariesAlignment) {
-    super(apkListener, verbose);
+      @NativeLibrariesAlignmentInBytes int nativeLibrariesAlignment,
+      @ReuseBundleCompression boolean reuseBundleCompression,
+      ImmutableList<AdditionalApkSigning> additionalApkSignings) {
+    super(apkListener, verbose, outputPrintStream);
     this.aapt2ResourceConverter = aapt2ResourceConverterFactory;
     this.apkSigner = apkSigner;
     this.uncompressedPathMatchers =
@@ -99,8 +114,11 @@ public class ModuleSplitSerializer extends ApkSerializer {
             .equals(ApkCompressionAlgorithm.P7ZIP);
     this.bundletoolVersion = bundletoolVersion;
     this.executorService = executorService;
+    this.ioExecutorService = ioExecutorService;
     this.p7ZipCommand = p7ZipCommand;
     this.nativeLibraryAlignment = nativeLibrariesAlignment;
+    this.reuseBundleCompression = reuseBundleCompression;
+    this.additionalApkSignings = additionalApkSignings;
   }
 
   /**
@@ -112,6 +130,17 @@ public class ModuleSplitSerializer extends ApkSerializer {
   @Override
   public ImmutableMap<ZipPath, ApkDescription> serialize(
       Path outputDirectory, ImmutableMap<ZipPath, ModuleSplit> splitsByRelativePath) {
+    if (!additionalApkSignings.isEmpty()
+        && splitsByRelativePath.values().stream().anyMatch(apkSigner::hasEmbeddedApksToSign)) {
+      // Embedded APKs are signed before the APKs are serialized, so they could only be signed with
+      // the main signing configuration.
+      throw CommandExecutionException.builder()
+          .withInternalMessage(
+              "Additional signing configurations are not supported for APKs with embedded APKs to"
+                  + " sign.")
+          .build();
+    }
+
     // Prepare original splits by:
     //  * signing embedded APKs
     //  * injecting manifest and resource table as module entries.
@@ -136,13 +165,23 @@ public class ModuleSplitSerializer extends ApkSerializer {
       ModuleEntriesPack maybeCompressedEntriesPack =
           buildCompressedEntriesPack(filesManager, binarySplits);
 
+      // Force uncompressed entries which are also stored uncompressed inside the bundle are
+      // copied into final APKs straight from the bundle, so they don't need to be packed.
+      StoredBundleEntries storedBundleEntries =
+          StoredBundleEntries.create(
+              binarySplits.stream()
+                  .flatMap(split -> split.getEntries().stream())
+                  .filter(ModuleEntry::getForceUncompressed)
+                  .collect(toImmutableList()));
+
       // Build a pack with entries that are uncompressed in final APKs: force uncompressed entries
       // + entries that have very low compression ratio.
       ModuleEntriesPack uncompressedEntriesPack =
           buildUncompressedEntriesPack(
               filesManager.getUncompressedEntriesPackPath(),
               binarySplits,
-              maybeCompressedEntriesPack);
+              maybeCompressedEntriesPack,
+              storedBundleEntries);
 
       // Now content of all binary apks is already moved to compressed/uncompressed packs. Delete
       // them to free space.
@@ -153,21 +192,35 @@ public class ModuleSplitSerializer extends ApkSerializer {
       // has very low compression ratio, it makes no sense to put it in compressed form.
       ModuleEntriesPack allEntriesPack =
           maybeCompressedEntriesPack.mergeWith(uncompressedEntriesPack);
-
-      // Serialize and sign final APKs.
+      DeduplicationStats deduplicationStats = allEntriesPack.getDeduplicationStats();
+      logVerbose(
+          "%d module entries had the same content as another entry and were packed only once,"
+              + " saving %d bytes.",
+          deduplicationStats.getDeduplicatedEntryCount(),
+          deduplicationStats.getDeduplicatedBytes());
+      logVerbose(
+          "Compared SHA-256 hashes of %d module entries (%d bytes); %d entries were found unique"
+              + " by size and CRC-32 only.",
+          deduplicationStats.getHashedEntryCount(),
+          deduplicationStats.getHashedBytes(),
+          deduplicationStats.getEntriesResolvedByChecksum());
+
+      // Serialize and sign final APKs. This mostly copies entries from the packs, so it runs on
+      // the I/O executor while the CPU-bound executor is free for other work.
       ImmutableList<ListenableFuture<ApkDescription>> apkDescriptions =
           Streams.zip(
                   splitsByRelativePath.keySet().stream(),
                   binarySplits.stream(),
                   (relativePath, split) ->
-                      executorService.submit(
+                      ioExecutorService.submit(
                           () ->
                               serializeAndSignSplit(
                                   outputDirectory,
                                   relativePath,
                                   split,
                                   allEntriesPack,
-                                  uncompressedEntriesPack)))
+                                  uncompressedEntriesPack,
+                                  storedBundleEntries)))
               .collect(toImmutableList());
 
       return ConcurrencyUtils.waitForAll(apkDescriptions).stream()
@@ -205,6 +258,9 @@ public class ModuleSplitSerializer extends ApkSerializer {
   /**
    * Builds pack with compressed entries, resource entries are compressed with the best compression
    * level (9) and all others with default compression level (6).
+   *
+   * <p>If {@code reuseBundleCompression} is enabled, non-resource entries that are already
+   * compressed inside the bundle keep their compressed form from the bundle.
    */
   private ModuleEntriesPack buildDeflateCompressedEntriesPack(
       SerializationFilesManager filesManager, Collection<ModuleSplit> splits) {
@@ -229,18 +285,24 @@ public class ModuleSplitSerializer extends ApkSerializer {
     ModuleEntriesPack resourceEntriesPack =
         resourceEntriesPacker.pack(
             Zipper.compressedZip(executorService, Deflater.BEST_COMPRESSION));
+    Zipper otherEntriesZipper = Zipper.compressedZip(executorService, Deflater.DEFAULT_COMPRESSION);
     ModuleEntriesPack otherEntriesPack =
-        otherEntriesPacker.pack(
-            Zipper.compressedZip(executorService, Deflater.DEFAULT_COMPRESSION));
+        reuseBundleCompression
+            ? otherEntriesPacker.packReusingBundleCompression(otherEntriesZipper)
+            : otherEntriesPacker.pack(otherEntriesZipper);
 
     return resourceEntriesPack.mergeWith(otherEntriesPack);
   }
 
   private ModuleEntriesPack buildUncompressedEntriesPack(
-      Path outputPath, Collection<ModuleSplit> splits, ModuleEntriesPack compressedPack) {
+      Path outputPath,
+      Collection<ModuleSplit> splits,
+      ModuleEntriesPack compressedPack,
+      StoredBundleEntries storedBundleEntries) {
     ModuleEntriesPacker entriesPacker = new ModuleEntriesPacker(outputPath, /* namePrefix= */ "u_");
     splits.stream()
         .flatMap(split -> split.getEntries().stream())
+        .filter(entry -> !storedBundleEntries.contains(entry))
         .filter(
             entry ->
                 entry.getForceUncompressed()
@@ -254,10 +316,18 @@ public class ModuleSplitSerializer extends ApkSerializer {
       ZipPath apkRelativePath,
       ModuleSplit split,
       ModuleEntriesPack allEntriesPack,
-      ModuleEntriesPack uncompressedEntriesPack) {
+      ModuleEntriesPack uncompressedEntriesPack,
+      StoredBundleEntries storedBundleEntries) {
     Path outputPath = outputDirectory.resolve(apkRelativePath.toString());
 
-    serializeSplit(outputPath, split, allEntriesPack, uncompressedEntriesPack);
+    serializeSplit(
+        outputPath, split, allEntriesPack, uncompressedEntriesPack, storedBundleEntries);
+    // The unsigned APK is signed with the additional signing configurations first, as it is signed
+    // in place with the main signing configuration.
+    for (AdditionalApkSigning additionalApkSigning : additionalApkSignings) {
+      apkSigner.signApkForAdditionalSigning(
+          outputPath, apkRelativePath, split, additionalApkSigning);
+    }
     Optional<SigningDescription> signingDescription = apkSigner.signApk(outputPath, split);
 
     ApkDescription apkDescription =
@@ -271,7 +341,8 @@ public class ModuleSplitSerializer extends ApkSerializer {
       Path outputPath,
       ModuleSplit split,
       ModuleEntriesPack allEntriesPack,
-      ModuleEntriesPack uncompressedEntriesPack) {
+      ModuleEntriesPack uncompressedEntriesPack,
+      StoredBundleEntries storedBundleEntries) {
     FileUtils.createDirectories(outputPath.getParent());
     try (ZipArchive archive = new ZipArchive(outputPath)) {
       ImmutableMap<ZipPath, ModuleEntry> moduleEntriesByName =
@@ -289,12 +360,24 @@ public class ModuleSplitSerializer extends ApkSerializer {
           ImmutableList.sortedCopyOf(
               Comparator.comparing(e -> toApkEntryPath(e.getPath())), moduleEntriesByName.values());
 
-      ZipSource zipSource =
-          allEntriesPack.select(
-              sortedEntries,
-              entry -> toApkEntryPath(entry.getPath(), /* binaryApk= */ true).toString(),
-              entry -> alignmentForEntry(entry, uncompressedEntriesPack));
-      archive.add(zipSource);
+      // Entries are taken either from the packs or straight from the bundle. Consecutive entries
+      // with the same origin are selected together to keep the sorted order inside the APK.
+      Function<ModuleEntry, String> nameFunction =
+          entry -> toApkEntryPath(entry.getPath(), /* binaryApk= */ true).toString();
+      ToLongFunction<ModuleEntry> alignmentFunction =
+          entry -> alignmentForEntry(entry, uncompressedEntriesPack, storedBundleEntries);
+      for (List<ModuleEntry> sameOriginEntries :
+          consecutiveEntriesWithSameOrigin(sortedEntries, storedBundleEntries)) {
+        ImmutableList<ModuleEntry> entries = ImmutableList.copyOf(sameOriginEntries);
+        if (storedBundleEntries.contains(entries.get(0))) {
+          for (ZipSource zipSource :
+              storedBundleEntries.select(entries, nameFunction, alignmentFunction)) {
+            archive.add(zipSource);
+          }
+        } else {
+          archive.add(allEntriesPack.select(entries, nameFunction, alignmentFunction));
+        }
+      }
     } catch (IOException e) {
       throw new UncheckedIOException(e);
     }
@@ -306,8 +389,11 @@ public class ModuleSplitSerializer extends ApkSerializer {
    * <p>Uncompressed native libraries inside APK must be aligned by 4096 and all other uncompressed
    * entries aligned by 4 bytes.
    */
-  private long alignmentForEntry(ModuleEntry entry, ModuleEntriesPack uncompressedEntriesPack) {
-    if (!uncompressedEntriesPack.hasEntry(entry)) {
+  private long alignmentForEntry(
+      ModuleEntry entry,
+      ModuleEntriesPack uncompressedEntriesPack,
+      StoredBundleEntries storedBundleEntries) {
+    if (!uncompressedEntriesPack.hasEntry(entry) && !storedBundleEntries.contains(entry)) {
       return 0;
     }
     return entry.getPath().toString().endsWith(NATIVE_LIBRARIES_SUFFIX)
@@ -315,6 +401,29 @@ public class ModuleSplitSerializer extends ApkSerializer {
         : 4;
   }
 
+  /**
+   * Splits sorted entries into runs of consecutive entries that are either all stored in the
+   * bundle or all packed.
+   */
+  private static ImmutableList<List<ModuleEntry>> consecutiveEntriesWithSameOrigin(
+      ImmutableList<ModuleEntry> sortedEntries, StoredBundleEntries storedBundleEntries) {
+    ImmutableList.Builder<List<ModuleEntry>> runs = ImmutableList.builder();
+    List<ModuleEntry> currentRun = new ArrayList<>();
+    for (ModuleEntry entry : sortedEntries) {
+      if (!currentRun.isEmpty()
+          && storedBundleEntries.contains(currentRun.get(0))
+              != storedBundleEntries.contains(entry)) {
+        runs.add(currentRun);
+        currentRun = new ArrayList<>();
+      }
+      currentRun.add(entry);
+    }
+    if (!currentRun.isEmpty()) {
+      runs.add(currentRun);
+    }
+    return runs.build();
+  }
+
   /**
    * Injects Android manifest and resource table which have special fields {@code
    * ModuleSplit.getAndroidManifest} and {@code ModuleSplit.getResourceTable} as regular module
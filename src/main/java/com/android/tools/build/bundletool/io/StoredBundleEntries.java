@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package com.android.tools.build.bundletool.io;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.android.tools.build.bundletool.model.ModuleEntry;
+import com.android.tools.build.bundletool.model.ModuleEntry.ModuleEntryLocationInZipSource;
+import com.android.zipflinger.Entry;
+import com.android.zipflinger.ZipMap;
+import com.android.zipflinger.ZipSource;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Sets;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * Set of module entries which are stored without compression inside the bundle they were read
+ * from.
+ *
+ * <p>Such entries can be copied into final APKs straight from the bundle, so their content doesn't
+ * need to be copied into an intermediate {@link ModuleEntriesPack} first. This matters for large
+ * assets, which would otherwise be read and written once more for each copy.
+ */
+class StoredBundleEntries {
+
+  /** Zip archives of the bundles that contain at least one of the stored entries. */
+  private final ImmutableMap<Path, ZipMap> zipMapByBundlePath;
+
+  /** Stored entries, compared by identity like entries in {@link ModuleEntriesPack}. */
+  private final Set<ModuleEntry> storedEntries;
+
+  private StoredBundleEntries(
+      ImmutableMap<Path, ZipMap> zipMapByBundlePath, Set<ModuleEntry> storedEntries) {
+    this.zipMapByBundlePath = zipMapByBundlePath;
+    this.storedEntries = storedEntries;
+  }
+
+  /**
+   * Finds among {@code candidateEntries} the ones that are stored without compression inside the
+   * bundle they were read from.
+   */
+  static StoredBundleEntries create(Iterable<ModuleEntry> candidateEntries) {
+    Map<Path, ZipMap> zipMapByBundlePath = new HashMap<>();
+    Set<ModuleEntry> storedEntries = Sets.newIdentityHashSet();
+    try {
+      for (ModuleEntry entry : candidateEntries) {
+        if (!entry.getFileLocation().isPresent()) {
+          continue;
+        }
+        ModuleEntryLocationInZipSource location = entry.getFileLocation().get();
+        Path pathToBundle = location.pathToFile();
+        // We cannot use computeIfAbsent because ZipMap.from may throw.
+        ZipMap zipMap =
+            zipMapByBundlePath.containsKey(pathToBundle)
+                ? zipMapByBundlePath.get(pathToBundle)
+                : ZipMap.from(pathToBundle);
+        zipMapByBundlePath.putIfAbsent(pathToBundle, zipMap);
+
+        Entry zipEntry = zipMap.getEntries().get(location.entryPathInFile().toString());
+        if (zipEntry != null && !zipEntry.isCompressed()) {
+          storedEntries.add(entry);
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return new StoredBundleEntries(
+        ImmutableMap.copyOf(zipMapByBundlePath), Collections.unmodifiableSet(storedEntries));
+  }
+
+  boolean contains(ModuleEntry entry) {
+    return storedEntries.contains(entry);
+  }
+
+  /**
+   * Selects stored module entries as {@link ZipSource}s, which next can be added into a new {@link
+   * com.android.zipflinger.ZipArchive}.
+   *
+   * <p>Consecutive entries from the same bundle are selected into the same source, so adding the
+   * sources in the returned order keeps the entries in the order of {@code moduleEntries}.
+   *
+   * <p>Requires to provide {@code nameFunction} which assigns final names for each {@link
+   * ModuleEntry} and {@code alignmentFunction} which assigns alignment in the final {@link
+   * ZipSource}.
+   */
+  ImmutableList<ZipSource> select(
+      ImmutableList<ModuleEntry> moduleEntries,
+      Function<ModuleEntry, String> nameFunction,
+      ToLongFunction<ModuleEntry> alignmentFunction) {
+    ImmutableList.Builder<ZipSource> sources = ImmutableList.builder();
+    Path currentBundlePath = null;
+    ZipSource source = null;
+    for (ModuleEntry entry : moduleEntries) {
+      checkArgument(contains(entry), "Module entry %s is not stored in the bundle.", entry);
+      ModuleEntryLocationInZipSource location = entry.getFileLocation().get();
+      if (!location.pathToFile().equals(currentBundlePath)) {
+        currentBundlePath = location.pathToFile();
+        source = new ZipSource(zipMapByBundlePath.get(currentBundlePath));
+        sources.add(source);
+      }
+      source.select(
+          location.entryPathInFile().toString(),
+          nameFunction.apply(entry),
+          ZipSource.COMPRESSION_NO_CHANGE,
+          alignmentFunction.applyAsLong(entry));
+    }
+    return sources.build();
+  }
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.tools.build.bundletool.io;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.base.Splitter;
+import com.google.common.util.concurrent.ForwardingListeningExecutorService;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Creates the thread pools used by bundletool commands.
+ *
+ * <p>Two kinds of pools are created: pools for CPU-bound work such as compression, sized after the
+ * number of available processors, and pools for blocking work such as waiting on external
+ * processes, which can have more threads than processors. Both keep track of how busy their
+ * threads were, see {@link #describeUtilization}.
+ */
+public final class ThreadPools {
+
+  private static final Path CGROUP_ROOT = Paths.get("/sys/fs/cgroup");
+
+  /** Idle threads of the pools for blocking work are stopped after this time. */
+  private static final long IO_THREAD_KEEP_ALIVE_SECONDS = 10;
+
+  /**
+   * Returns the number of processors available to bundletool.
+   *
+   * <p>This is the number of processors reported by the JVM, lowered to the CPU quota of the
+   * cgroup of the process if there is one, which older JVMs don't take into account.
+   */
+  public static int availableProcessors() {
+    return availableProcessors(Runtime.getRuntime().availableProcessors(), CGROUP_ROOT);
+  }
+
+  /**
+   * Returns {@code runtimeProcessors} lowered to the CPU quota found in the cgroup file system
+   * mounted at {@code cgroupRoot}, if any.
+   */
+  static int availableProcessors(int runtimeProcessors, Path cgroupRoot) {
+    OptionalInt cgroupQuota = readCgroupV2CpuQuota(cgroupRoot);
+    if (!cgroupQuota.isPresent()) {
+      cgroupQuota = readCgroupV1CpuQuota(cgroupRoot);
+    }
+    return Math.max(1, Math.min(runtimeProcessors, cgroupQuota.orElse(runtimeProcessors)));
+  }
+
+  /** Creates a pool with a fixed number of threads, for CPU-bound work. */
+  public static ListeningExecutorService newCpuExecutor(int threads) {
+    checkArgument(threads > 0, "The number of threads must be positive, got %s.", threads);
+    return new MonitoredExecutorService(
+        new MonitoredThreadPoolExecutor(
+            threads, threads, /* keepAliveSeconds= */ 0, new LinkedBlockingQueue<>()));
+  }
+
+  /**
+   * Creates a pool for blocking work, whose threads mostly wait on I/O or external processes.
+   *
+   * <p>Threads are started as tasks are submitted, up to {@code maxThreads}, and stopped when they
+   * have been idle for a while.
+   */
+  public static ListeningExecutorService newIoExecutor(int maxThreads) {
+    checkArgument(maxThreads > 0, "The number of threads must be positive, got %s.", maxThreads);
+    MonitoredThreadPoolExecutor executor =
+        new MonitoredThreadPoolExecutor(
+            maxThreads, maxThreads, IO_THREAD_KEEP_ALIVE_SECONDS, new LinkedBlockingQueue<>());
+    executor.allowCoreThreadTimeOut(true);
+    return new MonitoredExecutorService(executor);
+  }
+
+  /** Returns the maximum number of threads of the given pool, if it was created by this class. */
+  public static OptionalInt getMaxThreads(ExecutorService executorService) {
+    if (!(executorService instanceof MonitoredExecutorService)) {
+      return OptionalInt.empty();
+    }
+    return OptionalInt.of(
+        ((MonitoredExecutorService) executorService).executor.getMaximumPoolSize());
+  }
+
+  /**
+   * Returns a human-readable summary of how busy the threads of the given pool have been since it
+   * was created, if it was created by this class.
+   */
+  public static Optional<String> describeUtilization(ExecutorService executorService) {
+    if (!(executorService instanceof MonitoredExecutorService)) {
+      return Optional.empty();
+    }
+    MonitoredThreadPoolExecutor executor = ((MonitoredExecutorService) executorService).executor;
+    long elapsedNanos = Math.max(1, System.nanoTime() - executor.creationNanos);
+    double utilization =
+        (double) executor.busyNanos.get() / (elapsedNanos * (long) executor.getMaximumPoolSize());
+    return Optional.of(
+        String.format(
+            "%d tasks completed on %d threads (at most %d running at once), %.0f%% utilization.",
+            executor.getCompletedTaskCount(),
+            executor.getMaximumPoolSize(),
+            executor.getLargestPoolSize(),
+            100 * utilization));
+  }
+
+  /** Reads the CPU quota from the "cpu.max" file of cgroup v2, e.g. "200000 100000". */
+  private static OptionalInt readCgroupV2CpuQuota(Path cgroupRoot) {
+    return readFirstLine(cgroupRoot.resolve("cpu.max"))
+        .map(
+            line -> {
+              List<String> fields = Splitter.on(' ').omitEmptyStrings().splitToList(line);
+              return fields.size() == 2
+                  ? toProcessorCount(fields.get(0), fields.get(1))
+                  : OptionalInt.empty();
+            })
+        .orElse(OptionalInt.empty());
+  }
+
+  /** Reads the CPU quota from the "cpu.cfs_quota_us" and "cpu.cfs_period_us" files of cgroup v1. */
+  private static OptionalInt readCgroupV1CpuQuota(Path cgroupRoot) {
+    Path cpuController = cgroupRoot.resolve("cpu");
+    Optional<String> quota = readFirstLine(cpuController.resolve("cpu.cfs_quota_us"));
+    Optional<String> period = readFirstLine(cpuController.resolve("cpu.cfs_period_us"));
+    if (!quota.isPresent() || !period.isPresent()) {
+      return OptionalInt.empty();
+    }
+    return toProcessorCount(quota.get(), period.get());
+  }
+
+  /** Converts a CPU quota into a number of processors, rounded up. */
+  private static OptionalInt toProcessorCount(String quota, String period) {
+    try {
+      long quotaMicros = Long.parseLong(quota.trim());
+      long periodMicros = Long.parseLong(period.trim());
+      if (quotaMicros <= 0 || periodMicros <= 0) {
+        return OptionalInt.empty();
+      }
+      long processors = (quotaMicros - 1) / periodMicros + 1;
+      return OptionalInt.of((int) Math.min(Integer.MAX_VALUE, processors));
+    } catch (NumberFormatException e) {
+      // No quota ("max" in cgroup v2) or unknown format.
+      return OptionalInt.empty();
+    }
+  }
+
+  private static Optional<String> readFirstLine(Path file) {
+    if (!Files.isReadable(file)) {
+      return Optional.empty();
+    }
+    try {
+      return Files.readAllLines(file, UTF_8).stream().findFirst();
+    } catch (IOException e) {
+      return Optional.empty();
+    }
+  }
+
+  /** Thread pool keeping track of the time its threads spend running tasks. */
+  private static final class MonitoredThreadPoolExecutor extends ThreadPoolExecutor {
+
+    private final long creationNanos = System.nanoTime();
+    private final AtomicLong busyNanos = new AtomicLong();
+    private final ThreadLocal<Long> taskStartNanos = new ThreadLocal<>();
+
+    MonitoredThreadPoolExecutor(
+        int corePoolSize,
+        int maximumPoolSize,
+        long keepAliveSeconds,
+        LinkedBlockingQueue<Runnable> workQueue) {
+      super(corePoolSize, maximumPoolSize, keepAliveSeconds, TimeUnit.SECONDS, workQueue);
+    }
+
+    @Override
+    protected void beforeExecute(Thread thread, Runnable task) {
+      super.beforeExecute(thread, task);
+      taskStartNanos.set(System.nanoTime());
+    }
+
+    @Override
+    protected void afterExecute(Runnable task, Throwable throwable) {
+      Long startNanos = taskStartNanos.get();
+      if (startNanos != null) {
+        busyNanos.addAndGet(System.nanoTime() - startNanos);
+        taskStartNanos.remove();
+      }
+      super.afterExecute(task, throwable);
+    }
+  }
+
+  /** Listening view of a {@link MonitoredThreadPoolExecutor}. */
+  private static final class MonitoredExecutorService extends ForwardingListeningExecutorService {
+
+    private final MonitoredThreadPoolExecutor executor;
+    private final ListeningExecutorService delegate;
+
+    MonitoredExecutorService(MonitoredThreadPoolExecutor executor) {
+      this.executor = executor;
+      this.delegate = MoreExecutors.listeningDecorator(executor);
+    }
+
+    @Override
+    protected ListeningExecutorService delegate() {
+      return delegate;
+    }
+  }
+
+  private ThreadPools() {}
+}
@@ -37,6 +37,7 @@ import com.android.tools.build.bundletool.model.BundleModule;
 import com.android.tools.build.bundletool.model.BundleModule.ModuleType;
 import com.android.tools.build.bundletool.model.BundleModuleName;
 import com.android.tools.build.bundletool.model.ModuleEntry;
+import com.android.tools.build.bundletool.model.ModuleEntryComparisons;
 import com.android.tools.build.bundletool.model.ZipPath;
 import com.android.tools.build.bundletool.model.exceptions.InvalidBundleException;
 import com.android.tools.build.bundletool.model.version.BundleToolVersion;
@@ -61,6 +62,19 @@ public class BundleModuleMerger {
    */
   public static AppBundle mergeNonRemovableInstallTimeModules(
       AppBundle appBundle, boolean overrideBundleToolVersion) throws IOException {
+    return mergeNonRemovableInstallTimeModules(
+        appBundle, overrideBundleToolVersion, new ModuleEntryComparisons());
+  }
+
+  /**
+   * Same as {@link #mergeNonRemovableInstallTimeModules(AppBundle, boolean)}, counting the
+   * comparisons of the entries of the merged modules in {@code moduleEntryComparisons}.
+   */
+  public static AppBundle mergeNonRemovableInstallTimeModules(
+      AppBundle appBundle,
+      boolean overrideBundleToolVersion,
+      ModuleEntryComparisons moduleEntryComparisons)
+      throws IOException {
     ImmutableSet<BundleModule> bundleModulesToFuse =
         Stream.concat(
                 Stream.of(appBundle.getBaseModule()),
@@ -93,7 +107,7 @@ public class BundleModuleMerger {
             getDexEntries(bundleModulesToFuse));
 
     mergedBaseModule
-        .addEntries(getAllEntriesExceptDexAndSpecial(bundleModulesToFuse))
+        .addEntries(getAllEntriesExceptDexAndSpecial(bundleModulesToFuse, moduleEntryComparisons))
         .addEntries(renamedDexEntries);
 
     return appBundle.toBuilder()
@@ -132,7 +146,7 @@ public class BundleModuleMerger {
   }
 
   private static ImmutableSet<ModuleEntry> getAllEntriesExceptDexAndSpecial(
-      Set<BundleModule> bundleModulesToFuse) {
+      Set<BundleModule> bundleModulesToFuse, ModuleEntryComparisons moduleEntryComparisons) {
     Map<ZipPath, ModuleEntry> mergedEntriesByPath = new HashMap<>();
     bundleModulesToFuse.stream()
         .flatMap(module -> module.getEntries().stream())
@@ -143,7 +157,8 @@ public class BundleModuleMerger {
             moduleEntry -> {
               ModuleEntry existingModuleEntry =
                   mergedEntriesByPath.putIfAbsent(moduleEntry.getPath(), moduleEntry);
-              if (existingModuleEntry != null && !existingModuleEntry.equals(moduleEntry)) {
+              if (existingModuleEntry != null
+                  && !moduleEntryComparisons.areIdentical(existingModuleEntry, moduleEntry)) {
                 throw InvalidBundleException.builder()
                     .withUserMessage(
                         "Existing module entry '%s' with different contents.",
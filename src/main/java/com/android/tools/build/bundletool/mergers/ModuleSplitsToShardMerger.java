@@ -42,6 +42,7 @@ import com.android.tools.build.bundletool.model.AndroidManifest;
 import com.android.tools.build.bundletool.model.AppBundle;
 import com.android.tools.build.bundletool.model.BundleModuleName;
 import com.android.tools.build.bundletool.model.ModuleEntry;
+import com.android.tools.build.bundletool.model.ModuleEntryComparisons;
 import com.android.tools.build.bundletool.model.ModuleSplit;
 import com.android.tools.build.bundletool.model.ModuleSplit.SplitType;
 import com.android.tools.build.bundletool.model.ZipPath;
@@ -86,17 +87,20 @@ public class ModuleSplitsToShardMerger {
   private final TempDirectory globalTempDir;
   private final DexMerger dexMerger;
   private final AppBundle appBundle;
+  private final ModuleEntryComparisons moduleEntryComparisons;
 
   @Inject
   public ModuleSplitsToShardMerger(
       Version bundletoolVersion,
       TempDirectory globalTempDir,
       DexMerger dexMerger,
-      AppBundle appBundle) {
+      AppBundle appBundle,
+      ModuleEntryComparisons moduleEntryComparisons) {
     this.bundletoolVersion = bundletoolVersion;
     this.globalTempDir = globalTempDir;
     this.dexMerger = dexMerger;
     this.appBundle = appBundle;
+    this.moduleEntryComparisons = moduleEntryComparisons;
   }
 
   /** Gets a list of splits, and merges them into a single standalone APK (aka shard). */
@@ -291,9 +295,21 @@ public class ModuleSplitsToShardMerger {
       ImmutableList<ModuleEntry> dexEntries =
           ImmutableList.copyOf(dexFilesToMergeByModule.values());
 
+      ImmutableSet<ModuleEntry> dexEntrySet = ImmutableSet.copyOf(dexEntries);
+      // The cache is looked up explicitly rather than by hash, so that the comparisons of the dex
+      // entries are counted.
       ImmutableList<Path> mergedDexFiles =
-          mergedDexCache.computeIfAbsent(
-              ImmutableSet.copyOf(dexEntries), key -> mergeDexFiles(dexEntries, androidManifest));
+          mergedDexCache.entrySet().stream()
+              .filter(
+                  cacheEntry -> moduleEntryComparisons.areIdentical(cacheEntry.getKey(), dexEntrySet))
+              .map(Map.Entry::getValue)
+              .findFirst()
+              .orElseGet(
+                  () -> {
+                    ImmutableList<Path> dexFiles = mergeDexFiles(dexEntries, androidManifest);
+                    mergedDexCache.put(dexEntrySet, dexFiles);
+                    return dexFiles;
+                  });
 
       // Names of the merged dex files need to be preserved ("classes.dex", "classes2.dex" etc.).
       return mergedDexFiles.stream()
@@ -391,13 +407,13 @@ public class ModuleSplitsToShardMerger {
     }
   }
 
-  private static void mergeEntries(
+  private void mergeEntries(
       Map<ZipPath, ModuleEntry> mergedEntriesByPath, ModuleSplit split, ModuleEntry entry) {
     ModuleEntry existingEntry = mergedEntriesByPath.putIfAbsent(entry.getPath(), entry);
     // Any conflicts of plain entries should be caught by bundle validations in EntryClashValidator.
     // However, EntryClashValidator does not check for conflicts when isolated splits are enabled in
     // the manifest. Hence, we check for conflicts here and throw a more specific error message.
-    if (existingEntry != null && !existingEntry.equals(entry)) {
+    if (existingEntry != null && !moduleEntryComparisons.areIdentical(existingEntry, entry)) {
       throw InvalidBundleException.builder()
           .withUserMessage(
               "Module '%s' and some other module(s) contain entry '%s' with different contents.",
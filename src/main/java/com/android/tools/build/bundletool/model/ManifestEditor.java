@@ -84,12 +84,14 @@ import static com.android.tools.build.bundletool.model.AndroidManifest.VERSION_C
 import static com.android.tools.build.bundletool.model.AndroidManifest.VERSION_MAJOR_RESOURCE_ID;
 import static com.android.tools.build.bundletool.model.AndroidManifest.VERSION_NAME_ATTRIBUTE_NAME;
 import static com.android.tools.build.bundletool.model.AndroidManifest.VERSION_NAME_RESOURCE_ID;
+import static com.android.tools.build.bundletool.model.RuntimeEnabledSdkVersionEncoder.encodeSdkMajorAndMinorVersion;
 import static com.android.tools.build.bundletool.model.utils.xmlproto.XmlProtoAttributeBuilder.createAndroidAttribute;
 import static com.google.common.collect.ImmutableList.toImmutableList;
 import static com.google.common.collect.MoreCollectors.onlyElement;
 import static com.google.common.collect.MoreCollectors.toOptional;
 import static java.util.stream.Collectors.joining;
 
+import com.android.bundle.RuntimeEnabledSdkConfigProto.RuntimeEnabledSdk;
 import com.android.tools.build.bundletool.model.manifestelements.Activity;
 import com.android.tools.build.bundletool.model.manifestelements.Provider;
 import com.android.tools.build.bundletool.model.manifestelements.Receiver;
@@ -104,6 +106,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.errorprone.annotations.CanIgnoreReturnValue;
 import com.google.errorprone.annotations.CheckReturnValue;
+import java.util.Collection;
 import java.util.Optional;
 
 /** Modifies the manifest in the protocol buffer format. */
@@ -552,6 +555,19 @@ public class ManifestEditor {
     return this;
   }
 
+  /** Adds uses-sdk-library tags for the given runtime-enabled SDKs to the manifest. */
+  @CanIgnoreReturnValue
+  public ManifestEditor addUsesSdkLibraryElements(
+      Collection<RuntimeEnabledSdk> runtimeEnabledSdks) {
+    runtimeEnabledSdks.forEach(
+        sdk ->
+            addUsesSdkLibraryElement(
+                sdk.getPackageName(),
+                encodeSdkMajorAndMinorVersion(sdk.getVersionMajor(), sdk.getVersionMinor()),
+                sdk.getCertificateDigest()));
+    return this;
+  }
+
   /**
    * Creates an <sdk-library> element and populates it with SDK package name and Android version
    * major.
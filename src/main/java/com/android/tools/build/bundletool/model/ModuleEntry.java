@@ -16,11 +16,14 @@
 package com.android.tools.build.bundletool.model;
 
 import com.android.tools.build.bundletool.model.BundleModule.SpecialModuleEntry;
+import com.android.tools.build.bundletool.model.utils.ZipUtils;
 import com.google.auto.value.AutoValue;
 import com.google.auto.value.extension.memoized.Memoized;
 import com.google.common.hash.HashCode;
 import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingInputStream;
 import com.google.common.io.ByteSource;
+import com.google.common.io.ByteStreams;
 import com.google.common.io.Files;
 import com.google.common.io.MoreFiles;
 import com.google.errorprone.annotations.Immutable;
@@ -30,6 +33,9 @@ import java.io.UncheckedIOException;
 import java.nio.file.Path;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
 
 /**
  * Represents an entry in an App Bundle's module.
@@ -77,23 +83,38 @@ public abstract class ModuleEntry {
       return true;
     }
 
-    if (!entry1.getPath().equals(entry2.getPath())) {
+    return entry1.hasSameMetadataAndChecksum(entry2)
+        && entry1.getContentSha256Hash().equals(entry2.getContentSha256Hash());
+  }
+
+  /**
+   * Checks whether the given entry has the same path, flags, size and CRC-32 checksum as this one,
+   * i.e. whether the SHA-256 hashes of their contents need to be compared to tell them apart.
+   */
+  boolean hasSameMetadataAndChecksum(ModuleEntry other) {
+    if (!getPath().equals(other.getPath())) {
       return false;
     }
 
-    if (entry1.getForceUncompressed() != entry2.getForceUncompressed()) {
+    if (getForceUncompressed() != other.getForceUncompressed()) {
       return false;
     }
 
-    if (entry1.getShouldSign() != entry2.getShouldSign()) {
+    if (getShouldSign() != other.getShouldSign()) {
       return false;
     }
 
-    return entry1.getContentSha256Hash().equals(entry2.getContentSha256Hash());
+    // Comparing sizes and CRC-32 checksums first is cheap for entries read from a zip file, because
+    // those are known from its central directory.
+    return getContentChecksum().hasSameSizeAndCrc32(other.getContentChecksum());
   }
 
   @Memoized
   public HashCode getContentSha256Hash() {
+    Optional<HashCode> precomputedHash = getContentChecksum().getSha256Hash();
+    if (precomputedHash.isPresent()) {
+      return precomputedHash.get();
+    }
     try {
       return getContent().hash(Hashing.sha256());
     } catch (IOException e) {
@@ -102,6 +123,31 @@ public abstract class ModuleEntry {
     }
   }
 
+  /**
+   * Returns the size and CRC-32 checksum of the entry content.
+   *
+   * <p>For entries read from a zip file they are taken from its central directory. Otherwise the
+   * content is read once, and its SHA-256 hash is computed in the same pass.
+   */
+  @Memoized
+  public ContentChecksum getContentChecksum() {
+    OptionalLong crc32 = ZipUtils.crc32IfKnown(getContent());
+    com.google.common.base.Optional<Long> size = getContent().sizeIfKnown();
+    if (crc32.isPresent() && size.isPresent()) {
+      return ContentChecksum.create(size.get(), crc32.getAsLong(), Optional.empty());
+    }
+    try (CheckedInputStream crc32Content =
+            new CheckedInputStream(getContent().openStream(), new CRC32());
+        HashingInputStream content = new HashingInputStream(Hashing.sha256(), crc32Content)) {
+      long contentSize = ByteStreams.exhaust(content);
+      return ContentChecksum.create(
+          contentSize, crc32Content.getChecksum().getValue(), Optional.of(content.hash()));
+    } catch (IOException e) {
+      throw new UncheckedIOException(
+          String.format("Failed to calculate checksum of module entry '%s'.", this), e);
+    }
+  }
+
   @Override
   public final int hashCode() {
     // Deliberately omit the content for performance.
@@ -161,4 +207,24 @@ public abstract class ModuleEntry {
     /** Full path inside the file, including module name. */
     public abstract ZipPath entryPathInFile();
   }
+
+  /** Size and checksums of the content of a module entry. */
+  @Immutable
+  @AutoValue
+  public abstract static class ContentChecksum {
+    static ContentChecksum create(long size, long crc32, Optional<HashCode> sha256Hash) {
+      return new AutoValue_ModuleEntry_ContentChecksum(size, crc32, sha256Hash);
+    }
+
+    public abstract long getSize();
+
+    public abstract long getCrc32();
+
+    /** SHA-256 hash of the content, if it was computed together with the CRC-32 checksum. */
+    abstract Optional<HashCode> getSha256Hash();
+
+    boolean hasSameSizeAndCrc32(ContentChecksum other) {
+      return getSize() == other.getSize() && getCrc32() == other.getCrc32();
+    }
+  }
 }
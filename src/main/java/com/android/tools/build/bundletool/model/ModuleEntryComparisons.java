@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.tools.build.bundletool.model;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares the content of module entries, counting the comparisons made by a command.
+ *
+ * <p>The comparisons are the same as {@link ModuleEntry#equals}: entries are told apart by their
+ * path, flags, size and CRC-32 checksum first, and by the SHA-256 hash of their content only if
+ * all of those are the same. Instances are thread-safe.
+ */
+public final class ModuleEntryComparisons {
+
+  private final AtomicLong comparisonCount = new AtomicLong();
+  private final AtomicLong resolvedByChecksumCount = new AtomicLong();
+  private final AtomicLong hashComparisonCount = new AtomicLong();
+  private final AtomicLong hashComparedBytes = new AtomicLong();
+
+  /** Checks whether the given entries are identical. */
+  public boolean areIdentical(ModuleEntry entry1, ModuleEntry entry2) {
+    comparisonCount.incrementAndGet();
+    if (entry1 == entry2) {
+      return true;
+    }
+    if (!entry1.hasSameMetadataAndChecksum(entry2)) {
+      resolvedByChecksumCount.incrementAndGet();
+      return false;
+    }
+    hashComparisonCount.incrementAndGet();
+    hashComparedBytes.addAndGet(entry1.getContentChecksum().getSize());
+    return entry1.getContentSha256Hash().equals(entry2.getContentSha256Hash());
+  }
+
+  /**
+   * Checks whether the given sets contain identical entries, as {@link ImmutableSet#equals} would,
+   * comparing only the entries with the same path.
+   */
+  public boolean areIdentical(
+      ImmutableSet<ModuleEntry> entries1, ImmutableSet<ModuleEntry> entries2) {
+    if (entries1.size() != entries2.size()) {
+      return false;
+    }
+    return entries1.stream()
+        .allMatch(
+            entry1 ->
+                entries2.stream()
+                    .filter(entry2 -> entry2.getPath().equals(entry1.getPath()))
+                    .anyMatch(entry2 -> areIdentical(entry1, entry2)));
+  }
+
+  /** Returns the numbers of comparisons made so far. */
+  public Stats getStats() {
+    return Stats.create(
+        comparisonCount.get(),
+        resolvedByChecksumCount.get(),
+        hashComparisonCount.get(),
+        hashComparedBytes.get());
+  }
+
+  /** Counters of the comparisons of module entries. */
+  @AutoValue
+  public abstract static class Stats {
+    static Stats create(
+        long comparisonCount,
+        long resolvedByChecksumCount,
+        long hashComparisonCount,
+        long hashComparedBytes) {
+      return new AutoValue_ModuleEntryComparisons_Stats(
+          comparisonCount, resolvedByChecksumCount, hashComparisonCount, hashComparedBytes);
+    }
+
+    /** Number of pairs of entries compared. */
+    public abstract long getComparisonCount();
+
+    /**
+     * Number of pairs of entries found to be different by their path, flags, size or CRC-32
+     * checksum, without computing the SHA-256 hashes of their content.
+     */
+    public abstract long getResolvedByChecksumCount();
+
+    /** Number of pairs of entries whose SHA-256 hashes were compared. */
+    public abstract long getHashComparisonCount();
+
+    /** Total uncompressed size of the entries whose SHA-256 hashes were compared. */
+    public abstract long getHashComparedBytes();
+  }
+}
@@ -23,7 +23,6 @@ import static com.android.tools.build.bundletool.model.BundleModule.DEX_DIRECTOR
 import static com.android.tools.build.bundletool.model.BundleModule.LIB_DIRECTORY;
 import static com.android.tools.build.bundletool.model.BundleModule.RESOURCES_DIRECTORY;
 import static com.android.tools.build.bundletool.model.BundleModule.ROOT_DIRECTORY;
-import static com.android.tools.build.bundletool.model.RuntimeEnabledSdkVersionEncoder.encodeSdkMajorAndMinorVersion;
 import static com.android.tools.build.bundletool.model.SourceStampConstants.STAMP_SOURCE_METADATA_KEY;
 import static com.android.tools.build.bundletool.model.SourceStampConstants.STAMP_TYPE_METADATA_KEY;
 import static com.android.tools.build.bundletool.model.targeting.TargetedDirectorySegment.COUNTRY_SET_KEY;
@@ -71,16 +70,25 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Multimaps;
+import com.google.common.hash.Funnels;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import com.google.common.io.ByteSource;
 import com.google.errorprone.annotations.CanIgnoreReturnValue;
 import com.google.errorprone.annotations.CheckReturnValue;
 import com.google.errorprone.annotations.Immutable;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.MessageLite;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.MalformedURLException;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.util.List;
 import java.util.Optional;
 import java.util.StringJoiner;
+import java.util.function.Consumer;
 import java.util.stream.Stream;
 
 /** A module split is a subset of a bundle module. */
@@ -258,6 +266,18 @@ public abstract class ModuleSplit {
         .collect(toImmutableList());
   }
 
+  /**
+   * Applies the edits to the split manifest in a single pass.
+   *
+   * <p>The manifest and the split are copied only once, however many edits are made.
+   */
+  @CheckReturnValue
+  public ModuleSplit editManifest(Consumer<ManifestEditor> edits) {
+    ManifestEditor manifestEditor = getAndroidManifest().toEditor();
+    edits.accept(manifestEditor);
+    return toBuilder().setAndroidManifest(manifestEditor.save()).build();
+  }
+
   /** Removes the {@code splitName} attribute from elements in the manifest. */
   @CheckReturnValue
   public ModuleSplit removeSplitName() {
@@ -277,15 +297,25 @@ public abstract class ModuleSplit {
       return this;
     }
 
+    return editManifest(
+        manifestEditor -> writeSourceStampInManifest(manifestEditor, stampSource, stampType));
+  }
+
+  /**
+   * Writes the source stamp with the given editor of the split manifest, if the split is eligible
+   * for a source stamp.
+   */
+  public void writeSourceStampInManifest(
+      ManifestEditor manifestEditor, String stampSource, StampType stampType) {
+    if (!isEligibleForSourceStamp()) {
+      return;
+    }
+
     checkStampSource(stampSource);
 
-    AndroidManifest apkManifest =
-        getAndroidManifest()
-            .toEditor()
-            .addMetaDataString(STAMP_SOURCE_METADATA_KEY, stampSource)
-            .addMetaDataString(STAMP_TYPE_METADATA_KEY, stampType.toString())
-            .save();
-    return toBuilder().setAndroidManifest(apkManifest).build();
+    manifestEditor
+        .addMetaDataString(STAMP_SOURCE_METADATA_KEY, stampSource)
+        .addMetaDataString(STAMP_TYPE_METADATA_KEY, stampType.toString());
   }
 
   private boolean isEligibleForSourceStamp() {
@@ -375,15 +405,27 @@ public abstract class ModuleSplit {
    * not set.
    */
   public ModuleSplit overrideMinSdkVersionForSdkSandbox() {
-    if (!getAndroidManifest().getMinSdkVersion().isPresent()
-        || getAndroidManifest().getMinSdkVersion().get() < SDK_SANDBOX_MIN_VERSION) {
-      AndroidManifest apkManifest =
-          getAndroidManifest().toEditor().setMinSdkVersion(SDK_SANDBOX_MIN_VERSION).save();
-      return toBuilder().setAndroidManifest(apkManifest).build();
+    if (needsMinSdkVersionOverrideForSdkSandbox()) {
+      return editManifest(this::overrideMinSdkVersionForSdkSandbox);
     }
     return this;
   }
 
+  /**
+   * Overrides minimum SDK version with the given editor of the split manifest, if it is lower than
+   * the SDK sandbox minimum version or if it is not set.
+   */
+  public void overrideMinSdkVersionForSdkSandbox(ManifestEditor manifestEditor) {
+    if (needsMinSdkVersionOverrideForSdkSandbox()) {
+      manifestEditor.setMinSdkVersion(SDK_SANDBOX_MIN_VERSION);
+    }
+  }
+
+  private boolean needsMinSdkVersionOverrideForSdkSandbox() {
+    Optional<Integer> minSdkVersion = getAndroidManifest().getMinSdkVersion();
+    return !minSdkVersion.isPresent() || minSdkVersion.get() < SDK_SANDBOX_MIN_VERSION;
+  }
+
   /** Overrides value of android:minSdkVersion attribute in the manifest. */
   public ModuleSplit overrideMinSdkVersion(int minSdkVersion) {
     AndroidManifest apkManifest =
@@ -430,14 +472,8 @@ public abstract class ModuleSplit {
    */
   public ModuleSplit addUsesSdkLibraryElements(
       ImmutableCollection<RuntimeEnabledSdk> runtimeEnabledSdks) {
-    ManifestEditor manifestEditor = getAndroidManifest().toEditor();
-    runtimeEnabledSdks.forEach(
-        sdk ->
-            manifestEditor.addUsesSdkLibraryElement(
-                sdk.getPackageName(),
-                encodeSdkMajorAndMinorVersion(sdk.getVersionMajor(), sdk.getVersionMinor()),
-                sdk.getCertificateDigest()));
-    return toBuilder().setAndroidManifest(manifestEditor.save()).build();
+    return editManifest(
+        manifestEditor -> manifestEditor.addUsesSdkLibraryElements(runtimeEnabledSdks));
   }
 
   private String generateSplitId(String resolvedSuffix) {
@@ -682,6 +718,82 @@ public abstract class ModuleSplit {
     return Multimaps.index(getEntries(), entry -> entry.getPath().getParent());
   }
 
+  /**
+   * Returns the fingerprint of this split, which is equal for two splits if and only if the splits
+   * are equal.
+   *
+   * <p>The targeting, manifest, resource table and configs of the split are compared by a digest of
+   * their serialized form, and entries by a digest of their paths, flags and SHA-256 hashes of
+   * their content, as in {@link ModuleEntry#equals}. This is much cheaper than comparing splits
+   * generated separately, whose protos are distinct instances, and the fingerprint doesn't hold
+   * on to the entries of the split.
+   */
+  @Memoized
+  public Fingerprint getFingerprint() {
+    Hasher digest = Hashing.sha256().newHasher();
+    digest
+        .putString(getSplitType().name(), UTF_8)
+        .putString(getModuleName().getName(), UTF_8)
+        .putBoolean(isMasterSplit())
+        .putBoolean(getSparseEncoding())
+        .putString(getAndroidManifest().getBundleToolVersion().toString(), UTF_8);
+    putMessage(digest, getApkTargeting());
+    putMessage(digest, getVariantTargeting());
+    putMessage(digest, getAndroidManifest().getManifestRoot().getProto());
+    putOptionalMessage(digest, getResourceTable());
+    putOptionalMessage(digest, getNativeConfig());
+    putOptionalMessage(digest, getAssetsConfig());
+    putOptionalMessage(digest, getApexConfig());
+    digest.putInt(getApexEmbeddedApkConfigs().size());
+    getApexEmbeddedApkConfigs().forEach(config -> putMessage(digest, config));
+    digest.putInt(getEntries().size());
+    for (ModuleEntry entry : getEntries()) {
+      digest
+          .putString(entry.getPath().toString(), UTF_8)
+          .putBoolean(entry.getForceUncompressed())
+          .putBoolean(entry.getShouldSign())
+          .putBytes(entry.getContentSha256Hash().asBytes());
+    }
+    return Fingerprint.create(digest.hash(), getMasterManifestMutators());
+  }
+
+  private static void putOptionalMessage(
+      Hasher hasher, Optional<? extends MessageLite> optionalMessage) {
+    hasher.putBoolean(optionalMessage.isPresent());
+    optionalMessage.ifPresent(message -> putMessage(hasher, message));
+  }
+
+  private static void putMessage(Hasher hasher, MessageLite message) {
+    hasher.putInt(message.getSerializedSize());
+    try {
+      CodedOutputStream output = CodedOutputStream.newInstance(Funnels.asOutputStream(hasher));
+      output.useDeterministicSerialization();
+      message.writeTo(output);
+      output.flush();
+    } catch (IOException e) {
+      // Hashers never throw.
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Fingerprint of a {@link ModuleSplit}, see {@link #getFingerprint()}.
+   *
+   * <p>Manifest mutators can't be serialized, so they are compared by identity like in {@link
+   * ModuleSplit#equals}.
+   */
+  @AutoValue
+  public abstract static class Fingerprint {
+    static Fingerprint create(
+        HashCode digest, ImmutableList<ManifestMutator> masterManifestMutators) {
+      return new AutoValue_ModuleSplit_Fingerprint(digest, masterManifestMutators);
+    }
+
+    abstract HashCode getDigest();
+
+    abstract ImmutableList<ManifestMutator> getMasterManifestMutators();
+  }
+
   /** Returns all {@link ModuleEntry} that are directly inside the specified directory. */
   public Stream<ModuleEntry> getEntriesInDirectory(ZipPath directory) {
     checkArgument(directory.getNameCount() > 0, "ZipPath '%s' is empty", directory);
@@ -17,13 +17,17 @@ package com.android.tools.build.bundletool.model;
 
 import static com.android.tools.build.bundletool.model.utils.files.FilePreconditions.checkFileExistsAndReadable;
 import static com.google.common.collect.ImmutableList.toImmutableList;
+import static java.nio.charset.StandardCharsets.UTF_8;
 
 import com.android.tools.build.bundletool.model.exceptions.CommandExecutionException;
+import com.android.tools.build.bundletool.model.utils.ResidentCaches;
 import com.google.auto.value.AutoValue;
 import com.google.common.collect.ImmutableList;
+import com.google.common.hash.Hashing;
 import com.google.errorprone.annotations.Immutable;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.CharBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.security.KeyStore;
@@ -105,6 +109,30 @@ public abstract class SignerConfig {
       Optional<Password> optionalKeyPassword) {
     checkFileExistsAndReadable(keystorePath);
 
+    // Only keystores which don't require prompting the user for a password can be cached.
+    Optional<ResidentCaches> residentCaches = ResidentCaches.get();
+    if (residentCaches.isPresent()
+        && optionalKeystorePassword.isPresent()
+        && optionalKeyPassword.isPresent()) {
+      return residentCaches
+          .get()
+          .getSignerConfigs()
+          .get(
+              keystorePath,
+              cacheKey(keyAlias, optionalKeystorePassword.get(), optionalKeyPassword.get()),
+              () ->
+                  extractFromKeystoreUncached(
+                      keystorePath, keyAlias, optionalKeystorePassword, optionalKeyPassword));
+    }
+    return extractFromKeystoreUncached(
+        keystorePath, keyAlias, optionalKeystorePassword, optionalKeyPassword);
+  }
+
+  private static SignerConfig extractFromKeystoreUncached(
+      Path keystorePath,
+      String keyAlias,
+      Optional<Password> optionalKeystorePassword,
+      Optional<Password> optionalKeyPassword) {
     KeyStore keystore;
     try {
       // With Java 8, this is able to read both JKS and PKCS12 keystores.
@@ -193,6 +221,30 @@ public abstract class SignerConfig {
     }
   }
 
+  /** Returns a key identifying the signer config in a keystore, without revealing passwords. */
+  private static String cacheKey(String keyAlias, Password keystorePassword, Password keyPassword) {
+    PasswordProtection keystorePasswordValue = keystorePassword.getValue();
+    PasswordProtection keyPasswordValue = keyPassword.getValue();
+    try {
+      return Hashing.sha256()
+          .newHasher()
+          .putString(keyAlias, UTF_8)
+          .putChar('\0')
+          .putString(CharBuffer.wrap(keystorePasswordValue.getPassword()), UTF_8)
+          .putChar('\0')
+          .putString(CharBuffer.wrap(keyPasswordValue.getPassword()), UTF_8)
+          .hash()
+          .toString();
+    } finally {
+      try {
+        keystorePasswordValue.destroy();
+        keyPasswordValue.destroy();
+      } catch (DestroyFailedException e) {
+        // Ignore. Never thrown by PasswordProtection#destroy().
+      }
+    }
+  }
+
   private static SignerConfig readSigningConfigFromLoadedKeyStore(
       KeyStore keystore, String keyAlias, char[] keyPassword)
       throws NoSuchAlgorithmException, KeyStoreException, UnrecoverableKeyException {
@@ -33,6 +33,7 @@ import com.android.tools.build.bundletool.model.ModuleSplit;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableCollection;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Sets;
@@ -91,6 +92,37 @@ public abstract class AlternativeVariantTargetingPopulator<T extends Message> {
     return GeneratedApks.fromModuleSplits(moduleSplits);
   }
 
+  /**
+   * Populates alternative targeting of split APK variants before their splits are generated.
+   *
+   * <p>The result matches the variant targeting that {@link
+   * #populateAlternativeVariantTargeting(GeneratedApks, Optional)} sets on the splits of these
+   * variants when no standalone APKs are generated. It is keyed by the given variant targeting.
+   */
+  public static ImmutableMap<VariantTargeting, VariantTargeting>
+      populateAlternativeSplitVariantTargeting(
+          ImmutableSet<VariantTargeting> variantTargetings, Optional<Integer> maxSdkVersion) {
+    Map<Boolean, ImmutableList<VariantTargeting>> partitionedRuntimeEnabledAndRegularVariants =
+        variantTargetings.stream()
+            .collect(
+                partitioningBy(
+                    variantTargeting ->
+                        variantTargeting.getSdkRuntimeTargeting().getRequiresSdkRuntime(),
+                    toImmutableList()));
+
+    ImmutableMap.Builder<VariantTargeting, VariantTargeting> result = ImmutableMap.builder();
+    for (ImmutableList<VariantTargeting> variants :
+        partitionedRuntimeEnabledAndRegularVariants.values()) {
+      ImmutableList<VariantTargeting> populatedVariants =
+          new SdkVersionAlternativesPopulator(maxSdkVersion)
+              .addAlternativeVariantTargetingInternal(variants);
+      for (int i = 0; i < variants.size(); i++) {
+        result.put(variants.get(i), populatedVariants.get(i));
+      }
+    }
+    return result.build();
+  }
+
   /**
    * See AlternativeVariantTargetingPopulator#addAlternativeVariantTargeting(ImmutableList...)
    *
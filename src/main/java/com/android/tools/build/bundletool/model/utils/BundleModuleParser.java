@@ -29,6 +29,9 @@ import com.android.tools.build.bundletool.model.ModuleEntry;
 import com.android.tools.build.bundletool.model.ModuleEntry.ModuleEntryLocationInZipSource;
 import com.android.tools.build.bundletool.model.ZipPath;
 import com.android.tools.build.bundletool.model.version.Version;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteSource;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
@@ -39,7 +42,7 @@ public class BundleModuleParser {
       ZipFile moduleZipFile, BundleConfig bundleConfig) {
     BundleModule.Builder bundleModuleBuilder =
         parseBundleModuleInternal(
-            moduleZipFile, bundleConfig.getBundletool(), bundleConfig.getType());
+            getModuleEntries(moduleZipFile), bundleConfig.getBundletool(), bundleConfig.getType());
 
     if (bundleConfig.hasApexConfig()) {
       bundleModuleBuilder.setBundleApexConfig(bundleConfig.getApexConfig());
@@ -50,12 +53,56 @@ public class BundleModuleParser {
   public static BundleModule parseSdkBundleModule(
       ZipFile moduleZipFile, SdkModulesConfig sdkModulesConfig) {
     return parseBundleModuleInternal(
-            moduleZipFile, sdkModulesConfig.getBundletool(), BundleType.REGULAR)
+            getModuleEntries(moduleZipFile), sdkModulesConfig.getBundletool(), BundleType.REGULAR)
+        .build();
+  }
+
+  /**
+   * Parses an SDK Bundle module from a memory-mapped zip file.
+   *
+   * <p>The content of the module entries is read from the mapped file, which must be kept open
+   * while the module is in use.
+   */
+  public static BundleModule parseSdkBundleModule(
+      MappedZipFile moduleZipFile, SdkModulesConfig sdkModulesConfig) {
+    return parseBundleModuleInternal(
+            getModuleEntries(moduleZipFile), sdkModulesConfig.getBundletool(), BundleType.REGULAR)
+        .build();
+  }
+
+  private static ImmutableList<ModuleEntry> getModuleEntries(ZipFile moduleZipFile) {
+    return moduleZipFile.stream()
+        .filter(not(ZipEntry::isDirectory))
+        .map(
+            zipEntry ->
+                createModuleEntry(
+                    Paths.get(moduleZipFile.getName()),
+                    zipEntry.getName(),
+                    ZipUtils.asByteSource(moduleZipFile, zipEntry)))
+        .collect(toImmutableList());
+  }
+
+  private static ImmutableList<ModuleEntry> getModuleEntries(MappedZipFile moduleZipFile) {
+    return moduleZipFile.getFileEntries().stream()
+        .map(
+            zipEntry ->
+                createModuleEntry(
+                    moduleZipFile.getPath(),
+                    zipEntry.getName(),
+                    moduleZipFile.getContent(zipEntry)))
+        .collect(toImmutableList());
+  }
+
+  private static ModuleEntry createModuleEntry(Path zipPath, String entryName, ByteSource content) {
+    return ModuleEntry.builder()
+        .setFileLocation(ModuleEntryLocationInZipSource.create(zipPath, ZipPath.create(entryName)))
+        .setPath(ZipPath.create(entryName))
+        .setContent(content)
         .build();
   }
 
   private static BundleModule.Builder parseBundleModuleInternal(
-      ZipFile moduleZipFile, Bundletool bundletool, BundleType bundleType) {
+      ImmutableList<ModuleEntry> moduleEntries, Bundletool bundletool, BundleType bundleType) {
     BundleModule.Builder bundleModuleBuilder =
         BundleModule.builder()
             // Assigning a temporary name because the real one will be extracted from the
@@ -63,20 +110,7 @@ public class BundleModuleParser {
             .setName(BundleModuleName.create("TEMPORARY_MODULE_NAME"))
             .setBundleType(bundleType)
             .setBundletoolVersion(Version.of(bundletool.getVersion()))
-            .addEntries(
-                moduleZipFile.stream()
-                    .filter(not(ZipEntry::isDirectory))
-                    .map(
-                        zipEntry ->
-                            ModuleEntry.builder()
-                                .setFileLocation(
-                                    ModuleEntryLocationInZipSource.create(
-                                        Paths.get(moduleZipFile.getName()),
-                                        ZipPath.create(zipEntry.getName())))
-                                .setPath(ZipPath.create(zipEntry.getName()))
-                                .setContent(ZipUtils.asByteSource(moduleZipFile, zipEntry))
-                                .build())
-                    .collect(toImmutableList()));
+            .addEntries(moduleEntries);
 
     BundleModuleName actualModuleName =
         bundleModuleBuilder
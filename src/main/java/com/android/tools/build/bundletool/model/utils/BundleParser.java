@@ -33,17 +33,22 @@ import com.android.tools.build.bundletool.model.ModuleEntry.ModuleEntryLocationI
 import com.android.tools.build.bundletool.model.ZipPath;
 import com.android.tools.build.bundletool.model.exceptions.InvalidBundleException;
 import com.android.tools.build.bundletool.model.version.Version;
+import com.android.zipflinger.Location;
+import com.android.zipflinger.ZipMap;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.io.ByteSource;
 import com.google.errorprone.annotations.CheckReturnValue;
 import com.google.protobuf.InvalidProtocolBufferException;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.Collection;
 import java.util.Enumeration;
 import java.util.HashMap;
@@ -295,12 +300,45 @@ public class BundleParser {
    *   <li>Writes the {@value BundleParser#SDK_MODULES_FILE_NAME} zip to the provided {@code Path}.
    *   <li>Returns the {@code ZipFile} that has been written to the {@code Path}.
    * </ol>
+   *
+   * <p>If the {@value BundleParser#SDK_MODULES_FILE_NAME} zip is stored without compression, its
+   * bytes are transferred straight from the bundle file instead of being streamed.
    */
   public static ZipFile getModulesZip(ZipFile bundleZip, Path modulesPath) throws IOException {
     ZipEntry modulesEntry = bundleZip.getEntry(SDK_MODULES_FILE_NAME);
-    try (InputStream modulesInputStream = bundleZip.getInputStream(modulesEntry)) {
-      Files.copy(modulesInputStream, modulesPath);
-      return new ZipFile(modulesPath.toFile());
+    if (modulesEntry.getMethod() == ZipEntry.STORED) {
+      copyStoredEntry(Paths.get(bundleZip.getName()), SDK_MODULES_FILE_NAME, modulesPath);
+    } else {
+      try (InputStream modulesInputStream = bundleZip.getInputStream(modulesEntry)) {
+        Files.copy(modulesInputStream, modulesPath);
+      }
+    }
+    return new ZipFile(modulesPath.toFile());
+  }
+
+  /**
+   * Copies the content of an entry stored without compression to {@code targetPath}, using a
+   * channel transfer of the entry payload range.
+   */
+  private static void copyStoredEntry(Path zipPath, String entryName, Path targetPath)
+      throws IOException {
+    Location payloadLocation =
+        ZipMap.from(zipPath).getEntries().get(entryName).getPayloadLocation();
+    try (FileChannel source = FileChannel.open(zipPath, StandardOpenOption.READ);
+        FileChannel target =
+            FileChannel.open(
+                targetPath, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+      long position = payloadLocation.first;
+      long remaining = payloadLocation.size();
+      while (remaining > 0) {
+        long transferred = source.transferTo(position, remaining, target);
+        if (transferred <= 0) {
+          throw new EOFException(
+              String.format("Unexpected end of file while reading entry '%s'.", entryName));
+        }
+        position += transferred;
+        remaining -= transferred;
+      }
     }
   }
 }
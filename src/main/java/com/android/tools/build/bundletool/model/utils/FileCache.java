@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.tools.build.bundletool.model.utils;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Bounded in-memory cache of values computed from the content of files.
+ *
+ * <p>Values are keyed by the real path of the file together with its last modification time and
+ * size, so that a modified file is loaded again. Values which also depend on other inputs must
+ * provide them as an extra key.
+ *
+ * <p>Values holding resources, such as open files, can be released by a listener called when they
+ * are evicted or invalidated.
+ */
+public final class FileCache<V> {
+
+  private final Cache<Key, V> cache;
+
+  public FileCache(long maximumSize) {
+    this(maximumSize, value -> {});
+  }
+
+  /**
+   * Creates a cache which calls {@code removalListener} with each value once it is no longer
+   * cached, whether it was evicted or invalidated.
+   */
+  public FileCache(long maximumSize, Consumer<? super V> removalListener) {
+    this.cache =
+        CacheBuilder.newBuilder()
+            .maximumSize(maximumSize)
+            .<Key, V>removalListener(
+                notification -> removalListener.accept(notification.getValue()))
+            .build();
+  }
+
+  /** Returns the cached value for the file, computing it with {@code loader} if needed. */
+  public V get(Path file, Supplier<? extends V> loader) {
+    return get(file, /* extraKey= */ "", loader);
+  }
+
+  /**
+   * Returns the cached value for the file and extra key, computing it with {@code loader} if
+   * needed.
+   *
+   * <p>If the attributes of the file cannot be read, the value is computed without being cached,
+   * so that the loader reports the error.
+   */
+  public V get(Path file, String extraKey, Supplier<? extends V> loader) {
+    Optional<Key> key = createKey(file, extraKey);
+    if (!key.isPresent()) {
+      return loader.get();
+    }
+    try {
+      return cache.get(key.get(), loader::get);
+    } catch (ExecutionException | UncheckedExecutionException e) {
+      Throwables.throwIfUnchecked(e.getCause());
+      throw new UncheckedExecutionException(e.getCause());
+    }
+  }
+
+  /** Removes all cached values, calling the removal listener with each of them. */
+  public void invalidateAll() {
+    cache.invalidateAll();
+  }
+
+  private static Optional<Key> createKey(Path file, String extraKey) {
+    try {
+      BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+      if (!attributes.isRegularFile()) {
+        return Optional.empty();
+      }
+      return Optional.of(
+          Key.create(
+              file.toRealPath(), attributes.lastModifiedTime(), attributes.size(), extraKey));
+    } catch (IOException e) {
+      return Optional.empty();
+    }
+  }
+
+  @AutoValue
+  abstract static class Key {
+    static Key create(Path realPath, FileTime lastModifiedTime, long size, String extraKey) {
+      return new AutoValue_FileCache_Key(realPath, lastModifiedTime, size, extraKey);
+    }
+
+    abstract Path getRealPath();
+
+    abstract FileTime getLastModifiedTime();
+
+    abstract long getSize();
+
+    abstract String getExtraKey();
+  }
+}
@@ -25,12 +25,17 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Path;
-import java.util.zip.GZIPOutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
 import javax.annotation.WillNotClose;
 
 /** Misc utilities for gzipping files. */
 public final class GZipUtils {
 
+  // Sizes of the header and trailer written by GZIPOutputStream around the deflated data.
+  private static final int GZIP_HEADER_SIZE = 10;
+  private static final int GZIP_TRAILER_SIZE = 8;
+
   /** Calculates the GZip compressed size in bytes of the target {@code file}. */
   public static long calculateGzipCompressedSize(Path file) throws IOException {
     return calculateGzipCompressedSize(MoreFiles.asByteSource(file));
@@ -53,10 +58,17 @@ public final class GZipUtils {
       throws IOException {
     CountingOutputStream countingOutputStream =
         new CountingOutputStream(ByteStreams.nullOutputStream());
-    try (GZIPOutputStream compressedStream = new GZIPOutputStream(countingOutputStream)) {
-      ByteStreams.copy(stream, compressedStream);
+    // Only the deflated data is written, the GZip header and trailer have a fixed size.
+    Deflater deflater = ZlibPool.acquireDeflater(Deflater.DEFAULT_COMPRESSION, /* nowrap= */ true);
+    try {
+      try (DeflaterOutputStream compressedStream =
+          new DeflaterOutputStream(countingOutputStream, deflater)) {
+        ByteStreams.copy(stream, compressedStream);
+      }
+    } finally {
+      ZlibPool.releaseDeflater(deflater, Deflater.DEFAULT_COMPRESSION, /* nowrap= */ true);
     }
-    return countingOutputStream.getCount();
+    return GZIP_HEADER_SIZE + countingOutputStream.getCount() + GZIP_TRAILER_SIZE;
   }
 
   private GZipUtils() {}
@@ -0,0 +1,472 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.tools.build.bundletool.model.utils;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.collect.ImmutableMap.toImmutableMap;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteSource;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.function.Function;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * Read-only zip file backed by memory-mapped segments of the file.
+ *
+ * <p>The central directory is parsed once when the file is opened. The content of an entry is read
+ * directly from the mapped memory: stored entries are exposed without being copied, and deflated
+ * entries are inflated from the mapped memory.
+ *
+ * <p>Files larger than 2 GB are mapped as several segments, and ZIP64 archives are supported.
+ * Consecutive segments overlap, so that headers never span two segments.
+ */
+public final class MappedZipFile implements Closeable {
+
+  private static final int LOCAL_FILE_HEADER_SIGNATURE = 0x04034b50;
+  private static final int CENTRAL_DIRECTORY_HEADER_SIGNATURE = 0x02014b50;
+  private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+  private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06064b50;
+  private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_SIGNATURE = 0x07064b50;
+  private static final int ZIP64_EXTRA_FIELD_ID = 0x0001;
+
+  private static final int LOCAL_FILE_HEADER_SIZE = 30;
+  private static final int CENTRAL_DIRECTORY_HEADER_SIZE = 46;
+  private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+  private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_SIZE = 56;
+  private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_SIZE = 20;
+  private static final int MAX_COMMENT_SIZE = 0xffff;
+
+  /** Largest size of a header: fixed fields followed by three variable fields of 64 KB each. */
+  private static final int MAX_HEADER_SIZE = CENTRAL_DIRECTORY_HEADER_SIZE + 3 * 0xffff;
+
+  private static final int INFLATER_BUFFER_SIZE = 8192;
+
+  private static final int DEFAULT_SEGMENT_SIZE = 1 << 30;
+  private static final int DEFAULT_SEGMENT_OVERLAP = 1 << 20;
+
+  private final Path path;
+  private final FileChannel channel;
+  private final long fileSize;
+  private final int segmentSize;
+  private final ImmutableList<ByteBuffer> segments;
+  private final ImmutableList<Entry> entries;
+  private final ImmutableMap<String, Entry> entriesByName;
+  private volatile boolean closed = false;
+
+  private MappedZipFile(Path path, FileChannel channel, int segmentSize, int segmentOverlap)
+      throws IOException {
+    this.path = path;
+    this.channel = channel;
+    this.fileSize = channel.size();
+    this.segmentSize = segmentSize;
+    ImmutableList.Builder<ByteBuffer> segments = ImmutableList.builder();
+    for (long segmentStart = 0; segmentStart < fileSize; segmentStart += segmentSize) {
+      long mappedSize = Math.min(fileSize - segmentStart, (long) segmentSize + segmentOverlap);
+      segments.add(
+          channel
+              .map(MapMode.READ_ONLY, segmentStart, mappedSize)
+              .order(ByteOrder.LITTLE_ENDIAN));
+    }
+    this.segments = segments.build();
+    this.entries = readCentralDirectory();
+    this.entriesByName =
+        entries.stream()
+            .collect(toImmutableMap(Entry::getName, Function.identity(), (first, second) -> first));
+  }
+
+  /** Opens the zip file at the given path and reads its central directory. */
+  public static MappedZipFile open(Path path) throws IOException {
+    return open(path, DEFAULT_SEGMENT_SIZE, DEFAULT_SEGMENT_OVERLAP);
+  }
+
+  @VisibleForTesting
+  static MappedZipFile open(Path path, int segmentSize, int segmentOverlap) throws IOException {
+    checkArgument(
+        segmentOverlap >= MAX_HEADER_SIZE,
+        "Segments must overlap by at least %s bytes.",
+        MAX_HEADER_SIZE);
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+    try {
+      return new MappedZipFile(path, channel, segmentSize, segmentOverlap);
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  public Path getPath() {
+    return path;
+  }
+
+  /** Returns all entries of the zip file, in the order of the central directory. */
+  public ImmutableList<Entry> getEntries() {
+    return entries;
+  }
+
+  /** Returns the file entries of the zip file, skipping directories. */
+  public ImmutableList<Entry> getFileEntries() {
+    return entries.stream().filter(entry -> !entry.isDirectory()).collect(toImmutableList());
+  }
+
+  /** Returns the entry with the given name, if present. */
+  public Optional<Entry> getEntry(String name) {
+    return Optional.ofNullable(entriesByName.get(name));
+  }
+
+  /** Returns a {@link ByteSource} reading the uncompressed content of the given entry. */
+  public ByteSource getContent(Entry entry) {
+    return new EntryByteSource(this, entry);
+  }
+
+  /**
+   * Returns the CRC-32 checksum of the given content if it is known without reading the content,
+   * which is the case for a {@link ByteSource} returned by {@link #getContent}.
+   */
+  static OptionalLong crc32IfKnown(ByteSource content) {
+    if (content instanceof EntryByteSource) {
+      return OptionalLong.of(((EntryByteSource) content).entry.getCrc());
+    }
+    return OptionalLong.empty();
+  }
+
+  @Override
+  public void close() throws IOException {
+    // The mapped segments are released once they are garbage collected.
+    closed = true;
+    channel.close();
+  }
+
+  private ImmutableList<Entry> readCentralDirectory() throws IOException {
+    long endOfCentralDirectoryOffset = findEndOfCentralDirectory();
+    ByteBuffer endOfCentralDirectory =
+        slice(endOfCentralDirectoryOffset, END_OF_CENTRAL_DIRECTORY_SIZE);
+    long entryCount = Short.toUnsignedLong(endOfCentralDirectory.getShort(10));
+    long centralDirectoryOffset = Integer.toUnsignedLong(endOfCentralDirectory.getInt(16));
+
+    long zip64LocatorOffset =
+        endOfCentralDirectoryOffset - ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_SIZE;
+    if (zip64LocatorOffset >= 0
+        && slice(zip64LocatorOffset, ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_SIZE).getInt(0)
+            == ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_SIGNATURE) {
+      long zip64EndOfCentralDirectoryOffset =
+          slice(zip64LocatorOffset, ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_SIZE).getLong(8);
+      checkInFile(zip64EndOfCentralDirectoryOffset, ZIP64_END_OF_CENTRAL_DIRECTORY_SIZE);
+      ByteBuffer zip64EndOfCentralDirectory =
+          slice(zip64EndOfCentralDirectoryOffset, ZIP64_END_OF_CENTRAL_DIRECTORY_SIZE);
+      if (zip64EndOfCentralDirectory.getInt(0) != ZIP64_END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+        throw new ZipException("Invalid ZIP64 end of central directory in " + path);
+      }
+      entryCount = zip64EndOfCentralDirectory.getLong(32);
+      centralDirectoryOffset = zip64EndOfCentralDirectory.getLong(48);
+    }
+
+    ImmutableList.Builder<Entry> entries = ImmutableList.builder();
+    long headerOffset = centralDirectoryOffset;
+    for (long i = 0; i < entryCount; i++) {
+      checkInFile(headerOffset, CENTRAL_DIRECTORY_HEADER_SIZE);
+      ByteBuffer header = slice(headerOffset, CENTRAL_DIRECTORY_HEADER_SIZE);
+      if (header.getInt(0) != CENTRAL_DIRECTORY_HEADER_SIGNATURE) {
+        throw new ZipException("Invalid central directory header in " + path);
+      }
+      int method = Short.toUnsignedInt(header.getShort(10));
+      long crc = Integer.toUnsignedLong(header.getInt(16));
+      long compressedSize = Integer.toUnsignedLong(header.getInt(20));
+      long size = Integer.toUnsignedLong(header.getInt(24));
+      int nameLength = Short.toUnsignedInt(header.getShort(28));
+      int extraLength = Short.toUnsignedInt(header.getShort(30));
+      int commentLength = Short.toUnsignedInt(header.getShort(32));
+      long localHeaderOffset = Integer.toUnsignedLong(header.getInt(42));
+
+      checkInFile(headerOffset, CENTRAL_DIRECTORY_HEADER_SIZE + nameLength + extraLength);
+      String name =
+          UTF_8
+              .decode(slice(headerOffset + CENTRAL_DIRECTORY_HEADER_SIZE, nameLength))
+              .toString();
+
+      // Sizes and offset which don't fit in 32 bits are in the ZIP64 extra field, in this order.
+      ByteBuffer extra =
+          slice(headerOffset + CENTRAL_DIRECTORY_HEADER_SIZE + nameLength, extraLength);
+      int extraPosition = 0;
+      while (extraPosition + 4 <= extraLength) {
+        int fieldId = Short.toUnsignedInt(extra.getShort(extraPosition));
+        int fieldSize = Short.toUnsignedInt(extra.getShort(extraPosition + 2));
+        if (fieldId == ZIP64_EXTRA_FIELD_ID) {
+          // The values are only read within the field, which must itself fit in the extra data.
+          int valuePosition = extraPosition + 4;
+          int fieldEnd = Math.min(valuePosition + fieldSize, extraLength);
+          if (size == 0xffffffffL) {
+            size = readZip64Value(extra, valuePosition, fieldEnd, name);
+            valuePosition += 8;
+          }
+          if (compressedSize == 0xffffffffL) {
+            compressedSize = readZip64Value(extra, valuePosition, fieldEnd, name);
+            valuePosition += 8;
+          }
+          if (localHeaderOffset == 0xffffffffL) {
+            localHeaderOffset = readZip64Value(extra, valuePosition, fieldEnd, name);
+          }
+          break;
+        }
+        extraPosition += 4 + fieldSize;
+      }
+
+      if (method != ZipEntry.STORED && method != ZipEntry.DEFLATED) {
+        throw new ZipException(
+            String.format("Unsupported compression method %d of entry '%s'.", method, name));
+      }
+      entries.add(
+          Entry.create(
+              name,
+              method == ZipEntry.DEFLATED,
+              crc,
+              size,
+              compressedSize,
+              localHeaderOffset));
+      headerOffset += CENTRAL_DIRECTORY_HEADER_SIZE + nameLength + extraLength + commentLength;
+    }
+    return entries.build();
+  }
+
+  /** Reads a value of the ZIP64 extra field of the given entry, ending at {@code fieldEnd}. */
+  private long readZip64Value(ByteBuffer extra, int valuePosition, int fieldEnd, String entryName)
+      throws ZipException {
+    if (valuePosition + 8 > fieldEnd) {
+      throw new ZipException(
+          String.format("Truncated ZIP64 extra field of entry '%s' in %s", entryName, path));
+    }
+    return extra.getLong(valuePosition);
+  }
+
+  private long findEndOfCentralDirectory() throws IOException {
+    long searchStart = Math.max(0, fileSize - END_OF_CENTRAL_DIRECTORY_SIZE - MAX_COMMENT_SIZE);
+    for (long offset = fileSize - END_OF_CENTRAL_DIRECTORY_SIZE; offset >= searchStart; offset--) {
+      if (slice(offset, 4).getInt(0) == END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+        return offset;
+      }
+    }
+    throw new ZipException("End of central directory not found in " + path);
+  }
+
+  /** Returns the offset in the file of the content of the entry, after its local header. */
+  private long getDataOffset(Entry entry) throws IOException {
+    long headerOffset = entry.getLocalHeaderOffset();
+    checkInFile(headerOffset, LOCAL_FILE_HEADER_SIZE);
+    ByteBuffer header = slice(headerOffset, LOCAL_FILE_HEADER_SIZE);
+    if (header.getInt(0) != LOCAL_FILE_HEADER_SIGNATURE) {
+      throw new ZipException(
+          String.format("Invalid local header of entry '%s' in %s", entry.getName(), path));
+    }
+    long dataOffset =
+        headerOffset
+            + LOCAL_FILE_HEADER_SIZE
+            + Short.toUnsignedInt(header.getShort(26))
+            + Short.toUnsignedInt(header.getShort(28));
+    checkInFile(dataOffset, entry.getCompressedSize());
+    return dataOffset;
+  }
+
+  /**
+   * Returns the given range of the file as little-endian buffers, without copying it.
+   *
+   * <p>A single buffer is returned unless the range spans several segments.
+   */
+  private ImmutableList<ByteBuffer> slices(long offset, long length) {
+    ImmutableList.Builder<ByteBuffer> slices = ImmutableList.builder();
+    int segmentIndex = (int) (offset / segmentSize);
+    long segmentStart = (long) segmentIndex * segmentSize;
+    ByteBuffer segment = segments.get(segmentIndex);
+    if (offset - segmentStart + length <= segment.capacity()) {
+      return ImmutableList.of(slice(segment, (int) (offset - segmentStart), (int) length));
+    }
+    while (length > 0) {
+      int position = (int) (offset - segmentStart);
+      int sliceLength = (int) Math.min(length, segmentSize - position);
+      slices.add(slice(segments.get(segmentIndex), position, sliceLength));
+      offset += sliceLength;
+      length -= sliceLength;
+      segmentIndex++;
+      segmentStart += segmentSize;
+    }
+    return slices.build();
+  }
+
+  /** Returns a small range of the file, which always lies within a single segment. */
+  private ByteBuffer slice(long offset, int length) {
+    int segmentIndex = (int) (offset / segmentSize);
+    return slice(
+        segments.get(segmentIndex), (int) (offset - (long) segmentIndex * segmentSize), length);
+  }
+
+  private static ByteBuffer slice(ByteBuffer segment, int position, int length) {
+    ByteBuffer slice = segment.duplicate();
+    slice.position(position).limit(position + length);
+    return slice.slice().order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  private void checkInFile(long offset, long length) throws ZipException {
+    if (offset < 0 || length < 0 || offset + length > fileSize) {
+      throw new ZipException("Invalid offset or size in zip file " + path);
+    }
+  }
+
+  /** Entry of a {@link MappedZipFile}, as described by the central directory. */
+  @AutoValue
+  public abstract static class Entry {
+    static Entry create(
+        String name,
+        boolean compressed,
+        long crc,
+        long size,
+        long compressedSize,
+        long localHeaderOffset) {
+      return new AutoValue_MappedZipFile_Entry(
+          name, compressed, crc, size, compressedSize, localHeaderOffset);
+    }
+
+    public abstract String getName();
+
+    /** Whether the content of the entry is deflated. */
+    public abstract boolean isCompressed();
+
+    public abstract long getCrc();
+
+    /** Size of the uncompressed content. */
+    public abstract long getSize();
+
+    public abstract long getCompressedSize();
+
+    abstract long getLocalHeaderOffset();
+
+    public boolean isDirectory() {
+      return getName().endsWith("/");
+    }
+  }
+
+  private static final class EntryByteSource extends ByteSource {
+    private final MappedZipFile file;
+    private final Entry entry;
+
+    EntryByteSource(MappedZipFile file, Entry entry) {
+      this.file = file;
+      this.entry = entry;
+    }
+
+    @Override
+    public InputStream openStream() throws IOException {
+      if (file.closed) {
+        throw new IOException("Zip file closed: " + file.path);
+      }
+      InputStream compressedContent =
+          new SequenceInputStream(
+              Collections.enumeration(
+                  file.slices(file.getDataOffset(entry), entry.getCompressedSize()).stream()
+                      .map(ByteBufferInputStream::new)
+                      .collect(toImmutableList())));
+      if (!entry.isCompressed()) {
+        return compressedContent;
+      }
+      Inflater inflater = ZlibPool.acquireInflater();
+      return new InflaterInputStream(
+          // The inflater may need an extra byte past the end of the deflated data.
+          new SequenceInputStream(compressedContent, new ByteArrayInputStream(new byte[1])),
+          inflater,
+          INFLATER_BUFFER_SIZE) {
+        private boolean closed = false;
+
+        @Override
+        public void close() throws IOException {
+          if (!closed) {
+            closed = true;
+            super.close();
+            ZlibPool.releaseInflater(inflater);
+          }
+        }
+      };
+    }
+
+    @Override
+    public com.google.common.base.Optional<Long> sizeIfKnown() {
+      return com.google.common.base.Optional.of(entry.getSize());
+    }
+
+    @Override
+    public String toString() {
+      return "MappedZipFile.getContent(" + file.path + ", " + entry.getName() + ")";
+    }
+  }
+
+  /** Reads the remaining bytes of a buffer, without copying them beforehand. */
+  private static final class ByteBufferInputStream extends InputStream {
+    private final ByteBuffer buffer;
+
+    ByteBufferInputStream(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public int read() {
+      return buffer.hasRemaining() ? Byte.toUnsignedInt(buffer.get()) : -1;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) {
+      if (length == 0) {
+        return 0;
+      }
+      if (!buffer.hasRemaining()) {
+        return -1;
+      }
+      int readLength = Math.min(length, buffer.remaining());
+      buffer.get(bytes, offset, readLength);
+      return readLength;
+    }
+
+    @Override
+    public long skip(long count) {
+      int skipped = (int) Math.max(0, Math.min(count, buffer.remaining()));
+      buffer.position(buffer.position() + skipped);
+      return skipped;
+    }
+
+    @Override
+    public int available() {
+      return buffer.remaining();
+    }
+  }
+}
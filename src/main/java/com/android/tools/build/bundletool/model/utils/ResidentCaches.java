@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.tools.build.bundletool.model.utils;
+
+import com.android.bundle.Commands.BuildApksResult;
+import com.android.tools.build.bundletool.model.AppBundle;
+import com.android.tools.build.bundletool.model.SignerConfig;
+import com.google.common.io.Closer;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.function.Supplier;
+import java.util.zip.ZipFile;
+
+/**
+ * Caches of parsed input files which are kept in memory across the commands executed by a
+ * long-running bundletool process.
+ *
+ * <p>The caches are disabled by default, in which case {@link #get()} returns an empty {@link
+ * Optional} and inputs are parsed by each command.
+ */
+public final class ResidentCaches {
+
+  private static final long MAX_CACHED_TABLES_OF_CONTENTS = 256;
+  private static final long MAX_CACHED_SIGNER_CONFIGS = 64;
+
+  private static volatile Optional<ResidentCaches> instance = Optional.empty();
+
+  private final FileCache<CachedAppBundle> appBundles;
+  private final FileCache<BuildApksResult> tablesOfContents;
+  private final FileCache<SignerConfig> signerConfigs;
+
+  private ResidentCaches(long maxCachedAppBundles) {
+    this.appBundles = new FileCache<>(maxCachedAppBundles, CachedAppBundle::evict);
+    this.tablesOfContents = new FileCache<>(MAX_CACHED_TABLES_OF_CONTENTS);
+    this.signerConfigs = new FileCache<>(MAX_CACHED_SIGNER_CONFIGS);
+  }
+
+  /** Enables the caches, keeping at most {@code maxCachedAppBundles} parsed App Bundles. */
+  public static synchronized void enable(long maxCachedAppBundles) {
+    instance = Optional.of(new ResidentCaches(maxCachedAppBundles));
+  }
+
+  /**
+   * Disables the caches and drops all cached values.
+   *
+   * <p>The zip files of the cached App Bundles are closed, or will be once the commands using them
+   * complete.
+   */
+  public static synchronized void disable() {
+    instance.ifPresent(
+        caches -> {
+          caches.appBundles.invalidateAll();
+          caches.tablesOfContents.invalidateAll();
+          caches.signerConfigs.invalidateAll();
+        });
+    instance = Optional.empty();
+  }
+
+  /** Returns the caches, if enabled. */
+  public static Optional<ResidentCaches> get() {
+    return instance;
+  }
+
+  /**
+   * Returns the App Bundle parsed from the given file, parsing it with {@code loader} if it's not
+   * cached.
+   *
+   * <p>The zip file backing the bundle is kept open at least until {@code closer} is closed, even
+   * if the bundle is evicted from the cache in the meantime. It is closed once the bundle is
+   * evicted and no longer in use.
+   */
+  public CachedAppBundle acquireAppBundle(
+      Path bundlePath, Supplier<CachedAppBundle> loader, Closer closer) {
+    while (true) {
+      CachedAppBundle cachedAppBundle = appBundles.get(bundlePath, loader);
+      if (cachedAppBundle.tryAcquire()) {
+        closer.register(cachedAppBundle::release);
+        return cachedAppBundle;
+      }
+      // The bundle was evicted and closed between the lookup and its acquisition, so it is no
+      // longer cached and is loaded again.
+    }
+  }
+
+  /** Tables of contents keyed by the APK Set archive. */
+  public FileCache<BuildApksResult> getTablesOfContents() {
+    return tablesOfContents;
+  }
+
+  /** Signer configs keyed by the keystore file, the key alias and the passwords. */
+  public FileCache<SignerConfig> getSignerConfigs() {
+    return signerConfigs;
+  }
+
+  /**
+   * App Bundle cached together with the zip file it was parsed from.
+   *
+   * <p>The zip file is closed once the bundle has been evicted from the cache and all the commands
+   * which acquired it have released it.
+   */
+  public static final class CachedAppBundle {
+    private final AppBundle appBundle;
+    private final ZipFile zipFile;
+
+    private int userCount = 0;
+    private boolean evicted = false;
+    private boolean closed = false;
+
+    private CachedAppBundle(AppBundle appBundle, ZipFile zipFile) {
+      this.appBundle = appBundle;
+      this.zipFile = zipFile;
+    }
+
+    public static CachedAppBundle create(AppBundle appBundle, ZipFile zipFile) {
+      return new CachedAppBundle(appBundle, zipFile);
+    }
+
+    public AppBundle getAppBundle() {
+      return appBundle;
+    }
+
+    public ZipFile getZipFile() {
+      return zipFile;
+    }
+
+    private synchronized boolean tryAcquire() {
+      if (closed) {
+        return false;
+      }
+      userCount++;
+      return true;
+    }
+
+    private synchronized void release() throws IOException {
+      userCount--;
+      closeIfUnused();
+    }
+
+    private synchronized void evict() {
+      evicted = true;
+      try {
+        closeIfUnused();
+      } catch (IOException e) {
+        // Nothing is read from the zip file anymore, so failing to close it has no consequence.
+      }
+    }
+
+    private void closeIfUnused() throws IOException {
+      if (evicted && userCount == 0 && !closed) {
+        closed = true;
+        zipFile.close();
+      }
+    }
+  }
+}
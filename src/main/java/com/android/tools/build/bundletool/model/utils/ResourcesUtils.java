@@ -37,6 +37,7 @@ import com.google.common.collect.ImmutableBiMap;
 import com.google.common.collect.ImmutableCollection;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Locale;
@@ -108,11 +109,15 @@ public final class ResourcesUtils {
    * <p>If any of {@link Package}, {@link Type} or {@link Entry} is empty after the filtering, it
    * gets removed from the table altogether.
    *
+   * <p>The packages, types and entries left unchanged by the filtering are shared with the original
+   * table rather than copied, so that the tables of all splits of a module mostly point to the same
+   * messages as the table of the module.
+   *
    * @param originalTable the original resource table
    * @param removeEntryPredicate determines whether an entry should be completely removed with all
    *     their configurations
    * @param configValuesFilterFn computes a new {@link Entry} with filtered {@link ConfigValue} list
-   *     (possibly empty)
+   *     (possibly empty), or returns the original entry if it is left unchanged
    * @return filtered resource table
    */
   public static ResourceTable filterResourceTable(
@@ -120,41 +125,56 @@ public final class ResourcesUtils {
       Predicate<ResourceTableEntry> removeEntryPredicate,
       Function<ResourceTableEntry, Entry> configValuesFilterFn) {
 
-    ResourceTable.Builder filteredTable = originalTable.toBuilder();
-
-    for (int pkgIdx = filteredTable.getPackageCount() - 1; pkgIdx >= 0; pkgIdx--) {
-      Package.Builder pkg = filteredTable.getPackageBuilder(pkgIdx);
+    List<Package> filteredPackages = new ArrayList<>(originalTable.getPackageCount());
+    boolean tableModified = false;
 
-      for (int typeIdx = pkg.getTypeCount() - 1; typeIdx >= 0; typeIdx--) {
-        Type.Builder type = pkg.getTypeBuilder(typeIdx);
+    for (Package pkg : originalTable.getPackageList()) {
+      List<Type> filteredTypes = new ArrayList<>(pkg.getTypeCount());
+      boolean packageModified = false;
 
-        List<Entry> unfilteredEntries = type.getEntryList();
-        type.clearEntry();
+      for (Type type : pkg.getTypeList()) {
+        List<Entry> filteredEntries = new ArrayList<>(type.getEntryCount());
+        boolean typeModified = false;
 
-        for (Entry unfilteredEntry : unfilteredEntries) {
-          ResourceTableEntry entry =
-              ResourceTableEntry.create(
-                  filteredTable.getPackage(pkgIdx), pkg.getType(typeIdx), unfilteredEntry);
+        for (Entry unfilteredEntry : type.getEntryList()) {
+          ResourceTableEntry entry = ResourceTableEntry.create(pkg, type, unfilteredEntry);
           if (removeEntryPredicate.test(entry)) {
+            typeModified = true;
             continue;
           }
           Entry filteredEntry = configValuesFilterFn.apply(entry);
           if (filteredEntry.getConfigValueCount() > 0) {
-            type.addEntry(filteredEntry);
+            filteredEntries.add(filteredEntry);
+            typeModified |= filteredEntry != unfilteredEntry;
+          } else {
+            typeModified = true;
           }
         } // entries
 
-        if (type.getEntryCount() == 0) {
-          pkg.removeType(typeIdx);
+        if (filteredEntries.isEmpty()) {
+          packageModified = true;
+        } else if (typeModified) {
+          filteredTypes.add(type.toBuilder().clearEntry().addAllEntry(filteredEntries).build());
+          packageModified = true;
+        } else {
+          filteredTypes.add(type);
         }
       } // types
 
-      if (pkg.getTypeCount() == 0) {
-        filteredTable.removePackage(pkgIdx);
+      if (filteredTypes.isEmpty()) {
+        tableModified = true;
+      } else if (packageModified) {
+        filteredPackages.add(pkg.toBuilder().clearType().addAllType(filteredTypes).build());
+        tableModified = true;
+      } else {
+        filteredPackages.add(pkg);
       }
     } // packages
 
-    return filteredTable.build();
+    if (!tableModified) {
+      return originalTable;
+    }
+    return originalTable.toBuilder().clearPackage().addAllPackage(filteredPackages).build();
   }
 
   public static Stream<ResourceTableEntry> entries(ResourceTable resourceTable) {
@@ -40,13 +40,24 @@ import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
+import java.util.Optional;
+import java.util.zip.ZipException;
 
 /** Utility class for result objects returned by bundletool commands. */
 public final class ResultUtils {
 
   public static BuildApksResult readTableOfContents(Path apksPath) {
+    Optional<ResidentCaches> residentCaches = ResidentCaches.get();
+    if (residentCaches.isPresent()) {
+      return residentCaches
+          .get()
+          .getTablesOfContents()
+          .get(apksPath, () -> readTableOfContentsUncached(apksPath));
+    }
+    return readTableOfContentsUncached(apksPath);
+  }
+
+  private static BuildApksResult readTableOfContentsUncached(Path apksPath) {
     try {
       ensureSingleToc(apksPath);
       BuildApksResult result =
@@ -62,13 +73,22 @@ public final class ResultUtils {
 
   private static BuildApksResult readTableOfContentFromApksArchive(Path apksArchivePath)
       throws IOException {
-    try (ZipFile apksArchive = new ZipFile(apksArchivePath.toFile())) {
-      boolean tocJsonExists = apksArchive.getEntry(TABLE_OF_CONTENTS_JSON_FILE) != null;
-      byte[] tocBytes =
-          tocJsonExists
-              ? ZipUtils.asByteSource(apksArchive, new ZipEntry(TABLE_OF_CONTENTS_JSON_FILE)).read()
-              : ZipUtils.asByteSource(apksArchive, new ZipEntry(TABLE_OF_CONTENTS_FILE)).read();
-      return tocJsonExists ? parseJsonToc(tocBytes) : parseProtoToc(tocBytes);
+    try (MappedZipFile apksArchive = MappedZipFile.open(apksArchivePath)) {
+      Optional<MappedZipFile.Entry> tocEntry = apksArchive.getEntry(TABLE_OF_CONTENTS_FILE);
+      Optional<MappedZipFile.Entry> tocJsonEntry =
+          apksArchive.getEntry(TABLE_OF_CONTENTS_JSON_FILE);
+      if (tocEntry.isPresent() && tocJsonEntry.isPresent()) {
+        throw new IllegalStateException(
+            "Apks archive cannot have both toc.pb and toc.json at the same time.");
+      }
+      if (tocJsonEntry.isPresent()) {
+        return parseJsonToc(apksArchive.getContent(tocJsonEntry.get()).read());
+      }
+      if (!tocEntry.isPresent()) {
+        throw new ZipException(
+            String.format("File '%s' not found in '%s'.", TABLE_OF_CONTENTS_FILE, apksArchivePath));
+      }
+      return parseProtoToc(apksArchive.getContent(tocEntry.get()).read());
     }
   }
 
@@ -107,22 +127,13 @@ public final class ResultUtils {
     }
   }
 
-  /* Ensures that an apks folder or zip has only one toc. */
-  private static void ensureSingleToc(Path file) throws IOException {
-    if (Files.isDirectory(file)) {
-      if (Files.exists(file.resolve(TABLE_OF_CONTENTS_FILE))
-          && Files.exists(file.resolve(TABLE_OF_CONTENTS_JSON_FILE))) {
-        throw new IllegalStateException(
-            "Apks directory cannot have both toc.pb and toc.json at the same time.");
-      }
-    } else {
-      try (ZipFile apksArchive = new ZipFile(file.toFile())) {
-        if (apksArchive.getEntry(TABLE_OF_CONTENTS_FILE) != null
-            && apksArchive.getEntry(TABLE_OF_CONTENTS_JSON_FILE) != null) {
-          throw new IllegalStateException(
-              "Apks archive cannot have both toc.pb and toc.json at the same time.");
-        }
-      }
+  /* Ensures that an apks folder has only one toc. Archives are checked when they are read. */
+  private static void ensureSingleToc(Path file) {
+    if (Files.isDirectory(file)
+        && Files.exists(file.resolve(TABLE_OF_CONTENTS_FILE))
+        && Files.exists(file.resolve(TABLE_OF_CONTENTS_JSON_FILE))) {
+      throw new IllegalStateException(
+          "Apks directory cannot have both toc.pb and toc.json at the same time.");
     }
   }
 
@@ -28,6 +28,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.UncheckedIOException;
 import java.nio.file.Path;
+import java.util.OptionalLong;
 import java.util.stream.Stream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
@@ -86,6 +87,19 @@ public final class ZipUtils {
     return new ZipEntryByteSource(file, entry);
   }
 
+  /**
+   * Returns the CRC-32 checksum of the given content if it is known without reading the content,
+   * which is the case for a {@link ByteSource} returned by {@link #asByteSource} or {@link
+   * MappedZipFile#getContent}.
+   */
+  public static OptionalLong crc32IfKnown(ByteSource content) {
+    if (content instanceof ZipEntryByteSource) {
+      long crc32 = ((ZipEntryByteSource) content).entry.getCrc();
+      return crc32 == -1 ? OptionalLong.empty() : OptionalLong.of(crc32);
+    }
+    return MappedZipFile.crc32IfKnown(content);
+  }
+
   private static final class ZipEntryByteSource extends ByteSource {
     private final ZipFile file;
     private final ZipEntry entry;
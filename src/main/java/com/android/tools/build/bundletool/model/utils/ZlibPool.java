@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.tools.build.bundletool.model.utils;
+
+import com.google.auto.value.AutoValue;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Thread-local pools of {@link Deflater}s and {@link Inflater}s.
+ *
+ * <p>Each deflater and inflater holds native zlib state which is expensive to allocate and is only
+ * freed when {@code end()} is called or the object is garbage collected. Borrowing them from this
+ * pool lets the same native state be reused across the entries compressed or decompressed by a
+ * thread.
+ *
+ * <p>Each thread keeps at most {@link #MAX_POOLED_PER_THREAD} idle objects of each kind; objects
+ * released to a full pool are ended straight away.
+ */
+public final class ZlibPool {
+
+  static final int MAX_POOLED_PER_THREAD = 4;
+
+  // Approximate native memory used by zlib with the default window and memory levels.
+  private static final long DEFLATER_NATIVE_BYTES = 384 * 1024;
+  private static final long INFLATER_NATIVE_BYTES = 40 * 1024;
+
+  private static final ThreadLocal<Map<Integer, ArrayDeque<Deflater>>> deflaters =
+      ThreadLocal.withInitial(HashMap::new);
+  private static final ThreadLocal<ArrayDeque<Inflater>> inflaters =
+      ThreadLocal.withInitial(ArrayDeque::new);
+
+  private static final AtomicLong hitCount = new AtomicLong();
+  private static final AtomicLong missCount = new AtomicLong();
+  private static final AtomicLong liveDeflaterCount = new AtomicLong();
+  private static final AtomicLong liveInflaterCount = new AtomicLong();
+
+  /**
+   * Returns a deflater with the given compression level and wrapping, ready to compress new data.
+   *
+   * <p>The deflater must be given back with {@link #releaseDeflater} with the same parameters, and
+   * must not be ended by the caller.
+   */
+  public static Deflater acquireDeflater(int level, boolean nowrap) {
+    Deflater deflater = deflaterPool(level, nowrap).poll();
+    if (deflater != null) {
+      hitCount.incrementAndGet();
+      return deflater;
+    }
+    missCount.incrementAndGet();
+    liveDeflaterCount.incrementAndGet();
+    return new Deflater(level, nowrap);
+  }
+
+  /** Gives back a deflater obtained from {@link #acquireDeflater} with the same parameters. */
+  public static void releaseDeflater(Deflater deflater, int level, boolean nowrap) {
+    ArrayDeque<Deflater> pool = deflaterPool(level, nowrap);
+    if (pool.size() < MAX_POOLED_PER_THREAD) {
+      deflater.reset();
+      pool.push(deflater);
+    } else {
+      deflater.end();
+      liveDeflaterCount.decrementAndGet();
+    }
+  }
+
+  /**
+   * Returns an inflater for raw deflate data (without zlib header), ready to decompress new data.
+   *
+   * <p>The inflater must be given back with {@link #releaseInflater}, and must not be ended by the
+   * caller.
+   */
+  public static Inflater acquireInflater() {
+    Inflater inflater = inflaters.get().poll();
+    if (inflater != null) {
+      hitCount.incrementAndGet();
+      return inflater;
+    }
+    missCount.incrementAndGet();
+    liveInflaterCount.incrementAndGet();
+    return new Inflater(/* nowrap= */ true);
+  }
+
+  /** Gives back an inflater obtained from {@link #acquireInflater}. */
+  public static void releaseInflater(Inflater inflater) {
+    ArrayDeque<Inflater> pool = inflaters.get();
+    if (pool.size() < MAX_POOLED_PER_THREAD) {
+      inflater.reset();
+      pool.push(inflater);
+    } else {
+      inflater.end();
+      liveInflaterCount.decrementAndGet();
+    }
+  }
+
+  /** Returns the usage counters of the pools. */
+  public static Stats getStats() {
+    long liveDeflaters = liveDeflaterCount.get();
+    long liveInflaters = liveInflaterCount.get();
+    return Stats.create(
+        hitCount.get(),
+        missCount.get(),
+        liveDeflaters * DEFLATER_NATIVE_BYTES + liveInflaters * INFLATER_NATIVE_BYTES);
+  }
+
+  private static ArrayDeque<Deflater> deflaterPool(int level, boolean nowrap) {
+    int key = level * 2 + (nowrap ? 1 : 0);
+    return deflaters.get().computeIfAbsent(key, k -> new ArrayDeque<>());
+  }
+
+  /** Usage counters of the deflater and inflater pools. */
+  @AutoValue
+  public abstract static class Stats {
+    static Stats create(long hitCount, long missCount, long nativeBytesEstimate) {
+      return new AutoValue_ZlibPool_Stats(hitCount, missCount, nativeBytesEstimate);
+    }
+
+    /** Number of deflaters and inflaters reused from a pool. */
+    public abstract long getHitCount();
+
+    /** Number of deflaters and inflaters created because no pooled one was available. */
+    public abstract long getMissCount();
+
+    /**
+     * Estimate of the native memory held by the deflaters and inflaters in use or pooled.
+     *
+     * <p>Objects pooled by threads which have since terminated are still counted, so this is an
+     * upper bound.
+     */
+    public abstract long getNativeBytesEstimate();
+  }
+
+  private ZlibPool() {}
+}
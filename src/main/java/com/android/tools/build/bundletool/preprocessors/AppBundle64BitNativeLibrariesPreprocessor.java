@@ -16,14 +16,12 @@
 
 package com.android.tools.build.bundletool.preprocessors;
 
-import static com.google.common.collect.ImmutableList.toImmutableList;
-
 import com.android.tools.build.bundletool.model.AppBundle;
 import com.android.tools.build.bundletool.model.BundleModule;
 import com.android.tools.build.bundletool.shards.BundleModule64BitNativeLibrariesRemover;
-import com.google.common.collect.ImmutableCollection;
 import java.io.PrintStream;
 import java.util.Optional;
+import java.util.function.UnaryOperator;
 import javax.inject.Inject;
 
 /**
@@ -33,7 +31,7 @@ import javax.inject.Inject;
  * <p>If the Platform finds renderscript code in the app, it will run it in 32 bit mode, so the 64
  * bit libraries will not be used and can be removed.
  */
-public class AppBundle64BitNativeLibrariesPreprocessor implements AppBundlePreprocessor {
+public class AppBundle64BitNativeLibrariesPreprocessor implements ModulePreprocessor {
 
   private final BundleModule64BitNativeLibrariesRemover bundleModule64BitNativeLibrariesRemover;
   private final Optional<PrintStream> logPrintStream;
@@ -47,26 +45,17 @@ public class AppBundle64BitNativeLibrariesPreprocessor implements AppBundlePrepr
   }
 
   @Override
-  public AppBundle preprocess(AppBundle originalBundle) {
+  public UnaryOperator<BundleModule> getModuleProcessor(AppBundle originalBundle) {
     boolean filter64BitLibraries = has32BitRenderscriptCode(originalBundle);
 
     if (!filter64BitLibraries) {
-      return originalBundle;
+      return UnaryOperator.identity();
     }
     printWarning(
         "App Bundle contains 32-bit RenderScript bitcode file (.bc) which disables 64-bit "
             + "support in Android. 64-bit native libraries won't be included in generated "
             + "APKs.");
-    return originalBundle.toBuilder()
-        .setRawModules(processModules(originalBundle.getModules().values()))
-        .build();
-  }
-
-  public ImmutableCollection<BundleModule> processModules(
-      ImmutableCollection<BundleModule> modules) {
-    return modules.stream()
-        .map(bundleModule64BitNativeLibrariesRemover::strip64BitLibraries)
-        .collect(toImmutableList());
+    return bundleModule64BitNativeLibrariesRemover::strip64BitLibraries;
   }
 
   private static boolean has32BitRenderscriptCode(AppBundle bundle) {
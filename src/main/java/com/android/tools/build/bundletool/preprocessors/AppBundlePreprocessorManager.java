@@ -15,25 +15,77 @@
  */
 package com.android.tools.build.bundletool.preprocessors;
 
+import static com.google.common.collect.ImmutableList.toImmutableList;
+
+import com.android.tools.build.bundletool.io.ConcurrencyUtils;
 import com.android.tools.build.bundletool.model.AppBundle;
+import com.android.tools.build.bundletool.model.BundleModule;
 import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.UnaryOperator;
 import javax.inject.Inject;
 
-/** Coordinates all the pre-processing steps before the build-apks command is executed. */
+/**
+ * Coordinates all the pre-processing steps before the build-apks command is executed.
+ *
+ * <p>Consecutive {@link ModulePreprocessor}s are applied in a single pass over the modules, which
+ * are processed in parallel.
+ */
 public final class AppBundlePreprocessorManager {
 
   private final ImmutableList<AppBundlePreprocessor> appBundlePreprocessors;
+  private final ListeningExecutorService executorService;
 
   @Inject
-  AppBundlePreprocessorManager(ImmutableList<AppBundlePreprocessor> appBundlePreprocessors) {
+  AppBundlePreprocessorManager(
+      ImmutableList<AppBundlePreprocessor> appBundlePreprocessors,
+      ListeningExecutorService executorService) {
     this.appBundlePreprocessors = appBundlePreprocessors;
+    this.executorService = executorService;
   }
 
   public AppBundle processAppBundle(AppBundle appBundle) {
     AppBundle newAppBundle = appBundle;
+    List<ModulePreprocessor> modulePreprocessors = new ArrayList<>();
     for (AppBundlePreprocessor preprocessor : appBundlePreprocessors) {
+      if (preprocessor instanceof ModulePreprocessor) {
+        modulePreprocessors.add((ModulePreprocessor) preprocessor);
+        continue;
+      }
+      newAppBundle = processModules(newAppBundle, modulePreprocessors);
+      modulePreprocessors.clear();
       newAppBundle = preprocessor.preprocess(newAppBundle);
     }
-    return newAppBundle;
+    return processModules(newAppBundle, modulePreprocessors);
+  }
+
+  private AppBundle processModules(
+      AppBundle appBundle, List<ModulePreprocessor> modulePreprocessors) {
+    if (modulePreprocessors.isEmpty()) {
+      return appBundle;
+    }
+    ImmutableList<UnaryOperator<BundleModule>> moduleProcessors =
+        modulePreprocessors.stream()
+            .map(preprocessor -> preprocessor.getModuleProcessor(appBundle))
+            .collect(toImmutableList());
+    ImmutableList<ListenableFuture<BundleModule>> processedModules =
+        appBundle.getModules().values().stream()
+            .map(module -> executorService.submit(() -> processModule(module, moduleProcessors)))
+            .collect(toImmutableList());
+    return appBundle.toBuilder()
+        .setRawModules(ConcurrencyUtils.waitForAll(processedModules))
+        .build();
+  }
+
+  private static BundleModule processModule(
+      BundleModule module, ImmutableList<UnaryOperator<BundleModule>> moduleProcessors) {
+    BundleModule processedModule = module;
+    for (UnaryOperator<BundleModule> moduleProcessor : moduleProcessors) {
+      processedModule = moduleProcessor.apply(processedModule);
+    }
+    return processedModule;
   }
 }
@@ -24,37 +24,33 @@ import com.android.tools.build.bundletool.model.BundleModule;
 import com.android.tools.build.bundletool.model.ModuleEntry;
 import com.android.tools.build.bundletool.model.ZipPath;
 import com.android.tools.build.bundletool.model.exceptions.InvalidBundleException;
-import com.google.common.collect.ImmutableCollection;
-import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
-import com.google.errorprone.annotations.CheckReturnValue;
 import java.util.Set;
+import java.util.function.UnaryOperator;
 import javax.inject.Inject;
 
 /** Identify embedded APKs which should be signed with the same key as generated APKs. */
-public class EmbeddedApkSigningPreprocessor implements AppBundlePreprocessor {
+public class EmbeddedApkSigningPreprocessor implements ModulePreprocessor {
 
   @Inject
   EmbeddedApkSigningPreprocessor() {}
 
   @Override
-  public AppBundle preprocess(AppBundle bundle) {
+  public UnaryOperator<BundleModule> getModuleProcessor(AppBundle bundle) {
     ImmutableSet<ZipPath> unsignedEmbeddedApkPaths =
         bundle.getBundleConfig().getUnsignedEmbeddedApkConfigList().stream()
             .map(UnsignedEmbeddedApkConfig::getPath)
             .map(ZipPath::create)
             .collect(toImmutableSet());
-    ImmutableSet.Builder<ZipPath> foundApkPaths = ImmutableSet.builder();
-
-    AppBundle appBundle =
-        bundle.toBuilder()
-            .setRawModules(
-                setShouldSign(
-                    bundle.getModules().values(), unsignedEmbeddedApkPaths, foundApkPaths))
-            .build();
+    ImmutableSet<ZipPath> foundApkPaths =
+        bundle.getModules().values().stream()
+            .flatMap(module -> module.getEntries().stream())
+            .map(ModuleEntry::getPath)
+            .filter(unsignedEmbeddedApkPaths::contains)
+            .collect(toImmutableSet());
 
-    Set<ZipPath> missingApks = Sets.difference(unsignedEmbeddedApkPaths, foundApkPaths.build());
+    Set<ZipPath> missingApks = Sets.difference(unsignedEmbeddedApkPaths, foundApkPaths);
     if (!missingApks.isEmpty()) {
       throw InvalidBundleException.builder()
           .withUserMessage(
@@ -63,39 +59,22 @@ public class EmbeddedApkSigningPreprocessor implements AppBundlePreprocessor {
           .build();
     }
 
-    return appBundle;
-  }
-
-  @CheckReturnValue
-  private static ImmutableList<BundleModule> setShouldSign(
-      ImmutableCollection<BundleModule> modules,
-      ImmutableSet<ZipPath> unsignedEmbeddedApkPaths,
-      ImmutableSet.Builder<ZipPath> foundApkPaths) {
-    return modules.stream()
-        .map(module -> setShouldSign(module, unsignedEmbeddedApkPaths, foundApkPaths))
-        .collect(toImmutableList());
+    return module -> setShouldSign(module, unsignedEmbeddedApkPaths);
   }
 
   private static BundleModule setShouldSign(
-      BundleModule module,
-      ImmutableSet<ZipPath> unsignedEmbeddedApkPaths,
-      ImmutableSet.Builder<ZipPath> foundApkPaths) {
+      BundleModule module, ImmutableSet<ZipPath> unsignedEmbeddedApkPaths) {
     return module.toBuilder()
         .setRawEntries(
             module.getEntries().stream()
-                .map(entry -> setShouldSign(entry, unsignedEmbeddedApkPaths, foundApkPaths))
+                .map(entry -> setShouldSign(entry, unsignedEmbeddedApkPaths))
                 .collect(toImmutableList()))
         .build();
   }
 
   private static ModuleEntry setShouldSign(
-      ModuleEntry moduleEntry,
-      ImmutableSet<ZipPath> unsignedEmbeddedApkPaths,
-      ImmutableSet.Builder<ZipPath> foundApkPaths) {
+      ModuleEntry moduleEntry, ImmutableSet<ZipPath> unsignedEmbeddedApkPaths) {
     boolean shouldSign = unsignedEmbeddedApkPaths.contains(moduleEntry.getPath());
-    if (shouldSign) {
-      foundApkPaths.add(moduleEntry.getPath());
-    }
     return moduleEntry.toBuilder().setShouldSign(shouldSign).build();
   }
 }
@@ -21,9 +21,7 @@ import static com.google.common.collect.ImmutableList.toImmutableList;
 import com.android.bundle.Config.BundleConfig;
 import com.android.tools.build.bundletool.model.AppBundle;
 import com.android.tools.build.bundletool.model.BundleModule;
-import com.google.common.collect.ImmutableCollection;
-import com.google.common.collect.ImmutableList;
-import com.google.errorprone.annotations.CheckReturnValue;
+import java.util.function.UnaryOperator;
 import javax.inject.Inject;
 
 /**
@@ -31,7 +29,7 @@ import javax.inject.Inject;
  *
  * <p>Asset module entries are uncompressed.
  */
-public class EntryCompressionPreprocessor implements AppBundlePreprocessor {
+public class EntryCompressionPreprocessor implements ModulePreprocessor {
 
   private final ModuleCompressionManager moduleCompressionManager;
 
@@ -41,18 +39,9 @@ public class EntryCompressionPreprocessor implements AppBundlePreprocessor {
   }
 
   @Override
-  public AppBundle preprocess(AppBundle bundle) {
-    return bundle.toBuilder()
-        .setRawModules(setEntryCompression(bundle.getModules().values(), bundle.getBundleConfig()))
-        .build();
-  }
-
-  @CheckReturnValue
-  private ImmutableList<BundleModule> setEntryCompression(
-      ImmutableCollection<BundleModule> modules, BundleConfig bundleConfig) {
-    return modules.stream()
-        .map(module -> setEntryCompression(module, bundleConfig))
-        .collect(toImmutableList());
+  public UnaryOperator<BundleModule> getModuleProcessor(AppBundle bundle) {
+    BundleConfig bundleConfig = bundle.getBundleConfig();
+    return module -> setEntryCompression(module, bundleConfig);
   }
 
   private BundleModule setEntryCompression(BundleModule module, BundleConfig bundleConfig) {
@@ -15,12 +15,11 @@
  */
 package com.android.tools.build.bundletool.preprocessors;
 
-import static com.google.common.collect.ImmutableList.toImmutableList;
-
 import com.android.tools.build.bundletool.model.AndroidManifest;
 import com.android.tools.build.bundletool.model.AppBundle;
 import com.android.tools.build.bundletool.model.BundleModule;
 import com.google.common.annotations.VisibleForTesting;
+import java.util.function.UnaryOperator;
 import javax.inject.Inject;
 
 /**
@@ -28,7 +27,7 @@ import javax.inject.Inject;
  *
  * <p>The metadata element is {@code <meta-data name="local_testing_dir" value="local_testing"/>}.
  */
-public class LocalTestingPreprocessor implements AppBundlePreprocessor {
+public class LocalTestingPreprocessor implements ModulePreprocessor {
   public static final String METADATA_NAME = "local_testing_dir";
   @VisibleForTesting static final String METADATA_VALUE = "local_testing";
 
@@ -36,13 +35,8 @@ public class LocalTestingPreprocessor implements AppBundlePreprocessor {
   LocalTestingPreprocessor() {}
 
   @Override
-  public AppBundle preprocess(AppBundle bundle) {
-    return bundle.toBuilder()
-        .setRawModules(
-            bundle.getModules().values().stream()
-                .map(module -> module.isBaseModule() ? addLocalTestingMetadata(module) : module)
-                .collect(toImmutableList()))
-        .build();
+  public UnaryOperator<BundleModule> getModuleProcessor(AppBundle bundle) {
+    return module -> module.isBaseModule() ? addLocalTestingMetadata(module) : module;
   }
 
   private static BundleModule addLocalTestingMetadata(BundleModule module) {
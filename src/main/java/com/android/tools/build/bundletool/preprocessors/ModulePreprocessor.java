@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.tools.build.bundletool.preprocessors;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+
+import com.android.tools.build.bundletool.model.AppBundle;
+import com.android.tools.build.bundletool.model.BundleModule;
+import java.util.function.UnaryOperator;
+
+/**
+ * An {@link AppBundlePreprocessor} that processes each module independently of the other modules.
+ *
+ * <p>{@link AppBundlePreprocessorManager} fuses consecutive module preprocessors into a single pass
+ * over the modules of the bundle, processing the modules in parallel. Other preprocessors act as
+ * barriers between such passes.
+ */
+public interface ModulePreprocessor extends AppBundlePreprocessor {
+
+  /**
+   * Returns the function processing each module of the given bundle.
+   *
+   * <p>The function may be called concurrently for different modules. When fused with other module
+   * preprocessors, all functions are created before any module is processed, so they must only
+   * depend on parts of the bundle that module preprocessors don't change, such as the bundle
+   * config.
+   */
+  UnaryOperator<BundleModule> getModuleProcessor(AppBundle appBundle);
+
+  @Override
+  default AppBundle preprocess(AppBundle appBundle) {
+    UnaryOperator<BundleModule> moduleProcessor = getModuleProcessor(appBundle);
+    return appBundle.toBuilder()
+        .setRawModules(
+            appBundle.getModules().values().stream()
+                .map(moduleProcessor)
+                .collect(toImmutableList()))
+        .build();
+  }
+}
@@ -21,6 +21,7 @@ import com.android.tools.build.bundletool.model.AppBundle;
 import com.android.tools.build.bundletool.model.BundleModule;
 import com.android.tools.build.bundletool.sdkmodule.SdkModuleToAppBundleModuleConverter;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ListeningExecutorService;
 import javax.inject.Inject;
 
 /**
@@ -30,10 +31,14 @@ import javax.inject.Inject;
 public class RuntimeEnabledSdkDependencyPreprocessor implements AppBundlePreprocessor {
 
   private final ImmutableMap<String, BundleModule> sdkBundleModules;
+  private final ListeningExecutorService executorService;
 
   @Inject
-  RuntimeEnabledSdkDependencyPreprocessor(ImmutableMap<String, BundleModule> sdkBundleModules) {
+  RuntimeEnabledSdkDependencyPreprocessor(
+      ImmutableMap<String, BundleModule> sdkBundleModules,
+      ListeningExecutorService executorService) {
     this.sdkBundleModules = sdkBundleModules;
+    this.executorService = executorService;
   }
 
   @Override
@@ -46,7 +51,8 @@ public class RuntimeEnabledSdkDependencyPreprocessor implements AppBundlePreproc
                         new SdkModuleToAppBundleModuleConverter(
                                 entry.getValue(),
                                 bundle.getRuntimeEnabledSdkDependencies().get(entry.getKey()),
-                                bundle.getBaseModule().getAndroidManifest())
+                                bundle.getBaseModule().getAndroidManifest(),
+                                executorService)
                             .convert())
                 .collect(toImmutableList()))
         .build();
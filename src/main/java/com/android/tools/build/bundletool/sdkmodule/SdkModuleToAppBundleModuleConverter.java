@@ -22,6 +22,7 @@ import com.android.tools.build.bundletool.model.BundleModule;
 import com.android.tools.build.bundletool.model.BundleModule.ModuleType;
 import com.android.tools.build.bundletool.model.BundleModuleName;
 import com.android.tools.build.bundletool.model.SdkBundle;
+import com.google.common.util.concurrent.ListeningExecutorService;
 
 /**
  * Transforms Runtime-enabled SDK module so that it can be included in an Android App Bundle.
@@ -39,7 +40,8 @@ public final class SdkModuleToAppBundleModuleConverter {
   public SdkModuleToAppBundleModuleConverter(
       BundleModule sdkModule,
       RuntimeEnabledSdk sdkDependencyConfig,
-      AndroidManifest appBaseModuleManifest) {
+      AndroidManifest appBaseModuleManifest,
+      ListeningExecutorService executorService) {
     this(
         sdkModule,
         SdkSplitPropertiesInheritedFromApp.newBuilder()
@@ -47,16 +49,19 @@ public final class SdkModuleToAppBundleModuleConverter {
             .setVersionCode(appBaseModuleManifest.getVersionCode().get())
             .setMinSdkVersion(appBaseModuleManifest.getMinSdkVersion().get())
             .setResourcesPackageId(sdkDependencyConfig.getResourcesPackageId())
-            .build());
+            .build(),
+        executorService);
   }
 
   public SdkModuleToAppBundleModuleConverter(
-      BundleModule sdkModule, SdkSplitPropertiesInheritedFromApp inheritedAppProperties) {
+      BundleModule sdkModule,
+      SdkSplitPropertiesInheritedFromApp inheritedAppProperties,
+      ListeningExecutorService executorService) {
     this.sdkModule = sdkModule;
     this.resourceTablePackageIdRemapper =
         new ResourceTablePackageIdRemapper(inheritedAppProperties.getResourcesPackageId());
     this.xmlPackageIdRemapper =
-        new XmlPackageIdRemapper(inheritedAppProperties.getResourcesPackageId());
+        new XmlPackageIdRemapper(inheritedAppProperties.getResourcesPackageId(), executorService);
     this.dexAndResourceRepackager =
         new DexAndResourceRepackager(sdkModule.getSdkModulesConfig().get(), inheritedAppProperties);
     this.androidResourceRenamer = new AndroidResourceRenamer(sdkModule.getSdkModulesConfig().get());
@@ -17,13 +17,16 @@ package com.android.tools.build.bundletool.sdkmodule;
 
 import static com.android.tools.build.bundletool.model.utils.ResourcesUtils.isAndroidResourceId;
 import static com.android.tools.build.bundletool.model.utils.ResourcesUtils.remapPackageIdInResourceId;
+import static com.google.common.collect.ImmutableList.toImmutableList;
 import static com.google.common.collect.ImmutableSet.toImmutableSet;
 import static java.util.stream.Collectors.partitioningBy;
 
 import com.android.aapt.Resources.Item;
+import com.android.aapt.Resources.Reference;
 import com.android.aapt.Resources.XmlAttribute;
 import com.android.aapt.Resources.XmlElement;
 import com.android.aapt.Resources.XmlNode;
+import com.android.tools.build.bundletool.io.ConcurrencyUtils;
 import com.android.tools.build.bundletool.model.BundleModule;
 import com.android.tools.build.bundletool.model.ModuleEntry;
 import com.android.tools.build.bundletool.model.ZipPath;
@@ -32,22 +35,33 @@ import com.android.tools.build.bundletool.model.utils.ResourcesUtils;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.io.ByteSource;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
 import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.WireFormat;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.UncheckedIOException;
 import java.util.Map;
 
 /**
  * Remaps resource IDs in the android manifest and XML resources of the given {@link BundleModule}
  * with a new package ID.
+ *
+ * <p>XML resources are remapped directly on the protobuf wire format: only the messages on the path
+ * to a resource ID are rewritten, all other fields are copied as they are, and no {@link XmlNode} is
+ * ever built.
  */
 final class XmlPackageIdRemapper {
 
   private final int newPackageId;
+  private final ListeningExecutorService executorService;
 
-  XmlPackageIdRemapper(int newPackageId) {
+  XmlPackageIdRemapper(int newPackageId, ListeningExecutorService executorService) {
     this.newPackageId = newPackageId;
+    this.executorService = executorService;
   }
 
   /**
@@ -62,12 +76,13 @@ final class XmlPackageIdRemapper {
                 partitioningBy(
                     entry -> xmlResourcePaths.contains(entry.getPath()), toImmutableSet()));
     // Remap resource IDs in XML resource entries, and keep all other entries unchanged.
+    ImmutableList<ListenableFuture<ModuleEntry>> remappedXmlEntries =
+        partitionedEntries.get(true).stream()
+            .map(entry -> executorService.submit(() -> remapInModuleEntry(entry)))
+            .collect(toImmutableList());
     ImmutableList<ModuleEntry> newEntries =
         ImmutableList.<ModuleEntry>builder()
-            .addAll(
-                partitionedEntries.get(true).stream()
-                    .map(this::remapInModuleEntry)
-                    .collect(toImmutableSet()))
+            .addAll(ConcurrencyUtils.waitForAll(remappedXmlEntries))
             .addAll(partitionedEntries.get(false))
             .build();
     // Remap resource IDs in AndroidManifest.xml
@@ -86,11 +101,10 @@ final class XmlPackageIdRemapper {
   }
 
   private ModuleEntry remapInModuleEntry(ModuleEntry moduleEntry) {
-    try (InputStream inputStream = moduleEntry.getContent().openStream()) {
-      XmlNode remappedXmlNode = remapInXmlNode(XmlNode.parseFrom(inputStream));
-      return moduleEntry.toBuilder()
-          .setContent(ByteSource.wrap(remappedXmlNode.toByteArray()))
-          .build();
+    try {
+      byte[] remappedXmlNode =
+          rewriteMessage(moduleEntry.getContent().read(), this::rewriteXmlNode);
+      return moduleEntry.toBuilder().setContent(ByteSource.wrap(remappedXmlNode)).build();
     } catch (InvalidProtocolBufferException e) {
       throw CommandExecutionException.builder()
           .withInternalMessage("Error parsing XML file '%s'.", moduleEntry.getPath())
@@ -119,11 +133,7 @@ final class XmlPackageIdRemapper {
   }
 
   private void remapInAttribute(XmlAttribute.Builder xmlAttribute) {
-    // Do not change resource IDs of Android framework attributes.
-    if (!isAndroidResourceId(xmlAttribute.getResourceId())) {
-      xmlAttribute.setResourceId(
-          remapPackageIdInResourceId(xmlAttribute.getResourceId(), newPackageId));
-    }
+    xmlAttribute.setResourceId(remapResourceId(xmlAttribute.getResourceId()));
     if (xmlAttribute.hasCompiledItem()) {
       remapInCompiledItem(xmlAttribute.getCompiledItemBuilder());
     }
@@ -132,9 +142,118 @@ final class XmlPackageIdRemapper {
   private void remapInCompiledItem(Item.Builder compiledItem) {
     // Do not change resource IDs of Android framework resources.
     if (!isAndroidResourceId(compiledItem.getRef().getId())) {
-      compiledItem
-          .getRefBuilder()
-          .setId(remapPackageIdInResourceId(compiledItem.getRef().getId(), newPackageId));
+      compiledItem.getRefBuilder().setId(remapResourceId(compiledItem.getRef().getId()));
+    }
+  }
+
+  private void rewriteXmlNode(CodedInputStream input, CodedOutputStream output)
+      throws IOException {
+    int tag;
+    while ((tag = input.readTag()) != 0) {
+      if (isMessageField(tag, XmlNode.ELEMENT_FIELD_NUMBER)) {
+        rewriteMessageField(XmlNode.ELEMENT_FIELD_NUMBER, input, output, this::rewriteXmlElement);
+      } else {
+        input.skipField(tag, output);
+      }
+    }
+  }
+
+  private void rewriteXmlElement(CodedInputStream input, CodedOutputStream output)
+      throws IOException {
+    int tag;
+    while ((tag = input.readTag()) != 0) {
+      if (isMessageField(tag, XmlElement.ATTRIBUTE_FIELD_NUMBER)) {
+        rewriteMessageField(
+            XmlElement.ATTRIBUTE_FIELD_NUMBER, input, output, this::rewriteXmlAttribute);
+      } else if (isMessageField(tag, XmlElement.CHILD_FIELD_NUMBER)) {
+        rewriteMessageField(XmlElement.CHILD_FIELD_NUMBER, input, output, this::rewriteXmlNode);
+      } else {
+        input.skipField(tag, output);
+      }
+    }
+  }
+
+  private void rewriteXmlAttribute(CodedInputStream input, CodedOutputStream output)
+      throws IOException {
+    int tag;
+    while ((tag = input.readTag()) != 0) {
+      if (isVarintField(tag, XmlAttribute.RESOURCE_ID_FIELD_NUMBER)) {
+        output.writeUInt32(
+            XmlAttribute.RESOURCE_ID_FIELD_NUMBER, remapResourceId(input.readUInt32()));
+      } else if (isMessageField(tag, XmlAttribute.COMPILED_ITEM_FIELD_NUMBER)) {
+        rewriteMessageField(
+            XmlAttribute.COMPILED_ITEM_FIELD_NUMBER, input, output, this::rewriteCompiledItem);
+      } else {
+        input.skipField(tag, output);
+      }
+    }
+  }
+
+  private void rewriteCompiledItem(CodedInputStream input, CodedOutputStream output)
+      throws IOException {
+    int tag;
+    while ((tag = input.readTag()) != 0) {
+      if (isMessageField(tag, Item.REF_FIELD_NUMBER)) {
+        rewriteMessageField(Item.REF_FIELD_NUMBER, input, output, this::rewriteReference);
+      } else {
+        input.skipField(tag, output);
+      }
+    }
+  }
+
+  private void rewriteReference(CodedInputStream input, CodedOutputStream output)
+      throws IOException {
+    int tag;
+    while ((tag = input.readTag()) != 0) {
+      if (isVarintField(tag, Reference.ID_FIELD_NUMBER)) {
+        output.writeUInt32(Reference.ID_FIELD_NUMBER, remapResourceId(input.readUInt32()));
+      } else {
+        input.skipField(tag, output);
+      }
     }
   }
+
+  private int remapResourceId(int resourceId) {
+    // Do not change resource IDs of Android framework attributes and resources.
+    return isAndroidResourceId(resourceId)
+        ? resourceId
+        : remapPackageIdInResourceId(resourceId, newPackageId);
+  }
+
+  /**
+   * Rewrites the length-delimited field which has just been read the tag of. The length of the
+   * field is written again as rewriting may change the size of the message.
+   */
+  private static void rewriteMessageField(
+      int fieldNumber,
+      CodedInputStream input,
+      CodedOutputStream output,
+      MessageRewriter messageRewriter)
+      throws IOException {
+    output.writeByteArray(fieldNumber, rewriteMessage(input.readByteArray(), messageRewriter));
+  }
+
+  private static byte[] rewriteMessage(byte[] message, MessageRewriter messageRewriter)
+      throws IOException {
+    ByteArrayOutputStream rewrittenMessage = new ByteArrayOutputStream(message.length);
+    CodedOutputStream output = CodedOutputStream.newInstance(rewrittenMessage);
+    messageRewriter.rewrite(CodedInputStream.newInstance(message), output);
+    output.flush();
+    return rewrittenMessage.toByteArray();
+  }
+
+  private static boolean isMessageField(int tag, int fieldNumber) {
+    return WireFormat.getTagFieldNumber(tag) == fieldNumber
+        && WireFormat.getTagWireType(tag) == WireFormat.WIRETYPE_LENGTH_DELIMITED;
+  }
+
+  private static boolean isVarintField(int tag, int fieldNumber) {
+    return WireFormat.getTagFieldNumber(tag) == fieldNumber
+        && WireFormat.getTagWireType(tag) == WireFormat.WIRETYPE_VARINT;
+  }
+
+  /** Copies a serialized message from {@code input} to {@code output}, rewriting some fields. */
+  private interface MessageRewriter {
+    void rewrite(CodedInputStream input, CodedOutputStream output) throws IOException;
+  }
 }
@@ -39,6 +39,7 @@ import com.android.tools.build.bundletool.optimizations.ApkOptimizations;
 import com.android.tools.build.bundletool.splitters.BinaryArtProfilesInjector;
 import com.android.tools.build.bundletool.splitters.CodeTransparencyInjector;
 import com.android.tools.build.bundletool.splitters.RuntimeEnabledSdkTableInjector;
+import com.android.tools.build.bundletool.splitters.SplitEntriesInjector;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableListMultimap;
 import com.google.common.collect.ImmutableMap;
@@ -58,9 +59,7 @@ public class StandaloneApksGenerator {
   private final Sharder sharder;
   private final ModuleSplitsToShardMerger shardsMerger;
   private final AppBundle appBundle;
-  private final CodeTransparencyInjector codeTransparencyInjector;
-  private final BinaryArtProfilesInjector binaryArtProfilesInjector;
-  private final RuntimeEnabledSdkTableInjector runtimeEnabledSdkTableInjector;
+  private final ImmutableList<SplitEntriesInjector> splitEntriesInjectors;
 
   @Inject
   public StandaloneApksGenerator(
@@ -74,9 +73,11 @@ public class StandaloneApksGenerator {
     this.sharder = sharder;
     this.shardsMerger = shardsMerger;
     this.appBundle = appBundle;
-    this.codeTransparencyInjector = new CodeTransparencyInjector(appBundle);
-    this.binaryArtProfilesInjector = new BinaryArtProfilesInjector(appBundle);
-    this.runtimeEnabledSdkTableInjector = new RuntimeEnabledSdkTableInjector(appBundle);
+    this.splitEntriesInjectors =
+        ImmutableList.of(
+            new CodeTransparencyInjector(appBundle),
+            new BinaryArtProfilesInjector(appBundle),
+            new RuntimeEnabledSdkTableInjector(appBundle));
   }
   ;
 
@@ -225,11 +226,8 @@ public class StandaloneApksGenerator {
   }
 
   private ModuleSplit injectAdditionalEntriesIntoStandaloneApk(ModuleSplit moduleSplit) {
-    ModuleSplit result = writeSourceStampInManifest(moduleSplit);
-    result = codeTransparencyInjector.inject(result);
-    result = binaryArtProfilesInjector.inject(result);
-    result = runtimeEnabledSdkTableInjector.inject(result);
-    return result;
+    return SplitEntriesInjector.injectAll(
+        writeSourceStampInManifest(moduleSplit), splitEntriesInjectors);
   }
 
   /** Sets the variant targeting and split type to standalone. */
@@ -40,6 +40,7 @@ import com.android.tools.build.bundletool.optimizations.ApkOptimizations;
 import com.android.tools.build.bundletool.splitters.BinaryArtProfilesInjector;
 import com.android.tools.build.bundletool.splitters.CodeTransparencyInjector;
 import com.android.tools.build.bundletool.splitters.RuntimeEnabledSdkTableInjector;
+import com.android.tools.build.bundletool.splitters.SplitEntriesInjector;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
@@ -57,9 +58,7 @@ public class SystemApksGenerator {
   private final Sharder sharder;
   private final ModuleSplitsToShardMerger shardsMerger;
   private final Optional<DeviceSpec> deviceSpec;
-  private final CodeTransparencyInjector codeTransparencyInjector;
-  private final BinaryArtProfilesInjector binaryArtProfilesInjector;
-  private final RuntimeEnabledSdkTableInjector runtimeEnabledSdkTableInjector;
+  private final ImmutableList<SplitEntriesInjector> splitEntriesInjectors;
 
   @Inject
   public SystemApksGenerator(
@@ -72,9 +71,11 @@ public class SystemApksGenerator {
     this.sharder = sharder;
     this.shardsMerger = shardsMerger;
     this.deviceSpec = deviceSpec;
-    this.codeTransparencyInjector = new CodeTransparencyInjector(appBundle);
-    this.binaryArtProfilesInjector = new BinaryArtProfilesInjector(appBundle);
-    this.runtimeEnabledSdkTableInjector = new RuntimeEnabledSdkTableInjector(appBundle);
+    this.splitEntriesInjectors =
+        ImmutableList.of(
+            new CodeTransparencyInjector(appBundle),
+            new BinaryArtProfilesInjector(appBundle),
+            new RuntimeEnabledSdkTableInjector(appBundle));
   }
 
   /**
@@ -103,9 +104,7 @@ public class SystemApksGenerator {
 
     return processSplitsOfSystemShard(systemShard, modulesToFuse).stream()
         .map(module -> applyUncompressedOptimizations(module, apkOptimizations))
-        .map(codeTransparencyInjector::inject)
-        .map(binaryArtProfilesInjector::inject)
-        .map(runtimeEnabledSdkTableInjector::inject)
+        .map(module -> SplitEntriesInjector.injectAll(module, splitEntriesInjectors))
         .collect(toImmutableList());
   }
 
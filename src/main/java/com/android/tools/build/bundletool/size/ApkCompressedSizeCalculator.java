@@ -16,6 +16,7 @@
 
 package com.android.tools.build.bundletool.size;
 
+import com.android.tools.build.bundletool.model.utils.ZlibPool;
 import com.google.common.collect.ImmutableList;
 import com.google.common.io.ByteSource;
 import java.io.Closeable;
@@ -96,7 +97,7 @@ final class ApkCompressedSizeCalculator {
     private long deflatedSize = 0;
 
     public JavaUtilZipDeflater() {
-      this.deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, /* noWrap */ true);
+      this.deflater = ZlibPool.acquireDeflater(Deflater.DEFAULT_COMPRESSION, /* nowrap= */ true);
     }
 
     @Override
@@ -121,7 +122,7 @@ final class ApkCompressedSizeCalculator {
 
     @Override
     public void close() {
-      deflater.end();
+      ZlibPool.releaseDeflater(deflater, Deflater.DEFAULT_COMPRESSION, /* nowrap= */ true);
     }
   }
 }
@@ -27,11 +27,12 @@ import com.android.tools.build.bundletool.model.ModuleEntry;
 import com.android.tools.build.bundletool.model.ModuleSplit;
 import com.android.tools.build.bundletool.model.ModuleSplit.SplitType;
 import com.android.tools.build.bundletool.model.ZipPath;
+import com.google.common.collect.ImmutableList;
 import com.google.common.io.ByteSource;
 import java.util.Optional;
 
 /** Copies the binary art profiles from AAB's metadata into main APK of base module. */
-public final class BinaryArtProfilesInjector {
+public final class BinaryArtProfilesInjector implements SplitEntriesInjector {
 
   private final Optional<ByteSource> binaryArtProfile;
   private final Optional<ByteSource> binaryArtProfileMetadata;
@@ -41,18 +42,19 @@ public final class BinaryArtProfilesInjector {
     binaryArtProfileMetadata = extract(appBundle.getBundleMetadata(), PROFILE_METADATA_FILENAME);
   }
 
-  public ModuleSplit inject(ModuleSplit split) {
+  @Override
+  public ImmutableList<ModuleEntry> getEntriesToInject(ModuleSplit split) {
     if (!binaryArtProfileMetadata.isPresent() && !binaryArtProfile.isPresent()) {
-      return split;
+      return ImmutableList.of();
     }
     if (!shouldInjectBinaryArtProfile(split)) {
-      return split;
+      return ImmutableList.of();
     }
 
-    ModuleSplit.Builder builder = split.toBuilder();
+    ImmutableList.Builder<ModuleEntry> entries = ImmutableList.builder();
     binaryArtProfile.ifPresent(
         content ->
-            builder.addEntry(
+            entries.add(
                 ModuleEntry.builder()
                     .setForceUncompressed(true)
                     .setContent(content)
@@ -60,14 +62,14 @@ public final class BinaryArtProfilesInjector {
                     .build()));
     binaryArtProfileMetadata.ifPresent(
         content ->
-            builder.addEntry(
+            entries.add(
                 ModuleEntry.builder()
                     .setForceUncompressed(true)
                     .setContent(content)
                     .setPath(
                         ZipPath.create(PROFILE_APK_LOCATION).resolve(PROFILE_METADATA_FILENAME))
                     .build()));
-    return builder.build();
+    return entries.build();
   }
 
   private static boolean shouldInjectBinaryArtProfile(ModuleSplit split) {
@@ -16,15 +16,17 @@
 package com.android.tools.build.bundletool.splitters;
 
 import com.android.tools.build.bundletool.model.AppBundle;
+import com.android.tools.build.bundletool.model.ModuleEntry;
 import com.android.tools.build.bundletool.model.ModuleSplit;
 import com.android.tools.build.bundletool.model.ModuleSplit.SplitType;
+import com.google.common.collect.ImmutableList;
 
 /**
  * Copies the signed code transparency file
  * (BUNDLE-METADATA/com.android.tools.build.bundletool/code_transparency_signed.jwt) to the base
  * split of the main module, as well as standalone splits.
  */
-public final class CodeTransparencyInjector {
+public final class CodeTransparencyInjector implements SplitEntriesInjector {
 
   private final AppBundle appBundle;
 
@@ -32,15 +34,16 @@ public final class CodeTransparencyInjector {
     this.appBundle = appBundle;
   }
 
-  public ModuleSplit inject(ModuleSplit split) {
-    ModuleSplit.Builder splitBuilder = split.toBuilder();
-    if (shouldPropagateTransparency(split)) {
-      appBundle
-          .getBundleMetadata()
-          .getModuleEntryForSignedTransparencyFile()
-          .ifPresent(splitBuilder::addEntry);
+  @Override
+  public ImmutableList<ModuleEntry> getEntriesToInject(ModuleSplit split) {
+    if (!shouldPropagateTransparency(split)) {
+      return ImmutableList.of();
     }
-    return splitBuilder.build();
+    return appBundle
+        .getBundleMetadata()
+        .getModuleEntryForSignedTransparencyFile()
+        .map(ImmutableList::of)
+        .orElse(ImmutableList.of());
   }
 
   private boolean shouldPropagateTransparency(ModuleSplit split) {
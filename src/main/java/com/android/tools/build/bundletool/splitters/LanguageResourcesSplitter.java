@@ -34,7 +34,6 @@ import com.google.common.collect.ImmutableCollection;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.Iterables;
 import java.util.function.Predicate;
 
 /**
@@ -180,12 +179,17 @@ public class LanguageResourcesSplitter extends SplitterForOneTargetingDimension
       return initialEntry.getEntry();
     }
 
-    Iterable<ConfigValue> filteredConfigValues =
-        Iterables.filter(
-            initialEntry.getEntry().getConfigValueList(),
-            configValue ->
-                convertLocaleToLanguage(configValue.getConfig().getLocale())
-                    .equals(targetLanguage));
+    ImmutableList<ConfigValue> filteredConfigValues =
+        initialEntry.getEntry().getConfigValueList().stream()
+            .filter(
+                configValue ->
+                    convertLocaleToLanguage(configValue.getConfig().getLocale())
+                        .equals(targetLanguage))
+            .collect(toImmutableList());
+    if (filteredConfigValues.size() == initialEntry.getEntry().getConfigValueCount()) {
+      // Share the entry with the module resource table rather than copying it.
+      return initialEntry.getEntry();
+    }
     return initialEntry
         .getEntry()
         .toBuilder()
@@ -47,15 +47,19 @@ import com.android.tools.build.bundletool.model.SourceStampConstants.StampType;
 import com.android.tools.build.bundletool.model.SuffixManager;
 import com.android.tools.build.bundletool.model.exceptions.CommandExecutionException;
 import com.android.tools.build.bundletool.model.version.Version;
+import com.android.tools.build.bundletool.splitters.SplittingPipelineCache.Pipeline;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Predicates;
 import com.google.common.collect.ImmutableCollection;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Sets;
 import com.google.protobuf.Int32Value;
 import java.util.Optional;
+import java.util.function.BiConsumer;
 import java.util.function.Predicate;
+import java.util.function.Supplier;
 
 /**
  * Splits module into multiple parts called splits: each targets a specific configuration.
@@ -67,6 +71,19 @@ import java.util.function.Predicate;
  */
 public class ModuleSplitter {
 
+  /** Optimization dimensions used by the resources splitters. */
+  private static final ImmutableSet<OptimizationDimension> RESOURCES_OPTIMIZATION_DIMENSIONS =
+      ImmutableSet.of(OptimizationDimension.SCREEN_DENSITY, OptimizationDimension.LANGUAGE);
+
+  /** Optimization dimensions used by the assets splitters. */
+  private static final ImmutableSet<OptimizationDimension> ASSETS_OPTIMIZATION_DIMENSIONS =
+      ImmutableSet.of(
+          OptimizationDimension.LANGUAGE,
+          OptimizationDimension.TEXTURE_COMPRESSION_FORMAT,
+          OptimizationDimension.DEVICE_TIER,
+          OptimizationDimension.DEVICE_GROUP,
+          OptimizationDimension.COUNTRY_SET);
+
   private final BundleModule module;
   private final ImmutableSet<String> allModuleNames;
   private final SuffixManager suffixManager = new SuffixManager();
@@ -76,12 +93,11 @@ public class ModuleSplitter {
   private final Optional<String> stampSource;
   private final StampType stampType;
   private final AppBundle appBundle;
+  private final Optional<SplittingPipelineCache> splittingPipelineCache;
 
   private final AbiPlaceholderInjector abiPlaceholderInjector;
-  private final PinSpecInjector pinSpecInjector;
-  private final CodeTransparencyInjector codeTransparencyInjector;
-  private final BinaryArtProfilesInjector binaryArtProfilesInjector;
-  private final RuntimeEnabledSdkTableInjector runtimeEnabledSdkTableInjector;
+  /** Injectors of the entries copied from the module or the bundle to the splits. */
+  private final ImmutableList<SplitEntriesInjector> splitEntriesInjectors;
 
   @VisibleForTesting
   public static ModuleSplitter createForTest(
@@ -94,7 +110,8 @@ public class ModuleSplitter {
         lPlusVariantTargeting(),
         /* allModuleNames= */ ImmutableSet.of(),
         /* stampSource= */ Optional.empty(),
-        /* stampType= */ null);
+        /* stampType= */ null,
+        /* splittingPipelineCache= */ Optional.empty());
   }
 
   public static ModuleSplitter createNoStamp(
@@ -112,7 +129,8 @@ public class ModuleSplitter {
         variantTargeting,
         allModuleNames,
         /* stampSource= */ Optional.empty(),
-        /* stampType= */ null);
+        /* stampType= */ null,
+        /* splittingPipelineCache= */ Optional.empty());
   }
 
   public static ModuleSplitter create(
@@ -132,7 +150,34 @@ public class ModuleSplitter {
         variantTargeting,
         allModuleNames,
         stampSource,
-        stampType);
+        stampType,
+        /* splittingPipelineCache= */ Optional.empty());
+  }
+
+  /**
+   * Same as {@link #create}, but reuses the outputs of the splitting pipelines which don't depend
+   * on the variant from {@code splittingPipelineCache}.
+   */
+  static ModuleSplitter createWithCache(
+      BundleModule module,
+      Version bundleVersion,
+      AppBundle appBundle,
+      ApkGenerationConfiguration apkGenerationConfiguration,
+      VariantTargeting variantTargeting,
+      ImmutableSet<String> allModuleNames,
+      Optional<String> stampSource,
+      StampType stampType,
+      SplittingPipelineCache splittingPipelineCache) {
+    return new ModuleSplitter(
+        module,
+        bundleVersion,
+        appBundle,
+        apkGenerationConfiguration,
+        variantTargeting,
+        allModuleNames,
+        stampSource,
+        stampType,
+        Optional.of(splittingPipelineCache));
   }
 
   private ModuleSplitter(
@@ -143,7 +188,8 @@ public class ModuleSplitter {
       VariantTargeting variantTargeting,
       ImmutableSet<String> allModuleNames,
       Optional<String> stampSource,
-      StampType stampType) {
+      StampType stampType,
+      Optional<SplittingPipelineCache> splittingPipelineCache) {
     this.module = checkNotNull(module);
     this.bundleVersion = checkNotNull(bundleVersion);
     this.appBundle = appBundle;
@@ -151,33 +197,39 @@ public class ModuleSplitter {
     this.variantTargeting = checkNotNull(variantTargeting);
     this.abiPlaceholderInjector =
         new AbiPlaceholderInjector(apkGenerationConfiguration.getAbisForPlaceholderLibs());
-    this.pinSpecInjector = new PinSpecInjector(module);
-    this.codeTransparencyInjector = new CodeTransparencyInjector(appBundle);
-    this.binaryArtProfilesInjector = new BinaryArtProfilesInjector(appBundle);
-    this.runtimeEnabledSdkTableInjector = new RuntimeEnabledSdkTableInjector(appBundle);
+    this.splitEntriesInjectors =
+        ImmutableList.of(
+            new PinSpecInjector(module),
+            new CodeTransparencyInjector(appBundle),
+            new BinaryArtProfilesInjector(appBundle),
+            new RuntimeEnabledSdkTableInjector(appBundle));
     this.allModuleNames = allModuleNames;
     this.stampSource = stampSource;
     this.stampType = stampType;
+    this.splittingPipelineCache = splittingPipelineCache;
   }
 
   public ImmutableList<ModuleSplit> splitModule() {
     if (apkGenerationConfiguration.isForInstantAppVariants()) {
       // Returns the list of module splits, ready for use as an instant app.
-      return splitModuleInternal().stream()
-          .map(this::makeInstantManifestChanges)
+      return splitModuleInternal(this::makeInstantManifestChanges).stream()
           .map(moduleSplit -> moduleSplit.toBuilder().setSplitType(SplitType.INSTANT).build())
           .collect(toImmutableList());
     } else {
-      return splitModuleInternal().stream()
-          .map(this::removeSplitName)
+      return splitModuleInternal(this::makeInstalledManifestChanges).stream()
           .map(this::addPlaceHolderNativeLibsToBaseModule)
-          .map(this::addUsesSdkLibraryTagsToMainSplitOfBaseModule)
-          .map(this::sanitizeManifestEntriesRequiredByPrivacySandboxSdk)
-          .map(this::overrideMinSdkVersionOfSdkRuntimeVariant)
           .collect(toImmutableList());
     }
   }
 
+  /** Applies the manifest changes of the splits of installed variants with the given editor. */
+  private void makeInstalledManifestChanges(ModuleSplit moduleSplit, ManifestEditor editor) {
+    editor.removeSplitName();
+    addUsesSdkLibraryTagsToMainSplitOfBaseModule(moduleSplit, editor);
+    sanitizeManifestEntriesRequiredByPrivacySandboxSdk(moduleSplit, editor);
+    overrideMinSdkVersionOfSdkRuntimeVariant(moduleSplit, editor);
+  }
+
   private ModuleSplit addPlaceHolderNativeLibsToBaseModule(ModuleSplit moduleSplit) {
     if (!apkGenerationConfiguration.getAbisForPlaceholderLibs().isEmpty()
         && moduleSplit.isBaseModuleSplit()
@@ -188,23 +240,22 @@ public class ModuleSplitter {
     }
   }
 
-  private ModuleSplit addUsesSdkLibraryTagsToMainSplitOfBaseModule(ModuleSplit moduleSplit) {
+  private void addUsesSdkLibraryTagsToMainSplitOfBaseModule(
+      ModuleSplit moduleSplit, ManifestEditor editor) {
     if (!appBundle.getRuntimeEnabledSdkDependencies().isEmpty()
         && variantTargeting.getSdkRuntimeTargeting().getRequiresSdkRuntime()
         && moduleSplit.isBaseModuleSplit()
         && moduleSplit.isMasterSplit()) {
-      return moduleSplit.addUsesSdkLibraryElements(
-          appBundle.getRuntimeEnabledSdkDependencies().values());
+      editor.addUsesSdkLibraryElements(appBundle.getRuntimeEnabledSdkDependencies().values());
     }
-    return moduleSplit;
   }
 
-  private ModuleSplit overrideMinSdkVersionOfSdkRuntimeVariant(ModuleSplit moduleSplit) {
+  private void overrideMinSdkVersionOfSdkRuntimeVariant(
+      ModuleSplit moduleSplit, ManifestEditor editor) {
     if (variantTargeting.getSdkRuntimeTargeting().getRequiresSdkRuntime()
         && moduleSplit.isMasterSplit()) {
-      return moduleSplit.overrideMinSdkVersionForSdkSandbox();
+      moduleSplit.overrideMinSdkVersionForSdkSandbox(editor);
     }
-    return moduleSplit;
   }
 
   /**
@@ -218,35 +269,27 @@ public class ModuleSplitter {
    *
    * <p>This method is no-op if split is not the main split of the base module.
    */
-  private ModuleSplit sanitizeManifestEntriesRequiredByPrivacySandboxSdk(ModuleSplit moduleSplit) {
+  private void sanitizeManifestEntriesRequiredByPrivacySandboxSdk(
+      ModuleSplit moduleSplit, ManifestEditor editor) {
     if (appBundle.getRuntimeEnabledSdkDependencies().isEmpty()
         || !moduleSplit.isBaseModuleSplit()
         || !moduleSplit.isMasterSplit()) {
-      return moduleSplit;
+      return;
     }
     if (variantTargeting.getSdkRuntimeTargeting().getRequiresSdkRuntime()) {
-      return removeRequiredByPrivacySandboxSdkAttributes(
-          removeElementsRequiredByPrivacySandboxSdk(moduleSplit));
+      editor.removeElementsRequiredByPrivacySandboxSdk();
     }
-    return removeRequiredByPrivacySandboxSdkAttributes(moduleSplit);
-  }
-
-  private ModuleSplit removeElementsRequiredByPrivacySandboxSdk(ModuleSplit moduleSplit) {
-    AndroidManifest manifest = moduleSplit.getAndroidManifest();
-    ManifestEditor editor = manifest.toEditor();
-    editor.removeElementsRequiredByPrivacySandboxSdk();
-    return moduleSplit.toBuilder().setAndroidManifest(editor.save()).build();
-  }
-
-  private ModuleSplit removeRequiredByPrivacySandboxSdkAttributes(ModuleSplit moduleSplit) {
-    AndroidManifest manifest = moduleSplit.getAndroidManifest();
-    ManifestEditor editor = manifest.toEditor();
     editor.removeRequiredByPrivacySandboxSdkAttributes();
-    return moduleSplit.toBuilder().setAndroidManifest(editor.save()).build();
   }
 
-  /** Common modifications to both the instant and installed splits. */
-  private ImmutableList<ModuleSplit> splitModuleInternal() {
+  /**
+   * Common modifications to both the instant and installed splits.
+   *
+   * <p>All the edits of the manifest made once the split ID is written, including the {@code
+   * variantManifestChanges}, are applied in a single pass over the manifest of each split.
+   */
+  private ImmutableList<ModuleSplit> splitModuleInternal(
+      BiConsumer<ModuleSplit, ManifestEditor> variantManifestChanges) {
     ImmutableList<ModuleSplit> moduleSplits = runSplitters();
     int baseModuleMinSdk =
         apkGenerationConfiguration.getEnableBaseModuleMinSdkAsDefaultTargeting()
@@ -259,25 +302,24 @@ public class ModuleSplitter {
             .findFirst()
             .map(moduleSplit -> moduleSplit.getAndroidManifest().getEffectiveMinSdkVersion())
             .orElse(1);
-    moduleSplits =
-        moduleSplits.stream()
-            .map(pinSpecInjector::inject)
-            .map(codeTransparencyInjector::inject)
-            .map(binaryArtProfilesInjector::inject)
-            .map(runtimeEnabledSdkTableInjector::inject)
-            .map(this::addApkTargetingForSigningConfiguration)
-            .map(
-                moduleSplit ->
-                    addDefaultSdkApkTargeting(moduleSplit, masterSplitMinSdk, baseModuleMinSdk))
-            .map(this::writeSplitIdInManifest)
-            .map(ModuleSplit::addApplicationElementIfMissingInManifest)
-            .collect(toImmutableList());
-    if (stampSource.isPresent()) {
-      return moduleSplits.stream()
-          .map(moduleSplit -> moduleSplit.writeSourceStampInManifest(stampSource.get(), stampType))
-          .collect(toImmutableList());
-    }
-    return moduleSplits;
+    return moduleSplits.stream()
+        .map(moduleSplit -> SplitEntriesInjector.injectAll(moduleSplit, splitEntriesInjectors))
+        .map(this::addApkTargetingForSigningConfiguration)
+        .map(
+            moduleSplit ->
+                addDefaultSdkApkTargeting(moduleSplit, masterSplitMinSdk, baseModuleMinSdk))
+        .map(this::writeSplitIdInManifest)
+        .map(
+            moduleSplit ->
+                moduleSplit.editManifest(
+                    editor -> {
+                      editor.addApplicationElementIfMissing();
+                      stampSource.ifPresent(
+                          source ->
+                              moduleSplit.writeSourceStampInManifest(editor, source, stampType));
+                      variantManifestChanges.accept(moduleSplit, editor);
+                    }))
+        .collect(toImmutableList());
   }
 
   private ImmutableList<ModuleSplit> runSplitters() {
@@ -292,16 +334,26 @@ public class ModuleSplitter {
     ImmutableList.Builder<ModuleSplit> splits = ImmutableList.builder();
 
     // Resources splits.
-    SplittingPipeline resourcesPipeline = createResourcesSplittingPipeline();
-    splits.addAll(resourcesPipeline.split(ModuleSplit.forResources(module, variantTargeting)));
+    splits.addAll(
+        runCacheablePipeline(
+            Pipeline.RESOURCES,
+            getResourcesSplittingConfiguration(),
+            () ->
+                createResourcesSplittingPipeline()
+                    .split(ModuleSplit.forResources(module, variantTargeting))));
 
     // Native libraries splits.
     SplittingPipeline nativePipeline = createNativeLibrariesSplittingPipeline();
     splits.addAll(nativePipeline.split(ModuleSplit.forNativeLibraries(module, variantTargeting)));
 
     // Assets splits.
-    SplittingPipeline assetsPipeline = createAssetsSplittingPipeline();
-    splits.addAll(assetsPipeline.split(ModuleSplit.forAssets(module, variantTargeting)));
+    splits.addAll(
+        runCacheablePipeline(
+            Pipeline.ASSETS,
+            getAssetsSplittingConfiguration(),
+            () ->
+                createAssetsSplittingPipeline()
+                    .split(ModuleSplit.forAssets(module, variantTargeting))));
 
     // Dex Files.
     SplittingPipeline dexPipeline = createDexSplittingPipeline();
@@ -331,6 +383,53 @@ public class ModuleSplitter {
     return mergedSplits;
   }
 
+  /**
+   * Runs a splitting pipeline which doesn't depend on the variant, reusing its output from a
+   * previous variant if possible.
+   *
+   * @param configurationKey parts of the {@link ApkGenerationConfiguration} the pipeline depends on
+   */
+  private ImmutableList<ModuleSplit> runCacheablePipeline(
+      Pipeline pipeline,
+      ApkGenerationConfiguration configurationKey,
+      Supplier<ImmutableCollection<ModuleSplit>> pipelineOutput) {
+    Supplier<ImmutableList<ModuleSplit>> splits =
+        () -> ImmutableList.copyOf(pipelineOutput.get());
+    if (!splittingPipelineCache.isPresent()) {
+      return splits.get();
+    }
+    return splittingPipelineCache
+        .get()
+        .getOrSplit(module, pipeline, configurationKey, variantTargeting, splits);
+  }
+
+  /** Parts of the {@link ApkGenerationConfiguration} used by the resources splitters. */
+  private ApkGenerationConfiguration getResourcesSplittingConfiguration() {
+    return ApkGenerationConfiguration.getDefaultInstance().toBuilder()
+        .setOptimizationDimensions(
+            Sets.intersection(
+                    apkGenerationConfiguration.getOptimizationDimensions(),
+                    RESOURCES_OPTIMIZATION_DIMENSIONS)
+                .immutableCopy())
+        .setMasterPinnedResourceIds(apkGenerationConfiguration.getMasterPinnedResourceIds())
+        .setMasterPinnedResourceNames(apkGenerationConfiguration.getMasterPinnedResourceNames())
+        .setBaseManifestReachableResources(
+            apkGenerationConfiguration.getBaseManifestReachableResources())
+        .build();
+  }
+
+  /** Parts of the {@link ApkGenerationConfiguration} used by the assets splitters. */
+  private ApkGenerationConfiguration getAssetsSplittingConfiguration() {
+    return ApkGenerationConfiguration.getDefaultInstance().toBuilder()
+        .setOptimizationDimensions(
+            Sets.intersection(
+                    apkGenerationConfiguration.getOptimizationDimensions(),
+                    ASSETS_OPTIMIZATION_DIMENSIONS)
+                .immutableCopy())
+        .setSuffixStrippings(apkGenerationConfiguration.getSuffixStrippings())
+        .build();
+  }
+
   private ModuleSplit applySparseEncoding(ModuleSplit split) {
     int variantSdkTargeting =
         Iterables.getOnlyElement(
@@ -365,14 +464,16 @@ public class ModuleSplitter {
    * </ul>
    */
   public ModuleSplit makeInstantManifestChanges(ModuleSplit moduleSplit) {
-    AndroidManifest manifest = moduleSplit.getAndroidManifest();
-    ManifestEditor editor = manifest.toEditor();
+    return moduleSplit.editManifest(editor -> makeInstantManifestChanges(moduleSplit, editor));
+  }
+
+  /** Applies the instant app specific manifest changes to the split with the given editor. */
+  private void makeInstantManifestChanges(ModuleSplit moduleSplit, ManifestEditor editor) {
     editor.setTargetSandboxVersion(2);
-    if (manifest.getEffectiveMinSdkVersion() < 21) {
+    if (moduleSplit.getAndroidManifest().getEffectiveMinSdkVersion() < 21) {
       editor.setMinSdkVersion(21);
     }
     editor.removeUnknownSplitComponents(allModuleNames);
-    return moduleSplit.toBuilder().setAndroidManifest(editor.save()).build();
   }
 
   private SplittingPipeline createResourcesSplittingPipeline() {
@@ -26,7 +26,7 @@ import java.util.Optional;
  * This copies the pin spec file (base/assets/com.android.hints.pins.txt), to each split. The pin
  * spec file is then read by ApkSigner to generate the pin list file (pinlist.meta).
  */
-public class PinSpecInjector {
+public class PinSpecInjector implements SplitEntriesInjector {
   /** The pin spec path in the bundle */
   public static final ZipPath PIN_SPEC_NAME = ZipPath.create("assets/com.android.hints.pins.txt");
 
@@ -36,17 +36,11 @@ public class PinSpecInjector {
     this.pinSpec = module.findEntries((p) -> p.endsWith(PIN_SPEC_NAME)).findFirst();
   }
 
-  public ModuleSplit inject(ModuleSplit split) {
+  @Override
+  public ImmutableList<ModuleEntry> getEntriesToInject(ModuleSplit split) {
     if (!pinSpec.isPresent() || split.getEntries().contains(pinSpec.get())) {
-      return split;
+      return ImmutableList.of();
     }
-
-    return split.toBuilder()
-        .setEntries(
-            ImmutableList.<ModuleEntry>builder()
-                .addAll(split.getEntries())
-                .add(pinSpec.get())
-                .build())
-        .build();
+    return ImmutableList.of(pinSpec.get());
   }
 }
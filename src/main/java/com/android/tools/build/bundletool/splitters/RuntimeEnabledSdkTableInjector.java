@@ -28,6 +28,7 @@ import com.android.tools.build.bundletool.model.ZipPath;
 import com.android.tools.build.bundletool.xml.XmlUtils;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableCollection;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.io.ByteSource;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -59,7 +60,7 @@ import org.w3c.dom.Node;
  * </runtime-enabled-sdk-table>
  * }</pre>
  */
-public final class RuntimeEnabledSdkTableInjector {
+public final class RuntimeEnabledSdkTableInjector implements SplitEntriesInjector {
 
   @VisibleForTesting
   public static final String RUNTIME_ENABLED_SDK_TABLE_FILE_PATH =
@@ -78,21 +79,20 @@ public final class RuntimeEnabledSdkTableInjector {
     this.appBundle = appBundle;
   }
 
-  public ModuleSplit inject(ModuleSplit split) {
+  @Override
+  public ImmutableList<ModuleEntry> getEntriesToInject(ModuleSplit split) {
     if (appBundle.getRuntimeEnabledSdkDependencies().isEmpty()
         || !shouldAddRuntimeEnabledSdkTable(split)) {
-      return split;
+      return ImmutableList.of();
     }
-    return split.toBuilder()
-        .addEntry(
-            ModuleEntry.builder()
-                .setPath(ZipPath.create(RUNTIME_ENABLED_SDK_TABLE_FILE_PATH))
-                .setContent(
-                    ByteSource.wrap(
-                        generateRuntimeEnabledSdkTableBytes(
-                            appBundle.getRuntimeEnabledSdkDependencies().values())))
-                .build())
-        .build();
+    return ImmutableList.of(
+        ModuleEntry.builder()
+            .setPath(ZipPath.create(RUNTIME_ENABLED_SDK_TABLE_FILE_PATH))
+            .setContent(
+                ByteSource.wrap(
+                    generateRuntimeEnabledSdkTableBytes(
+                        appBundle.getRuntimeEnabledSdkDependencies().values())))
+            .build());
   }
 
   public static byte[] generateRuntimeEnabledSdkTableBytes(
@@ -203,11 +203,17 @@ public class ScreenDensityResourcesSplitter extends SplitterForOneTargetingDimen
               entry.getConfigValueList().stream()
                   .filter(configValue -> !claimedConfigs.containsEntry(resourceId, configValue))
                   .collect(toImmutableList());
-          Entry.Builder newEntry =
-              entry.toBuilder().clearConfigValue().addAllConfigValue(allConfigsExceptClaimed);
-          if (newEntry.getConfigValueCount() > 0) { // if everything was claimed we skip the entry.
-            newEntries.add(newEntry.build());
+          if (allConfigsExceptClaimed.isEmpty()) { // if everything was claimed we skip the entry.
+            continue;
           }
+          // If nothing was claimed, the entry is shared with the original table.
+          newEntries.add(
+              allConfigsExceptClaimed.size() == entry.getConfigValueCount()
+                  ? entry
+                  : entry.toBuilder()
+                      .clearConfigValue()
+                      .addAllConfigValue(allConfigsExceptClaimed)
+                      .build());
         }
         typeBuilder.clearEntry().addAllEntry(newEntries);
       }
@@ -16,12 +16,17 @@
 
 package com.android.tools.build.bundletool.splitters;
 
+import static com.android.tools.build.bundletool.model.targeting.AlternativeVariantTargetingPopulator.populateAlternativeSplitVariantTargeting;
 import static com.google.common.collect.ImmutableList.toImmutableList;
 import static com.google.common.collect.ImmutableSet.toImmutableSet;
 
+import com.android.bundle.Devices.DeviceSpec;
 import com.android.bundle.FeatureModulesConfigProto.FeatureModulesCustomConfig;
+import com.android.bundle.Targeting.ApkTargeting;
 import com.android.bundle.Targeting.VariantTargeting;
 import com.android.tools.build.bundletool.commands.BuildApksModule.MinModulesToEnableFeatureModulesConfig;
+import com.android.tools.build.bundletool.device.VariantMatcher;
+import com.android.tools.build.bundletool.model.AndroidManifest;
 import com.android.tools.build.bundletool.model.AppBundle;
 import com.android.tools.build.bundletool.model.BundleModule;
 import com.android.tools.build.bundletool.model.BundleModule.ModuleType;
@@ -32,8 +37,11 @@ import com.android.tools.build.bundletool.model.SourceStamp;
 import com.android.tools.build.bundletool.model.SourceStampConstants.StampType;
 import com.android.tools.build.bundletool.model.version.Version;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import java.util.Optional;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
 import javax.inject.Inject;
 
 /** Generates split APKs. */
@@ -45,6 +53,8 @@ public final class SplitApksGenerator {
   private final AppBundle appBundle;
   private final Optional<FeatureModulesCustomConfig> featureModulesCustomConfig;
   private final int minModulesToEnableFeatureModulesConfig;
+  private final Optional<DeviceSpec> deviceSpec;
+  private final SplittingPipelineCache splittingPipelineCache = new SplittingPipelineCache();
 
   @Inject
   public SplitApksGenerator(
@@ -54,26 +64,117 @@ public final class SplitApksGenerator {
       AppBundle appBundle,
       Optional<FeatureModulesCustomConfig> featureModulesCustomConfig,
       @MinModulesToEnableFeatureModulesConfig
-          Optional<Integer> minModulesToEnableFeatureModulesConfig) {
+          Optional<Integer> minModulesToEnableFeatureModulesConfig,
+      Optional<DeviceSpec> deviceSpec) {
     this.bundletoolVersion = bundletoolVersion;
     this.stampSource = stampSource;
     this.variantTargetingGenerator = variantTargetingGenerator;
     this.appBundle = appBundle;
     this.featureModulesCustomConfig = featureModulesCustomConfig;
     this.minModulesToEnableFeatureModulesConfig = minModulesToEnableFeatureModulesConfig.orElse(0);
+    this.deviceSpec = deviceSpec;
   }
 
+  /**
+   * Generates the splits of all variants.
+   *
+   * <p>When generating for a device spec, the splits of variants not matching the device are not
+   * generated. Such variants are represented by a single placeholder split instead, so that they
+   * still take part in the population of alternative targeting and in the numbering of variants,
+   * and are next filtered out with the other APKs not matching the device.
+   */
   public ImmutableList<ModuleSplit> generateSplits(
       ImmutableList<BundleModule> modules, ApkGenerationConfiguration apkGenerationConfiguration) {
+    ImmutableSet<VariantTargeting> variantTargetings =
+        variantTargetingGenerator.generateVariantTargetings(modules, apkGenerationConfiguration);
+    Predicate<VariantTargeting> variantMatchesDevice =
+        getVariantMatchesDevicePredicate(variantTargetings, apkGenerationConfiguration);
+    return variantTargetings.stream()
+        .flatMap(
+            variantTargeting ->
+                variantMatchesDevice.test(variantTargeting)
+                    ? generateSplitApks(modules, apkGenerationConfiguration, variantTargeting)
+                        .stream()
+                    : Stream.of(createVariantPlaceholder(variantTargeting)))
+        .collect(toImmutableList());
+  }
+
+  /**
+   * Generates a single placeholder split for each variant, deferring the generation of the splits
+   * themselves to {@link #generateSplitsOfVariant}.
+   *
+   * <p>The placeholders take part in the population of alternative targeting and in the numbering
+   * of variants like the splits they stand for, so that the splits of each variant can be generated
+   * right before they are serialized.
+   */
+  public ImmutableList<ModuleSplit> generateVariantPlaceholders(
+      ImmutableList<BundleModule> modules, ApkGenerationConfiguration apkGenerationConfiguration) {
     return variantTargetingGenerator
         .generateVariantTargetings(modules, apkGenerationConfiguration)
         .stream()
-        .flatMap(
-            variantTargeting ->
-                generateSplitApks(modules, apkGenerationConfiguration, variantTargeting).stream())
+        .map(this::createVariantPlaceholder)
         .collect(toImmutableList());
   }
 
+  /**
+   * Generates the splits of the variant with the given targeting, whose alternatives are expected
+   * to be already populated.
+   *
+   * <p>As in {@link #generateSplits}, a variant not matching the device spec is represented by a
+   * placeholder split instead.
+   */
+  public ImmutableList<ModuleSplit> generateSplitsOfVariant(
+      ImmutableList<BundleModule> modules,
+      ApkGenerationConfiguration apkGenerationConfiguration,
+      VariantTargeting variantTargeting) {
+    if (deviceSpec.isPresent()
+        && !apkGenerationConfiguration.isForInstantAppVariants()
+        && !new VariantMatcher(deviceSpec.get()).matchesVariantTargeting(variantTargeting)) {
+      return ImmutableList.of(createVariantPlaceholder(variantTargeting));
+    }
+    return generateSplitApks(modules, apkGenerationConfiguration, variantTargeting);
+  }
+
+  /**
+   * Returns how many outputs of the splitting pipelines were reused across variants, rather than
+   * computed again.
+   */
+  public SplittingPipelineCache.Stats getSplittingPipelineStats() {
+    return splittingPipelineCache.getStats();
+  }
+
+  private Predicate<VariantTargeting> getVariantMatchesDevicePredicate(
+      ImmutableSet<VariantTargeting> variantTargetings,
+      ApkGenerationConfiguration apkGenerationConfiguration) {
+    // Alternative targeting is not populated for instant variants, and we don't prune them.
+    if (!deviceSpec.isPresent() || apkGenerationConfiguration.isForInstantAppVariants()) {
+      return variantTargeting -> true;
+    }
+    // Split APKs are only generated for devices on L+, in which case no standalone APKs are
+    // generated, so the alternative targeting only depends on the split APK variants.
+    ImmutableMap<VariantTargeting, VariantTargeting> populatedVariantTargetings =
+        populateAlternativeSplitVariantTargeting(
+            variantTargetings,
+            appBundle.isAssetOnly()
+                ? Optional.empty()
+                : appBundle.getBaseModule().getAndroidManifest().getMaxSdkVersion());
+    VariantMatcher variantMatcher = new VariantMatcher(deviceSpec.get());
+    return variantTargeting ->
+        variantMatcher.matchesVariantTargeting(populatedVariantTargetings.get(variantTargeting));
+  }
+
+  private ModuleSplit createVariantPlaceholder(VariantTargeting variantTargeting) {
+    return ModuleSplit.builder()
+        .setAndroidManifest(
+            AndroidManifest.create(
+                AndroidManifest.createMinimalManifestTag(), appBundle.getVersion()))
+        .setModuleName(BundleModuleName.BASE_MODULE_NAME)
+        .setApkTargeting(ApkTargeting.getDefaultInstance())
+        .setVariantTargeting(variantTargeting)
+        .setMasterSplit(false)
+        .build();
+  }
+
   private ImmutableList<ModuleSplit> generateSplitApks(
       ImmutableList<BundleModule> modules,
       ApkGenerationConfiguration commonApkGenerationConfiguration,
@@ -87,7 +188,7 @@ public final class SplitApksGenerator {
 
     for (BundleModule module : modulesForVariant) {
       ModuleSplitter moduleSplitter =
-          ModuleSplitter.create(
+          ModuleSplitter.createWithCache(
               module,
               bundletoolVersion,
               appBundle,
@@ -99,7 +200,8 @@ public final class SplitApksGenerator {
               variantTargeting,
               allModuleNames,
               stampSource.map(SourceStamp::getSource),
-              StampType.STAMP_TYPE_DISTRIBUTION_APK);
+              StampType.STAMP_TYPE_DISTRIBUTION_APK,
+              splittingPipelineCache);
       splits.addAll(moduleSplitter.splitModule());
     }
 
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.tools.build.bundletool.splitters;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+
+import com.android.tools.build.bundletool.model.ModuleEntry;
+import com.android.tools.build.bundletool.model.ModuleSplit;
+import com.google.common.collect.ImmutableList;
+
+/** Adds entries which are not part of the module, e.g. copied from the bundle, to splits. */
+public interface SplitEntriesInjector {
+
+  /** Returns the entries to add to the given split, empty if the split is left unchanged. */
+  ImmutableList<ModuleEntry> getEntriesToInject(ModuleSplit split);
+
+  /** Returns the split with the entries of this injector added. */
+  default ModuleSplit inject(ModuleSplit split) {
+    return injectAll(split, ImmutableList.of(this));
+  }
+
+  /**
+   * Returns the split with the entries of all the given injectors added, in order.
+   *
+   * <p>The split is rebuilt at most once, and returned as is if no injector has entries to add.
+   * All injectors are given the original split: none of them depends on the entries of another.
+   */
+  static ModuleSplit injectAll(ModuleSplit split, ImmutableList<SplitEntriesInjector> injectors) {
+    ImmutableList<ModuleEntry> entries =
+        injectors.stream()
+            .flatMap(injector -> injector.getEntriesToInject(split).stream())
+            .collect(toImmutableList());
+    if (entries.isEmpty()) {
+      return split;
+    }
+    ModuleSplit.Builder splitBuilder = split.toBuilder();
+    entries.forEach(splitBuilder::addEntry);
+    return splitBuilder.build();
+  }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.tools.build.bundletool.splitters;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+
+import com.android.bundle.Targeting.VariantTargeting;
+import com.android.tools.build.bundletool.model.BundleModule;
+import com.android.tools.build.bundletool.model.ModuleSplit;
+import com.google.auto.value.AutoValue;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Outputs of the splitting pipelines of each module which don't depend on the variant, shared
+ * across the variants of a build.
+ *
+ * <p>The resources and assets of a module are split the same way in all variants, as long as the
+ * parts of the {@link ApkGenerationConfiguration} used by the splitters are the same. The splits
+ * computed for the first variant are then reused for the next variants, only updating their
+ * variant targeting.
+ *
+ * <p>Modules are compared by identity, so that modules with the same name but a different content
+ * (e.g. after merging modules) are not mixed up.
+ */
+public final class SplittingPipelineCache {
+
+  /** Splitting pipelines whose output is cached. */
+  enum Pipeline {
+    RESOURCES,
+    ASSETS
+  }
+
+  private final Cache<BundleModule, ConcurrentMap<PipelineKey, ImmutableList<ModuleSplit>>>
+      splitsByModule = CacheBuilder.newBuilder().weakKeys().build();
+
+  private final AtomicLong reusedCount = new AtomicLong();
+  private final AtomicLong computedCount = new AtomicLong();
+
+  /**
+   * Returns the output of the given pipeline for the module, targeting the given variant.
+   *
+   * @param configurationKey parts of the {@link ApkGenerationConfiguration} the pipeline depends on
+   * @param pipelineOutput computes the output of the pipeline, if not cached yet
+   */
+  ImmutableList<ModuleSplit> getOrSplit(
+      BundleModule module,
+      Pipeline pipeline,
+      ApkGenerationConfiguration configurationKey,
+      VariantTargeting variantTargeting,
+      Supplier<ImmutableList<ModuleSplit>> pipelineOutput) {
+    ConcurrentMap<PipelineKey, ImmutableList<ModuleSplit>> moduleSplits;
+    try {
+      moduleSplits = splitsByModule.get(module, ConcurrentHashMap::new);
+    } catch (ExecutionException e) {
+      // Creating an empty map cannot fail.
+      throw new IllegalStateException(e);
+    }
+
+    PipelineKey key = PipelineKey.create(pipeline, configurationKey);
+    ImmutableList<ModuleSplit> cachedSplits = moduleSplits.get(key);
+    if (cachedSplits != null) {
+      reusedCount.incrementAndGet();
+      return cachedSplits.stream()
+          .map(split -> retarget(split, variantTargeting))
+          .collect(toImmutableList());
+    }
+
+    ImmutableList<ModuleSplit> splits = pipelineOutput.get();
+    computedCount.incrementAndGet();
+    moduleSplits.putIfAbsent(key, splits);
+    return splits;
+  }
+
+  /** Returns the numbers of pipeline outputs reused and computed so far. */
+  Stats getStats() {
+    return Stats.create(reusedCount.get(), computedCount.get());
+  }
+
+  private static ModuleSplit retarget(ModuleSplit split, VariantTargeting variantTargeting) {
+    return split.getVariantTargeting().equals(variantTargeting)
+        ? split
+        : split.toBuilder().setVariantTargeting(variantTargeting).build();
+  }
+
+  @AutoValue
+  abstract static class PipelineKey {
+    static PipelineKey create(Pipeline pipeline, ApkGenerationConfiguration configurationKey) {
+      return new AutoValue_SplittingPipelineCache_PipelineKey(pipeline, configurationKey);
+    }
+
+    abstract Pipeline getPipeline();
+
+    abstract ApkGenerationConfiguration getConfigurationKey();
+  }
+
+  /** Counters of the splitting pipeline outputs reused across variants. */
+  @AutoValue
+  public abstract static class Stats {
+    static Stats create(long reusedCount, long computedCount) {
+      return new AutoValue_SplittingPipelineCache_Stats(reusedCount, computedCount);
+    }
+
+    /** Number of pipeline outputs reused from a previous variant. */
+    public abstract long getReusedCount();
+
+    /** Number of pipeline outputs computed. */
+    public abstract long getComputedCount();
+  }
+}
@@ -15,11 +15,13 @@
  */
 package com.android.tools.build.bundletool.transparency;
 
+import static com.google.common.collect.ImmutableList.toImmutableList;
 import static com.google.common.collect.ImmutableMap.toImmutableMap;
 import static com.google.common.collect.ImmutableSet.toImmutableSet;
 
 import com.android.bundle.CodeTransparencyOuterClass.CodeRelatedFile;
 import com.android.bundle.CodeTransparencyOuterClass.CodeTransparency;
+import com.android.tools.build.bundletool.io.ConcurrencyUtils;
 import com.android.tools.build.bundletool.model.BundleMetadata;
 import com.android.tools.build.bundletool.model.exceptions.InvalidCommandException;
 import com.android.tools.build.bundletool.model.utils.ZipUtils;
@@ -27,6 +29,9 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.hash.Hashing;
+import com.google.common.io.Closer;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
 import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.nio.file.Path;
@@ -41,7 +46,8 @@ public final class ApkTransparencyCheckUtils {
   private static final String TRANSPARENCY_FILE_ZIP_ENTRY_NAME =
       "META-INF/" + BundleMetadata.TRANSPARENCY_SIGNED_FILE_NAME;
 
-  public static TransparencyCheckResult checkTransparency(ImmutableList<Path> deviceSpecificApks) {
+  public static TransparencyCheckResult checkTransparency(
+      ImmutableList<Path> deviceSpecificApks, ListeningExecutorService executorService) {
     Optional<Path> baseApkPath = getBaseApkPath(deviceSpecificApks);
     if (!baseApkPath.isPresent()) {
       throw InvalidCommandException.builder()
@@ -92,7 +98,7 @@ public final class ApkTransparencyCheckUtils {
       CodeTransparencyVersion.checkVersion(codeTransparencyMetadata);
 
       ImmutableSet<String> pathsToModifiedFiles =
-          getModifiedFiles(codeTransparencyMetadata, deviceSpecificApks);
+          getModifiedFiles(codeTransparencyMetadata, deviceSpecificApks, executorService);
       result.fileContentsVerified(pathsToModifiedFiles.isEmpty());
       if (!pathsToModifiedFiles.isEmpty()) {
         result.errorMessage(
@@ -118,52 +124,70 @@ public final class ApkTransparencyCheckUtils {
         .findAny();
   }
 
+  /**
+   * Returns the paths of the dex files and native libraries of the APKs which don't match the code
+   * transparency metadata.
+   *
+   * <p>Only dex files and native libraries are read, each of them once, and they are hashed in
+   * parallel on the given executor. The paths are returned in the order of the APKs, with the dex
+   * files of each APK first.
+   */
   private static ImmutableSet<String> getModifiedFiles(
-      CodeTransparency codeTransparencyMetadata, ImmutableList<Path> allApkPaths) {
-    ImmutableSet.Builder<String> pathsToModifiedFilesBuilder = ImmutableSet.builder();
-    for (Path apkPath : allApkPaths) {
-      try (ZipFile apkFile = ZipUtils.openZipFile(apkPath)) {
-        pathsToModifiedFilesBuilder.addAll(getModifiedDexFiles(apkFile, codeTransparencyMetadata));
-        pathsToModifiedFilesBuilder.addAll(
-            getModifiedNativeLibraries(apkFile, codeTransparencyMetadata));
-      } catch (IOException e) {
-        throw new UncheckedIOException(e);
+      CodeTransparency codeTransparencyMetadata,
+      ImmutableList<Path> allApkPaths,
+      ListeningExecutorService executorService) {
+    ImmutableSet<String> expectedDexFiles = getDexFiles(codeTransparencyMetadata);
+    ImmutableMap<String, String> expectedNativeLibrariesByApkPath =
+        getNativeLibrariesByApkPath(codeTransparencyMetadata);
+
+    try (Closer closer = Closer.create()) {
+      ImmutableList.Builder<ListenableFuture<Optional<String>>> modifiedFiles =
+          ImmutableList.builder();
+      for (Path apkPath : allApkPaths) {
+        // Entries of a ZipFile can be read concurrently.
+        ZipFile apkFile = closer.register(ZipUtils.openZipFile(apkPath));
+        ImmutableList<ZipEntry> entries = apkFile.stream().collect(toImmutableList());
+        for (ZipEntry zipEntry : entries) {
+          if (isDexFile(zipEntry)) {
+            modifiedFiles.add(
+                executorService.submit(
+                    () -> getPathIfModifiedDexFile(apkFile, zipEntry, expectedDexFiles)));
+          }
+        }
+        for (ZipEntry zipEntry : entries) {
+          if (isNativeLibrary(zipEntry)) {
+            modifiedFiles.add(
+                executorService.submit(
+                    () ->
+                        getPathIfModifiedNativeLibrary(
+                            apkFile, zipEntry, expectedNativeLibrariesByApkPath)));
+          }
+        }
       }
+      return ConcurrencyUtils.waitForAll(modifiedFiles.build()).stream()
+          .filter(Optional::isPresent)
+          .map(Optional::get)
+          .collect(toImmutableSet());
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
     }
-    return pathsToModifiedFilesBuilder.build();
   }
 
-  private static ImmutableSet<String> getModifiedDexFiles(
-      ZipFile apkFile, CodeTransparency codeTransparencyMetadata) {
-    ImmutableSet<String> expectedDexFiles = getDexFiles(codeTransparencyMetadata);
-    ImmutableSet.Builder<String> pathsToModifiedFilesBuilder = ImmutableSet.builder();
-    apkFile.stream()
-        .forEach(
-            zipEntry -> {
-              String fileHash = getFileHash(apkFile, zipEntry);
-              if (isDexFile(zipEntry) && !expectedDexFiles.contains(fileHash)) {
-                pathsToModifiedFilesBuilder.add(zipEntry.getName());
-              }
-            });
-    return pathsToModifiedFilesBuilder.build();
+  private static Optional<String> getPathIfModifiedDexFile(
+      ZipFile apkFile, ZipEntry zipEntry, ImmutableSet<String> expectedDexFiles) {
+    return expectedDexFiles.contains(getFileHash(apkFile, zipEntry))
+        ? Optional.empty()
+        : Optional.of(zipEntry.getName());
   }
 
-  private static ImmutableSet<String> getModifiedNativeLibraries(
-      ZipFile apkFile, CodeTransparency codeTransparencyMetadata) {
-    ImmutableMap<String, String> expectedNativeLibrariesByApkPath =
-        getNativeLibrariesByApkPath(codeTransparencyMetadata);
-    ImmutableSet.Builder<String> pathsToModifiedFilesBuilder = ImmutableSet.builder();
-    apkFile.stream()
-        .forEach(
-            zipEntry -> {
-              String fileHash = getFileHash(apkFile, zipEntry);
-              if (isNativeLibrary(zipEntry)
-                  && !Optional.ofNullable(expectedNativeLibrariesByApkPath.get(zipEntry.getName()))
-                      .equals(Optional.of(fileHash))) {
-                pathsToModifiedFilesBuilder.add(zipEntry.getName());
-              }
-            });
-    return pathsToModifiedFilesBuilder.build();
+  private static Optional<String> getPathIfModifiedNativeLibrary(
+      ZipFile apkFile,
+      ZipEntry zipEntry,
+      ImmutableMap<String, String> expectedNativeLibrariesByApkPath) {
+    return Optional.ofNullable(expectedNativeLibrariesByApkPath.get(zipEntry.getName()))
+            .equals(Optional.of(getFileHash(apkFile, zipEntry)))
+        ? Optional.empty()
+        : Optional.of(zipEntry.getName());
   }
 
   private static ImmutableSet<String> getDexFiles(CodeTransparency codeTransparency) {
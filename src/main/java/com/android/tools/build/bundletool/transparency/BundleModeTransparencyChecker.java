@@ -18,6 +18,7 @@ package com.android.tools.build.bundletool.transparency;
 import com.android.tools.build.bundletool.commands.CheckTransparencyCommand;
 import com.android.tools.build.bundletool.model.AppBundle;
 import com.android.tools.build.bundletool.model.exceptions.InvalidBundleException;
+import com.google.common.util.concurrent.ListeningExecutorService;
 import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.util.zip.ZipException;
@@ -26,10 +27,11 @@ import java.util.zip.ZipFile;
 /** Executes {@link CheckTransparencyCommand} in BUNDLE mode. */
 public final class BundleModeTransparencyChecker {
 
-  public static TransparencyCheckResult checkTransparency(CheckTransparencyCommand command) {
+  public static TransparencyCheckResult checkTransparency(
+      CheckTransparencyCommand command, ListeningExecutorService executorService) {
     try (ZipFile bundleZip = new ZipFile(command.getBundlePath().get().toFile())) {
       AppBundle inputBundle = AppBundle.buildFromZip(bundleZip);
-      return BundleTransparencyCheckUtils.checkTransparency(inputBundle);
+      return BundleTransparencyCheckUtils.checkTransparency(inputBundle, executorService);
     } catch (ZipException e) {
       throw InvalidBundleException.builder()
           .withCause(e)
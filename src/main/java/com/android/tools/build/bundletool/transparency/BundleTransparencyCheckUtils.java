@@ -26,6 +26,7 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.MapDifference;
 import com.google.common.collect.Maps;
 import com.google.common.io.ByteSource;
+import com.google.common.util.concurrent.ListeningExecutorService;
 import java.util.Optional;
 import java.util.logging.Logger;
 import org.jose4j.jws.JsonWebSignature;
@@ -55,7 +56,8 @@ public final class BundleTransparencyCheckUtils {
    * @throws InvalidBundleException if an error occurs during verification, or if the bundle does
    *     not contain code transparency file.
    */
-  public static TransparencyCheckResult checkTransparency(AppBundle bundle) {
+  public static TransparencyCheckResult checkTransparency(
+      AppBundle bundle, ListeningExecutorService executorService) {
     Optional<ByteSource> signedTransparencyFile =
         bundle
             .getBundleMetadata()
@@ -68,16 +70,20 @@ public final class BundleTransparencyCheckUtils {
                   + " command to add code transparency metadata to the bundle.")
           .build();
     }
-    return checkTransparency(bundle, signedTransparencyFile.get());
+    return checkTransparency(bundle, signedTransparencyFile.get(), executorService);
   }
 
   /**
    * Verifies code transparency for the given bundle, and returns {@link TransparencyCheckResult}.
    *
+   * <p>The code related files of the bundle are hashed on the given executor.
+   *
    * @throws InvalidBundleException if an error occurs during verification.
    */
   public static TransparencyCheckResult checkTransparency(
-      AppBundle bundle, ByteSource signedTransparencyFile) {
+      AppBundle bundle,
+      ByteSource signedTransparencyFile,
+      ListeningExecutorService executorService) {
     TransparencyCheckResult.Builder result = TransparencyCheckResult.builder();
 
     JsonWebSignature jws = CodeTransparencyCryptoUtils.parseJws(signedTransparencyFile);
@@ -98,7 +104,7 @@ public final class BundleTransparencyCheckUtils {
     MapDifference<String, CodeRelatedFile> difference =
         Maps.difference(
             getCodeRelatedFilesFromParsedTransparencyFile(parsedTransparencyFile),
-            getCodeRelatedFilesFromBundle(bundle));
+            getCodeRelatedFilesFromBundle(bundle, executorService));
     result.fileContentsVerified(difference.areEqual());
     if (!difference.areEqual()) {
       result.errorMessage(getDiffAsString(difference));
@@ -126,8 +132,8 @@ public final class BundleTransparencyCheckUtils {
   }
 
   private static ImmutableMap<String, CodeRelatedFile> getCodeRelatedFilesFromBundle(
-      AppBundle bundle) {
-    return CodeTransparencyFactory.createCodeTransparencyMetadata(bundle)
+      AppBundle bundle, ListeningExecutorService executorService) {
+    return CodeTransparencyFactory.createCodeTransparencyMetadata(bundle, executorService)
         .getCodeRelatedFileList()
         .stream()
         .collect(
@@ -21,6 +21,7 @@ import static com.google.common.collect.ImmutableList.toImmutableList;
 import com.android.bundle.CodeTransparencyOuterClass.CodeRelatedFile;
 import com.android.bundle.CodeTransparencyOuterClass.CodeTransparency;
 import com.android.tools.build.bundletool.archive.ArchivedResourcesHelper;
+import com.android.tools.build.bundletool.io.ConcurrencyUtils;
 import com.android.tools.build.bundletool.io.ResourceReader;
 import com.android.tools.build.bundletool.model.AppBundle;
 import com.android.tools.build.bundletool.model.BundleModule;
@@ -29,6 +30,7 @@ import com.android.tools.build.bundletool.model.exceptions.InvalidBundleExceptio
 import com.google.common.collect.ImmutableList;
 import com.google.common.hash.Hashing;
 import com.google.common.io.ByteSource;
+import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.protobuf.util.JsonFormat;
 import java.io.IOException;
 import java.io.UncheckedIOException;
@@ -38,12 +40,20 @@ import java.util.stream.Stream;
 /** Shared static utilities for adding and verifying {@link CodeTransparency}. */
 public final class CodeTransparencyFactory {
 
-  /** Returns {@link CodeTransparency} for the given {@link AppBundle}. */
-  public static CodeTransparency createCodeTransparencyMetadata(AppBundle bundle) {
+  /**
+   * Returns {@link CodeTransparency} for the given {@link AppBundle}.
+   *
+   * <p>The code related files of all modules are hashed in parallel on the given executor.
+   */
+  public static CodeTransparency createCodeTransparencyMetadata(
+      AppBundle bundle, ListeningExecutorService executorService) {
     ImmutableList<CodeRelatedFile> codeRelatedFiles =
-        bundle.getFeatureModules().values().stream()
-            .flatMap(CodeTransparencyFactory::getCodeRelatedFileEntries)
-            .map(CodeTransparencyFactory::createCodeRelatedFile)
+        createCodeRelatedFiles(
+                bundle.getFeatureModules().values().stream()
+                    .flatMap(CodeTransparencyFactory::getCodeRelatedFileEntries)
+                    .collect(toImmutableList()),
+                executorService)
+            .stream()
             .sorted(Comparator.comparing(CodeRelatedFile::getPath))
             .collect(toImmutableList());
 
@@ -102,6 +112,15 @@ public final class CodeTransparencyFactory {
     return module.getEntries().stream().filter(CodeTransparencyFactory::isCodeRelatedFile);
   }
 
+  private static ImmutableList<CodeRelatedFile> createCodeRelatedFiles(
+      ImmutableList<ModuleEntry> codeRelatedFileEntries,
+      ListeningExecutorService executorService) {
+    return ConcurrencyUtils.waitForAll(
+        codeRelatedFileEntries.stream()
+            .map(moduleEntry -> executorService.submit(() -> createCodeRelatedFile(moduleEntry)))
+            .collect(toImmutableList()));
+  }
+
   private static CodeRelatedFile createCodeRelatedFile(ModuleEntry moduleEntry) {
     checkArgument(moduleEntry.getFileLocation().isPresent());
     CodeRelatedFile.Builder codeRelatedFile =
@@ -27,6 +27,7 @@ import com.android.tools.build.bundletool.device.DeviceAnalyzer;
 import com.android.tools.build.bundletool.io.TempDirectory;
 import com.android.tools.build.bundletool.model.exceptions.InvalidCommandException;
 import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.UncheckedTimeoutException;
 import java.io.IOException;
 import java.io.UncheckedIOException;
@@ -41,7 +42,8 @@ public final class ConnectedDeviceModeTransparencyChecker {
 
   private static final String APK_PATH_ON_DEVICE_PREFIX = "package:/";
 
-  public static TransparencyCheckResult checkTransparency(CheckTransparencyCommand command) {
+  public static TransparencyCheckResult checkTransparency(
+      CheckTransparencyCommand command, ListeningExecutorService executorService) {
     command.getAdbServer().get().init(command.getAdbPath().get());
     AdbRunner adbRunner = new AdbRunner(command.getAdbServer().get());
     Device adbDevice = getDevice(command.getAdbServer().get(), command.getDeviceId());
@@ -74,7 +76,8 @@ public final class ConnectedDeviceModeTransparencyChecker {
       }
 
       return ApkTransparencyCheckUtils.checkTransparency(
-          pullParams.stream().map(FilePullParams::getDestinationPath).collect(toImmutableList()));
+          pullParams.stream().map(FilePullParams::getDestinationPath).collect(toImmutableList()),
+          executorService);
     } catch (IOException e) {
       throw new UncheckedIOException(e);
     }
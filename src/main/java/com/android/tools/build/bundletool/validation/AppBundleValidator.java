@@ -18,9 +18,13 @@ package com.android.tools.build.bundletool.validation;
 
 import com.android.tools.build.bundletool.model.AppBundle;
 import com.android.tools.build.bundletool.model.BundleModule;
+import com.android.tools.build.bundletool.model.ModuleEntryComparisons;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Consumer;
 import java.util.zip.ZipFile;
 
 /** Validates the files and configuration for the bundle. */
@@ -36,50 +40,55 @@ public class AppBundleValidator {
 
   /** Validators run on the internal representation of bundle and bundle modules. */
   @VisibleForTesting
-  static final ImmutableList<SubValidator> DEFAULT_BUNDLE_SUB_VALIDATORS =
-      // Keep order of common validators in sync with BundleModulesValidator.
-      ImmutableList.of(
-          // Fundamental file validations first.
-          new BundleFilesValidator(),
-          new ModuleNamesValidator(),
-          new AndroidManifestValidator(),
-          new BundleConfigValidator(),
-          new DeviceGroupConfigValidator(),
-          // More specific file validations.
-          new EntryClashValidator(),
-          new NestedTargetingValidator(),
-          new AbiParityValidator(),
-          new TextureCompressionFormatParityValidator(),
-          new DeviceGroupParityValidator(),
-          new DeviceTierParityValidator(),
-          new CountrySetParityValidator(),
-          new DexFilesValidator(),
-          new ApexBundleValidator(),
-          new AssetBundleValidator(),
-          // Targeting validations.
-          new AssetsTargetingValidator(),
-          new NativeTargetingValidator(),
-          new DeviceGroupTargetingValidator(),
-          // Other.
-          new ArchiveEntriesValidator(),
-          new ModuleDependencyValidator(),
-          new ModuleTitleValidator(),
-          new ResourceTableValidator(),
-          new AssetModuleFilesValidator(),
-          new CodeTransparencyValidator(),
-          new RuntimeEnabledSdkConfigValidator(),
-          new RuntimeEnabledSdkManifestCompatibilityValidator(),
-          new DeclarativeWatchFaceBundleValidator(),
-          new StandaloneFeatureModulesValidator());
+  static ImmutableList<SubValidator> defaultBundleSubValidators(
+      ModuleEntryComparisons moduleEntryComparisons) {
+    // Keep order of common validators in sync with BundleModulesValidator.
+    return ImmutableList.of(
+        // Fundamental file validations first.
+        new BundleFilesValidator(),
+        new ModuleNamesValidator(),
+        new AndroidManifestValidator(),
+        new BundleConfigValidator(),
+        new DeviceGroupConfigValidator(),
+        // More specific file validations.
+        new EntryClashValidator(moduleEntryComparisons),
+        new NestedTargetingValidator(),
+        new AbiParityValidator(),
+        new TextureCompressionFormatParityValidator(),
+        new DeviceGroupParityValidator(),
+        new DeviceTierParityValidator(),
+        new CountrySetParityValidator(),
+        new DexFilesValidator(),
+        new ApexBundleValidator(),
+        new AssetBundleValidator(),
+        // Targeting validations.
+        new AssetsTargetingValidator(),
+        new NativeTargetingValidator(),
+        new DeviceGroupTargetingValidator(),
+        // Other.
+        new ArchiveEntriesValidator(),
+        new ModuleDependencyValidator(),
+        new ModuleTitleValidator(),
+        new ResourceTableValidator(),
+        new AssetModuleFilesValidator(),
+        new CodeTransparencyValidator(),
+        new RuntimeEnabledSdkConfigValidator(),
+        new RuntimeEnabledSdkManifestCompatibilityValidator(),
+        new DeclarativeWatchFaceBundleValidator(),
+        new StandaloneFeatureModulesValidator());
+  }
 
-  private final ImmutableList<SubValidator> allBundleSubValidators;
-  private final ImmutableList<SubValidator> allBundleFileSubValidators;
+  private final ImmutableList<SubValidator> bundleSubValidators;
+  private final ImmutableList<SubValidator> extraSubValidators;
+  private final Optional<ExecutorService> executorService;
 
   private AppBundleValidator(
-      ImmutableList<SubValidator> allBundleSubValidators,
-      ImmutableList<SubValidator> allBundleFileSubValidators) {
-    this.allBundleSubValidators = allBundleSubValidators;
-    this.allBundleFileSubValidators = allBundleFileSubValidators;
+      ImmutableList<SubValidator> bundleSubValidators,
+      ImmutableList<SubValidator> extraSubValidators,
+      Optional<ExecutorService> executorService) {
+    this.bundleSubValidators = bundleSubValidators;
+    this.extraSubValidators = extraSubValidators;
+    this.executorService = executorService;
   }
 
   public static AppBundleValidator create() {
@@ -87,17 +96,29 @@ public class AppBundleValidator {
   }
 
   public static AppBundleValidator create(ImmutableList<SubValidator> extraSubValidators) {
-    AppBundleValidator validator =
-        new AppBundleValidator(
-            ImmutableList.<SubValidator>builder()
-                .addAll(DEFAULT_BUNDLE_SUB_VALIDATORS)
-                .addAll(extraSubValidators)
-                .build(),
-            ImmutableList.<SubValidator>builder()
-                .addAll(DEFAULT_BUNDLE_FILE_SUB_VALIDATORS)
-                .addAll(extraSubValidators)
-                .build());
-    return validator;
+    return create(extraSubValidators, Optional.empty(), new ModuleEntryComparisons());
+  }
+
+  /**
+   * Creates a validator running independent validations concurrently on {@code executorService}.
+   *
+   * <p>The {@code extraSubValidators} don't need to be thread-safe: they are run sequentially on
+   * the calling thread, once the default validations have passed. The comparisons of module entries
+   * made by the validations are counted in {@code moduleEntryComparisons}.
+   */
+  public static AppBundleValidator create(
+      ImmutableList<SubValidator> extraSubValidators,
+      ExecutorService executorService,
+      ModuleEntryComparisons moduleEntryComparisons) {
+    return create(extraSubValidators, Optional.of(executorService), moduleEntryComparisons);
+  }
+
+  private static AppBundleValidator create(
+      ImmutableList<SubValidator> extraSubValidators,
+      Optional<ExecutorService> executorService,
+      ModuleEntryComparisons moduleEntryComparisons) {
+    return new AppBundleValidator(
+        defaultBundleSubValidators(moduleEntryComparisons), extraSubValidators, executorService);
   }
 
   /**
@@ -106,7 +127,7 @@ public class AppBundleValidator {
    * <p>Note that this method performs different checks than {@link #validate(AppBundle)}.
    */
   public void validateFile(ZipFile bundleFile) {
-    new ValidatorRunner(allBundleFileSubValidators).validateBundleZipFile(bundleFile);
+    run(DEFAULT_BUNDLE_FILE_SUB_VALIDATORS, runner -> runner.validateBundleZipFile(bundleFile));
   }
 
   /**
@@ -117,7 +138,7 @@ public class AppBundleValidator {
    * @throws ValidationException If the bundle is invalid.
    */
   public void validate(AppBundle bundle) {
-    new ValidatorRunner(allBundleSubValidators).validateBundle(bundle);
+    run(bundleSubValidators, runner -> runner.validateBundle(bundle));
   }
 
   /**
@@ -125,6 +146,29 @@ public class AppBundleValidator {
    */
   public void validateBundleWithSdkModules(
       AppBundle bundle, ImmutableMap<String, BundleModule> sdkModules) {
-    new ValidatorRunner(allBundleSubValidators).validateBundleWithSdkModules(bundle, sdkModules);
+    run(bundleSubValidators, runner -> runner.validateBundleWithSdkModules(bundle, sdkModules));
+  }
+
+  /**
+   * Runs the validation with the given default sub-validators followed by the extra ones.
+   *
+   * <p>Without an executor service, all of them run in a single sequential run. Otherwise the
+   * default sub-validators run concurrently, and the extra ones sequentially afterwards.
+   */
+  private void run(
+      ImmutableList<SubValidator> defaultSubValidators, Consumer<ValidatorRunner> validation) {
+    if (!executorService.isPresent()) {
+      validation.accept(
+          new ValidatorRunner(
+              ImmutableList.<SubValidator>builder()
+                  .addAll(defaultSubValidators)
+                  .addAll(extraSubValidators)
+                  .build()));
+      return;
+    }
+    validation.accept(new ValidatorRunner(defaultSubValidators, executorService.get()));
+    if (!extraSubValidators.isEmpty()) {
+      validation.accept(new ValidatorRunner(extraSubValidators));
+    }
   }
 }
@@ -23,6 +23,7 @@ import com.android.tools.build.bundletool.model.BundleMetadata;
 import com.android.tools.build.bundletool.model.exceptions.InvalidBundleException;
 import com.android.tools.build.bundletool.transparency.TransparencyCheckResult;
 import com.google.common.io.ByteSource;
+import com.google.common.util.concurrent.MoreExecutors;
 import java.util.Optional;
 
 /** Code transparency file validation. */
@@ -39,8 +40,11 @@ public final class CodeTransparencyValidator extends SubValidator {
       return;
     }
 
+    // Validators already run in parallel, and may run on the threads of the executor of the
+    // command, so the code related files are hashed on the thread of the validator.
     TransparencyCheckResult transparencyCheckResult =
-        checkTransparency(bundle, signedTransparencyFile.get());
+        checkTransparency(
+            bundle, signedTransparencyFile.get(), MoreExecutors.newDirectExecutorService());
     if (!transparencyCheckResult.verified()) {
       throw InvalidBundleException.builder()
           .withUserMessage(transparencyCheckResult.getErrorMessage())
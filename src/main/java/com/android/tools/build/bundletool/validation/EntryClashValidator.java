@@ -22,6 +22,7 @@ import static com.google.common.base.Predicates.not;
 import com.android.tools.build.bundletool.model.BundleModule;
 import com.android.tools.build.bundletool.model.BundleModule.ModuleType;
 import com.android.tools.build.bundletool.model.ModuleEntry;
+import com.android.tools.build.bundletool.model.ModuleEntryComparisons;
 import com.android.tools.build.bundletool.model.ZipPath;
 import com.android.tools.build.bundletool.model.exceptions.InvalidBundleException;
 import com.google.common.annotations.VisibleForTesting;
@@ -37,6 +38,17 @@ import java.util.Map;
  */
 public class EntryClashValidator extends SubValidator {
 
+  private final ModuleEntryComparisons moduleEntryComparisons;
+
+  public EntryClashValidator() {
+    this(new ModuleEntryComparisons());
+  }
+
+  /** Creates a validator counting the comparisons of entries in {@code moduleEntryComparisons}. */
+  public EntryClashValidator(ModuleEntryComparisons moduleEntryComparisons) {
+    this.moduleEntryComparisons = moduleEntryComparisons;
+  }
+
   @Override
   public void validateAllModules(ImmutableList<BundleModule> modules) {
     if (!BundleValidationUtils.isAssetOnlyBundle(modules)) {
@@ -52,7 +64,7 @@ public class EntryClashValidator extends SubValidator {
   }
 
   @VisibleForTesting
-  static void checkEntryClashes(ImmutableList<BundleModule> modules) {
+  void checkEntryClashes(ImmutableList<BundleModule> modules) {
     Map<ZipPath, BundleModule> usedPaths = new HashMap<>();
     for (BundleModule module : modules) {
       module.getEntries().stream()
@@ -71,7 +83,7 @@ public class EntryClashValidator extends SubValidator {
     return entry.getPath().startsWith(DEX_DIRECTORY);
   }
 
-  private static void checkEntryClash(ZipPath path, BundleModule module1, BundleModule module2) {
+  private void checkEntryClash(ZipPath path, BundleModule module1, BundleModule module2) {
     // For entries from asset modules we don't allow to have entry with the same name in any other
     // module of different type even with equal content. This is because entries in asset modules
     // are uncompressed and during standalone/universal apk generation we have a collision: should
@@ -87,10 +99,10 @@ public class EntryClashValidator extends SubValidator {
     checkEqualEntries(path, module1, module2);
   }
 
-  private static void checkEqualEntries(ZipPath path, BundleModule module1, BundleModule module2) {
+  private void checkEqualEntries(ZipPath path, BundleModule module1, BundleModule module2) {
     ModuleEntry entry1 = module1.getEntry(path).get();
     ModuleEntry entry2 = module2.getEntry(path).get();
-    if (!entry1.equals(entry2)) {
+    if (!moduleEntryComparisons.areIdentical(entry1, entry2)) {
       throw InvalidBundleException.builder()
           .withUserMessage(
               "Modules '%s' and '%s' contain entry '%s' with different content.",
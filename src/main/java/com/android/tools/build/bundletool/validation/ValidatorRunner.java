@@ -23,46 +23,126 @@ import com.android.tools.build.bundletool.model.BundleModule;
 import com.android.tools.build.bundletool.model.ModuleEntry;
 import com.android.tools.build.bundletool.model.SdkBundle;
 import com.android.tools.build.bundletool.model.ZipPath;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
-import java.util.Enumeration;
+import com.google.common.collect.Lists;
+import com.google.common.math.IntMath;
+import java.math.RoundingMode;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.IntStream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
-/** Runs given set of validators. */
+/**
+ * Runs given set of validators.
+ *
+ * <p>When an {@link ExecutorService} is provided, independent validations are run concurrently:
+ * each sub-validator runs on its own, its per-module validations run on their own, and the zip
+ * entries are split into contiguous partitions validated in parallel. The sub-validators must then
+ * be thread-safe. Whichever validation finishes first, the reported error is always the one the
+ * sequential run would have reported. The calling thread takes part in running the validations,
+ * so the executor may be one whose threads are themselves running validations.
+ */
 public class ValidatorRunner {
 
+  private static final Logger logger = Logger.getLogger(ValidatorRunner.class.getName());
+
+  private static final int ZIP_ENTRY_PARTITIONS = Runtime.getRuntime().availableProcessors();
+
   private final ImmutableList<SubValidator> subValidators;
+  private final Optional<ExecutorService> executorService;
+  /** Time spent in each sub-validator, indexed like {@link #subValidators}. */
+  private final ImmutableList<LongAdder> nanosBySubValidator;
 
   public ValidatorRunner(ImmutableList<SubValidator> subValidators) {
+    this(subValidators, Optional.empty());
+  }
+
+  /** Creates a runner executing independent validations concurrently on {@code executorService}. */
+  public ValidatorRunner(
+      ImmutableList<SubValidator> subValidators, ExecutorService executorService) {
+    this(subValidators, Optional.of(executorService));
+  }
+
+  ValidatorRunner(
+      ImmutableList<SubValidator> subValidators, Optional<ExecutorService> executorService) {
     this.subValidators = subValidators;
+    this.executorService = executorService;
+    this.nanosBySubValidator =
+        subValidators.stream().map(unused -> new LongAdder()).collect(toImmutableList());
   }
 
   /** Validates the given app bundle zip file. */
   public void validateBundleZipFile(ZipFile bundleFile) {
-    subValidators.forEach(subValidator -> subValidator.validateBundleZipFile(bundleFile));
+    runTasks(forEachSubValidator(subValidator -> subValidator.validateBundleZipFile(bundleFile)));
 
-    Enumeration<? extends ZipEntry> zipEntries = bundleFile.entries();
-    while (zipEntries.hasMoreElements()) {
-      ZipEntry zipEntry = zipEntries.nextElement();
-      subValidators.forEach(
-          subValidator -> subValidator.validateBundleZipEntry(bundleFile, zipEntry));
-    }
+    ImmutableList<ZipEntry> zipEntries =
+        ImmutableList.copyOf(Collections.list(bundleFile.entries()));
+    int partitions = executorService.isPresent() ? ZIP_ENTRY_PARTITIONS : 1;
+    int partitionSize =
+        Math.max(1, IntMath.divide(zipEntries.size(), partitions, RoundingMode.CEILING));
+    runTasks(
+        Lists.partition(zipEntries, partitionSize).stream()
+            .map(
+                partition ->
+                    (Runnable)
+                        () -> {
+                          for (ZipEntry zipEntry : partition) {
+                            for (int i = 0; i < subValidators.size(); i++) {
+                              SubValidator subValidator = subValidators.get(i);
+                              timed(
+                                  i,
+                                  () -> subValidator.validateBundleZipEntry(bundleFile, zipEntry));
+                            }
+                          }
+                        })
+            .collect(toImmutableList()));
+    logTimings("bundle zip file");
   }
 
   /** Validates the given app bundle module zip file. */
   public void validateModuleZipFile(ZipFile moduleFile) {
-    subValidators.forEach(subValidator -> subValidator.validateModuleZipFile(moduleFile));
+    runTasks(forEachSubValidator(subValidator -> subValidator.validateModuleZipFile(moduleFile)));
   }
 
   /** Validates the given SDK modules zip file. */
   public void validateSdkModulesZipFile(ZipFile moduleFile) {
-    subValidators.forEach(subValidator -> subValidator.validateSdkModulesZipFile(moduleFile));
+    runTasks(
+        forEachSubValidator(subValidator -> subValidator.validateSdkModulesZipFile(moduleFile)));
   }
 
   /** Validates the given app bundle. */
   public void validateBundle(AppBundle bundle) {
-    subValidators.forEach(subValidator -> validateBundleUsingSubValidator(bundle, subValidator));
+    ImmutableList<BundleModule> modules = ImmutableList.copyOf(bundle.getModules().values());
+    ImmutableList.Builder<Runnable> tasks = ImmutableList.builder();
+    for (int i = 0; i < subValidators.size(); i++) {
+      SubValidator subValidator = subValidators.get(i);
+      tasks.add(
+          timedTask(
+              i,
+              () -> {
+                subValidator.validateBundle(bundle);
+                subValidator.validateAllModules(modules);
+              }));
+      tasks.addAll(perModuleTasks(i, modules));
+    }
+    runTasks(tasks.build());
+    logTimings("bundle");
   }
 
   /**
@@ -74,51 +154,160 @@ public class ValidatorRunner {
       return;
     }
 
-    subValidators.forEach(
-        subValidator -> subValidator.validateBundleWithSdkModules(bundle, sdkModules));
+    runTasks(
+        forEachSubValidator(
+            subValidator -> subValidator.validateBundleWithSdkModules(bundle, sdkModules)));
   }
 
   /** Validates the given SDK bundle. */
   void validateSdkBundle(SdkBundle bundle) {
-    subValidators.forEach(subValidator -> validateSdkBundleUsingSubValidator(bundle, subValidator));
+    ImmutableList.Builder<Runnable> tasks = ImmutableList.builder();
+    for (int i = 0; i < subValidators.size(); i++) {
+      SubValidator subValidator = subValidators.get(i);
+      tasks.add(timedTask(i, () -> subValidator.validateSdkBundle(bundle)));
+      tasks.addAll(perModuleTasks(i, ImmutableList.of(bundle.getModule())));
+    }
+    runTasks(tasks.build());
   }
 
   /** Interprets given modules as a bundle and validates it. */
   public void validateBundleModules(ImmutableList<BundleModule> modules) {
-    subValidators.forEach(
-        subValidator -> validateBundleModulesUsingSubValidator(modules, subValidator));
+    ImmutableList.Builder<Runnable> tasks = ImmutableList.builder();
+    for (int i = 0; i < subValidators.size(); i++) {
+      SubValidator subValidator = subValidators.get(i);
+      tasks.add(timedTask(i, () -> subValidator.validateAllModules(modules)));
+      tasks.addAll(perModuleTasks(i, modules));
+    }
+    runTasks(tasks.build());
+  }
+
+  /**
+   * Returns the total time spent in each sub-validator so far, in the order of the sub-validators.
+   */
+  public ImmutableMap<SubValidator, Duration> getSubValidatorTimings() {
+    Map<SubValidator, Duration> timings = new LinkedHashMap<>();
+    for (int i = 0; i < subValidators.size(); i++) {
+      timings.merge(
+          subValidators.get(i),
+          Duration.ofNanos(nanosBySubValidator.get(i).sum()),
+          Duration::plus);
+    }
+    return ImmutableMap.copyOf(timings);
+  }
+
+  private ImmutableList<Runnable> forEachSubValidator(Consumer<SubValidator> validation) {
+    return IntStream.range(0, subValidators.size())
+        .mapToObj(i -> timedTask(i, () -> validation.accept(subValidators.get(i))))
+        .collect(toImmutableList());
   }
 
-  private static void validateBundleUsingSubValidator(AppBundle bundle, SubValidator subValidator) {
-    subValidator.validateBundle(bundle);
-    validateBundleModulesUsingSubValidator(
-        ImmutableList.copyOf(bundle.getModules().values()), subValidator);
+  private ImmutableList<Runnable> perModuleTasks(
+      int subValidatorIndex, ImmutableList<BundleModule> modules) {
+    SubValidator subValidator = subValidators.get(subValidatorIndex);
+    return modules.stream()
+        .map(
+            module ->
+                timedTask(
+                    subValidatorIndex,
+                    () -> {
+                      subValidator.validateModule(module);
+                      for (ZipPath moduleFile : getModuleFiles(module)) {
+                        subValidator.validateModuleFile(moduleFile);
+                      }
+                    }))
+        .collect(toImmutableList());
   }
 
-  private static void validateSdkBundleUsingSubValidator(
-      SdkBundle bundle, SubValidator subValidator) {
-    subValidator.validateSdkBundle(bundle);
-    BundleModule module = bundle.getModule();
-    subValidator.validateModule(module);
+  private Runnable timedTask(int subValidatorIndex, Runnable task) {
+    return () -> timed(subValidatorIndex, task);
+  }
 
-    for (ZipPath moduleFile : getModuleFiles(module)) {
-      subValidator.validateModuleFile(moduleFile);
+  private void timed(int subValidatorIndex, Runnable task) {
+    long startNanos = System.nanoTime();
+    try {
+      task.run();
+    } finally {
+      nanosBySubValidator.get(subValidatorIndex).add(System.nanoTime() - startNanos);
     }
   }
 
-  private static void validateBundleModulesUsingSubValidator(
-      ImmutableList<BundleModule> modules, SubValidator subValidator) {
-    subValidator.validateAllModules(modules);
+  /**
+   * Runs the tasks, which must be listed in the order they would run sequentially, and throws the
+   * error of the first failing task in that order.
+   *
+   * <p>The calling thread runs the tasks that no thread of the executor has started yet, and only
+   * waits for the tasks already running on other threads. This can therefore be called from a
+   * thread of the executor itself, e.g. by nested validations, without starving it of threads.
+   */
+  private void runTasks(ImmutableList<Runnable> tasks) {
+    if (!executorService.isPresent()) {
+      tasks.forEach(Runnable::run);
+      return;
+    }
+
+    // Tasks listed after a failed one cannot change the reported error, so they are skipped.
+    AtomicInteger firstFailedTask = new AtomicInteger(Integer.MAX_VALUE);
+    ImmutableList<AtomicBoolean> startedTasks =
+        tasks.stream().map(unused -> new AtomicBoolean()).collect(toImmutableList());
+    AtomicReferenceArray<Throwable> errors = new AtomicReferenceArray<>(tasks.size());
+    CountDownLatch finishedTasks = new CountDownLatch(tasks.size());
+    ImmutableList<Runnable> claimingTasks =
+        IntStream.range(0, tasks.size())
+            .mapToObj(
+                i ->
+                    (Runnable)
+                        () -> {
+                          if (!startedTasks.get(i).compareAndSet(false, true)) {
+                            return;
+                          }
+                          try {
+                            if (i <= firstFailedTask.get()) {
+                              tasks.get(i).run();
+                            }
+                          } catch (RuntimeException | Error e) {
+                            errors.set(i, e);
+                            firstFailedTask.accumulateAndGet(i, Math::min);
+                          } finally {
+                            finishedTasks.countDown();
+                          }
+                        })
+            .collect(toImmutableList());
 
-    for (BundleModule module : modules) {
-      subValidator.validateModule(module);
+    ImmutableList<Future<?>> futures =
+        claimingTasks.stream().map(executorService.get()::submit).collect(toImmutableList());
+    claimingTasks.forEach(Runnable::run);
+    try {
+      finishedTasks.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      futures.forEach(f -> f.cancel(/* mayInterruptIfRunning= */ true));
+      throw new IllegalStateException("Validation was interrupted.", e);
+    }
 
-      for (ZipPath moduleFile : getModuleFiles(module)) {
-        subValidator.validateModuleFile(moduleFile);
+    for (int i = 0; i < tasks.size(); i++) {
+      Throwable error = errors.get(i);
+      if (error != null) {
+        Throwables.throwIfUnchecked(error);
+        throw new IllegalStateException(error);
       }
     }
   }
 
+  private void logTimings(String validatedInput) {
+    if (!logger.isLoggable(Level.FINE)) {
+      return;
+    }
+    getSubValidatorTimings()
+        .forEach(
+            (subValidator, duration) ->
+                logger.fine(
+                    String.format(
+                        "Validation of the %s by %s: %d ms.",
+                        validatedInput,
+                        subValidator.getClass().getSimpleName(),
+                        duration.toMillis())));
+  }
+
   private static ImmutableList<ZipPath> getModuleFiles(BundleModule module) {
     return module.getEntries().stream().map(ModuleEntry::getPath).collect(toImmutableList());
   }
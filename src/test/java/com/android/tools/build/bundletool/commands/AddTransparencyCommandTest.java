@@ -64,6 +64,7 @@ import com.google.common.hash.Hashing;
 import com.google.common.io.BaseEncoding;
 import com.google.common.io.ByteSource;
 import com.google.common.io.CharSource;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.protobuf.util.JsonFormat;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -1207,7 +1208,8 @@ public final class AddTransparencyCommandTest {
             JsonFormat.printer()
                 .print(
                     CodeTransparencyFactory.createCodeTransparencyMetadata(
-                        AppBundle.buildFromZip(new ZipFile(bundlePath.toFile())))),
+                        AppBundle.buildFromZip(new ZipFile(bundlePath.toFile())),
+                        MoreExecutors.newDirectExecutorService())),
             signerConfig.getCertificates());
     byte[] unsignedTransparencyFileBytes =
         CharSource.wrap(unsignedTransparencyToken).asByteSource(Charset.defaultCharset()).read();
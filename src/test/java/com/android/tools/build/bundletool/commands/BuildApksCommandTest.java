@@ -115,6 +115,8 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.io.CharSource;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.protobuf.util.JsonFormat;
 import dagger.Component;
 import java.io.ByteArrayOutputStream;
@@ -310,6 +312,7 @@ public class BuildApksCommandTest {
             // Must copy instance of the internal executor service.
             .setAapt2Command(commandViaFlags.getAapt2Command().get())
             .setExecutorServiceInternal(commandViaFlags.getExecutorService())
+            .setIoExecutorServiceInternal(commandViaFlags.getIoExecutorService())
             .setExecutorServiceCreatedByBundleTool(true)
             .setOutputPrintStream(commandViaFlags.getOutputPrintStream().get());
 
@@ -344,6 +347,7 @@ public class BuildApksCommandTest {
             // Must copy instance of the internal executor service.
             .setAapt2Command(commandViaFlags.getAapt2Command().get())
             .setExecutorServiceInternal(commandViaFlags.getExecutorService())
+            .setIoExecutorServiceInternal(commandViaFlags.getIoExecutorService())
             .setExecutorServiceCreatedByBundleTool(true)
             .setOutputPrintStream(commandViaFlags.getOutputPrintStream().get());
     DebugKeystoreUtils.getDebugSigningConfiguration(systemEnvironmentProvider)
@@ -378,6 +382,7 @@ public class BuildApksCommandTest {
             // Must copy instance of the internal executor service.
             .setAapt2Command(commandViaFlags.getAapt2Command().get())
             .setExecutorServiceInternal(commandViaFlags.getExecutorService())
+            .setIoExecutorServiceInternal(commandViaFlags.getIoExecutorService())
             .setExecutorServiceCreatedByBundleTool(true)
             .setOutputPrintStream(commandViaFlags.getOutputPrintStream().get());
     DebugKeystoreUtils.getDebugSigningConfiguration(systemEnvironmentProvider)
@@ -412,6 +417,7 @@ public class BuildApksCommandTest {
             // Must copy instance of the internal executor service.
             .setAapt2Command(commandViaFlags.getAapt2Command().get())
             .setExecutorServiceInternal(commandViaFlags.getExecutorService())
+            .setIoExecutorServiceInternal(commandViaFlags.getIoExecutorService())
             .setExecutorServiceCreatedByBundleTool(true)
             .setOutputPrintStream(commandViaFlags.getOutputPrintStream().get())
             .build();
@@ -445,6 +451,7 @@ public class BuildApksCommandTest {
             // Must copy instance of the internal executor service.
             .setAapt2Command(commandViaFlags.getAapt2Command().get())
             .setExecutorServiceInternal(commandViaFlags.getExecutorService())
+            .setIoExecutorServiceInternal(commandViaFlags.getIoExecutorService())
             .setExecutorServiceCreatedByBundleTool(true)
             .setOutputPrintStream(commandViaFlags.getOutputPrintStream().get());
     DebugKeystoreUtils.getDebugSigningConfiguration(systemEnvironmentProvider)
@@ -477,6 +484,7 @@ public class BuildApksCommandTest {
             // Must copy instance of the internal executor service.
             .setAapt2Command(commandViaFlags.getAapt2Command().get())
             .setExecutorServiceInternal(commandViaFlags.getExecutorService())
+            .setIoExecutorServiceInternal(commandViaFlags.getIoExecutorService())
             .setExecutorServiceCreatedByBundleTool(true)
             .setOutputPrintStream(commandViaFlags.getOutputPrintStream().get());
     DebugKeystoreUtils.getDebugSigningConfiguration(systemEnvironmentProvider)
@@ -509,6 +517,7 @@ public class BuildApksCommandTest {
             // Must copy instance of the internal executor service.
             .setAapt2Command(commandViaFlags.getAapt2Command().get())
             .setExecutorServiceInternal(commandViaFlags.getExecutorService())
+            .setIoExecutorServiceInternal(commandViaFlags.getIoExecutorService())
             .setExecutorServiceCreatedByBundleTool(true)
             .setOutputPrintStream(commandViaFlags.getOutputPrintStream().get());
     DebugKeystoreUtils.getDebugSigningConfiguration(systemEnvironmentProvider)
@@ -541,6 +550,7 @@ public class BuildApksCommandTest {
             // Must copy instance of the internal executor service.
             .setAapt2Command(commandViaFlags.getAapt2Command().get())
             .setExecutorServiceInternal(commandViaFlags.getExecutorService())
+            .setIoExecutorServiceInternal(commandViaFlags.getIoExecutorService())
             .setExecutorServiceCreatedByBundleTool(true)
             .setOutputPrintStream(commandViaFlags.getOutputPrintStream().get());
     DebugKeystoreUtils.getDebugSigningConfiguration(systemEnvironmentProvider)
@@ -577,6 +587,7 @@ public class BuildApksCommandTest {
             // Must copy instance of the internal executor service.
             .setAapt2Command(commandViaFlags.getAapt2Command().get())
             .setExecutorServiceInternal(commandViaFlags.getExecutorService())
+            .setIoExecutorServiceInternal(commandViaFlags.getIoExecutorService())
             .setExecutorServiceCreatedByBundleTool(true)
             .setOutputPrintStream(commandViaFlags.getOutputPrintStream().get());
     DebugKeystoreUtils.getDebugSigningConfiguration(systemEnvironmentProvider)
@@ -612,6 +623,7 @@ public class BuildApksCommandTest {
             // Must copy instance of the internal executor service.
             .setAapt2Command(commandViaFlags.getAapt2Command().get())
             .setExecutorServiceInternal(commandViaFlags.getExecutorService())
+            .setIoExecutorServiceInternal(commandViaFlags.getIoExecutorService())
             .setExecutorServiceCreatedByBundleTool(true)
             .setOutputPrintStream(commandViaFlags.getOutputPrintStream().get());
     DebugKeystoreUtils.getDebugSigningConfiguration(systemEnvironmentProvider)
@@ -644,6 +656,7 @@ public class BuildApksCommandTest {
             // Must copy instance of the internal executor service.
             .setAapt2Command(commandViaFlags.getAapt2Command().get())
             .setExecutorServiceInternal(commandViaFlags.getExecutorService())
+            .setIoExecutorServiceInternal(commandViaFlags.getIoExecutorService())
             .setExecutorServiceCreatedByBundleTool(true)
             .setOutputPrintStream(commandViaFlags.getOutputPrintStream().get());
     DebugKeystoreUtils.getDebugSigningConfiguration(systemEnvironmentProvider)
@@ -683,6 +696,7 @@ public class BuildApksCommandTest {
             // Must copy instance of the internal executor service.
             .setAapt2Command(commandViaFlags.getAapt2Command().get())
             .setExecutorServiceInternal(commandViaFlags.getExecutorService())
+            .setIoExecutorServiceInternal(commandViaFlags.getIoExecutorService())
             .setExecutorServiceCreatedByBundleTool(true)
             .setOutputPrintStream(commandViaFlags.getOutputPrintStream().get());
     DebugKeystoreUtils.getDebugSigningConfiguration(systemEnvironmentProvider)
@@ -722,6 +736,7 @@ public class BuildApksCommandTest {
             // Must copy instance of the internal executor service.
             .setAapt2Command(commandViaFlags.getAapt2Command().get())
             .setExecutorServiceInternal(commandViaFlags.getExecutorService())
+            .setIoExecutorServiceInternal(commandViaFlags.getIoExecutorService())
             .setExecutorServiceCreatedByBundleTool(true)
             .setOutputPrintStream(commandViaFlags.getOutputPrintStream().get());
     DebugKeystoreUtils.getDebugSigningConfiguration(systemEnvironmentProvider)
@@ -761,6 +776,7 @@ public class BuildApksCommandTest {
             // Must copy instance of the internal executor service.
             .setAapt2Command(commandViaFlags.getAapt2Command().get())
             .setExecutorServiceInternal(commandViaFlags.getExecutorService())
+            .setIoExecutorServiceInternal(commandViaFlags.getIoExecutorService())
             .setExecutorServiceCreatedByBundleTool(true)
             .setOutputPrintStream(commandViaFlags.getOutputPrintStream().get());
     DebugKeystoreUtils.getDebugSigningConfiguration(systemEnvironmentProvider)
@@ -817,6 +833,7 @@ public class BuildApksCommandTest {
             // Must copy instance of the internal executor service.
             .setAapt2Command(commandViaFlags.getAapt2Command().get())
             .setExecutorServiceInternal(commandViaFlags.getExecutorService())
+            .setIoExecutorServiceInternal(commandViaFlags.getIoExecutorService())
             .setExecutorServiceCreatedByBundleTool(true)
             .setOutputPrintStream(commandViaFlags.getOutputPrintStream().get())
             .setP7ZipCommand(commandViaFlags.getP7ZipCommand().get());
@@ -824,6 +841,39 @@ public class BuildApksCommandTest {
     assertThat(commandViaBuilder.build()).isEqualTo(commandViaFlags);
   }
 
+  @Test
+  public void buildingViaFlagsAndBuilderHasSameResult_reuseBundleCompression() throws Exception {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    BuildApksCommand commandViaFlags =
+        BuildApksCommand.fromFlags(
+            new FlagParser()
+                .parse(
+                    "--bundle=" + bundlePath,
+                    "--output=" + outputFilePath,
+                    "--aapt2=" + AAPT2_PATH,
+                    // Optional values.
+                    "--reuse-bundle-compression"),
+            new PrintStream(output),
+            systemEnvironmentProvider,
+            fakeAdbServer);
+    BuildApksCommand.Builder commandViaBuilder =
+        BuildApksCommand.builder()
+            .setBundlePath(bundlePath)
+            .setOutputFile(outputFilePath)
+            // Optional values.
+            .setReuseBundleCompression(true)
+            // Must copy instance of the internal executor service.
+            .setAapt2Command(commandViaFlags.getAapt2Command().get())
+            .setExecutorServiceInternal(commandViaFlags.getExecutorService())
+            .setIoExecutorServiceInternal(commandViaFlags.getIoExecutorService())
+            .setExecutorServiceCreatedByBundleTool(true)
+            .setOutputPrintStream(commandViaFlags.getOutputPrintStream().get());
+    DebugKeystoreUtils.getDebugSigningConfiguration(systemEnvironmentProvider)
+        .ifPresent(commandViaBuilder::setSigningConfiguration);
+
+    assertThat(commandViaBuilder.build()).isEqualTo(commandViaFlags);
+  }
+
   @Test
   public void outputNotSet_throws() throws Exception {
     expectMissingRequiredBuilderPropertyException(
@@ -947,6 +997,64 @@ public class BuildApksCommandTest {
         fakeAdbServer);
   }
 
+  @Test
+  public void maxThreads_splitBetweenCpuAndIoExecutorServices() throws Exception {
+    assertThat(BuildApksCommand.getCpuThreadCount(5)).isEqualTo(3);
+    assertThat(BuildApksCommand.getIoThreadCount(5)).isEqualTo(2);
+
+    BuildApksCommand command =
+        BuildApksCommand.fromFlags(
+            new FlagParser()
+                .parse("--bundle=" + bundlePath, "--output=" + outputFilePath, "--max-threads=4"),
+            fakeAdbServer);
+
+    assertThat(command.getIoExecutorService()).isNotSameInstanceAs(command.getExecutorService());
+  }
+
+  @Test
+  public void singleMaxThread_ioExecutorServiceSharesCpuExecutorService() throws Exception {
+    BuildApksCommand command =
+        BuildApksCommand.fromFlags(
+            new FlagParser()
+                .parse("--bundle=" + bundlePath, "--output=" + outputFilePath, "--max-threads=1"),
+            fakeAdbServer);
+
+    assertThat(command.getIoExecutorService()).isSameInstanceAs(command.getExecutorService());
+  }
+
+  @Test
+  public void builderFromFlags_executorServicesSetByCaller() throws Exception {
+    ListeningExecutorService executorService = MoreExecutors.newDirectExecutorService();
+    ListeningExecutorService ioExecutorService = MoreExecutors.newDirectExecutorService();
+
+    BuildApksCommand command =
+        BuildApksCommand.builderFromFlags(
+                new FlagParser().parse("--bundle=" + bundlePath, "--output=" + outputFilePath),
+                System.out,
+                systemEnvironmentProvider,
+                fakeAdbServer)
+            .setExecutorService(executorService)
+            .setIoExecutorService(ioExecutorService)
+            .build();
+
+    assertThat(command.getExecutorService()).isSameInstanceAs(executorService);
+    assertThat(command.getIoExecutorService()).isSameInstanceAs(ioExecutorService);
+    assertThat(command.isExecutorServiceCreatedByBundleTool()).isFalse();
+  }
+
+  @Test
+  public void ioExecutorServiceSetBeforeExecutorService_throws() throws Exception {
+    IllegalStateException e =
+        assertThrows(
+            IllegalStateException.class,
+            () ->
+                BuildApksCommand.builder()
+                    .setIoExecutorService(MoreExecutors.newDirectExecutorService()));
+    assertThat(e)
+        .hasMessageThat()
+        .contains("The I/O executor service can only be set after the executor service.");
+  }
+
   @Test
   public void keystoreFlags_keyAliasNotSet() {
     InvalidCommandException e =
@@ -1074,6 +1182,7 @@ public class BuildApksCommandTest {
             // Must copy instance of the internal executor service.
             .setAapt2Command(commandViaFlags.getAapt2Command().get())
             .setExecutorServiceInternal(commandViaFlags.getExecutorService())
+            .setIoExecutorServiceInternal(commandViaFlags.getIoExecutorService())
             .setExecutorServiceCreatedByBundleTool(true)
             .setOutputPrintStream(commandViaFlags.getOutputPrintStream().get());
     DebugKeystoreUtils.getDebugSigningConfiguration(systemEnvironmentProvider)
@@ -1113,6 +1222,7 @@ public class BuildApksCommandTest {
             // Must copy instance of the internal executor service.
             .setAapt2Command(commandViaFlags.getAapt2Command().get())
             .setExecutorServiceInternal(commandViaFlags.getExecutorService())
+            .setIoExecutorServiceInternal(commandViaFlags.getIoExecutorService())
             .setExecutorServiceCreatedByBundleTool(true)
             .setOutputPrintStream(commandViaFlags.getOutputPrintStream().get())
             .build();
@@ -1158,6 +1268,7 @@ public class BuildApksCommandTest {
             // Must copy instance of the internal executor service.
             .setAapt2Command(commandViaFlags.getAapt2Command().get())
             .setExecutorServiceInternal(commandViaFlags.getExecutorService())
+            .setIoExecutorServiceInternal(commandViaFlags.getIoExecutorService())
             .setExecutorServiceCreatedByBundleTool(true)
             .setOutputPrintStream(commandViaFlags.getOutputPrintStream().get());
     DebugKeystoreUtils.getDebugSigningConfiguration(systemEnvironmentProvider)
@@ -1205,6 +1316,7 @@ public class BuildApksCommandTest {
             // Must copy instance of the internal executor service.
             .setAapt2Command(commandViaFlags.getAapt2Command().get())
             .setExecutorServiceInternal(commandViaFlags.getExecutorService())
+            .setIoExecutorServiceInternal(commandViaFlags.getIoExecutorService())
             .setExecutorServiceCreatedByBundleTool(true)
             .setOutputPrintStream(commandViaFlags.getOutputPrintStream().get());
     DebugKeystoreUtils.getDebugSigningConfiguration(systemEnvironmentProvider)
@@ -1248,6 +1360,7 @@ public class BuildApksCommandTest {
             // Must copy instance of the internal executor service.
             .setAapt2Command(commandViaFlags.getAapt2Command().get())
             .setExecutorServiceInternal(commandViaFlags.getExecutorService())
+            .setIoExecutorServiceInternal(commandViaFlags.getIoExecutorService())
             .setExecutorServiceCreatedByBundleTool(true)
             .setOutputPrintStream(commandViaFlags.getOutputPrintStream().get());
     DebugKeystoreUtils.getDebugSigningConfiguration(systemEnvironmentProvider)
@@ -1293,6 +1406,7 @@ public class BuildApksCommandTest {
             // Must copy instance of the internal executor service.
             .setAapt2Command(commandViaFlags.getAapt2Command().get())
             .setExecutorServiceInternal(commandViaFlags.getExecutorService())
+            .setIoExecutorServiceInternal(commandViaFlags.getIoExecutorService())
             .setExecutorServiceCreatedByBundleTool(true)
             .setOutputPrintStream(commandViaFlags.getOutputPrintStream().get())
             .build();
@@ -1387,6 +1501,7 @@ public class BuildApksCommandTest {
             // Must copy instance of the internal executor service.
             .setAapt2Command(commandViaFlags.getAapt2Command().get())
             .setExecutorServiceInternal(commandViaFlags.getExecutorService())
+            .setIoExecutorServiceInternal(commandViaFlags.getIoExecutorService())
             .setExecutorServiceCreatedByBundleTool(true)
             .setOutputPrintStream(commandViaFlags.getOutputPrintStream().get())
             .build();
@@ -1431,6 +1546,7 @@ public class BuildApksCommandTest {
             // Must copy instance of the internal executor service.
             .setAapt2Command(commandViaFlags.getAapt2Command().get())
             .setExecutorServiceInternal(commandViaFlags.getExecutorService())
+            .setIoExecutorServiceInternal(commandViaFlags.getIoExecutorService())
             .setExecutorServiceCreatedByBundleTool(true)
             .setOutputPrintStream(commandViaFlags.getOutputPrintStream().get());
     DebugKeystoreUtils.getDebugSigningConfiguration(systemEnvironmentProvider)
@@ -1458,6 +1574,7 @@ public class BuildApksCommandTest {
             .setBundlePath(bundlePath)
             .setOutputFile(outputFilePath)
             .setExecutorServiceInternal(commandViaFlags.getExecutorService())
+            .setIoExecutorServiceInternal(commandViaFlags.getIoExecutorService())
             .setExecutorServiceCreatedByBundleTool(true)
             .setRuntimeEnabledSdkBundlePaths(ImmutableSet.of(sdkBundlePath1, sdkBundlePath2))
             .setOutputPrintStream(commandViaFlags.getOutputPrintStream().get());
@@ -1487,6 +1604,7 @@ public class BuildApksCommandTest {
             .setBundlePath(bundlePath)
             .setOutputFile(outputFilePath)
             .setExecutorServiceInternal(commandViaFlags.getExecutorService())
+            .setIoExecutorServiceInternal(commandViaFlags.getIoExecutorService())
             .setExecutorServiceCreatedByBundleTool(true)
             .setRuntimeEnabledSdkArchivePaths(ImmutableSet.of(sdkArchivePath1, sdkArchivePath2))
             .setOutputPrintStream(commandViaFlags.getOutputPrintStream().get());
@@ -1534,6 +1652,7 @@ public class BuildApksCommandTest {
             .setBundlePath(bundlePath)
             .setOutputFile(outputFilePath)
             .setExecutorServiceInternal(commandViaFlags.getExecutorService())
+            .setIoExecutorServiceInternal(commandViaFlags.getIoExecutorService())
             .setExecutorServiceCreatedByBundleTool(true)
             .setRuntimeEnabledSdkBundlePaths(ImmutableSet.of(sdkBundlePath1))
             .setLocalDeploymentRuntimeEnabledSdkConfig(config)
@@ -1565,6 +1684,7 @@ public class BuildApksCommandTest {
             .setBundlePath(bundlePath)
             .setOutputFile(outputFilePath)
             .setExecutorServiceInternal(commandViaFlags.getExecutorService())
+            .setIoExecutorServiceInternal(commandViaFlags.getIoExecutorService())
             .setExecutorServiceCreatedByBundleTool(true)
             .setApkBuildMode(ApkBuildMode.ARCHIVE)
             .setAppStorePackageName(APP_STORE_PACKAGE_NAME)
@@ -1617,6 +1737,70 @@ public class BuildApksCommandTest {
     assertThat(e).hasMessageThat().contains("flag is not supported");
   }
 
+  @Test
+  public void additionalSigningFlag_parsed() throws Exception {
+    Path additionalOutputFilePath = tmpDir.resolve("other.apks");
+
+    BuildApksCommand command =
+        BuildApksCommand.fromFlags(
+            new FlagParser()
+                .parse(
+                    "--bundle=" + bundlePath,
+                    "--output=" + outputFilePath,
+                    "--additional-signing="
+                        + additionalOutputFilePath
+                        + ":"
+                        + oldestSignerPropertiesPath),
+            new PrintStream(new ByteArrayOutputStream()),
+            systemEnvironmentProvider,
+            fakeAdbServer);
+
+    assertThat(command.getAdditionalSigningConfigurations().keySet())
+        .containsExactly(additionalOutputFilePath);
+    SigningConfiguration signingConfiguration =
+        command.getAdditionalSigningConfigurations().get(additionalOutputFilePath);
+    assertThat(signingConfiguration.getSignerConfig().getPrivateKey())
+        .isEqualTo(oldestSignerPrivateKey);
+    assertThat(signingConfiguration.getSignerConfig().getCertificates())
+        .containsExactly(oldestSignerCertificate);
+  }
+
+  @Test
+  public void additionalSigningForDirectoryOutputFormat_throws() throws Exception {
+    createAppBundle(bundlePath);
+
+    ParsedFlags flags =
+        new FlagParser()
+            .parse(
+                "--bundle=" + bundlePath,
+                "--output=" + tmpDir,
+                "--output-format=" + DIRECTORY,
+                "--additional-signing="
+                    + tmpDir.resolve("other.apks")
+                    + ":"
+                    + oldestSignerPropertiesPath);
+    BuildApksCommand command = BuildApksCommand.fromFlags(flags, fakeAdbServer);
+
+    Exception e = assertThrows(InvalidCommandException.class, command::execute);
+    assertThat(e).hasMessageThat().contains("flag is not supported");
+  }
+
+  @Test
+  public void additionalSigningWithSameOutputFile_throws() throws Exception {
+    createAppBundle(bundlePath);
+
+    ParsedFlags flags =
+        new FlagParser()
+            .parse(
+                "--bundle=" + bundlePath,
+                "--output=" + outputFilePath,
+                "--additional-signing=" + outputFilePath + ":" + oldestSignerPropertiesPath);
+    BuildApksCommand command = BuildApksCommand.fromFlags(flags, fakeAdbServer);
+
+    Exception e = assertThrows(InvalidCommandException.class, command::execute);
+    assertThat(e).hasMessageThat().contains("same as the main output file");
+  }
+
   @Test
   public void allParentDirectoriesCreated() throws Exception {
     createAppBundle(bundlePath);
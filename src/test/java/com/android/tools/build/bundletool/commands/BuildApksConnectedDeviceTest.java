@@ -128,6 +128,7 @@ public class BuildApksConnectedDeviceTest {
             .setAdbServer(fakeAdbServer)
             // Must copy instance of the internal executor service.
             .setExecutorServiceInternal(commandViaFlags.getExecutorService())
+            .setIoExecutorServiceInternal(commandViaFlags.getIoExecutorService())
             .setExecutorServiceCreatedByBundleTool(true)
             .setOutputPrintStream(commandViaFlags.getOutputPrintStream().get());
     DebugKeystoreUtils.getDebugSigningConfiguration(androidHomeProvider)
@@ -163,6 +164,7 @@ public class BuildApksConnectedDeviceTest {
             .setAdbServer(fakeAdbServer)
             // Must copy instance of the internal executor service.
             .setExecutorServiceInternal(commandViaFlags.getExecutorService())
+            .setIoExecutorServiceInternal(commandViaFlags.getIoExecutorService())
             .setExecutorServiceCreatedByBundleTool(true)
             .setOutputPrintStream(commandViaFlags.getOutputPrintStream().get());
     DebugKeystoreUtils.getDebugSigningConfiguration(androidHomeProvider)
@@ -197,6 +199,7 @@ public class BuildApksConnectedDeviceTest {
             .setDeviceId("id1")
             // Must copy instance of the internal executor service.
             .setExecutorServiceInternal(commandViaFlags.getExecutorService())
+            .setIoExecutorServiceInternal(commandViaFlags.getIoExecutorService())
             .setExecutorServiceCreatedByBundleTool(true)
             .setOutputPrintStream(commandViaFlags.getOutputPrintStream().get());
     DebugKeystoreUtils.getDebugSigningConfiguration(androidHomeProvider)
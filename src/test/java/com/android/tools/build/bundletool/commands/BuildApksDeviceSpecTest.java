@@ -15,6 +15,8 @@
  */
 package com.android.tools.build.bundletool.commands;
 
+import static com.android.bundle.Targeting.Abi.AbiAlias.X86;
+import static com.android.bundle.Targeting.Abi.AbiAlias.X86_64;
 import static com.android.bundle.Targeting.ScreenDensity.DensityAlias.HDPI;
 import static com.android.bundle.Targeting.ScreenDensity.DensityAlias.XHDPI;
 import static com.android.tools.build.bundletool.commands.BuildApksCommand.ApkBuildMode.SYSTEM;
@@ -37,6 +39,9 @@ import static com.android.tools.build.bundletool.testing.DeviceFactory.locales;
 import static com.android.tools.build.bundletool.testing.DeviceFactory.mergeSpecs;
 import static com.android.tools.build.bundletool.testing.DeviceFactory.sdkVersion;
 import static com.android.tools.build.bundletool.testing.ManifestProtoUtils.androidManifest;
+import static com.android.tools.build.bundletool.testing.TargetingUtils.nativeDirectoryTargeting;
+import static com.android.tools.build.bundletool.testing.TargetingUtils.nativeLibraries;
+import static com.android.tools.build.bundletool.testing.TargetingUtils.targetedNativeDirectory;
 import static com.android.tools.build.bundletool.testing.truth.zip.TruthZip.assertThat;
 import static com.google.common.collect.ImmutableList.toImmutableList;
 import static com.google.common.truth.Truth.assertThat;
@@ -49,6 +54,8 @@ import com.android.bundle.Commands.Variant;
 import com.android.bundle.Devices.DeviceSpec;
 import com.android.bundle.Targeting.ScreenDensity.DensityAlias;
 import com.android.tools.build.bundletool.device.AdbServer;
+import com.android.tools.build.bundletool.device.ApkMatcher;
+import com.android.tools.build.bundletool.device.VariantMatcher;
 import com.android.tools.build.bundletool.flags.FlagParser;
 import com.android.tools.build.bundletool.io.AppBundleSerializer;
 import com.android.tools.build.bundletool.model.AppBundle;
@@ -60,8 +67,12 @@ import com.android.tools.build.bundletool.testing.FakeAdbServer;
 import com.android.tools.build.bundletool.testing.FakeSystemEnvironmentProvider;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteStreams;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.PrintStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.zip.ZipFile;
 import org.junit.Before;
@@ -120,6 +131,7 @@ public class BuildApksDeviceSpecTest {
             .setDeviceSpec(deviceSpec)
             // Must copy instance of the internal executor service.
             .setExecutorServiceInternal(commandViaFlags.getExecutorService())
+            .setIoExecutorServiceInternal(commandViaFlags.getIoExecutorService())
             .setExecutorServiceCreatedByBundleTool(true)
             .setOutputPrintStream(commandViaFlags.getOutputPrintStream().get());
 
@@ -153,6 +165,7 @@ public class BuildApksDeviceSpecTest {
             .setDeviceSpec(deviceSpecPath)
             // Must copy instance of the internal executor service.
             .setExecutorServiceInternal(commandViaFlags.getExecutorService())
+            .setIoExecutorServiceInternal(commandViaFlags.getIoExecutorService())
             .setExecutorServiceCreatedByBundleTool(true)
             .setOutputPrintStream(commandViaFlags.getOutputPrintStream().get());
 
@@ -423,6 +436,32 @@ public class BuildApksDeviceSpecTest {
                 + "app ABIs: [x86]");
   }
 
+  @Test
+  public void deviceSpecMips_bundleTargetsX86_streamVariants_throws() throws Exception {
+    DeviceSpec deviceSpec =
+        mergeSpecs(
+            sdkVersion(/* Lollipop */ 21), abis("mips"),
+            locales("en-US"), density(XHDPI));
+
+    bundleSerializer.writeToDisk(createX86AppBundle(), bundlePath);
+
+    BuildApksCommand command =
+        BuildApksCommand.builder()
+            .setBundlePath(bundlePath)
+            .setOutputFile(outputFilePath)
+            .setDeviceSpec(deviceSpec)
+            .setStreamVariants(true)
+            .build();
+
+    Throwable exception = assertThrows(IncompatibleDeviceException.class, command::execute);
+    assertThat(exception)
+        .hasMessageThat()
+        .contains(
+            "The app doesn't support ABI architectures of the device. Device ABIs: [mips], "
+                + "app ABIs: [x86]");
+    assertThat(Files.exists(outputFilePath)).isFalse();
+  }
+
   @Test
   public void deviceSpecN_bundleTargetsLtoM() throws Exception {
     DeviceSpec deviceSpec =
@@ -483,6 +522,81 @@ public class BuildApksDeviceSpecTest {
     assertThat(apkNamesInSet(apkSet)).containsExactly("instant/instant-base-master.apk");
   }
 
+  @Test
+  public void deviceSpec_sameApksAsWhenFilteringAllVariants() throws Exception {
+    DeviceSpec deviceSpec =
+        mergeSpecs(sdkVersion(30), abis("x86_64"), locales("en-US"), density(XHDPI));
+    AppBundle appBundle =
+        new AppBundleBuilder()
+            .addModule(
+                "base",
+                module ->
+                    module
+                        .addFile("dex/classes.dex")
+                        .addFile("lib/x86/libsome.so")
+                        .addFile("lib/x86_64/libsome.so")
+                        .setNativeConfig(
+                            nativeLibraries(
+                                targetedNativeDirectory("lib/x86", nativeDirectoryTargeting(X86)),
+                                targetedNativeDirectory(
+                                    "lib/x86_64", nativeDirectoryTargeting(X86_64))))
+                        .setManifest(androidManifest("com.app")))
+            .build();
+    bundleSerializer.writeToDisk(appBundle, bundlePath);
+
+    Path allVariantsApksArchive =
+        BuildApksCommand.builder()
+            .setBundlePath(bundlePath)
+            .setOutputFile(outputDir.resolve("all-variants.apks"))
+            .build()
+            .execute();
+    Path deviceApksArchive =
+        BuildApksCommand.builder()
+            .setBundlePath(bundlePath)
+            .setOutputFile(outputFilePath)
+            .setDeviceSpec(deviceSpec)
+            .build()
+            .execute();
+
+    try (ZipFile allVariantsApksZipFile = new ZipFile(allVariantsApksArchive.toFile());
+        ZipFile deviceApksZipFile = new ZipFile(deviceApksArchive.toFile())) {
+      BuildApksResult allVariantsResult =
+          extractTocFromApkSetFile(allVariantsApksZipFile, tmp.newFolder("all-variants").toPath());
+      BuildApksResult deviceResult =
+          extractTocFromApkSetFile(deviceApksZipFile, tmp.newFolder("device").toPath());
+      assertThat(allVariantsResult.getVariantList().size()).isGreaterThan(1);
+
+      // The variant is numbered and targeted as if all variants had been generated.
+      Variant expectedVariant =
+          new VariantMatcher(deviceSpec).getMatchingVariant(allVariantsResult).get();
+      assertThat(deviceResult.getVariantList()).hasSize(1);
+      Variant variant = deviceResult.getVariant(0);
+      assertThat(variant.getVariantNumber()).isEqualTo(expectedVariant.getVariantNumber());
+      assertThat(variant.getTargeting()).isEqualTo(expectedVariant.getTargeting());
+
+      ImmutableList<String> expectedApkPaths =
+          new ApkMatcher(deviceSpec)
+              .getMatchingApks(allVariantsResult).stream()
+                  .map(apk -> apk.getPath().toString())
+                  .collect(toImmutableList());
+      assertThat(
+              variant.getApkSetList().stream()
+                  .flatMap(apkSet -> apkNamesInSet(apkSet).stream())
+                  .collect(toImmutableList()))
+          .containsExactlyElementsIn(expectedApkPaths);
+      for (String apkPath : expectedApkPaths) {
+        assertThat(readEntry(deviceApksZipFile, apkPath))
+            .isEqualTo(readEntry(allVariantsApksZipFile, apkPath));
+      }
+    }
+  }
+
+  private static byte[] readEntry(ZipFile zipFile, String path) throws IOException {
+    try (InputStream entryContent = zipFile.getInputStream(zipFile.getEntry(path))) {
+      return ByteStreams.toByteArray(entryContent);
+    }
+  }
+
   private static ImmutableList<String> apkNamesInSet(ApkSet apkSet) {
     return apkSet.getApkDescriptionList().stream()
         .map(ApkDescription::getPath)
@@ -145,6 +145,7 @@ import static org.junit.jupiter.api.Assertions.assertThrows;
 import com.android.aapt.ConfigurationOuterClass.Configuration;
 import com.android.apex.ApexManifestProto.ApexManifest;
 import com.android.apksig.ApkVerifier;
+import com.android.apksig.SigningCertificateLineage;
 import com.android.bundle.CodeTransparencyOuterClass.CodeRelatedFile;
 import com.android.bundle.CodeTransparencyOuterClass.CodeTransparency;
 import com.android.bundle.Commands.ApkDescription;
@@ -204,9 +205,12 @@ import com.android.tools.build.bundletool.model.AndroidManifest;
 import com.android.tools.build.bundletool.model.ApkModifier;
 import com.android.tools.build.bundletool.model.AppBundle;
 import com.android.tools.build.bundletool.model.BundleMetadata;
+import com.android.tools.build.bundletool.model.ModuleEntry;
+import com.android.tools.build.bundletool.model.SignerConfig;
 import com.android.tools.build.bundletool.model.SigningConfiguration;
 import com.android.tools.build.bundletool.model.SourceStamp;
 import com.android.tools.build.bundletool.model.ZipPath;
+import com.android.tools.build.bundletool.model.exceptions.CommandExecutionException;
 import com.android.tools.build.bundletool.model.exceptions.InvalidBundleException;
 import com.android.tools.build.bundletool.model.exceptions.InvalidCommandException;
 import com.android.tools.build.bundletool.model.exceptions.InvalidVersionCodeException;
@@ -248,9 +252,12 @@ import com.google.protobuf.Int32Value;
 import com.google.protobuf.TextFormat;
 import com.google.protobuf.util.JsonFormat;
 import dagger.Component;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -393,6 +400,23 @@ public class BuildApksManagerTest {
     buildApksManager.execute();
   }
 
+  @Test
+  public void verbose_statsPrintedToOutputStream() throws Exception {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    TestComponent.useTestModule(
+        this,
+        createTestModuleBuilder()
+            .withOutputPrintStream(new PrintStream(output, /* autoFlush= */ true, UTF_8.name()))
+            .withCustomBuildApksCommandSetter(command -> command.setVerbose(true))
+            .build());
+
+    buildApksManager.execute();
+
+    String outputString = new String(output.toByteArray(), UTF_8);
+    assertThat(outputString).contains("outputs of module splitting pipelines across variants.");
+    assertThat(outputString).contains("Deflaters and inflaters of the process:");
+  }
+
   @Test
   public void selectsRightModules() throws Exception {
     AppBundle appBundle =
@@ -5163,6 +5187,74 @@ public class BuildApksManagerTest {
     assertThat(libEntry.getPayloadLocation().first % ALIGNMENT_4K).isEqualTo(0);
   }
 
+  @Test
+  public void storedBundleEntries_copiedUncompressedAndAligned() throws Exception {
+    byte[] libContent = "native library".getBytes(UTF_8);
+    byte[] firstAssetContent = "first asset".getBytes(UTF_8);
+    byte[] secondAssetContent = "second asset".getBytes(UTF_8);
+    AppBundle appBundle =
+        new AppBundleBuilder()
+            .addModule(
+                "base",
+                builder ->
+                    builder
+                        .addFile("dex/classes.dex")
+                        .addFile("assets/b.dat", secondAssetContent)
+                        .addFile("assets/a.dat", firstAssetContent)
+                        .addFile("lib/x86/libsome.so", libContent)
+                        .setNativeConfig(
+                            nativeLibraries(
+                                targetedNativeDirectory("lib/x86", nativeDirectoryTargeting(X86))))
+                        .setManifest(androidManifest("com.test.app")))
+            .setBundleConfig(
+                BundleConfigBuilder.create()
+                    .setUncompressNativeLibraries(true)
+                    .addUncompressedGlob("assets/**")
+                    .build())
+            .build();
+    // All entries are stored in the bundle, so the uncompressed ones are copied from it directly.
+    Path bundlePath = tmpDir.resolve("stored.aab");
+    new AppBundleSerializer(/* allEntriesUncompressed= */ true).writeToDisk(appBundle, bundlePath);
+    TestComponent.useTestModule(
+        this,
+        createTestModuleBuilder()
+            .withBundlePath(bundlePath)
+            .withOutputPath(outputFilePath)
+            .build());
+
+    buildApksManager.execute();
+
+    ZipFile apkSetFile = openZipFile(outputFilePath.toFile());
+    File masterApk = extractFromApkSetFile(apkSetFile, "splits/base-master.apk", outputDir);
+    File x86Apk = extractFromApkSetFile(apkSetFile, "splits/base-x86.apk", outputDir);
+    ZipFile masterApkZip = openZipFile(masterApk);
+    assertThat(masterApkZip)
+        .hasFile("assets/a.dat")
+        .withContent(firstAssetContent)
+        .thatIsUncompressed();
+    assertThat(masterApkZip)
+        .hasFile("assets/b.dat")
+        .withContent(secondAssetContent)
+        .thatIsUncompressed();
+    assertThat(openZipFile(x86Apk))
+        .hasFile("lib/x86/libsome.so")
+        .withContent(libContent)
+        .thatIsUncompressed();
+
+    ZipMap masterZipMap = ZipMap.from(masterApk.toPath());
+    Entry firstAssetEntry = masterZipMap.getEntries().get("assets/a.dat");
+    Entry secondAssetEntry = masterZipMap.getEntries().get("assets/b.dat");
+    Entry libEntry = ZipMap.from(x86Apk.toPath()).getEntries().get("lib/x86/libsome.so");
+    assertThat(firstAssetEntry.getPayloadLocation().first % 4).isEqualTo(0);
+    assertThat(secondAssetEntry.getPayloadLocation().first % 4).isEqualTo(0);
+    assertThat(libEntry.getPayloadLocation().first % ALIGNMENT_4K).isEqualTo(0);
+    // Entries copied from the bundle keep the sorted order of the APK entries.
+    ImmutableList<String> masterEntryNames =
+        masterApkZip.stream().map(ZipEntry::getName).collect(toImmutableList());
+    assertThat(masterEntryNames.indexOf("assets/a.dat"))
+        .isLessThan(masterEntryNames.indexOf("assets/b.dat"));
+  }
+
   @Test
   public void buildApksCommand_pageAlignmentRequestedBefore_1_17_0_respected() throws Exception {
     AppBundle appBundle =
@@ -5592,6 +5684,100 @@ public class BuildApksManagerTest {
         .isEqualTo(addDeviceGroupOther(configFromJson.build()));
   }
 
+  @Test
+  public void streamVariants_sameApkSetAsDefault() throws Exception {
+    AppBundle appBundle =
+        new AppBundleBuilder()
+            .addModule(
+                "base",
+                module ->
+                    module
+                        .addFile("dex/classes.dex")
+                        .addFile("lib/x86/libsome.so")
+                        .addFile("lib/x86_64/libsome.so")
+                        .setNativeConfig(
+                            nativeLibraries(
+                                targetedNativeDirectory("lib/x86", nativeDirectoryTargeting(X86)),
+                                targetedNativeDirectory(
+                                    "lib/x86_64", nativeDirectoryTargeting(X86_64))))
+                        .setManifest(androidManifest("com.app")))
+            .addModule(
+                "feature",
+                module ->
+                    module
+                        .addFile("assets/feature.txt")
+                        .setManifest(androidManifestForFeature("com.app")))
+            .build();
+    Path defaultApkSetPath = outputDir.resolve("default.apks");
+    TestComponent.useTestModule(
+        this,
+        createTestModuleBuilder()
+            .withAppBundle(appBundle)
+            .withOutputPath(defaultApkSetPath)
+            .build());
+    buildApksManager.execute();
+    TestComponent.useTestModule(
+        this,
+        createTestModuleBuilder()
+            .withAppBundle(appBundle)
+            .withOutputPath(outputFilePath)
+            .withCustomBuildApksCommandSetter(command -> command.setStreamVariants(true))
+            .build());
+
+    buildApksManager.execute();
+
+    ZipFile defaultApkSetFile = openZipFile(defaultApkSetPath.toFile());
+    ZipFile apkSetFile = openZipFile(outputFilePath.toFile());
+    BuildApksResult defaultResult =
+        extractTocFromApkSetFile(defaultApkSetFile, tmp.newFolder("default").toPath());
+    BuildApksResult result = extractTocFromApkSetFile(apkSetFile, outputDir);
+    assertThat(splitApkVariants(result).size()).isGreaterThan(1);
+    assertThat(result).isEqualTo(defaultResult);
+    for (ApkDescription apkDescription : apkDescriptions(result.getVariantList())) {
+      assertThat(readApk(apkSetFile, apkDescription))
+          .isEqualTo(readApk(defaultApkSetFile, apkDescription));
+    }
+  }
+
+  @Test
+  public void assetModules_apkAndAssetSliceDescriptionsUnchanged() throws Exception {
+    Path apksOnlyPath = outputDir.resolve("apks-only.apks");
+    Path assetSlicesOnlyPath = outputDir.resolve("asset-slices-only.apks");
+    Path allPath = outputDir.resolve("all.apks");
+    buildApkSet(
+        createBundleWithOptionalModules(/* withFeature= */ true, /* withAssets= */ false),
+        apksOnlyPath);
+    buildApkSet(
+        createBundleWithOptionalModules(/* withFeature= */ false, /* withAssets= */ true),
+        assetSlicesOnlyPath);
+    buildApkSet(
+        createBundleWithOptionalModules(/* withFeature= */ true, /* withAssets= */ true), allPath);
+
+    ZipFile apksOnlyFile = openZipFile(apksOnlyPath.toFile());
+    ZipFile assetSlicesOnlyFile = openZipFile(assetSlicesOnlyPath.toFile());
+    ZipFile allFile = openZipFile(allPath.toFile());
+    BuildApksResult apksOnlyResult =
+        extractTocFromApkSetFile(apksOnlyFile, tmp.newFolder("apks-only").toPath());
+    BuildApksResult assetSlicesOnlyResult =
+        extractTocFromApkSetFile(assetSlicesOnlyFile, tmp.newFolder("asset-slices-only").toPath());
+    BuildApksResult allResult = extractTocFromApkSetFile(allFile, outputDir);
+
+    assertThat(allResult.getVariantList()).isEqualTo(apksOnlyResult.getVariantList());
+    for (ApkDescription apkDescription : apkDescriptions(allResult.getVariantList())) {
+      assertThat(readApk(allFile, apkDescription))
+          .isEqualTo(readApk(apksOnlyFile, apkDescription));
+    }
+    assertThat(allResult.getAssetSliceSetList()).hasSize(2);
+    assertThat(allResult.getAssetSliceSetList())
+        .isEqualTo(assetSlicesOnlyResult.getAssetSliceSetList());
+    for (AssetSliceSet assetSliceSet : allResult.getAssetSliceSetList()) {
+      for (ApkDescription apkDescription : assetSliceSet.getApkDescriptionList()) {
+        assertThat(readApk(allFile, apkDescription))
+            .isEqualTo(readApk(assetSlicesOnlyFile, apkDescription));
+      }
+    }
+  }
+
   /**
    * This test executes the command with a reasonably complex bundle large number of times in the
    * hope to catch concurrency issues.
@@ -7065,6 +7251,126 @@ public class BuildApksManagerTest {
     assertThatApksAreSigned(result, apkSetFile, certificate);
   }
 
+  @Test
+  public void additionalSigningConfiguration_extraApkSetSignedWithAdditionalKey()
+      throws Exception {
+    // The additional signing configuration uses key rotation, so that the signing descriptions of
+    // its APKs differ from those of the APKs of the main APK Set.
+    KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA");
+    kpg.initialize(/* keysize= */ 3072);
+    KeyPair oldestKeyPair = kpg.genKeyPair();
+    X509Certificate oldestCertificate =
+        CertificateFactory.buildSelfSignedCertificate(oldestKeyPair, "CN=AdditionalOldestSigner");
+    KeyPair additionalKeyPair = kpg.genKeyPair();
+    X509Certificate additionalCertificate =
+        CertificateFactory.buildSelfSignedCertificate(additionalKeyPair, "CN=AdditionalSigner");
+    SigningCertificateLineage lineage =
+        new SigningCertificateLineage.Builder(
+                new SigningCertificateLineage.SignerConfig.Builder(
+                        oldestKeyPair.getPrivate(), oldestCertificate)
+                    .build(),
+                new SigningCertificateLineage.SignerConfig.Builder(
+                        additionalKeyPair.getPrivate(), additionalCertificate)
+                    .build())
+            .build();
+    SigningConfiguration additionalSigningConfig =
+        SigningConfiguration.builder()
+            .setSignerConfig(additionalKeyPair.getPrivate(), additionalCertificate)
+            .setOldestSigner(
+                SignerConfig.builder()
+                    .setPrivateKey(oldestKeyPair.getPrivate())
+                    .setCertificates(ImmutableList.of(oldestCertificate))
+                    .build())
+            .setSigningCertificateLineage(lineage)
+            .build();
+    Path additionalOutputFilePath = outputDir.resolve("additional.apks");
+    TestComponent.useTestModule(
+        this,
+        createTestModuleBuilder()
+            .withOutputPath(outputFilePath)
+            .withSigningConfig(
+                SigningConfiguration.builder().setSignerConfig(privateKey, certificate).build())
+            .withCustomBuildApksCommandSetter(
+                command ->
+                    command.setAdditionalSigningConfigurations(
+                        ImmutableMap.of(additionalOutputFilePath, additionalSigningConfig)))
+            .build());
+
+    buildApksManager.execute();
+
+    ZipFile apkSetFile = openZipFile(outputFilePath.toFile());
+    BuildApksResult result = extractTocFromApkSetFile(apkSetFile, outputDir);
+    Path additionalOutputDir = tmp.newFolder("additional").toPath();
+    ZipFile additionalApkSetFile = openZipFile(additionalOutputFilePath.toFile());
+    BuildApksResult additionalResult =
+        extractTocFromApkSetFile(additionalApkSetFile, additionalOutputDir);
+
+    // Same variants and APK paths, only the signing descriptions differ.
+    assertThat(withoutSigningDescriptions(additionalResult))
+        .isEqualTo(withoutSigningDescriptions(result));
+    ImmutableList<ApkDescription> apkDescriptions = apkDescriptions(result.getVariantList());
+    assertThat(apkDescriptions).isNotEmpty();
+    for (ApkDescription apkDescription : apkDescriptions) {
+      assertThat(apkDescription.getSigningDescription().getSignedWithRotatedKey()).isFalse();
+    }
+    for (ApkDescription apkDescription : apkDescriptions(additionalResult.getVariantList())) {
+      assertThat(apkDescription.getSigningDescription().getSignedWithRotatedKey()).isTrue();
+    }
+
+    // The main APK Set stays signed with the main key, the extra one only with the keys of the
+    // additional signing configuration.
+    assertThatApksAreSigned(result, apkSetFile, certificate);
+    for (ApkDescription apkDescription : apkDescriptions(additionalResult.getVariantList())) {
+      File apk =
+          extractFromApkSetFile(
+              additionalApkSetFile, apkDescription.getPath(), additionalOutputDir);
+      ApkVerifier.Result verifierResult = new ApkVerifier.Builder(apk).build().verify();
+      assertThat(verifierResult.isVerified()).isTrue();
+      assertThat(verifierResult.getSignerCertificates()).isNotEmpty();
+      assertThat(ImmutableList.of(oldestCertificate, additionalCertificate))
+          .containsAtLeastElementsIn(verifierResult.getSignerCertificates());
+    }
+  }
+
+  @Test
+  public void additionalSigningConfiguration_embeddedApkToSign_throws() throws Exception {
+    AppBundle appBundle =
+        new AppBundleBuilder()
+            .addModule(
+                new BundleModuleBuilder("base")
+                    .setManifest(androidManifest("com.test.app"))
+                    .build()
+                    .toBuilder()
+                    .addEntry(
+                        ModuleEntry.builder()
+                            .setPath(ZipPath.create("assets/embedded.apk"))
+                            .setContent(ByteSource.wrap(new byte[1]))
+                            .setShouldSign(true)
+                            .build())
+                    .build())
+            .build();
+    SigningConfiguration signingConfig =
+        SigningConfiguration.builder().setSignerConfig(privateKey, certificate).build();
+    TestComponent.useTestModule(
+        this,
+        createTestModuleBuilder()
+            .withAppBundle(appBundle)
+            .withOutputPath(outputFilePath)
+            .withSigningConfig(signingConfig)
+            .withCustomBuildApksCommandSetter(
+                command ->
+                    command.setAdditionalSigningConfigurations(
+                        ImmutableMap.of(outputDir.resolve("additional.apks"), signingConfig)))
+            .build());
+
+    CommandExecutionException exception =
+        assertThrows(CommandExecutionException.class, () -> buildApksManager.execute());
+
+    assertThat(exception)
+        .hasMessageThat()
+        .contains("Additional signing configurations are not supported for APKs with embedded");
+  }
+
   @Test
   public void extractApkSet_outputApksWithoutArchive() throws Exception {
     AppBundle appBundle =
@@ -8075,6 +8381,72 @@ public class BuildApksManagerTest {
                 .build());
   }
 
+  private void buildApkSet(AppBundle appBundle, Path outputPath) throws Exception {
+    TestComponent.useTestModule(
+        this,
+        createTestModuleBuilder().withAppBundle(appBundle).withOutputPath(outputPath).build());
+    buildApksManager.execute();
+  }
+
+  /**
+   * Creates a bundle with a base module, and optionally a feature module and asset modules. The
+   * base module and the asset modules have an asset with the same content.
+   */
+  private static AppBundle createBundleWithOptionalModules(
+      boolean withFeature, boolean withAssets) {
+    byte[] sharedContent = "shared asset".getBytes(UTF_8);
+    AppBundleBuilder appBundle =
+        new AppBundleBuilder()
+            .addModule(
+                "base",
+                module ->
+                    module
+                        .addFile("dex/classes.dex")
+                        .addFile("assets/base.txt", sharedContent)
+                        .setManifest(
+                            androidManifest(
+                                "com.test.app", withMinSdkVersion(ANDROID_L_API_VERSION))));
+    if (withFeature) {
+      appBundle.addModule(
+          "feature",
+          module ->
+              module
+                  .addFile("assets/feature.txt")
+                  .setManifest(androidManifestForFeature("com.test.app")));
+    }
+    if (withAssets) {
+      appBundle
+          .addModule(
+              "asset_module1",
+              module ->
+                  module
+                      .addFile("assets/asset1.txt", sharedContent)
+                      .setManifest(
+                          androidManifestForAssetModule(
+                              "com.test.app", withInstallTimeDelivery())))
+          .addModule(
+              "asset_module2",
+              module ->
+                  module
+                      .addFile("assets/asset2.txt")
+                      .setManifest(
+                          androidManifestForAssetModule("com.test.app", withOnDemandDelivery())));
+    }
+    return appBundle.build();
+  }
+
+  private static BuildApksResult withoutSigningDescriptions(BuildApksResult result) {
+    BuildApksResult.Builder resultBuilder = result.toBuilder();
+    resultBuilder.getVariantBuilderList().stream()
+        .flatMap(variant -> variant.getApkSetBuilderList().stream())
+        .flatMap(apkSet -> apkSet.getApkDescriptionBuilderList().stream())
+        .forEach(ApkDescription.Builder::clearSigningDescription);
+    resultBuilder.getAssetSliceSetBuilderList().stream()
+        .flatMap(assetSliceSet -> assetSliceSet.getApkDescriptionBuilderList().stream())
+        .forEach(ApkDescription.Builder::clearSigningDescription);
+    return resultBuilder.build();
+  }
+
   private static ImmutableList<ApkDescription> apkDescriptions(List<Variant> variants) {
     return variants.stream()
         .flatMap(variant -> apkDescriptions(variant).stream())
@@ -8131,6 +8503,14 @@ public class BuildApksManagerTest {
    * Extracts names of files inside the APK described by {@code apkDesc}, optionally filtering by
    * prefix.
    */
+  private static byte[] readApk(ZipFile apkSetFile, ApkDescription apkDescription)
+      throws IOException {
+    try (InputStream apkContent =
+        apkSetFile.getInputStream(apkSetFile.getEntry(apkDescription.getPath()))) {
+      return ByteStreams.toByteArray(apkContent);
+    }
+  }
+
   private ImmutableSet<String> filesInApk(ApkDescription apkDesc, ZipFile apkSetFile) {
     return filesInApk(apkDesc, apkSetFile, /* prefix= */ "");
   }
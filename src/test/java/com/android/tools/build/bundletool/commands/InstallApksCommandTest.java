@@ -211,6 +211,34 @@ public class InstallApksCommandTest {
     assertThat(fromBuilder).isEqualTo(fromFlags);
   }
 
+  @Test
+  public void fromFlagsEquivalentToBuilder_deviceSpecCache() throws Exception {
+    Path cacheDir = tmpDir.resolve("device-spec-cache");
+    InstallApksCommand fromFlags =
+        InstallApksCommand.fromFlags(
+            new FlagParser()
+                .parse(
+                    "--apks=" + simpleApksPath,
+                    "--batch-device-queries",
+                    "--device-spec-cache-dir=" + cacheDir,
+                    "--device-spec-cache-ttl-minutes=5"),
+            systemEnvironmentProvider,
+            fakeServerOneDevice(lDeviceWithLocales("en-US")));
+
+    InstallApksCommand fromBuilder =
+        InstallApksCommand.builder()
+            .setApksArchivePath(simpleApksPath)
+            .setAdbPath(adbPath)
+            .setAdbServer(fromFlags.getAdbServer())
+            .setDeviceId(DEVICE_ID)
+            .setBatchDeviceQueries(true)
+            .setDeviceSpecCacheDirectory(cacheDir)
+            .setDeviceSpecCacheTtl(Duration.ofMinutes(5))
+            .build();
+
+    assertThat(fromBuilder).isEqualTo(fromFlags);
+  }
+
   @Test
   public void fromFlagsEquivalentToBuilder_grantRuntimePermissions() throws Exception {
     InstallApksCommand fromFlags =
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.tools.build.bundletool.commands;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.android.tools.build.bundletool.flags.FlagParser;
+import com.android.tools.build.bundletool.model.utils.ResidentCaches;
+import com.android.tools.build.bundletool.model.version.BundleToolVersion;
+import com.android.tools.build.bundletool.testing.FakeAdbServer;
+import com.google.common.collect.ImmutableList;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class ServeCommandTest {
+
+  private final FakeAdbServer fakeAdbServer =
+      new FakeAdbServer(/* hasInitialDeviceList= */ true, /* devices= */ ImmutableList.of());
+
+  @Test
+  public void buildingViaFlagsAndBuilderHasSameResult() {
+    ServeCommand commandViaFlags =
+        ServeCommand.fromFlags(
+            new FlagParser()
+                .parse("serve", "--max-concurrent-commands=2", "--max-cached-bundles=8"),
+            fakeAdbServer);
+    ServeCommand commandViaBuilder =
+        ServeCommand.builder()
+            .setMaxConcurrentCommands(2)
+            .setMaxCachedBundles(8)
+            .setAdbServer(fakeAdbServer)
+            .build();
+
+    assertThat(commandViaFlags).isEqualTo(commandViaBuilder);
+  }
+
+  @Test
+  public void executesRequests() {
+    String version = BundleToolVersion.getCurrentVersion() + System.lineSeparator();
+
+    String responses = serve("req-1\tversion\n\nreq-2\tversion\n");
+
+    assertThat(responses)
+        .isEqualTo(
+            "req-1\t0\t" + version.length() + "\n" + version
+                + "req-2\t0\t" + version.length() + "\n" + version);
+  }
+
+  @Test
+  public void unsupportedCommand_returnsError() {
+    String responses = serve("req-1\tdump\tmanifest\t--bundle=/tmp/bundle.aab\n");
+
+    assertThat(responses).startsWith("req-1\t1\t");
+    assertThat(responses).contains("Command 'dump' is not supported by the 'serve' command.");
+  }
+
+  @Test
+  public void invalidFlags_returnsError() {
+    String responses = serve("req-1\tversion\t--unknown-flag\n");
+
+    assertThat(responses).startsWith("req-1\t1\t");
+    assertThat(responses).contains("unknown-flag");
+  }
+
+  @Test
+  public void residentCachesEnabledOnlyWhileServing() {
+    serve("req-1\tversion\n");
+
+    assertThat(ResidentCaches.get().isPresent()).isFalse();
+  }
+
+  @Test
+  public void responsesWrittenToStandardOutput_standardOutputRedirectedWhileServing() {
+    PrintStream originalStandardOutput = System.out;
+    ByteArrayOutputStream responses = new ByteArrayOutputStream();
+    PrintStream responsesStream = new PrintStream(responses);
+    System.setOut(responsesStream);
+    try {
+      ServeCommand.builder()
+          .setMaxConcurrentCommands(1)
+          .setAdbServer(fakeAdbServer)
+          .build()
+          .execute(new ByteArrayInputStream("req-1\tversion\n".getBytes(UTF_8)), System.out);
+
+      assertThat(System.out).isSameInstanceAs(responsesStream);
+    } finally {
+      System.setOut(originalStandardOutput);
+    }
+    assertThat(new String(responses.toByteArray(), UTF_8)).startsWith("req-1\t0\t");
+  }
+
+  @Test
+  public void printHelp_doesNotCrash() {
+    ServeCommand.help();
+  }
+
+  private String serve(String requests) {
+    ByteArrayOutputStream responses = new ByteArrayOutputStream();
+    ServeCommand.builder()
+        .setMaxConcurrentCommands(1)
+        .setAdbServer(fakeAdbServer)
+        .build()
+        .execute(new ByteArrayInputStream(requests.getBytes(UTF_8)), new PrintStream(responses));
+    return new String(responses.toByteArray(), UTF_8);
+  }
+}
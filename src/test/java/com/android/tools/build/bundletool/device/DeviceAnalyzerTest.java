@@ -27,6 +27,7 @@ import static com.android.tools.build.bundletool.testing.DeviceFactory.ramBytes;
 import static com.android.tools.build.bundletool.testing.DeviceFactory.sdkRuntimeSupported;
 import static com.android.tools.build.bundletool.testing.DeviceFactory.sdkVersion;
 import static com.android.tools.build.bundletool.testing.DeviceFactory.soc;
+import static com.google.common.collect.ImmutableList.toImmutableList;
 import static com.google.common.truth.Truth.assertThat;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
@@ -38,15 +39,24 @@ import com.android.tools.build.bundletool.testing.FakeDevice;
 import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.Optional;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
 @RunWith(JUnit4.class)
 public class DeviceAnalyzerTest {
 
+  private static final Joiner LINES_JOINER = Joiner.on('\n');
+
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
   @Test
   public void noDeviceId_noConnectedDevices_throws() {
     FakeAdbServer fakeAdbServer =
@@ -516,6 +526,192 @@ public class DeviceAnalyzerTest {
     assertThat(deviceSpec.getSdkRuntime().getSupported()).isFalse();
   }
 
+  @Test
+  public void batchedDeviceQueries_specCollectedWithSingleShellCommand() {
+    FakeDevice fakeDevice =
+        FakeDevice.fromDeviceSpec(
+            "id1",
+            DeviceState.ONLINE,
+            mergeSpecs(sdkVersion(30), locales("en-US"), density(480), abis("armeabi")));
+    for (String command :
+        ImmutableList.of(
+            "pm list features",
+            "dumpsys SurfaceFlinger",
+            "am get-config",
+            DeviceAnalyzer.GET_MEMORY_KIB_SHELL_COMMAND)) {
+      fakeDevice.injectShellCommandOutput(
+          command,
+          () -> {
+            throw new IllegalStateException("Unexpected shell command: " + command);
+          });
+    }
+    fakeDevice.injectShellCommandOutput(
+        BatchedDeviceQuery.BATCHED_SHELL_COMMAND,
+        () ->
+            batchedOutput(
+                ImmutableMap.<String, String>builder()
+                    .put(
+                        BatchedDeviceQuery.PROPERTIES_SECTION,
+                        LINES_JOINER.join(
+                            "[ro.product.brand]: [google]",
+                            "[ro.product.device]: [walleye]",
+                            "[ro.soc.manufacturer]: [Google]",
+                            "[ro.soc.model]: [Tensor]",
+                            "[ro.sf.lcd_density]: [420]"))
+                    .put(
+                        BatchedDeviceQuery.FEATURES_SECTION,
+                        LINES_JOINER.join(
+                            "feature:android.hardware.camera", "feature:android.hardware.nfc"))
+                    .put(
+                        BatchedDeviceQuery.GL_EXTENSIONS_SECTION,
+                        LINES_JOINER.join(
+                            "SurfaceFlinger global state:",
+                            "GLES: FakeDevice, OpenGL ES 3.0",
+                            "GL_OES_EGL_image GL_OES_depth24"))
+                    .put(
+                        BatchedDeviceQuery.ACTIVITY_MANAGER_SECTION,
+                        LINES_JOINER.join("abi: arm64-v8a,armeabi-v7a", "config: mcc234-mnc15-de-rDE"))
+                    .put(BatchedDeviceQuery.MEMORY_SECTION, "4194304")
+                    .put(BatchedDeviceQuery.DENSITY_SECTION, "Physical density: 440")
+                    .put(BatchedDeviceQuery.SDK_SANDBOX_SECTION, "Service sdk_sandbox: found")
+                    .buildOrThrow()));
+    FakeAdbServer fakeAdbServer =
+        new FakeAdbServer(
+            /* hasInitialDeviceList= */ true, /* devices= */ ImmutableList.of(fakeDevice));
+    fakeAdbServer.init(Paths.get("path/to/adb"));
+    DeviceAnalyzer analyzer =
+        new DeviceAnalyzer(
+            fakeAdbServer, /* batchDeviceQueries= */ true, /* deviceSpecCache= */ Optional.empty());
+
+    DeviceSpec deviceSpec = analyzer.getDeviceSpec(Optional.empty());
+
+    assertThat(deviceSpec)
+        .isEqualTo(
+            mergeSpecs(
+                sdkVersion(30),
+                density(420),
+                abis("arm64-v8a", "armeabi-v7a"),
+                locales("de-DE"),
+                deviceFeatures("android.hardware.camera", "android.hardware.nfc"),
+                glExtensions("GL_OES_EGL_image", "GL_OES_depth24"),
+                sdkRuntimeSupported(true),
+                ramBytes(4294967296L),
+                branding("google", "walleye"),
+                soc("Google", "Tensor")));
+  }
+
+  @Test
+  public void batchedDeviceQueries_missingActivityManagerOutput_propertiesFallback() {
+    FakeDevice fakeDevice =
+        FakeDevice.fromDeviceSpec(
+            "id1",
+            DeviceState.ONLINE,
+            mergeSpecs(sdkVersion(26), locales("en-US"), density(480), abis("armeabi")));
+    fakeDevice.injectShellCommandOutput(
+        BatchedDeviceQuery.BATCHED_SHELL_COMMAND,
+        () ->
+            batchedOutput(
+                ImmutableMap.of(
+                    BatchedDeviceQuery.PROPERTIES_SECTION,
+                    LINES_JOINER.join(
+                        "[ro.product.cpu.abilist]: [x86_64,x86]",
+                        "[persist.sys.locale]: [fr-FR]",
+                        "[ro.sf.lcd_density]: []"),
+                    BatchedDeviceQuery.ACTIVITY_MANAGER_SECTION,
+                    "error",
+                    BatchedDeviceQuery.MEMORY_SECTION,
+                    "1024",
+                    BatchedDeviceQuery.DENSITY_SECTION,
+                    "Physical density: 320",
+                    BatchedDeviceQuery.SDK_SANDBOX_SECTION,
+                    "Service sdk_sandbox: not found")));
+    FakeAdbServer fakeAdbServer =
+        new FakeAdbServer(
+            /* hasInitialDeviceList= */ true, /* devices= */ ImmutableList.of(fakeDevice));
+    fakeAdbServer.init(Paths.get("path/to/adb"));
+    DeviceAnalyzer analyzer =
+        new DeviceAnalyzer(
+            fakeAdbServer, /* batchDeviceQueries= */ true, /* deviceSpecCache= */ Optional.empty());
+
+    DeviceSpec deviceSpec = analyzer.getDeviceSpec(Optional.empty());
+
+    assertThat(deviceSpec.getScreenDensity()).isEqualTo(320);
+    assertThat(deviceSpec.getSupportedAbisList()).containsExactly("x86_64", "x86").inOrder();
+    assertThat(deviceSpec.getSupportedLocalesList()).containsExactly("fr-FR");
+    assertThat(deviceSpec.getRamBytes()).isEqualTo(1024 * 1024);
+    assertThat(deviceSpec.getSdkRuntime().getSupported()).isFalse();
+  }
+
+  @Test
+  public void deviceSpecCache_sameSerialAndFingerprint_skipsDetection() throws Exception {
+    DeviceSpecCache cache =
+        new DeviceSpecCache(tmp.getRoot().toPath().resolve("cache"), Duration.ofHours(1));
+    ImmutableMap<String, String> properties =
+        ImmutableMap.of("ro.build.fingerprint", "google/walleye/walleye:11/RP1A/1:user/keys");
+
+    FakeAdbServer firstAdbServer =
+        new FakeAdbServer(
+            /* hasInitialDeviceList= */ true,
+            /* devices= */ ImmutableList.of(
+                FakeDevice.fromDeviceSpecWithProperties(
+                    "a",
+                    DeviceState.ONLINE,
+                    mergeSpecs(sdkVersion(30), locales("en-US"), density(480), abis("x86")),
+                    properties)));
+    firstAdbServer.init(Paths.get("path/to/adb"));
+    DeviceSpec firstSpec =
+        new DeviceAnalyzer(firstAdbServer, /* batchDeviceQueries= */ false, Optional.of(cache))
+            .getDeviceSpec(Optional.empty());
+
+    // Same serial and fingerprint but different density: the cached spec should be returned.
+    FakeDevice secondDevice =
+        FakeDevice.fromDeviceSpecWithProperties(
+            "a",
+            DeviceState.ONLINE,
+            mergeSpecs(sdkVersion(30), locales("en-US"), density(240), abis("x86")),
+            properties);
+    secondDevice.injectShellCommandOutput(
+        "am get-config",
+        () -> {
+          throw new IllegalStateException("Device should not be queried.");
+        });
+    FakeAdbServer secondAdbServer =
+        new FakeAdbServer(
+            /* hasInitialDeviceList= */ true, /* devices= */ ImmutableList.of(secondDevice));
+    secondAdbServer.init(Paths.get("path/to/adb"));
+    DeviceSpec secondSpec =
+        new DeviceAnalyzer(secondAdbServer, /* batchDeviceQueries= */ false, Optional.of(cache))
+            .getDeviceSpec(Optional.empty());
+
+    assertThat(firstSpec.getScreenDensity()).isEqualTo(480);
+    assertThat(secondSpec).isEqualTo(firstSpec);
+  }
+
+  @Test
+  public void deviceSpecCache_noFingerprint_notCached() throws Exception {
+    Path cacheDir = tmp.getRoot().toPath().resolve("cache");
+    DeviceSpecCache cache = new DeviceSpecCache(cacheDir, Duration.ofHours(1));
+    FakeAdbServer fakeAdbServer =
+        new FakeAdbServer(
+            /* hasInitialDeviceList= */ true,
+            /* devices= */ ImmutableList.of(createUsbEnabledDevice("a")));
+    fakeAdbServer.init(Paths.get("path/to/adb"));
+
+    new DeviceAnalyzer(fakeAdbServer, /* batchDeviceQueries= */ false, Optional.of(cache))
+        .getDeviceSpec(Optional.empty());
+
+    assertThat(Files.exists(cacheDir)).isFalse();
+  }
+
+  private static String batchedOutput(ImmutableMap<String, String> sectionOutputs) {
+    return LINES_JOINER.join(
+        sectionOutputs.entrySet().stream()
+            .map(
+                entry ->
+                    BatchedDeviceQuery.sectionMarker(entry.getKey()) + "\n" + entry.getValue())
+            .collect(toImmutableList()));
+  }
+
   private static Device createUsbEnabledDevice(String serialNumber) {
     return createUsbEnabledDevice(serialNumber, /* sdkVersion= */ 21, /* locale= */ "en-US");
   }
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.tools.build.bundletool.device;
+
+import static com.android.tools.build.bundletool.testing.DeviceFactory.abis;
+import static com.android.tools.build.bundletool.testing.DeviceFactory.density;
+import static com.android.tools.build.bundletool.testing.DeviceFactory.locales;
+import static com.android.tools.build.bundletool.testing.DeviceFactory.mergeSpecs;
+import static com.android.tools.build.bundletool.testing.DeviceFactory.sdkVersion;
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth8.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.android.bundle.Devices.DeviceSpec;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.stream.Stream;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class DeviceSpecCacheTest {
+
+  private static final String SERIAL = "emulator-5554";
+  private static final String FINGERPRINT = "google/sdk_gphone64/emu64:14/UE1A/1:user/keys";
+  private static final Instant NOW = Instant.parse("2024-01-01T10:00:00Z");
+  private static final DeviceSpec DEVICE_SPEC =
+      mergeSpecs(sdkVersion(34), abis("x86_64"), locales("en-US"), density(420));
+
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+  private Path cacheDir;
+
+  @Before
+  public void setUp() {
+    cacheDir = tmp.getRoot().toPath().resolve("cache");
+  }
+
+  @Test
+  public void emptyCache_returnsEmpty() {
+    DeviceSpecCache cache = createCache(NOW);
+
+    assertThat(cache.get(SERIAL, FINGERPRINT)).isEmpty();
+  }
+
+  @Test
+  public void put_thenGet_returnsSpec() {
+    createCache(NOW).put(SERIAL, FINGERPRINT, DEVICE_SPEC);
+
+    assertThat(createCache(NOW.plus(Duration.ofMinutes(59))).get(SERIAL, FINGERPRINT))
+        .hasValue(DEVICE_SPEC);
+  }
+
+  @Test
+  public void expiredEntry_returnsEmpty() {
+    createCache(NOW).put(SERIAL, FINGERPRINT, DEVICE_SPEC);
+
+    assertThat(createCache(NOW.plus(Duration.ofMinutes(61))).get(SERIAL, FINGERPRINT)).isEmpty();
+  }
+
+  @Test
+  public void differentFingerprint_returnsEmpty() {
+    DeviceSpecCache cache = createCache(NOW);
+    cache.put(SERIAL, FINGERPRINT, DEVICE_SPEC);
+
+    assertThat(cache.get(SERIAL, FINGERPRINT + "-updated")).isEmpty();
+    assertThat(cache.get("other-serial", FINGERPRINT)).isEmpty();
+  }
+
+  @Test
+  public void corruptedEntry_returnsEmpty() throws Exception {
+    DeviceSpecCache cache = createCache(NOW);
+    cache.put(SERIAL, FINGERPRINT, DEVICE_SPEC);
+    try (Stream<Path> files = Files.list(cacheDir)) {
+      for (Path file : (Iterable<Path>) files::iterator) {
+        Files.write(file, "{not json".getBytes(UTF_8));
+      }
+    }
+
+    assertThat(cache.get(SERIAL, FINGERPRINT)).isEmpty();
+  }
+
+  private DeviceSpecCache createCache(Instant now) {
+    return new DeviceSpecCache(cacheDir, Duration.ofHours(1), Clock.fixed(now, ZoneOffset.UTC));
+  }
+}
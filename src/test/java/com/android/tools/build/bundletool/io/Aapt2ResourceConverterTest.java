@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.tools.build.bundletool.io;
+
+import static com.android.tools.build.bundletool.testing.ManifestProtoUtils.androidManifest;
+import static com.android.tools.build.bundletool.testing.ModuleSplitUtils.createModuleSplitBuilder;
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.android.bundle.Config.BundleConfig;
+import com.android.tools.build.bundletool.androidtools.Aapt2Command;
+import com.android.tools.build.bundletool.model.AppBundle;
+import com.android.tools.build.bundletool.model.BundleModuleName;
+import com.android.tools.build.bundletool.model.ModuleEntry;
+import com.android.tools.build.bundletool.model.ModuleSplit;
+import com.android.tools.build.bundletool.model.ZipPath;
+import com.android.tools.build.bundletool.model.exceptions.InvalidCommandException;
+import com.android.tools.build.bundletool.testing.AppBundleBuilder;
+import com.android.tools.build.bundletool.testing.FakeSystemEnvironmentProvider;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteSource;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.ZipFile;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link Aapt2ResourceConverter}. */
+@RunWith(JUnit4.class)
+public class Aapt2ResourceConverterTest {
+
+  private static final AppBundle APP_BUNDLE =
+      new AppBundleBuilder()
+          .addModule("base", module -> module.setManifest(androidManifest("com.test.app")))
+          .build();
+
+  private final List<String> convertedEntries = Collections.synchronizedList(new ArrayList<>());
+
+  private TempDirectory tempDirectory;
+  private SerializationFilesManager filesManager;
+
+  @Before
+  public void setUp() {
+    tempDirectory = new TempDirectory();
+    filesManager = new SerializationFilesManager();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    filesManager.close();
+    tempDirectory.close();
+  }
+
+  @Test
+  public void convert_splitsReturnedInInputOrder_largestConvertedFirst() {
+    ImmutableList<ModuleSplit> splits =
+        ImmutableList.of(
+            createSplit("small", /* size= */ 10),
+            createSplit("large", /* size= */ 1000),
+            createSplit("medium", /* size= */ 100));
+
+    ImmutableList<ModuleSplit> convertedSplits =
+        createConverter(ImmutableMap.of("bundletool.aapt2.threads", "1"))
+            .convert(splits, filesManager);
+
+    assertThat(
+            convertedSplits.stream()
+                .map(split -> split.getModuleName().getName())
+                .collect(toImmutableList()))
+        .containsExactly("small", "large", "medium")
+        .inOrder();
+    for (ModuleSplit split : convertedSplits) {
+      String name = split.getModuleName().getName();
+      assertThat(split.findEntry("res/raw/" + name + ".bin")).isPresent();
+    }
+    assertThat(convertedEntries)
+        .containsExactly("res/raw/large.bin", "res/raw/medium.bin", "res/raw/small.bin")
+        .inOrder();
+  }
+
+  @Test
+  public void convert_noThreadCountProperty_threadCountOfCommandExecutor() {
+    ImmutableList<ModuleSplit> splits =
+        ImmutableList.of(
+            createSplit("small", /* size= */ 10),
+            createSplit("large", /* size= */ 1000),
+            createSplit("medium", /* size= */ 100));
+    // With a single thread for the command, a single 'aapt2' process runs at a time, so the splits
+    // are converted in the order in which they are scheduled.
+    ListeningExecutorService executorService = ThreadPools.newCpuExecutor(1);
+    try {
+      new Aapt2ResourceConverter(
+              new FakeAapt2Command(),
+              executorService,
+              executorService,
+              APP_BUNDLE,
+              BundleConfig.getDefaultInstance(),
+              tempDirectory,
+              new FakeSystemEnvironmentProvider(
+                  /* variables= */ ImmutableMap.of(), /* properties= */ ImmutableMap.of()))
+          .convert(splits, filesManager);
+    } finally {
+      executorService.shutdown();
+    }
+
+    assertThat(convertedEntries)
+        .containsExactly("res/raw/large.bin", "res/raw/medium.bin", "res/raw/small.bin")
+        .inOrder();
+  }
+
+  @Test
+  public void convert_nonNumericThreadCount_throws() {
+    Aapt2ResourceConverter converter =
+        createConverter(ImmutableMap.of("bundletool.aapt2.threads", "many"));
+
+    InvalidCommandException exception =
+        assertThrows(
+            InvalidCommandException.class,
+            () -> converter.convert(ImmutableList.of(createSplit("base", 10)), filesManager));
+    assertThat(exception).hasMessageThat().contains("bundletool.aapt2.threads");
+  }
+
+  @Test
+  public void convert_nonPositiveThreadCount_throws() {
+    Aapt2ResourceConverter converter =
+        createConverter(ImmutableMap.of("bundletool.aapt2.threads", "0"));
+
+    InvalidCommandException exception =
+        assertThrows(
+            InvalidCommandException.class,
+            () -> converter.convert(ImmutableList.of(createSplit("base", 10)), filesManager));
+    assertThat(exception).hasMessageThat().contains("must be a positive integer");
+  }
+
+  private Aapt2ResourceConverter createConverter(ImmutableMap<String, String> properties) {
+    // Direct executors make the 'aapt2' invocations be queued in the order they are scheduled.
+    ListeningExecutorService directExecutorService = MoreExecutors.newDirectExecutorService();
+    return new Aapt2ResourceConverter(
+        new FakeAapt2Command(),
+        directExecutorService,
+        directExecutorService,
+        APP_BUNDLE,
+        BundleConfig.getDefaultInstance(),
+        tempDirectory,
+        new FakeSystemEnvironmentProvider(/* variables= */ ImmutableMap.of(), properties));
+  }
+
+  private static ModuleSplit createSplit(String name, int size) {
+    return createModuleSplitBuilder()
+        .setModuleName(BundleModuleName.create(name))
+        .setEntries(
+            ImmutableList.of(
+                ModuleEntry.builder()
+                    .setPath(ZipPath.create("res/raw/" + name + ".bin"))
+                    .setContent(ByteSource.wrap(new byte[size]))
+                    .build()))
+        .build();
+  }
+
+  /** Copies the resources of the proto APK and adds a manifest, recording what it converted. */
+  private class FakeAapt2Command implements Aapt2Command {
+    @Override
+    public void convertApkProtoToBinary(
+        Path protoApk, Path binaryApk, ConvertOptions convertOptions) {
+      try (ZipFile protoZip = new ZipFile(protoApk.toFile())) {
+        protoZip.stream().forEach(entry -> convertedEntries.add(entry.getName()));
+        new ZipBuilder()
+            .copyAllContentsFromZip(ZipPath.ROOT, protoZip)
+            .addFileWithContent(ZipPath.create("AndroidManifest.xml"), new byte[] {1})
+            .writeTo(binaryApk);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    @Override
+    public void optimizeToSparseResourceTables(Path originalApk, Path outputApk) {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
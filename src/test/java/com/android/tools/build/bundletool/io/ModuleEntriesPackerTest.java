@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.tools.build.bundletool.io;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.android.tools.build.bundletool.model.ModuleEntry;
+import com.android.tools.build.bundletool.model.ModuleEntry.ModuleEntryLocationInZipSource;
+import com.android.tools.build.bundletool.model.ZipPath;
+import com.android.tools.build.bundletool.model.utils.ZipUtils;
+import com.android.zipflinger.Entry;
+import com.android.zipflinger.Sources;
+import com.android.zipflinger.ZipArchive;
+import com.android.zipflinger.ZipMap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteSource;
+import com.google.common.io.ByteStreams;
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link ModuleEntriesPacker}. */
+@RunWith(JUnit4.class)
+public class ModuleEntriesPackerTest {
+
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+  @Test
+  public void identicalContentFromDifferentPaths_packedOnce() throws Exception {
+    ModuleEntry entry1 = createEntry("assets/a.txt", "same content");
+    ModuleEntry entry2 = createEntry("assets/b.txt", "same content");
+    Path packPath = tmp.getRoot().toPath().resolve("pack.zip");
+
+    ModuleEntriesPack pack =
+        new ModuleEntriesPacker(packPath, /* namePrefix= */ "c_")
+            .add(entry1)
+            .add(entry2)
+            .pack(Zipper.uncompressedZip());
+
+    assertThat(pack.getZipEntry(entry1).getName()).isEqualTo(pack.getZipEntry(entry2).getName());
+    assertThat(ZipMap.from(packPath).getEntries()).hasSize(1);
+    DeduplicationStats stats = pack.getDeduplicationStats();
+    assertThat(stats.getDeduplicatedEntryCount()).isEqualTo(1);
+    assertThat(stats.getDeduplicatedBytes()).isEqualTo("same content".length());
+    assertThat(stats.getHashedEntryCount()).isEqualTo(2);
+    assertThat(stats.getEntriesResolvedByChecksum()).isEqualTo(1);
+  }
+
+  @Test
+  public void differentContent_packedSeparately() throws Exception {
+    ModuleEntry entry1 = createEntry("assets/a.txt", "content 1");
+    ModuleEntry entry2 = createEntry("assets/b.txt", "content 2");
+    Path packPath = tmp.getRoot().toPath().resolve("pack.zip");
+
+    ModuleEntriesPack pack =
+        new ModuleEntriesPacker(packPath, /* namePrefix= */ "c_")
+            .add(entry1)
+            .add(entry2)
+            .pack(Zipper.uncompressedZip());
+
+    assertThat(pack.getZipEntry(entry1).getName())
+        .isNotEqualTo(pack.getZipEntry(entry2).getName());
+    assertThat(ZipMap.from(packPath).getEntries()).hasSize(2);
+    DeduplicationStats stats = pack.getDeduplicationStats();
+    assertThat(stats.getDeduplicatedEntryCount()).isEqualTo(0);
+    assertThat(stats.getHashedEntryCount()).isEqualTo(0);
+    assertThat(stats.getEntriesResolvedByChecksum()).isEqualTo(2);
+  }
+
+  @Test
+  public void packReusingBundleCompression_deflatedEntriesCopiedAsIs() throws Exception {
+    Path bundlePath = tmp.getRoot().toPath().resolve("bundle.aab");
+    writeBundle(
+        bundlePath,
+        ImmutableList.of(
+            BundleEntry.deflated("base/dex/classes.dex", "dex content"),
+            BundleEntry.deflated("base/assets/a.txt", "shared content"),
+            BundleEntry.deflated("feature/assets/a.txt", "shared content"),
+            BundleEntry.stored("base/assets/stored.txt", "stored content")));
+    List<String> zippedEntryNames = Collections.synchronizedList(new ArrayList<>());
+    Zipper recordingZipper =
+        (outputZip, entries) -> {
+          zippedEntryNames.addAll(entries.keySet());
+          Zipper.uncompressedZip().zip(outputZip, entries);
+        };
+
+    try (ZipFile bundleZip = new ZipFile(bundlePath.toFile())) {
+      ImmutableList<ModuleEntry> entries = readEntries(bundlePath, bundleZip);
+      Path reusedPackPath = tmp.getRoot().toPath().resolve("reused.zip");
+      ModuleEntriesPack reusedPack =
+          addAll(new ModuleEntriesPacker(reusedPackPath, /* namePrefix= */ "c_"), entries)
+              .packReusingBundleCompression(recordingZipper);
+      Path packPath = tmp.getRoot().toPath().resolve("pack.zip");
+      addAll(new ModuleEntriesPacker(packPath, /* namePrefix= */ "c_"), entries)
+          .pack(Zipper.uncompressedZip());
+
+      // Both bundle locations with the shared content are packed once, under the same name.
+      String sharedName = reusedPack.getZipEntry(entries.get(1)).getName();
+      assertThat(reusedPack.getZipEntry(entries.get(2)).getName()).isEqualTo(sharedName);
+      String storedName = reusedPack.getZipEntry(entries.get(3)).getName();
+      assertThat(zippedEntryNames).containsExactly(storedName);
+
+      ZipMap bundleMap = ZipMap.from(bundlePath);
+      ZipMap reusedPackMap = ZipMap.from(reusedPackPath);
+      for (int i = 0; i < 2; i++) {
+        Entry bundleEntry = bundleMap.getEntries().get(entries.get(i).getPath().toString());
+        Entry packEntry =
+            reusedPackMap.getEntries().get(reusedPack.getZipEntry(entries.get(i)).getName());
+        assertThat(packEntry.isCompressed()).isTrue();
+        assertThat(packEntry.getCrc()).isEqualTo(bundleEntry.getCrc());
+        assertThat(readPayload(reusedPackPath, packEntry))
+            .isEqualTo(readPayload(bundlePath, bundleEntry));
+      }
+      assertThat(readContents(reusedPackPath)).isEqualTo(readContents(packPath));
+    }
+  }
+
+  private static ModuleEntriesPacker addAll(
+      ModuleEntriesPacker packer, ImmutableList<ModuleEntry> entries) {
+    entries.forEach(packer::add);
+    return packer;
+  }
+
+  /** Reads the entries of the bundle, in order, the way the bundle parser does. */
+  private static ImmutableList<ModuleEntry> readEntries(Path bundlePath, ZipFile bundleZip) {
+    return bundleZip.stream()
+        .map(
+            zipEntry ->
+                ModuleEntry.builder()
+                    .setPath(ZipPath.create(zipEntry.getName()))
+                    .setFileLocation(
+                        ModuleEntryLocationInZipSource.create(
+                            bundlePath, ZipPath.create(zipEntry.getName())))
+                    .setContent(ZipUtils.asByteSource(bundleZip, zipEntry))
+                    .build())
+        .collect(toImmutableList());
+  }
+
+  private static void writeBundle(Path bundlePath, ImmutableList<BundleEntry> entries)
+      throws Exception {
+    try (ZipArchive archive = new ZipArchive(bundlePath)) {
+      for (BundleEntry entry : entries) {
+        archive.add(
+            Sources.from(
+                new ByteArrayInputStream(entry.content.getBytes(UTF_8)),
+                entry.path,
+                entry.stored ? Deflater.NO_COMPRESSION : Deflater.BEST_COMPRESSION));
+      }
+    }
+  }
+
+  /** Returns the payload of the entry as stored in the zip file, i.e. compressed if it is. */
+  private static byte[] readPayload(Path zipPath, Entry entry) throws Exception {
+    try (FileChannel channel = FileChannel.open(zipPath)) {
+      ByteBuffer payload = ByteBuffer.allocate((int) entry.getPayloadLocation().size());
+      channel.read(payload, entry.getPayloadLocation().first);
+      return payload.array();
+    }
+  }
+
+  private static ImmutableMap<String, String> readContents(Path zipPath) throws Exception {
+    ImmutableMap.Builder<String, String> contents = ImmutableMap.builder();
+    try (ZipFile zipFile = new ZipFile(zipPath.toFile())) {
+      for (ZipEntry zipEntry : Collections.list(zipFile.entries())) {
+        contents.put(
+            zipEntry.getName(),
+            new String(ByteStreams.toByteArray(zipFile.getInputStream(zipEntry)), UTF_8));
+      }
+    }
+    return contents.buildOrThrow();
+  }
+
+  private static final class BundleEntry {
+    private final String path;
+    private final String content;
+    private final boolean stored;
+
+    private BundleEntry(String path, String content, boolean stored) {
+      this.path = path;
+      this.content = content;
+      this.stored = stored;
+    }
+
+    static BundleEntry deflated(String path, String content) {
+      return new BundleEntry(path, content, /* stored= */ false);
+    }
+
+    static BundleEntry stored(String path, String content) {
+      return new BundleEntry(path, content, /* stored= */ true);
+    }
+  }
+
+  private static ModuleEntry createEntry(String path, String content) {
+    return ModuleEntry.builder()
+        .setPath(ZipPath.create(path))
+        .setContent(ByteSource.wrap(content.getBytes(UTF_8)))
+        .build();
+  }
+}
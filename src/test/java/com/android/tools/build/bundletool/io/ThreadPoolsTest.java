@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.tools.build.bundletool.io;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class ThreadPoolsTest {
+
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+  private Path cgroupRoot;
+
+  @Before
+  public void setUp() {
+    cgroupRoot = tmp.getRoot().toPath();
+  }
+
+  @Test
+  public void noCgroup_runtimeProcessors() {
+    assertThat(ThreadPools.availableProcessors(8, cgroupRoot)).isEqualTo(8);
+  }
+
+  @Test
+  public void cgroupV2_quotaRoundedUp() throws Exception {
+    write("cpu.max", "250000 100000\n");
+
+    assertThat(ThreadPools.availableProcessors(8, cgroupRoot)).isEqualTo(3);
+  }
+
+  @Test
+  public void cgroupV2_quotaAboveRuntimeProcessors_runtimeProcessors() throws Exception {
+    write("cpu.max", "1600000 100000\n");
+
+    assertThat(ThreadPools.availableProcessors(8, cgroupRoot)).isEqualTo(8);
+  }
+
+  @Test
+  public void cgroupV2_noQuota_runtimeProcessors() throws Exception {
+    write("cpu.max", "max 100000\n");
+
+    assertThat(ThreadPools.availableProcessors(8, cgroupRoot)).isEqualTo(8);
+  }
+
+  @Test
+  public void cgroupV2_smallQuota_atLeastOneProcessor() throws Exception {
+    write("cpu.max", "10000 100000\n");
+
+    assertThat(ThreadPools.availableProcessors(8, cgroupRoot)).isEqualTo(1);
+  }
+
+  @Test
+  public void cgroupV2_malformed_runtimeProcessors() throws Exception {
+    write("cpu.max", "200000\n");
+
+    assertThat(ThreadPools.availableProcessors(8, cgroupRoot)).isEqualTo(8);
+  }
+
+  @Test
+  public void cgroupV1_quota() throws Exception {
+    write("cpu/cpu.cfs_quota_us", "200000\n");
+    write("cpu/cpu.cfs_period_us", "100000\n");
+
+    assertThat(ThreadPools.availableProcessors(8, cgroupRoot)).isEqualTo(2);
+  }
+
+  @Test
+  public void cgroupV1_noQuota_runtimeProcessors() throws Exception {
+    write("cpu/cpu.cfs_quota_us", "-1\n");
+    write("cpu/cpu.cfs_period_us", "100000\n");
+
+    assertThat(ThreadPools.availableProcessors(8, cgroupRoot)).isEqualTo(8);
+  }
+
+  @Test
+  public void cgroupV1_missingPeriod_runtimeProcessors() throws Exception {
+    write("cpu/cpu.cfs_quota_us", "200000\n");
+
+    assertThat(ThreadPools.availableProcessors(8, cgroupRoot)).isEqualTo(8);
+  }
+
+  @Test
+  public void cgroupV2_preferredOverV1() throws Exception {
+    write("cpu.max", "400000 100000\n");
+    write("cpu/cpu.cfs_quota_us", "200000\n");
+    write("cpu/cpu.cfs_period_us", "100000\n");
+
+    assertThat(ThreadPools.availableProcessors(8, cgroupRoot)).isEqualTo(4);
+  }
+
+  @Test
+  public void describeUtilization_poolCreatedByThreadPools() throws Exception {
+    ListeningExecutorService executor = ThreadPools.newCpuExecutor(2);
+    executor.submit(() -> {});
+    executor.shutdown();
+    assertThat(executor.awaitTermination(10, SECONDS)).isTrue();
+
+    assertThat(ThreadPools.describeUtilization(executor)).isPresent();
+    assertThat(ThreadPools.describeUtilization(executor).get()).startsWith("1 tasks completed");
+  }
+
+  @Test
+  public void describeUtilization_otherPool_empty() {
+    assertThat(ThreadPools.describeUtilization(MoreExecutors.newDirectExecutorService()))
+        .isEmpty();
+  }
+
+  @Test
+  public void getMaxThreads_poolCreatedByThreadPools() {
+    ListeningExecutorService cpuExecutor = ThreadPools.newCpuExecutor(3);
+    ListeningExecutorService ioExecutor = ThreadPools.newIoExecutor(5);
+    try {
+      assertThat(ThreadPools.getMaxThreads(cpuExecutor)).hasValue(3);
+      assertThat(ThreadPools.getMaxThreads(ioExecutor)).hasValue(5);
+    } finally {
+      cpuExecutor.shutdown();
+      ioExecutor.shutdown();
+    }
+  }
+
+  @Test
+  public void getMaxThreads_otherPool_empty() {
+    assertThat(ThreadPools.getMaxThreads(MoreExecutors.newDirectExecutorService())).isEmpty();
+  }
+
+  private void write(String relativePath, String content) throws Exception {
+    Path file = cgroupRoot.resolve(relativePath);
+    Files.createDirectories(file.getParent());
+    Files.write(file, content.getBytes(UTF_8));
+  }
+}
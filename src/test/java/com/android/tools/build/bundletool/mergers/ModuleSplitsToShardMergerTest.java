@@ -82,6 +82,7 @@ import com.android.tools.build.bundletool.model.AndroidManifest;
 import com.android.tools.build.bundletool.model.AppBundle;
 import com.android.tools.build.bundletool.model.BundleModuleName;
 import com.android.tools.build.bundletool.model.ModuleEntry;
+import com.android.tools.build.bundletool.model.ModuleEntryComparisons;
 import com.android.tools.build.bundletool.model.ModuleSplit;
 import com.android.tools.build.bundletool.model.ModuleSplit.SplitType;
 import com.android.tools.build.bundletool.model.exceptions.CommandExecutionException;
@@ -866,7 +867,11 @@ public class ModuleSplitsToShardMergerTest {
     DexMerger spyDexMerger = Mockito.spy(d8DexMerger);
 
     new ModuleSplitsToShardMerger(
-            getCurrentVersion(), tmpDir, spyDexMerger, BUNDLE_WITH_ONE_FEATURE_NO_MAIN_DEX_LIST)
+            getCurrentVersion(),
+            tmpDir,
+            spyDexMerger,
+            BUNDLE_WITH_ONE_FEATURE_NO_MAIN_DEX_LIST,
+            new ModuleEntryComparisons())
         .mergeSingleShard(ImmutableList.of(baseModuleSplit, featureModuleSplit), createCache());
 
     verify(spyDexMerger).merge(any(), any(), any(), any(), /* isDebuggable= */ eq(false), anyInt());
@@ -894,7 +899,11 @@ public class ModuleSplitsToShardMergerTest {
     DexMerger spyDexMerger = Mockito.spy(d8DexMerger);
 
     new ModuleSplitsToShardMerger(
-            getCurrentVersion(), tmpDir, spyDexMerger, BUNDLE_WITH_ONE_FEATURE_NO_MAIN_DEX_LIST)
+            getCurrentVersion(),
+            tmpDir,
+            spyDexMerger,
+            BUNDLE_WITH_ONE_FEATURE_NO_MAIN_DEX_LIST,
+            new ModuleEntryComparisons())
         .mergeSingleShard(ImmutableList.of(baseModuleSplit, featureModuleSplit), createCache());
 
     verify(spyDexMerger)
@@ -923,7 +932,11 @@ public class ModuleSplitsToShardMergerTest {
     DexMerger spyDexMerger = Mockito.spy(d8DexMerger);
 
     new ModuleSplitsToShardMerger(
-            getCurrentVersion(), tmpDir, spyDexMerger, BUNDLE_WITH_ONE_FEATURE_NO_MAIN_DEX_LIST)
+            getCurrentVersion(),
+            tmpDir,
+            spyDexMerger,
+            BUNDLE_WITH_ONE_FEATURE_NO_MAIN_DEX_LIST,
+            new ModuleEntryComparisons())
         .mergeSingleShard(ImmutableList.of(baseModuleSplit, featureModuleSplit), createCache());
 
     verify(spyDexMerger).merge(any(), any(), any(), any(), /* isDebuggable= */ eq(true), anyInt());
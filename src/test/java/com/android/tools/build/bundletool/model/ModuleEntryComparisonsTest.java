@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.tools.build.bundletool.model;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.ByteSource;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class ModuleEntryComparisonsTest {
+
+  @Test
+  public void areIdentical_differentPath_resolvedWithoutHashing() {
+    ModuleEntryComparisons comparisons = new ModuleEntryComparisons();
+
+    assertThat(comparisons.areIdentical(createEntry("a", "content"), createEntry("b", "content")))
+        .isFalse();
+
+    assertThat(comparisons.getStats())
+        .isEqualTo(
+            ModuleEntryComparisons.Stats.create(
+                /* comparisonCount= */ 1,
+                /* resolvedByChecksumCount= */ 1,
+                /* hashComparisonCount= */ 0,
+                /* hashComparedBytes= */ 0));
+  }
+
+  @Test
+  public void areIdentical_differentSize_resolvedWithoutHashing() {
+    ModuleEntryComparisons comparisons = new ModuleEntryComparisons();
+
+    assertThat(comparisons.areIdentical(createEntry("a", "content"), createEntry("a", "other")))
+        .isFalse();
+
+    assertThat(comparisons.getStats().getResolvedByChecksumCount()).isEqualTo(1);
+    assertThat(comparisons.getStats().getHashComparisonCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void areIdentical_sameContent_hashesCompared() {
+    ModuleEntryComparisons comparisons = new ModuleEntryComparisons();
+
+    assertThat(comparisons.areIdentical(createEntry("a", "content"), createEntry("a", "content")))
+        .isTrue();
+
+    assertThat(comparisons.getStats())
+        .isEqualTo(
+            ModuleEntryComparisons.Stats.create(
+                /* comparisonCount= */ 1,
+                /* resolvedByChecksumCount= */ 0,
+                /* hashComparisonCount= */ 1,
+                /* hashComparedBytes= */ 7));
+  }
+
+  @Test
+  public void areIdentical_sets_sameResultAsEquals() {
+    ModuleEntryComparisons comparisons = new ModuleEntryComparisons();
+    ImmutableSet<ModuleEntry> entries =
+        ImmutableSet.of(createEntry("classes.dex", "base"), createEntry("classes2.dex", ""));
+    ImmutableSet<ModuleEntry> sameEntries =
+        ImmutableSet.of(createEntry("classes2.dex", ""), createEntry("classes.dex", "base"));
+    ImmutableSet<ModuleEntry> otherEntries =
+        ImmutableSet.of(createEntry("classes.dex", "feat"), createEntry("classes2.dex", ""));
+
+    assertThat(comparisons.areIdentical(entries, sameEntries)).isTrue();
+    assertThat(comparisons.areIdentical(entries, otherEntries)).isFalse();
+    assertThat(comparisons.areIdentical(entries, ImmutableSet.of())).isFalse();
+    assertThat(comparisons.getStats().getComparisonCount()).isEqualTo(3);
+  }
+
+  private static ModuleEntry createEntry(String path, String content) {
+    return ModuleEntry.builder()
+        .setPath(ZipPath.create(path))
+        .setContent(ByteSource.wrap(content.getBytes(UTF_8)))
+        .build();
+  }
+}
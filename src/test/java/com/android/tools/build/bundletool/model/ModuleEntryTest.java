@@ -18,16 +18,25 @@ package com.android.tools.build.bundletool.model;
 
 import static com.google.common.truth.Truth.assertThat;
 
+import com.android.tools.build.bundletool.io.ZipBuilder;
+import com.android.tools.build.bundletool.model.utils.ZipUtils;
 import com.google.common.io.ByteSource;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.zip.ZipFile;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
 @RunWith(JUnit4.class)
 public class ModuleEntryTest {
+
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
   @Test
   public void builder() throws Exception {
     ZipPath path = ZipPath.create("a");
@@ -101,6 +110,43 @@ public class ModuleEntryTest {
     assertThat(content2.getOpenStreamCount()).isEqualTo(1);
   }
 
+  @Test
+  public void equals_zipEntriesWithDifferentContents_contentNotRead() throws Exception {
+    Path zipPath =
+        new ZipBuilder()
+            .addFileWithContent(ZipPath.create("a"), new byte[] {'a'})
+            .addFileWithContent(ZipPath.create("b"), new byte[] {'b'})
+            .writeTo(tmp.getRoot().toPath().resolve("entries.zip"));
+    ModuleEntry entry1;
+    ModuleEntry entry2;
+    try (ZipFile zipFile = new ZipFile(zipPath.toFile())) {
+      entry1 = createZipEntry(zipFile, "a");
+      entry2 = createZipEntry(zipFile, "b");
+    }
+
+    // The zip file is closed, so comparing the entries would fail if their content was read.
+    assertThat(entry1.equals(entry2)).isFalse();
+  }
+
+  @Test
+  public void equals_zipEntriesWithSameContents() throws Exception {
+    Path zipPath =
+        new ZipBuilder()
+            .addFileWithContent(ZipPath.create("a"), new byte[] {'a'})
+            .addFileWithContent(ZipPath.create("b"), new byte[] {'a'})
+            .writeTo(tmp.getRoot().toPath().resolve("entries.zip"));
+    try (ZipFile zipFile = new ZipFile(zipPath.toFile())) {
+      assertThat(createZipEntry(zipFile, "a").equals(createZipEntry(zipFile, "b"))).isTrue();
+    }
+  }
+
+  private static ModuleEntry createZipEntry(ZipFile zipFile, String zipEntryName) {
+    return ModuleEntry.builder()
+        .setPath(ZipPath.create("a"))
+        .setContent(ZipUtils.asByteSource(zipFile, zipFile.getEntry(zipEntryName)))
+        .build();
+  }
+
   private static ModuleEntry createEntry(ZipPath path, byte[] content) throws Exception {
     return ModuleEntry.builder().setPath(path).setContent(ByteSource.wrap(content)).build();
   }
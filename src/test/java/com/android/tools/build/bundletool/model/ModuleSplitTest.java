@@ -174,6 +174,66 @@ public class ModuleSplitTest {
     assertThat(abiSplit.getAndroidManifest().getSplitId()).hasValue("config.x86");
   }
 
+  @Test
+  public void fingerprint_equalSplitsGeneratedSeparately_equal() {
+    ModuleSplit split1 =
+        createDrawableSplit(
+            new ResourceTableBuilder()
+                .addPackage("com.test.app")
+                .addDrawableResource("icon", "res/drawable/icon.jpg")
+                .build(),
+            fakeEntriesOf("res/drawable/icon.jpg"));
+    ModuleSplit split2 =
+        createDrawableSplit(
+            new ResourceTableBuilder()
+                .addPackage("com.test.app")
+                .addDrawableResource("icon", "res/drawable/icon.jpg")
+                .build(),
+            fakeEntriesOf("res/drawable/icon.jpg"));
+
+    assertThat(split1).isEqualTo(split2);
+    assertThat(split1.getFingerprint()).isEqualTo(split2.getFingerprint());
+  }
+
+  @Test
+  public void fingerprint_differentResourceTables_notEqual() {
+    ModuleSplit split1 =
+        createDrawableSplit(
+            new ResourceTableBuilder()
+                .addPackage("com.test.app")
+                .addDrawableResource("icon", "res/drawable/icon.jpg")
+                .build(),
+            fakeEntriesOf("res/drawable/icon.jpg"));
+    ModuleSplit split2 =
+        createDrawableSplit(
+            new ResourceTableBuilder()
+                .addPackage("com.test.app")
+                .addDrawableResource("logo", "res/drawable/icon.jpg")
+                .build(),
+            fakeEntriesOf("res/drawable/icon.jpg"));
+
+    assertThat(split1.getFingerprint()).isNotEqualTo(split2.getFingerprint());
+  }
+
+  @Test
+  public void fingerprint_differentEntryContents_notEqual() {
+    ResourceTable resourceTable =
+        new ResourceTableBuilder()
+            .addPackage("com.test.app")
+            .addDrawableResource("icon", "res/drawable/icon.jpg")
+            .build();
+    ModuleSplit split1 =
+        createDrawableSplit(
+            resourceTable,
+            ImmutableList.of(createModuleEntryForFile("res/drawable/icon.jpg", new byte[] {1})));
+    ModuleSplit split2 =
+        createDrawableSplit(
+            resourceTable,
+            ImmutableList.of(createModuleEntryForFile("res/drawable/icon.jpg", new byte[] {2})));
+
+    assertThat(split1.getFingerprint()).isNotEqualTo(split2.getFingerprint());
+  }
+
   @Test
   public void masterSplitGetsManifestForFeatureSplit() throws Exception {
     BundleModule module =
@@ -403,6 +463,39 @@ public class ModuleSplitTest {
             xmlAttribute(ANDROID_NAMESPACE_URI, "name", NAME_RESOURCE_ID, "FooActivity"));
   }
 
+  @Test
+  public void editManifest_appliesAllEdits() {
+    AndroidManifest manifest =
+        AndroidManifest.create(
+            androidManifest(
+                "com.test.app",
+                withMainActivity("MainActivity"),
+                withSplitNameActivity("FooActivity", "foo")));
+    ModuleSplit masterSplit =
+        ModuleSplit.builder()
+            .setModuleName(BundleModuleName.create("base"))
+            .setApkTargeting(ApkTargeting.getDefaultInstance())
+            .setVariantTargeting(lPlusVariantTargeting())
+            .setMasterSplit(true)
+            .setAndroidManifest(manifest)
+            .build();
+
+    ModuleSplit editedSplit =
+        masterSplit.editManifest(
+            editor -> editor.removeSplitName().setMinSdkVersion(28).setTargetSandboxVersion(2));
+
+    assertThat(editedSplit.getAndroidManifest())
+        .isEqualTo(
+            masterSplit
+                .removeSplitName()
+                .overrideMinSdkVersion(28)
+                .getAndroidManifest()
+                .toEditor()
+                .setTargetSandboxVersion(2)
+                .save());
+    assertThat(editedSplit.getAndroidManifest().getMinSdkVersion()).hasValue(28);
+  }
+
   @Test
   public void removeUnknownSplits() {
     AndroidManifest manifest =
@@ -705,6 +798,19 @@ public class ModuleSplitTest {
         .isEqualTo(certDigest);
   }
 
+  private static ModuleSplit createDrawableSplit(
+      ResourceTable resourceTable, ImmutableList<ModuleEntry> entries) {
+    return ModuleSplit.builder()
+        .setModuleName(BundleModuleName.create("base"))
+        .setEntries(entries)
+        .setResourceTable(resourceTable)
+        .setAndroidManifest(AndroidManifest.create(androidManifest("com.test.app")))
+        .setVariantTargeting(lPlusVariantTargeting())
+        .setApkTargeting(ApkTargeting.getDefaultInstance())
+        .setMasterSplit(true)
+        .build();
+  }
+
   private ImmutableList<ModuleEntry> fakeEntriesOf(String... entries) {
     return Arrays.stream(entries)
         .map(entry -> createModuleEntryForFile(entry, TEST_CONTENT))
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.tools.build.bundletool.model.utils;
+
+import static com.android.tools.build.bundletool.model.utils.BundleParser.SDK_MODULES_FILE_NAME;
+import static com.google.common.truth.Truth.assertThat;
+
+import com.android.tools.build.bundletool.io.ZipBuilder;
+import com.android.tools.build.bundletool.io.ZipBuilder.EntryOption;
+import com.android.tools.build.bundletool.model.ZipPath;
+import com.google.common.io.ByteStreams;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.ZipFile;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class BundleParserTest {
+
+  private static final byte[] TEST_CONTENT = new byte[] {1, 2, 3};
+
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+  private Path tmpDir;
+  private Path modulesPath;
+
+  @Before
+  public void setUp() throws Exception {
+    tmpDir = tmp.getRoot().toPath();
+    modulesPath =
+        new ZipBuilder()
+            .addFileWithContent(ZipPath.create("base/dex/classes.dex"), TEST_CONTENT)
+            .writeTo(tmpDir.resolve("modules.zip"));
+  }
+
+  @Test
+  public void getModulesZip_storedModules() throws Exception {
+    Path bundlePath =
+        new ZipBuilder()
+            .addFileWithContent(ZipPath.create("BundleConfig.pb"), TEST_CONTENT)
+            .addFileFromDisk(
+                ZipPath.create(SDK_MODULES_FILE_NAME),
+                modulesPath.toFile(),
+                EntryOption.UNCOMPRESSED)
+            .writeTo(tmpDir.resolve("bundle.asb"));
+
+    assertModulesZipExtracted(bundlePath);
+  }
+
+  @Test
+  public void getModulesZip_compressedModules() throws Exception {
+    Path bundlePath =
+        new ZipBuilder()
+            .addFileWithContent(ZipPath.create("BundleConfig.pb"), TEST_CONTENT)
+            .addFileFromDisk(ZipPath.create(SDK_MODULES_FILE_NAME), modulesPath.toFile())
+            .writeTo(tmpDir.resolve("bundle.asb"));
+
+    assertModulesZipExtracted(bundlePath);
+  }
+
+  private void assertModulesZipExtracted(Path bundlePath) throws Exception {
+    Path extractedModulesPath = tmpDir.resolve("extracted-modules.zip");
+    try (ZipFile bundleZip = new ZipFile(bundlePath.toFile());
+        ZipFile modulesZip = BundleParser.getModulesZip(bundleZip, extractedModulesPath)) {
+      assertThat(Files.readAllBytes(extractedModulesPath))
+          .isEqualTo(Files.readAllBytes(modulesPath));
+      try (InputStream dexContent =
+          modulesZip.getInputStream(modulesZip.getEntry("base/dex/classes.dex"))) {
+        assertThat(ByteStreams.toByteArray(dexContent)).isEqualTo(TEST_CONTENT);
+      }
+    }
+  }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.tools.build.bundletool.model.utils;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class FileCacheTest {
+
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+  private final FileCache<Integer> cache = new FileCache<>(/* maximumSize= */ 10);
+  private final AtomicInteger loadCount = new AtomicInteger();
+
+  private Path file;
+
+  @Before
+  public void setUp() throws Exception {
+    file = tmp.getRoot().toPath().resolve("input.txt");
+    Files.write(file, "content".getBytes(UTF_8));
+  }
+
+  @Test
+  public void sameFile_loadedOnce() {
+    assertThat(cache.get(file, loadCount::incrementAndGet)).isEqualTo(1);
+    assertThat(cache.get(file, loadCount::incrementAndGet)).isEqualTo(1);
+  }
+
+  @Test
+  public void modifiedFile_loadedAgain() throws Exception {
+    assertThat(cache.get(file, loadCount::incrementAndGet)).isEqualTo(1);
+
+    Files.write(file, "modified content".getBytes(UTF_8));
+
+    assertThat(cache.get(file, loadCount::incrementAndGet)).isEqualTo(2);
+  }
+
+  @Test
+  public void differentExtraKey_loadedAgain() {
+    assertThat(cache.get(file, "a", loadCount::incrementAndGet)).isEqualTo(1);
+    assertThat(cache.get(file, "b", loadCount::incrementAndGet)).isEqualTo(2);
+    assertThat(cache.get(file, "a", loadCount::incrementAndGet)).isEqualTo(1);
+  }
+
+  @Test
+  public void missingFile_notCached() {
+    Path missingFile = tmp.getRoot().toPath().resolve("missing.txt");
+
+    assertThat(cache.get(missingFile, loadCount::incrementAndGet)).isEqualTo(1);
+    assertThat(cache.get(missingFile, loadCount::incrementAndGet)).isEqualTo(2);
+  }
+
+  @Test
+  public void loaderThrows_exceptionPropagatedAndNotCached() {
+    IllegalStateException exception =
+        assertThrows(
+            IllegalStateException.class,
+            () ->
+                cache.get(
+                    file,
+                    () -> {
+                      throw new IllegalStateException("Cannot parse.");
+                    }));
+
+    assertThat(exception).hasMessageThat().isEqualTo("Cannot parse.");
+    assertThat(cache.get(file, loadCount::incrementAndGet)).isEqualTo(1);
+  }
+
+  @Test
+  public void removalListener_calledOnEvictionAndInvalidation() throws Exception {
+    List<Integer> removedValues = new ArrayList<>();
+    FileCache<Integer> cacheWithListener =
+        new FileCache<>(/* maximumSize= */ 1, removedValues::add);
+    Path otherFile = tmp.getRoot().toPath().resolve("other.txt");
+    Files.write(otherFile, "other content".getBytes(UTF_8));
+
+    cacheWithListener.get(file, () -> 1);
+    cacheWithListener.get(otherFile, () -> 2);
+    assertThat(removedValues).containsExactly(1);
+
+    cacheWithListener.invalidateAll();
+    assertThat(removedValues).containsExactly(1, 2).inOrder();
+  }
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.tools.build.bundletool.model.utils;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.android.tools.build.bundletool.io.ZipBuilder;
+import com.android.tools.build.bundletool.io.ZipBuilder.EntryOption;
+import com.android.tools.build.bundletool.model.ZipPath;
+import com.android.tools.build.bundletool.model.utils.MappedZipFile.Entry;
+import com.google.common.io.ByteSource;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.OptionalLong;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link MappedZipFile}. */
+@RunWith(JUnit4.class)
+public class MappedZipFileTest {
+
+  private static final byte[] CONTENT = "Hello, world! Hello, world!".getBytes(UTF_8);
+
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+  @Test
+  public void getEntries_listsFilesAndDirectories() throws Exception {
+    Path zipPath =
+        new ZipBuilder()
+            .addDirectory(ZipPath.create("dir"))
+            .addFileWithContent(ZipPath.create("dir/a"), CONTENT)
+            .addFileWithContent(ZipPath.create("b"), CONTENT)
+            .writeTo(tmp.getRoot().toPath().resolve("output.zip"));
+
+    try (MappedZipFile zipFile = MappedZipFile.open(zipPath)) {
+      assertThat(zipFile.getEntries().stream().map(Entry::getName).collect(toImmutableList()))
+          .containsExactly("dir/", "dir/a", "b");
+      assertThat(zipFile.getFileEntries().stream().map(Entry::getName).collect(toImmutableList()))
+          .containsExactly("dir/a", "b");
+    }
+  }
+
+  @Test
+  public void getContent_storedAndDeflatedEntries() throws Exception {
+    Path zipPath =
+        new ZipBuilder()
+            .addFileWithContent(ZipPath.create("stored"), CONTENT, EntryOption.UNCOMPRESSED)
+            .addFileWithContent(ZipPath.create("deflated"), CONTENT)
+            .writeTo(tmp.getRoot().toPath().resolve("output.zip"));
+
+    try (MappedZipFile zipFile = MappedZipFile.open(zipPath)) {
+      Entry stored = zipFile.getEntry("stored").get();
+      Entry deflated = zipFile.getEntry("deflated").get();
+
+      assertThat(stored.isCompressed()).isFalse();
+      assertThat(deflated.isCompressed()).isTrue();
+      assertThat(zipFile.getContent(stored).read()).isEqualTo(CONTENT);
+      assertThat(zipFile.getContent(deflated).read()).isEqualTo(CONTENT);
+      assertThat(zipFile.getContent(deflated).size()).isEqualTo(CONTENT.length);
+    }
+  }
+
+  @Test
+  public void getEntry_missingEntry_empty() throws Exception {
+    Path zipPath =
+        new ZipBuilder()
+            .addFileWithContent(ZipPath.create("a"), CONTENT)
+            .writeTo(tmp.getRoot().toPath().resolve("output.zip"));
+
+    try (MappedZipFile zipFile = MappedZipFile.open(zipPath)) {
+      assertThat(zipFile.getEntry("b")).isEmpty();
+    }
+  }
+
+  @Test
+  public void getContent_entriesSpanningSegments() throws Exception {
+    byte[] largeContent = new byte[600_000];
+    new Random(42).nextBytes(largeContent);
+    Path zipPath =
+        new ZipBuilder()
+            .addFileWithContent(ZipPath.create("first"), CONTENT)
+            .addFileWithContent(ZipPath.create("stored"), largeContent, EntryOption.UNCOMPRESSED)
+            .addFileWithContent(ZipPath.create("deflated"), largeContent)
+            .writeTo(tmp.getRoot().toPath().resolve("output.zip"));
+
+    try (MappedZipFile zipFile =
+        MappedZipFile.open(zipPath, /* segmentSize= */ 1024, /* segmentOverlap= */ 1 << 18)) {
+      assertThat(zipFile.getContent(zipFile.getEntry("first").get()).read()).isEqualTo(CONTENT);
+      assertThat(zipFile.getContent(zipFile.getEntry("stored").get()).read())
+          .isEqualTo(largeContent);
+      assertThat(zipFile.getContent(zipFile.getEntry("deflated").get()).read())
+          .isEqualTo(largeContent);
+    }
+  }
+
+  @Test
+  public void getContent_afterClose_throws() throws Exception {
+    Path zipPath =
+        new ZipBuilder()
+            .addFileWithContent(ZipPath.create("a"), CONTENT)
+            .writeTo(tmp.getRoot().toPath().resolve("output.zip"));
+
+    ByteSource content;
+    try (MappedZipFile zipFile = MappedZipFile.open(zipPath)) {
+      content = zipFile.getContent(zipFile.getEntry("a").get());
+    }
+
+    assertThrows(IOException.class, content::read);
+  }
+
+  @Test
+  public void crc32IfKnown_mappedEntry() throws Exception {
+    Path zipPath =
+        new ZipBuilder()
+            .addFileWithContent(ZipPath.create("a"), CONTENT)
+            .writeTo(tmp.getRoot().toPath().resolve("output.zip"));
+    CRC32 expectedCrc32 = new CRC32();
+    expectedCrc32.update(CONTENT);
+
+    try (MappedZipFile zipFile = MappedZipFile.open(zipPath)) {
+      assertThat(ZipUtils.crc32IfKnown(zipFile.getContent(zipFile.getEntry("a").get())))
+          .isEqualTo(OptionalLong.of(expectedCrc32.getValue()));
+    }
+  }
+
+  @Test
+  public void getContent_zip64ExtraField() throws Exception {
+    Path zipPath = writeZip64Zip(/* zip64FieldSize= */ 16);
+
+    try (MappedZipFile zipFile = MappedZipFile.open(zipPath)) {
+      Entry entry = zipFile.getEntry("a").get();
+
+      assertThat(entry.getSize()).isEqualTo(CONTENT.length);
+      assertThat(entry.getCompressedSize()).isEqualTo(CONTENT.length);
+      assertThat(zipFile.getContent(entry).read()).isEqualTo(CONTENT);
+    }
+  }
+
+  @Test
+  public void open_truncatedZip64ExtraField_throws() throws Exception {
+    // Only the uncompressed size is in the field, although the compressed size is missing too.
+    Path zipPath = writeZip64Zip(/* zip64FieldSize= */ 8);
+
+    ZipException exception = assertThrows(ZipException.class, () -> MappedZipFile.open(zipPath));
+
+    assertThat(exception).hasMessageThat().contains("Truncated ZIP64 extra field of entry 'a'");
+  }
+
+  /**
+   * Writes a ZIP with a single stored entry "a" whose sizes are only in the ZIP64 extra field of
+   * the central directory, which holds the first {@code zip64FieldSize} bytes of the 64-bit sizes.
+   */
+  private Path writeZip64Zip(int zip64FieldSize) throws IOException {
+    byte[] name = "a".getBytes(UTF_8);
+    CRC32 crc32 = new CRC32();
+    crc32.update(CONTENT);
+    ByteBuffer zip64Sizes =
+        ByteBuffer.allocate(16)
+            .order(ByteOrder.LITTLE_ENDIAN)
+            .putLong(CONTENT.length)
+            .putLong(CONTENT.length);
+
+    ByteBuffer zip = ByteBuffer.allocate(1024).order(ByteOrder.LITTLE_ENDIAN);
+    // Local file header, with the sizes in the header.
+    zip.putInt(0x04034b50)
+        .putShort((short) 45)
+        .putShort((short) 0)
+        .putShort((short) 0)
+        .putInt(0)
+        .putInt((int) crc32.getValue())
+        .putInt(CONTENT.length)
+        .putInt(CONTENT.length)
+        .putShort((short) name.length)
+        .putShort((short) 0)
+        .put(name)
+        .put(CONTENT);
+    // Central directory header, with the sizes in the ZIP64 extra field.
+    int centralDirectoryOffset = zip.position();
+    zip.putInt(0x02014b50)
+        .putShort((short) 45)
+        .putShort((short) 45)
+        .putShort((short) 0)
+        .putShort((short) 0)
+        .putInt(0)
+        .putInt((int) crc32.getValue())
+        .putInt(0xffffffff)
+        .putInt(0xffffffff)
+        .putShort((short) name.length)
+        .putShort((short) (4 + zip64FieldSize))
+        .putShort((short) 0)
+        .putShort((short) 0)
+        .putShort((short) 0)
+        .putInt(0)
+        .putInt(0)
+        .put(name)
+        .putShort((short) 0x0001)
+        .putShort((short) zip64FieldSize)
+        .put(zip64Sizes.array(), 0, zip64FieldSize);
+    int centralDirectorySize = zip.position() - centralDirectoryOffset;
+    // End of central directory.
+    zip.putInt(0x06054b50)
+        .putShort((short) 0)
+        .putShort((short) 0)
+        .putShort((short) 1)
+        .putShort((short) 1)
+        .putInt(centralDirectorySize)
+        .putInt(centralDirectoryOffset)
+        .putShort((short) 0);
+
+    Path zipPath = tmp.getRoot().toPath().resolve("zip64.zip");
+    Files.write(zipPath, Arrays.copyOf(zip.array(), zip.position()));
+    return zipPath;
+  }
+}
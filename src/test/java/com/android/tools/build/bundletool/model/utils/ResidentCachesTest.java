@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.tools.build.bundletool.model.utils;
+
+import static com.android.tools.build.bundletool.testing.ManifestProtoUtils.androidManifest;
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.android.tools.build.bundletool.io.ZipBuilder;
+import com.android.tools.build.bundletool.model.AppBundle;
+import com.android.tools.build.bundletool.model.ZipPath;
+import com.android.tools.build.bundletool.model.utils.ResidentCaches.CachedAppBundle;
+import com.android.tools.build.bundletool.testing.AppBundleBuilder;
+import com.google.common.io.Closer;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.zip.ZipFile;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class ResidentCachesTest {
+
+  private static final AppBundle APP_BUNDLE =
+      new AppBundleBuilder()
+          .addModule("base", module -> module.setManifest(androidManifest("com.test.app")))
+          .build();
+
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+  @After
+  public void tearDown() {
+    ResidentCaches.disable();
+  }
+
+  @Test
+  public void cachedBundle_reusedAcrossCommands() throws Exception {
+    ResidentCaches.enable(/* maxCachedAppBundles= */ 1);
+    Path bundlePath = createZip("bundle1.aab");
+
+    try (Closer closer1 = Closer.create();
+        Closer closer2 = Closer.create()) {
+      CachedAppBundle cachedAppBundle1 = acquire(bundlePath, closer1);
+      CachedAppBundle cachedAppBundle2 = acquire(bundlePath, closer2);
+
+      assertThat(cachedAppBundle2).isSameInstanceAs(cachedAppBundle1);
+    }
+  }
+
+  @Test
+  public void evictedBundle_zipFileClosedOnceReleased() throws Exception {
+    ResidentCaches.enable(/* maxCachedAppBundles= */ 1);
+    Path bundlePath1 = createZip("bundle1.aab");
+    Path bundlePath2 = createZip("bundle2.aab");
+    Closer closer1 = Closer.create();
+    CachedAppBundle evictedBundle = acquire(bundlePath1, closer1);
+
+    try (Closer closer2 = Closer.create()) {
+      acquire(bundlePath2, closer2);
+      // Still in use by the first command.
+      assertThat(evictedBundle.getZipFile().size()).isEqualTo(1);
+
+      closer1.close();
+
+      assertThrows(IllegalStateException.class, () -> evictedBundle.getZipFile().size());
+    }
+  }
+
+  @Test
+  public void disable_closesZipFiles() throws Exception {
+    ResidentCaches.enable(/* maxCachedAppBundles= */ 2);
+    CachedAppBundle cachedAppBundle;
+    try (Closer closer = Closer.create()) {
+      cachedAppBundle = acquire(createZip("bundle1.aab"), closer);
+    }
+    assertThat(cachedAppBundle.getZipFile().size()).isEqualTo(1);
+
+    ResidentCaches.disable();
+
+    assertThrows(IllegalStateException.class, () -> cachedAppBundle.getZipFile().size());
+  }
+
+  private static CachedAppBundle acquire(Path bundlePath, Closer closer) {
+    return ResidentCaches.get()
+        .get()
+        .acquireAppBundle(
+            bundlePath,
+            () -> {
+              try {
+                return CachedAppBundle.create(APP_BUNDLE, new ZipFile(bundlePath.toFile()));
+              } catch (IOException e) {
+                throw new UncheckedIOException(e);
+              }
+            },
+            closer);
+  }
+
+  private Path createZip(String fileName) throws IOException {
+    return new ZipBuilder()
+        .addFileWithContent(ZipPath.create("file.txt"), new byte[] {1})
+        .writeTo(tmp.getRoot().toPath().resolve(fileName));
+  }
+}
@@ -153,6 +153,44 @@ public class ResourcesUtilsTest {
                                 "res/drawable/image.png", Configuration.getDefaultInstance()))))));
   }
 
+  @Test
+  public void filter_unchangedTypesSharedWithOriginalTable() throws Exception {
+    ResourceTable table =
+        resourceTable(
+            pkg(
+                0x7f,
+                "package.without.density.resources",
+                type(
+                    0x01,
+                    "drawable",
+                    entry(
+                        0x00,
+                        "layout_main",
+                        fileReference(
+                            "res/drawable/image.png", Configuration.getDefaultInstance()))),
+                type(
+                    0x02,
+                    "layout",
+                    entry(
+                        0x00,
+                        "layout_menu",
+                        fileReference(
+                            "res/layout/menu.xml", Configuration.getDefaultInstance())))));
+
+    ResourceTable filteredTable =
+        ResourcesUtils.filterResourceTable(
+            table,
+            resource -> resource.getType().getTypeId().getId() == 0x02,
+            ResourceTableEntry::getEntry);
+    ResourceTable unfilteredTable =
+        ResourcesUtils.filterResourceTable(
+            table, Predicates.alwaysFalse(), ResourceTableEntry::getEntry);
+
+    assertThat(filteredTable.getPackage(0).getType(0))
+        .isSameInstanceAs(table.getPackage(0).getType(0));
+    assertThat(unfilteredTable).isSameInstanceAs(table);
+  }
+
   @Test
   public void filter_withEntryPredicate() {
     ResourceTable resourceTable =
@@ -25,8 +25,11 @@ import static org.junit.jupiter.api.Assertions.assertThrows;
 import com.android.tools.build.bundletool.io.ZipBuilder;
 import com.android.tools.build.bundletool.model.ZipPath;
 import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteSource;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.OptionalLong;
+import java.util.zip.CRC32;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 import org.junit.Rule;
@@ -97,6 +100,24 @@ public class ZipUtilsTest {
     }
   }
 
+  @Test
+  public void crc32IfKnown_zipEntry() throws Exception {
+    try (ZipFile zipFile = createZipFileWithFiles("entry")) {
+      ZipEntry zipEntry = zipFile.getEntry("entry");
+      CRC32 expectedCrc32 = new CRC32();
+      expectedCrc32.update("entry".getBytes(UTF_8));
+
+      assertThat(ZipUtils.crc32IfKnown(ZipUtils.asByteSource(zipFile, zipEntry)))
+          .isEqualTo(OptionalLong.of(expectedCrc32.getValue()));
+    }
+  }
+
+  @Test
+  public void crc32IfKnown_otherByteSource() {
+    assertThat(ZipUtils.crc32IfKnown(ByteSource.wrap("entry".getBytes(UTF_8))))
+        .isEqualTo(OptionalLong.empty());
+  }
+
   private ZipFile createZipFileWithFiles(String... fileNames) throws IOException {
     ZipBuilder zipBuilder = new ZipBuilder();
     for (String fileName : fileNames) {
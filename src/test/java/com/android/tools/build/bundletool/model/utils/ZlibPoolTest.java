@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.tools.build.bundletool.model.utils;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link ZlibPool}. */
+@RunWith(JUnit4.class)
+public class ZlibPoolTest {
+
+  @Test
+  public void releasedDeflater_reusedForSameParameters() {
+    Deflater deflater = ZlibPool.acquireDeflater(Deflater.BEST_SPEED, /* nowrap= */ true);
+    deflater.setInput(new byte[] {1, 2, 3});
+    ZlibPool.releaseDeflater(deflater, Deflater.BEST_SPEED, /* nowrap= */ true);
+    long hitCount = ZlibPool.getStats().getHitCount();
+
+    Deflater reused = ZlibPool.acquireDeflater(Deflater.BEST_SPEED, /* nowrap= */ true);
+
+    assertThat(reused).isSameInstanceAs(deflater);
+    assertThat(reused.getTotalIn()).isEqualTo(0);
+    assertThat(ZlibPool.getStats().getHitCount()).isEqualTo(hitCount + 1);
+    ZlibPool.releaseDeflater(reused, Deflater.BEST_SPEED, /* nowrap= */ true);
+  }
+
+  @Test
+  public void releasedDeflater_notReusedForOtherParameters() {
+    Deflater deflater = ZlibPool.acquireDeflater(Deflater.BEST_COMPRESSION, /* nowrap= */ true);
+    ZlibPool.releaseDeflater(deflater, Deflater.BEST_COMPRESSION, /* nowrap= */ true);
+
+    Deflater other = ZlibPool.acquireDeflater(Deflater.BEST_COMPRESSION, /* nowrap= */ false);
+
+    assertThat(other).isNotSameInstanceAs(deflater);
+    ZlibPool.releaseDeflater(other, Deflater.BEST_COMPRESSION, /* nowrap= */ false);
+  }
+
+  @Test
+  public void releasedInflater_reused() {
+    Inflater inflater = ZlibPool.acquireInflater();
+    ZlibPool.releaseInflater(inflater);
+
+    Inflater reused = ZlibPool.acquireInflater();
+
+    assertThat(reused).isSameInstanceAs(inflater);
+    ZlibPool.releaseInflater(reused);
+  }
+
+  @Test
+  public void fullPool_releasedObjectsEnded() {
+    Inflater[] inflaters = new Inflater[ZlibPool.MAX_POOLED_PER_THREAD + 1];
+    for (int i = 0; i < inflaters.length; i++) {
+      inflaters[i] = ZlibPool.acquireInflater();
+    }
+    long nativeBytesEstimate = ZlibPool.getStats().getNativeBytesEstimate();
+
+    for (Inflater inflater : inflaters) {
+      ZlibPool.releaseInflater(inflater);
+    }
+
+    assertThat(ZlibPool.getStats().getNativeBytesEstimate()).isLessThan(nativeBytesEstimate);
+  }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.tools.build.bundletool.preprocessors;
+
+import static com.android.tools.build.bundletool.testing.ManifestProtoUtils.androidManifest;
+import static com.android.tools.build.bundletool.testing.ManifestProtoUtils.androidManifestForFeature;
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
+import static com.google.common.truth.Truth.assertThat;
+
+import com.android.tools.build.bundletool.model.AppBundle;
+import com.android.tools.build.bundletool.model.BundleModule;
+import com.android.tools.build.bundletool.model.ModuleEntry;
+import com.android.tools.build.bundletool.model.ZipPath;
+import com.android.tools.build.bundletool.testing.AppBundleBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.ByteSource;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link AppBundlePreprocessorManager}. */
+@RunWith(JUnit4.class)
+public class AppBundlePreprocessorManagerTest {
+
+  private static final AppBundle APP_BUNDLE =
+      new AppBundleBuilder()
+          .addModule("base", module -> module.setManifest(androidManifest("com.test.app")))
+          .addModule(
+              "feature", module -> module.setManifest(androidManifestForFeature("com.test.app")))
+          .build();
+
+  private final ListeningExecutorService executorService =
+      MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(2));
+
+  @After
+  public void tearDown() {
+    executorService.shutdownNow();
+  }
+
+  @Test
+  public void modulePreprocessors_appliedInOrderAroundBarrier() {
+    Map<String, ImmutableSet<String>> entriesSeenByBarrier = new ConcurrentHashMap<>();
+    AppBundlePreprocessor barrier =
+        appBundle -> {
+          appBundle
+              .getModules()
+              .values()
+              .forEach(
+                  module -> entriesSeenByBarrier.put(module.getName().getName(), entries(module)));
+          return appBundle;
+        };
+
+    AppBundle processedBundle =
+        new AppBundlePreprocessorManager(
+                ImmutableList.of(
+                    addingEntry("assets/before.txt"), barrier, addingEntry("assets/after.txt")),
+                executorService)
+            .processAppBundle(APP_BUNDLE);
+
+    assertThat(entriesSeenByBarrier.keySet()).containsExactly("base", "feature");
+    for (ImmutableSet<String> entries : entriesSeenByBarrier.values()) {
+      assertThat(entries).contains("assets/before.txt");
+      assertThat(entries).doesNotContain("assets/after.txt");
+    }
+    for (BundleModule module : processedBundle.getModules().values()) {
+      assertThat(entries(module)).containsAtLeast("assets/before.txt", "assets/after.txt");
+    }
+  }
+
+  @Test
+  public void modulePreprocessors_chainedForEachModule() {
+    List<String> modulesSeenWithFirstEntry = Collections.synchronizedList(new ArrayList<>());
+    ModulePreprocessor second =
+        appBundle ->
+            module -> {
+              if (entries(module).contains("assets/first.txt")) {
+                modulesSeenWithFirstEntry.add(module.getName().getName());
+              }
+              return withEntry(module, "assets/second.txt");
+            };
+
+    AppBundle processedBundle =
+        new AppBundlePreprocessorManager(
+                ImmutableList.of(addingEntry("assets/first.txt"), second), executorService)
+            .processAppBundle(APP_BUNDLE);
+
+    assertThat(modulesSeenWithFirstEntry).containsExactly("base", "feature");
+    for (BundleModule module : processedBundle.getModules().values()) {
+      assertThat(entries(module)).containsAtLeast("assets/first.txt", "assets/second.txt");
+    }
+  }
+
+  @Test
+  public void modulePreprocessors_allGivenBundleBeforeTheirGroup() {
+    AppBundle bundleAfterBarrier =
+        APP_BUNDLE.toBuilder().setRawModules(APP_BUNDLE.getModules().values()).build();
+    List<AppBundle> bundlesGivenToFirstGroup = Collections.synchronizedList(new ArrayList<>());
+    List<AppBundle> bundlesGivenToSecondGroup = Collections.synchronizedList(new ArrayList<>());
+
+    new AppBundlePreprocessorManager(
+            ImmutableList.of(
+                recordingBundle(bundlesGivenToFirstGroup, "assets/a.txt"),
+                recordingBundle(bundlesGivenToFirstGroup, "assets/b.txt"),
+                appBundle -> bundleAfterBarrier,
+                recordingBundle(bundlesGivenToSecondGroup, "assets/c.txt"),
+                recordingBundle(bundlesGivenToSecondGroup, "assets/d.txt")),
+            executorService)
+        .processAppBundle(APP_BUNDLE);
+
+    assertThat(bundlesGivenToFirstGroup).hasSize(2);
+    for (AppBundle appBundle : bundlesGivenToFirstGroup) {
+      assertThat(appBundle).isSameInstanceAs(APP_BUNDLE);
+    }
+    assertThat(bundlesGivenToSecondGroup).hasSize(2);
+    for (AppBundle appBundle : bundlesGivenToSecondGroup) {
+      assertThat(appBundle).isSameInstanceAs(bundleAfterBarrier);
+    }
+  }
+
+  private static ModulePreprocessor addingEntry(String path) {
+    return appBundle -> module -> withEntry(module, path);
+  }
+
+  private static ModulePreprocessor recordingBundle(List<AppBundle> bundlesGiven, String path) {
+    return appBundle -> {
+      bundlesGiven.add(appBundle);
+      return module -> withEntry(module, path);
+    };
+  }
+
+  private static BundleModule withEntry(BundleModule module, String path) {
+    return module.toBuilder()
+        .addEntry(
+            ModuleEntry.builder()
+                .setPath(ZipPath.create(path))
+                .setContent(ByteSource.empty())
+                .build())
+        .build();
+  }
+
+  private static ImmutableSet<String> entries(BundleModule module) {
+    return module.getEntries().stream()
+        .map(entry -> entry.getPath().toString())
+        .collect(toImmutableSet());
+  }
+}
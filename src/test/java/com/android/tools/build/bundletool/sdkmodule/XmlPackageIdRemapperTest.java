@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.tools.build.bundletool.sdkmodule;
+
+import static com.android.tools.build.bundletool.testing.ResourcesTableFactory.entry;
+import static com.android.tools.build.bundletool.testing.ResourcesTableFactory.fileReference;
+import static com.android.tools.build.bundletool.testing.ResourcesTableFactory.pkg;
+import static com.android.tools.build.bundletool.testing.ResourcesTableFactory.resourceTable;
+import static com.android.tools.build.bundletool.testing.ResourcesTableFactory.type;
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.extensions.proto.ProtoTruth.assertThat;
+
+import com.android.aapt.ConfigurationOuterClass.Configuration;
+import com.android.aapt.Resources.FileReference;
+import com.android.aapt.Resources.Item;
+import com.android.aapt.Resources.Primitive;
+import com.android.aapt.Resources.Reference;
+import com.android.aapt.Resources.XmlAttribute;
+import com.android.aapt.Resources.XmlElement;
+import com.android.aapt.Resources.XmlNode;
+import com.android.bundle.Config.BundleConfig.BundleType;
+import com.android.tools.build.bundletool.model.BundleModule;
+import com.android.tools.build.bundletool.model.BundleModuleName;
+import com.android.tools.build.bundletool.model.ModuleEntry;
+import com.android.tools.build.bundletool.model.ZipPath;
+import com.android.tools.build.bundletool.model.version.BundleToolVersion;
+import com.google.common.io.ByteSource;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.protobuf.UnknownFieldSet;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link XmlPackageIdRemapper}. */
+@RunWith(JUnit4.class)
+public class XmlPackageIdRemapperTest {
+
+  private static final int NEW_PACKAGE_ID = 0x82;
+
+  private static final int APP_ATTR_ID = 0x7f010001;
+  private static final int REMAPPED_APP_ATTR_ID = 0x82010001;
+  private static final int APP_REF_ID = 0x7f020002;
+  private static final int REMAPPED_APP_REF_ID = 0x82020002;
+  private static final int FRAMEWORK_ATTR_ID = 0x01010001;
+  private static final int FRAMEWORK_REF_ID = 0x01080002;
+
+  private static final String XML_RESOURCE_PATH = "res/xml/file.xml";
+
+  private static final UnknownFieldSet UNKNOWN_FIELDS =
+      UnknownFieldSet.newBuilder()
+          .addField(1000, UnknownFieldSet.Field.newBuilder().addVarint(APP_ATTR_ID).build())
+          .build();
+
+  private static final XmlElement GRANDCHILD =
+      XmlElement.newBuilder()
+          .setName("grandchild")
+          .addAttribute(
+              XmlAttribute.newBuilder()
+                  .setName("appAttrWithUnknownRefFields")
+                  .setResourceId(APP_ATTR_ID)
+                  .setCompiledItem(
+                      Item.newBuilder()
+                          .setRef(
+                              Reference.newBuilder()
+                                  .setId(APP_REF_ID)
+                                  .setUnknownFields(UNKNOWN_FIELDS))))
+          .build();
+
+  private static final XmlElement CHILD =
+      XmlElement.newBuilder()
+          .setName("child")
+          .addAttribute(
+              XmlAttribute.newBuilder()
+                  .setName("appAttr")
+                  .setResourceId(APP_ATTR_ID)
+                  .setCompiledItem(refItem(FRAMEWORK_REF_ID))
+                  .setUnknownFields(UNKNOWN_FIELDS))
+          .addAttribute(
+              XmlAttribute.newBuilder()
+                  .setName("booleanAttr")
+                  .setResourceId(APP_ATTR_ID)
+                  .setCompiledItem(
+                      Item.newBuilder().setPrim(Primitive.newBuilder().setBooleanValue(true))))
+          .addChild(XmlNode.newBuilder().setElement(GRANDCHILD))
+          .addChild(XmlNode.newBuilder().setText("text"))
+          .setUnknownFields(UNKNOWN_FIELDS)
+          .build();
+
+  /**
+   * XML with nested elements, compiled items referencing resources of the app and of the Android
+   * framework, and unknown fields at every level.
+   */
+  private static final XmlNode XML =
+      XmlNode.newBuilder()
+          .setElement(
+              XmlElement.newBuilder()
+                  .setName("root")
+                  .addAttribute(XmlAttribute.newBuilder().setName("name").setValue("value"))
+                  .addAttribute(
+                      XmlAttribute.newBuilder()
+                          .setName("frameworkAttr")
+                          .setResourceId(FRAMEWORK_ATTR_ID)
+                          .setCompiledItem(refItem(APP_REF_ID)))
+                  .addChild(XmlNode.newBuilder().setElement(CHILD))
+                  .setUnknownFields(UNKNOWN_FIELDS))
+          .setUnknownFields(UNKNOWN_FIELDS)
+          .build();
+
+  @Test
+  public void remap_xmlResourceRewrittenLikeParsedManifest() throws Exception {
+    // The manifest is remapped on the parsed proto, the XML resource on the wire format.
+    BundleModule remappedModule = remap(createModule(XML));
+
+    assertThat(readXmlResource(remappedModule))
+        .isEqualTo(remappedModule.getAndroidManifestProto());
+  }
+
+  @Test
+  public void remap_xmlResource_onlyIdsOfAppResourcesRemapped() throws Exception {
+    XmlNode remappedXml = readXmlResource(remap(createModule(XML)));
+
+    XmlElement root = remappedXml.getElement();
+    assertThat(root.getAttribute(0)).isEqualTo(XML.getElement().getAttribute(0));
+    assertThat(root.getAttribute(1).getResourceId()).isEqualTo(FRAMEWORK_ATTR_ID);
+    assertThat(root.getAttribute(1).getCompiledItem().getRef().getId())
+        .isEqualTo(REMAPPED_APP_REF_ID);
+
+    XmlElement child = root.getChild(0).getElement();
+    assertThat(child.getAttribute(0).getResourceId()).isEqualTo(REMAPPED_APP_ATTR_ID);
+    assertThat(child.getAttribute(0).getCompiledItem().getRef().getId())
+        .isEqualTo(FRAMEWORK_REF_ID);
+    assertThat(child.getAttribute(1).getResourceId()).isEqualTo(REMAPPED_APP_ATTR_ID);
+    assertThat(child.getAttribute(1).getCompiledItem())
+        .isEqualTo(CHILD.getAttribute(1).getCompiledItem());
+    assertThat(child.getChild(1)).isEqualTo(XmlNode.newBuilder().setText("text").build());
+
+    XmlAttribute grandchildAttribute = child.getChild(0).getElement().getAttribute(0);
+    assertThat(grandchildAttribute.getResourceId()).isEqualTo(REMAPPED_APP_ATTR_ID);
+    assertThat(grandchildAttribute.getCompiledItem().getRef().getId())
+        .isEqualTo(REMAPPED_APP_REF_ID);
+  }
+
+  @Test
+  public void remap_xmlResource_unknownFieldsPreserved() throws Exception {
+    XmlNode remappedXml = readXmlResource(remap(createModule(XML)));
+
+    XmlElement child = remappedXml.getElement().getChild(0).getElement();
+    assertThat(remappedXml.getUnknownFields()).isEqualTo(UNKNOWN_FIELDS);
+    assertThat(remappedXml.getElement().getUnknownFields()).isEqualTo(UNKNOWN_FIELDS);
+    assertThat(child.getUnknownFields()).isEqualTo(UNKNOWN_FIELDS);
+    assertThat(child.getAttribute(0).getUnknownFields()).isEqualTo(UNKNOWN_FIELDS);
+    assertThat(
+            child
+                .getChild(0)
+                .getElement()
+                .getAttribute(0)
+                .getCompiledItem()
+                .getRef()
+                .getUnknownFields())
+        .isEqualTo(UNKNOWN_FIELDS);
+  }
+
+  private static BundleModule remap(BundleModule module) {
+    return new XmlPackageIdRemapper(NEW_PACKAGE_ID, MoreExecutors.newDirectExecutorService())
+        .remap(module);
+  }
+
+  private static BundleModule createModule(XmlNode xml) {
+    return BundleModule.builder()
+        .setName(BundleModuleName.create("sdk"))
+        .setBundleType(BundleType.REGULAR)
+        .setBundletoolVersion(BundleToolVersion.getCurrentVersion())
+        .setAndroidManifestProto(xml)
+        .setResourceTable(
+            resourceTable(
+                pkg(
+                    0x7f,
+                    "com.test.sdk",
+                    type(
+                        0x01,
+                        "xml",
+                        entry(
+                            0x0001,
+                            "file",
+                            fileReference(
+                                XML_RESOURCE_PATH,
+                                FileReference.Type.PROTO_XML,
+                                Configuration.getDefaultInstance()))))))
+        .addEntry(
+            ModuleEntry.builder()
+                .setPath(ZipPath.create(XML_RESOURCE_PATH))
+                .setContent(ByteSource.wrap(xml.toByteArray()))
+                .build())
+        .build();
+  }
+
+  private static XmlNode readXmlResource(BundleModule module) throws Exception {
+    return XmlNode.parseFrom(
+        module.getEntry(ZipPath.create(XML_RESOURCE_PATH)).get().getContent().read());
+  }
+
+  private static Item.Builder refItem(int id) {
+    return Item.newBuilder().setRef(Reference.newBuilder().setId(id));
+  }
+}
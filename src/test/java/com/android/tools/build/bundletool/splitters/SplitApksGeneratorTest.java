@@ -23,6 +23,9 @@ import static com.android.tools.build.bundletool.model.utils.Versions.ANDROID_L_
 import static com.android.tools.build.bundletool.model.utils.Versions.ANDROID_M_API_VERSION;
 import static com.android.tools.build.bundletool.model.utils.Versions.ANDROID_Q_API_VERSION;
 import static com.android.tools.build.bundletool.model.utils.Versions.ANDROID_U_API_VERSION;
+import static com.android.tools.build.bundletool.testing.DeviceFactory.abis;
+import static com.android.tools.build.bundletool.testing.DeviceFactory.mergeSpecs;
+import static com.android.tools.build.bundletool.testing.DeviceFactory.sdkVersion;
 import static com.android.tools.build.bundletool.testing.ManifestProtoUtils.androidManifest;
 import static com.android.tools.build.bundletool.testing.ResourcesTableFactory.HDPI;
 import static com.android.tools.build.bundletool.testing.ResourcesTableFactory.USER_PACKAGE_OFFSET;
@@ -288,6 +291,146 @@ public class SplitApksGeneratorTest {
     assertConsistentRequiredSplitTypes(ImmutableList.of(baseMModule, testMModule));
   }
 
+  @Test
+  public void deviceSpec_splitsOfNonMatchingVariantsNotGenerated() throws Exception {
+    TestComponent.useTestModule(
+        this,
+        TestModule.builder()
+            .withDeviceSpec(mergeSpecs(sdkVersion(ANDROID_Q_API_VERSION), abis("x86_64")))
+            .build());
+    ImmutableList<BundleModule> bundleModule =
+        ImmutableList.of(
+            new BundleModuleBuilder("base")
+                .addFile("assets/leftover.txt")
+                .addFile("lib/x86_64/libsome.so")
+                .setManifest(androidManifest("com.test.app"))
+                .setNativeConfig(
+                    nativeLibraries(
+                        targetedNativeDirectory(
+                            "lib/x86_64", nativeDirectoryTargeting(AbiAlias.X86_64))))
+                .build(),
+            new BundleModuleBuilder("test")
+                .addFile("assets/test.txt")
+                .setManifest(androidManifest("com.test.app"))
+                .build());
+
+    ImmutableList<ModuleSplit> moduleSplits =
+        splitApksGenerator.generateSplits(
+            bundleModule,
+            ApkGenerationConfiguration.builder()
+                .setEnableUncompressedNativeLibraries(true)
+                .build());
+
+    VariantTargeting lVariantTargeting =
+        variantMinSdkTargeting(
+            /* minSdkVersion= */ ANDROID_L_API_VERSION,
+            /* alternativeSdkVersions...= */ ANDROID_M_API_VERSION);
+    VariantTargeting mVariantTargeting =
+        variantMinSdkTargeting(
+            /* minSdkVersion= */ ANDROID_M_API_VERSION,
+            /* alternativeSdkVersions...= */ ANDROID_L_API_VERSION);
+
+    // 2 splits for the M variant and a placeholder for the L variant.
+    assertThat(moduleSplits).hasSize(3);
+
+    ModuleSplit lPlaceholder =
+        moduleSplits.stream()
+            .filter(split -> split.getVariantTargeting().equals(lVariantTargeting))
+            .collect(onlyElement());
+    assertThat(lPlaceholder.getEntries()).isEmpty();
+    assertThat(lPlaceholder.isMasterSplit()).isFalse();
+    assertThat(lPlaceholder.getApkTargeting()).isEqualToDefaultInstance();
+
+    ModuleSplit baseMModule = getModuleSplit(moduleSplits, mVariantTargeting, "base");
+    assertThat(extractPaths(baseMModule.getEntries()))
+        .containsExactly("assets/leftover.txt", "lib/x86_64/libsome.so");
+    assertThat(getForceUncompressed(baseMModule, "lib/x86_64/libsome.so")).isTrue();
+    ModuleSplit testMModule = getModuleSplit(moduleSplits, mVariantTargeting, "test");
+    assertThat(extractPaths(testMModule.getEntries())).containsExactly("assets/test.txt");
+  }
+
+  @Test
+  public void variantPlaceholders_splitsOfVariantSameAsGeneratedAtOnce() throws Exception {
+    ImmutableList<BundleModule> bundleModule =
+        ImmutableList.of(
+            new BundleModuleBuilder("base")
+                .addFile("assets/leftover.txt")
+                .addFile("lib/x86_64/libsome.so")
+                .setManifest(androidManifest("com.test.app"))
+                .setNativeConfig(
+                    nativeLibraries(
+                        targetedNativeDirectory(
+                            "lib/x86_64", nativeDirectoryTargeting(AbiAlias.X86_64))))
+                .build(),
+            new BundleModuleBuilder("test")
+                .addFile("assets/test.txt")
+                .setManifest(androidManifest("com.test.app"))
+                .build());
+    ApkGenerationConfiguration apkGenerationConfiguration =
+        ApkGenerationConfiguration.builder().setEnableUncompressedNativeLibraries(true).build();
+
+    ImmutableList<ModuleSplit> placeholders =
+        splitApksGenerator.generateVariantPlaceholders(bundleModule, apkGenerationConfiguration);
+    ImmutableList<ModuleSplit> moduleSplits =
+        splitApksGenerator.generateSplits(bundleModule, apkGenerationConfiguration);
+
+    // A placeholder for each of the L and M variants.
+    assertThat(placeholders).hasSize(2);
+    for (ModuleSplit placeholder : placeholders) {
+      assertThat(placeholder.getEntries()).isEmpty();
+      assertThat(
+              splitApksGenerator.generateSplitsOfVariant(
+                  bundleModule, apkGenerationConfiguration, placeholder.getVariantTargeting()))
+          .containsExactlyElementsIn(
+              moduleSplits.stream()
+                  .filter(
+                      split ->
+                          split.getVariantTargeting().equals(placeholder.getVariantTargeting()))
+                  .collect(toImmutableList()))
+          .inOrder();
+    }
+  }
+
+  @Test
+  public void multipleVariants_resourcesAndAssetsSplitsReusedAcrossVariants() throws Exception {
+    ImmutableList<BundleModule> bundleModule =
+        ImmutableList.of(
+            new BundleModuleBuilder("base")
+                .addFile("assets/leftover.txt")
+                .addFile("lib/x86_64/libsome.so")
+                .setManifest(androidManifest("com.test.app"))
+                .setNativeConfig(
+                    nativeLibraries(
+                        targetedNativeDirectory(
+                            "lib/x86_64", nativeDirectoryTargeting(AbiAlias.X86_64))))
+                .build(),
+            new BundleModuleBuilder("test")
+                .addFile("assets/test.txt")
+                .setManifest(androidManifest("com.test.app"))
+                .build());
+    ApkGenerationConfiguration apkGenerationConfiguration =
+        ApkGenerationConfiguration.builder().setEnableUncompressedNativeLibraries(true).build();
+
+    ImmutableList<ModuleSplit> moduleSplits =
+        splitApksGenerator.generateSplits(bundleModule, apkGenerationConfiguration);
+
+    // The resources and assets pipelines of both modules run for the L variant only, and their
+    // outputs are reused for the M variant.
+    assertThat(splitApksGenerator.getSplittingPipelineStats().getComputedCount()).isEqualTo(4);
+    assertThat(splitApksGenerator.getSplittingPipelineStats().getReusedCount()).isEqualTo(4);
+    ImmutableSet<VariantTargeting> variantTargetings =
+        moduleSplits.stream().map(ModuleSplit::getVariantTargeting).collect(toImmutableSet());
+    assertThat(variantTargetings).hasSize(2);
+    for (VariantTargeting variantTargeting : variantTargetings) {
+      assertThat(
+              moduleSplits.stream()
+                  .filter(split -> split.getVariantTargeting().equals(variantTargeting))
+                  .flatMap(split -> extractPaths(split.getEntries()).stream())
+                  .collect(toImmutableList()))
+          .containsAtLeast("assets/leftover.txt", "assets/test.txt");
+    }
+  }
+
   @Test
   public void multipleModules_multipleVariants_withTransparency() throws Exception {
     TestComponent.useTestModule(
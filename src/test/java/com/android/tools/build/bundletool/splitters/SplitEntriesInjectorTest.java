@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.tools.build.bundletool.splitters;
+
+import static com.android.tools.build.bundletool.testing.ModuleSplitUtils.createModuleSplitBuilder;
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.truth.Truth.assertThat;
+
+import com.android.tools.build.bundletool.model.ModuleEntry;
+import com.android.tools.build.bundletool.model.ModuleSplit;
+import com.android.tools.build.bundletool.model.ZipPath;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteSource;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class SplitEntriesInjectorTest {
+
+  @Test
+  public void injectAll_noEntriesToInject_splitReturnedAsIs() {
+    ModuleSplit moduleSplit = createSplit("assets/original.txt");
+
+    ModuleSplit result =
+        SplitEntriesInjector.injectAll(
+            moduleSplit,
+            ImmutableList.of(split -> ImmutableList.of(), split -> ImmutableList.of()));
+
+    assertThat(result).isSameInstanceAs(moduleSplit);
+  }
+
+  @Test
+  public void injectAll_entriesOfAllInjectorsAddedInOrder() {
+    ModuleSplit moduleSplit = createSplit("assets/original.txt");
+
+    ModuleSplit result =
+        SplitEntriesInjector.injectAll(
+            moduleSplit,
+            ImmutableList.of(
+                split -> ImmutableList.of(createEntry("assets/a.txt"), createEntry("assets/b.txt")),
+                split -> ImmutableList.of(),
+                split -> ImmutableList.of(createEntry("assets/c.txt"))));
+
+    assertThat(getPaths(result))
+        .containsExactly("assets/original.txt", "assets/a.txt", "assets/b.txt", "assets/c.txt")
+        .inOrder();
+  }
+
+  @Test
+  public void injectAll_allInjectorsGivenOriginalSplit() {
+    ModuleSplit moduleSplit = createSplit("assets/original.txt");
+    List<ModuleSplit> splitsGiven = new ArrayList<>();
+
+    SplitEntriesInjector.injectAll(
+        moduleSplit,
+        ImmutableList.of(
+            split -> {
+              splitsGiven.add(split);
+              return ImmutableList.of(createEntry("assets/a.txt"));
+            },
+            split -> {
+              splitsGiven.add(split);
+              return ImmutableList.of(createEntry("assets/b.txt"));
+            }));
+
+    assertThat(splitsGiven).hasSize(2);
+    for (ModuleSplit split : splitsGiven) {
+      assertThat(split).isSameInstanceAs(moduleSplit);
+    }
+  }
+
+  private static ModuleSplit createSplit(String entryPath) {
+    return createModuleSplitBuilder().setEntries(ImmutableList.of(createEntry(entryPath))).build();
+  }
+
+  private static ModuleEntry createEntry(String path) {
+    return ModuleEntry.builder()
+        .setPath(ZipPath.create(path))
+        .setContent(ByteSource.empty())
+        .build();
+  }
+
+  private static ImmutableList<String> getPaths(ModuleSplit moduleSplit) {
+    return moduleSplit.getEntries().stream()
+        .map(entry -> entry.getPath().toString())
+        .collect(toImmutableList());
+  }
+}
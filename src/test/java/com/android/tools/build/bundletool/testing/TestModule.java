@@ -34,6 +34,7 @@ import com.android.tools.build.bundletool.model.ApkModifier;
 import com.android.tools.build.bundletool.model.AppBundle;
 import com.android.tools.build.bundletool.model.Bundle;
 import com.android.tools.build.bundletool.model.BundleMetadata;
+import com.android.tools.build.bundletool.model.ModuleEntryComparisons;
 import com.android.tools.build.bundletool.model.OptimizationDimension;
 import com.android.tools.build.bundletool.model.SdkBundle;
 import com.android.tools.build.bundletool.model.SigningConfiguration;
@@ -100,6 +101,12 @@ public class TestModule {
     return new TempDirectory();
   }
 
+  @Provides
+  @CommandScoped
+  ModuleEntryComparisons provideModuleEntryComparisons() {
+    return new ModuleEntryComparisons();
+  }
+
   public static Builder builder() {
     return new Builder();
   }
@@ -63,7 +63,7 @@ public class EntryClashValidatorTest {
             .setManifest(androidManifest("com.test.app"))
             .build();
 
-    EntryClashValidator.checkEntryClashes(ImmutableList.of(moduleA, moduleB));
+    new EntryClashValidator().checkEntryClashes(ImmutableList.of(moduleA, moduleB));
   }
 
   @Test
@@ -82,7 +82,7 @@ public class EntryClashValidatorTest {
             .setManifest(androidManifest("com.test.app"))
             .build();
 
-    EntryClashValidator.checkEntryClashes(ImmutableList.of(moduleA, moduleB));
+    new EntryClashValidator().checkEntryClashes(ImmutableList.of(moduleA, moduleB));
   }
 
   @Test
@@ -99,7 +99,7 @@ public class EntryClashValidatorTest {
     BundleModule moduleA = new BundleModuleBuilder("a").addFile(filePath, fileContentA).build();
     BundleModule moduleB = new BundleModuleBuilder("b").addFile(filePath, fileContentB).build();
 
-    EntryClashValidator.checkEntryClashes(ImmutableList.of(moduleA, moduleB));
+    new EntryClashValidator().checkEntryClashes(ImmutableList.of(moduleA, moduleB));
   }
 
   @Test
@@ -123,7 +123,7 @@ public class EntryClashValidatorTest {
             .setManifest(androidManifest("com.test.app"))
             .build();
 
-    EntryClashValidator.checkEntryClashes(ImmutableList.of(moduleA, moduleB));
+    new EntryClashValidator().checkEntryClashes(ImmutableList.of(moduleA, moduleB));
   }
 
   @Test
@@ -144,7 +144,7 @@ public class EntryClashValidatorTest {
             .setManifest(androidManifest("com.test.app"))
             .build();
 
-    EntryClashValidator.checkEntryClashes(ImmutableList.of(moduleA, moduleB));
+    new EntryClashValidator().checkEntryClashes(ImmutableList.of(moduleA, moduleB));
   }
 
   @Test
@@ -162,7 +162,7 @@ public class EntryClashValidatorTest {
             .setManifest(androidManifest("com.test.app"))
             .build();
 
-    EntryClashValidator.checkEntryClashes(ImmutableList.of(moduleA, moduleB));
+    new EntryClashValidator().checkEntryClashes(ImmutableList.of(moduleA, moduleB));
   }
 
   @Test
@@ -184,7 +184,7 @@ public class EntryClashValidatorTest {
     InvalidBundleException exception =
         assertThrows(
             InvalidBundleException.class,
-            () -> EntryClashValidator.checkEntryClashes(ImmutableList.of(moduleA, moduleB)));
+            () -> new EntryClashValidator().checkEntryClashes(ImmutableList.of(moduleA, moduleB)));
 
     assertThat(exception)
         .hasMessageThat()
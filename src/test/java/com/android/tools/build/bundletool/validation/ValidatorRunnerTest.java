@@ -19,8 +19,12 @@ package com.android.tools.build.bundletool.validation;
 import static com.android.tools.build.bundletool.testing.ManifestProtoUtils.androidManifest;
 import static com.android.tools.build.bundletool.testing.ManifestProtoUtils.withSplitId;
 import static com.google.common.truth.Truth.assertThat;
+import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.mockito.ArgumentMatchers.any;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -34,11 +38,15 @@ import com.android.tools.build.bundletool.io.ZipBuilder;
 import com.android.tools.build.bundletool.model.AppBundle;
 import com.android.tools.build.bundletool.model.BundleModule;
 import com.android.tools.build.bundletool.model.ZipPath;
+import com.android.tools.build.bundletool.model.exceptions.InvalidBundleException;
 import com.android.tools.build.bundletool.testing.BundleConfigBuilder;
 import com.google.common.collect.ImmutableList;
 import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -63,10 +71,18 @@ public class ValidatorRunnerTest {
   @Mock SubValidator validator;
   @Mock SubValidator validator2;
 
+  private ExecutorService executorService;
+
   @Before
   public void setUp() {
     tempFolder = tmp.getRoot().toPath();
     MockitoAnnotations.initMocks(this);
+    executorService = Executors.newFixedThreadPool(4);
+  }
+
+  @After
+  public void tearDown() {
+    executorService.shutdownNow();
   }
 
   @Test
@@ -200,6 +216,140 @@ public class ValidatorRunnerTest {
     }
   }
 
+  @Test
+  public void validateBundle_withExecutor_invokesRightSubValidatorMethods() throws Exception {
+    Path bundlePath = createBundleWithTwoModules();
+
+    try (ZipFile bundleZip = new ZipFile(bundlePath.toFile())) {
+      AppBundle bundle = AppBundle.buildFromZip(bundleZip);
+      ImmutableList<BundleModule> bundleFeatureModules =
+          ImmutableList.copyOf(bundle.getFeatureModules().values());
+
+      new ValidatorRunner(ImmutableList.of(validator, validator2), executorService)
+          .validateBundle(bundle);
+
+      for (SubValidator subValidator : ImmutableList.of(validator, validator2)) {
+        verify(subValidator).validateBundle(eq(bundle));
+        verify(subValidator).validateAllModules(eq(bundleFeatureModules));
+        verify(subValidator, times(2)).validateModule(any());
+        verify(subValidator, times(2)).validateModuleFile(any());
+        verifyNoMoreInteractions(subValidator);
+      }
+    }
+  }
+
+  @Test
+  public void validateBundle_withExecutor_reportsErrorOfFirstFailingSubValidator()
+      throws Exception {
+    Path bundlePath = createBundleWithTwoModules();
+    InvalidBundleException firstError =
+        InvalidBundleException.builder().withUserMessage("First error.").build();
+    InvalidBundleException secondError =
+        InvalidBundleException.builder().withUserMessage("Second error.").build();
+    doAnswer(
+            invocation -> {
+              // Make sure the second sub-validator fails first.
+              Thread.sleep(100);
+              throw firstError;
+            })
+        .when(validator)
+        .validateModule(any());
+    doThrow(secondError).when(validator2).validateBundle(any());
+
+    try (ZipFile bundleZip = new ZipFile(bundlePath.toFile())) {
+      AppBundle bundle = AppBundle.buildFromZip(bundleZip);
+
+      InvalidBundleException exception =
+          assertThrows(
+              InvalidBundleException.class,
+              () ->
+                  new ValidatorRunner(ImmutableList.of(validator, validator2), executorService)
+                      .validateBundle(bundle));
+
+      assertThat(exception).isSameInstanceAs(firstError);
+    }
+  }
+
+  @Test
+  public void validateBundleZipFile_withExecutor_reportsErrorOfFirstFailingEntry()
+      throws Exception {
+    ZipBuilder zipBuilder = new ZipBuilder();
+    for (int i = 0; i < 100; i++) {
+      zipBuilder.addFileWithContent(ZipPath.create("file" + i + ".txt"), TEST_CONTENT);
+    }
+    Path bundlePath = zipBuilder.writeTo(tempFolder.resolve("bundle.aab"));
+    doAnswer(
+            invocation -> {
+              ZipEntry zipEntry = invocation.getArgument(1);
+              if (zipEntry.getName().equals("file10.txt")) {
+                Thread.sleep(100);
+              }
+              if (zipEntry.getName().equals("file10.txt")
+                  || zipEntry.getName().equals("file90.txt")) {
+                throw InvalidBundleException.builder()
+                    .withUserMessage("Invalid entry '%s'.", zipEntry.getName())
+                    .build();
+              }
+              return null;
+            })
+        .when(validator)
+        .validateBundleZipEntry(any(), any());
+
+    try (ZipFile bundleZip = new ZipFile(bundlePath.toFile())) {
+      InvalidBundleException exception =
+          assertThrows(
+              InvalidBundleException.class,
+              () ->
+                  new ValidatorRunner(ImmutableList.of(validator), executorService)
+                      .validateBundleZipFile(bundleZip));
+
+      assertThat(exception).hasMessageThat().isEqualTo("Invalid entry 'file10.txt'.");
+    }
+  }
+
+  @Test
+  public void validateBundleZipFile_calledFromThreadOfExecutor_completes() throws Exception {
+    Path bundlePath =
+        new ZipBuilder()
+            .addFileWithContent(ZipPath.create("file1.txt"), TEST_CONTENT)
+            .addFileWithContent(ZipPath.create("file2.txt"), TEST_CONTENT)
+            .writeTo(tempFolder.resolve("bundle.aab"));
+    ExecutorService singleThreadExecutor = Executors.newSingleThreadExecutor();
+
+    try (ZipFile bundleZip = new ZipFile(bundlePath.toFile())) {
+      // The only thread of the executor waits for the validation, which would never complete if
+      // it relied on the executor to run its tasks.
+      singleThreadExecutor
+          .submit(
+              () ->
+                  new ValidatorRunner(ImmutableList.of(validator), singleThreadExecutor)
+                      .validateBundleZipFile(bundleZip))
+          .get(10, SECONDS);
+
+      verify(validator).validateBundleZipFile(eq(bundleZip));
+      verify(validator, times(2)).validateBundleZipEntry(eq(bundleZip), any());
+    } finally {
+      singleThreadExecutor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void getSubValidatorTimings_containsAllSubValidatorsInOrder() throws Exception {
+    Path bundlePath = createBundleWithTwoModules();
+
+    try (ZipFile bundleZip = new ZipFile(bundlePath.toFile())) {
+      AppBundle bundle = AppBundle.buildFromZip(bundleZip);
+      ValidatorRunner validatorRunner =
+          new ValidatorRunner(ImmutableList.of(validator, validator2), executorService);
+
+      validatorRunner.validateBundle(bundle);
+
+      assertThat(validatorRunner.getSubValidatorTimings().keySet())
+          .containsExactly(validator, validator2)
+          .inOrder();
+    }
+  }
+
   @Test
   public void validateModuleZipFile_invokesRightSubValidatorMethods() throws Exception {
     Path modulePath =
@@ -215,4 +365,18 @@ public class ValidatorRunnerTest {
       verifyNoMoreInteractions(validator);
     }
   }
+
+  private Path createBundleWithTwoModules() throws Exception {
+    return new ZipBuilder()
+        .addFileWithContent(ZipPath.create("BundleConfig.pb"), BUNDLE_CONFIG.toByteArray())
+        .addFileWithProtoContent(
+            ZipPath.create("moduleX/manifest/AndroidManifest.xml"),
+            androidManifest("com.test.app", withSplitId("moduleX")))
+        .addFileWithContent(ZipPath.create("moduleX/assets/file.txt"), TEST_CONTENT)
+        .addFileWithProtoContent(
+            ZipPath.create("moduleY/manifest/AndroidManifest.xml"),
+            androidManifest("com.test.app", withSplitId("moduleY")))
+        .addFileWithContent(ZipPath.create("moduleY/assets/file.txt"), TEST_CONTENT)
+        .writeTo(tempFolder.resolve("bundle.aab"));
+  }
 }
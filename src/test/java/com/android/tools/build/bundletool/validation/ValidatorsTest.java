@@ -20,6 +20,7 @@ import static com.google.common.collect.ImmutableList.toImmutableList;
 import static com.google.common.collect.ImmutableSet.toImmutableSet;
 import static com.google.common.truth.Truth.assertThat;
 
+import com.android.tools.build.bundletool.model.ModuleEntryComparisons;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
@@ -56,7 +57,9 @@ public class ValidatorsTest {
     ImmutableSet<Class<?>> registeredSubValidators =
         ImmutableSet.<Class<?>>builder()
             .addAll(toClasses(AppBundleValidator.DEFAULT_BUNDLE_FILE_SUB_VALIDATORS))
-            .addAll(toClasses(AppBundleValidator.DEFAULT_BUNDLE_SUB_VALIDATORS))
+            .addAll(
+                toClasses(
+                    AppBundleValidator.defaultBundleSubValidators(new ModuleEntryComparisons())))
             .addAll(toClasses(BundleModulesValidator.MODULE_FILE_SUB_VALIDATORS))
             .addAll(toClasses(BundleModulesValidator.MODULES_SUB_VALIDATORS))
             .addAll(toClasses(SdkBundleValidator.DEFAULT_BUNDLE_FILE_SUB_VALIDATORS))
@@ -74,7 +77,7 @@ public class ValidatorsTest {
         BundleModulesValidator.MODULE_FILE_SUB_VALIDATORS);
 
     assertSameOrderOfCommonClasses(
-        AppBundleValidator.DEFAULT_BUNDLE_SUB_VALIDATORS,
+        AppBundleValidator.defaultBundleSubValidators(new ModuleEntryComparisons()),
         BundleModulesValidator.MODULES_SUB_VALIDATORS);
   }
 